@@ -0,0 +1,242 @@
+/*
+ * DeliveryWorkerTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant.work;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.work.Data;
+import androidx.work.ListenableWorker;
+import androidx.work.WorkerFactory;
+import androidx.work.WorkerParameters;
+import androidx.work.testing.TestListenableWorkerBuilder;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeliveryWorkerTest {
+
+    private static final String ORDER_REQUEST = "{\"application_id\":\"app-test\","
+            + "\"path\":\"/v1/app/order\",\"headers\":{\"Authorization\":\"Basic abc\"},"
+            + "\"body\":{\"order_id\":\"order-1\"}}";
+
+    private Context context;
+    private MockWebServer server;
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        server = new MockWebServer();
+        server.start();
+        dir = new File(context.getCacheDir(), "delivery-worker-test");
+        deleteRecursively(dir);
+        assertTrue(dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void doWork_delivered_deleteUpload() throws Exception {
+        File upload = write("order-1", ORDER_REQUEST);
+        server.enqueue(new MockResponse().setResponseCode(200));
+
+        ListenableWorker.Result result = newWorker(upload, 0).doWork();
+
+        assertEquals(ListenableWorker.Result.success(), result);
+        assertFalse(upload.exists());
+        RecordedRequest request = server.takeRequest();
+        assertEquals("/v1/app/order", request.getPath());
+        assertEquals("Basic abc", request.getHeader("Authorization"));
+        assertEquals("order-1",
+                new JSONObject(request.getBody().readUtf8()).getString("order_id"));
+    }
+
+    @Test
+    public void doWork_serverError_retryAndKeepUpload() throws Exception {
+        File upload = write("order-1", ORDER_REQUEST);
+        server.enqueue(new MockResponse().setResponseCode(503));
+
+        ListenableWorker.Result result = newWorker(upload, 0).doWork();
+
+        assertEquals(ListenableWorker.Result.retry(), result);
+        assertTrue(upload.exists());
+    }
+
+    @Test
+    public void doWork_rateLimited_retryAndKeepUpload() throws Exception {
+        File upload = write("order-1", ORDER_REQUEST);
+        server.enqueue(new MockResponse().setResponseCode(429));
+
+        assertEquals(ListenableWorker.Result.retry(), newWorker(upload, 0).doWork());
+        assertTrue(upload.exists());
+    }
+
+    @Test
+    public void doWork_serverUnreachable_retryAndKeepUpload() throws Exception {
+        File upload = write("order-1", ORDER_REQUEST);
+        server.shutdown();
+
+        assertEquals(ListenableWorker.Result.retry(), newWorker(upload, 0).doWork());
+        assertTrue(upload.exists());
+    }
+
+    @Test
+    public void doWork_lastAttemptServerError_dropUpload() throws Exception {
+        File upload = write("order-1", ORDER_REQUEST);
+        server.enqueue(new MockResponse().setResponseCode(503));
+
+        ListenableWorker.Result result =
+                newWorker(upload, DeliveryWorker.MAX_RUN_ATTEMPTS - 1).doWork();
+
+        assertEquals(ListenableWorker.Result.success(), result);
+        assertFalse(upload.exists());
+    }
+
+    @Test
+    public void doWork_badRequest_dropUpload() throws Exception {
+        File upload = write("order-1", ORDER_REQUEST);
+        server.enqueue(new MockResponse().setResponseCode(400));
+
+        assertEquals(ListenableWorker.Result.success(), newWorker(upload, 0).doWork());
+        assertFalse(upload.exists());
+    }
+
+    @Test
+    public void doWork_malformedUpload_dropUpload() throws Exception {
+        File upload = write("order-1", "{\"path\":");
+
+        assertEquals(ListenableWorker.Result.success(), newWorker(upload, 0).doWork());
+        assertFalse(upload.exists());
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void doWork_missingUpload_succeed() {
+        File upload = new File(dir, "missing");
+
+        assertEquals(ListenableWorker.Result.success(), newWorker(upload, 0).doWork());
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void doWork_directory_deliverAllOldestFirst() throws Exception {
+        write("2-second", eventsRequest("second"));
+        write("1-first", eventsRequest("first"));
+        write("3-pending" + WorkManagerDelivery.PENDING_SUFFIX, eventsRequest("pending"));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        server.enqueue(new MockResponse().setResponseCode(200));
+
+        ListenableWorker.Result result = newWorker(dir, 0).doWork();
+
+        assertEquals(ListenableWorker.Result.success(), result);
+        assertEquals("first", eventName(server.takeRequest()));
+        assertEquals("second", eventName(server.takeRequest()));
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    public void doWork_directoryServerError_keepUndeliveredUploads() throws Exception {
+        write("1-first", eventsRequest("first"));
+        write("2-second", eventsRequest("second"));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        server.enqueue(new MockResponse().setResponseCode(500));
+
+        ListenableWorker.Result result = newWorker(dir, 0).doWork();
+
+        assertEquals(ListenableWorker.Result.retry(), result);
+        assertFalse(new File(dir, "1-first").exists());
+        assertTrue(new File(dir, "2-second").exists());
+    }
+
+    private DeliveryWorker newWorker(File target, int runAttemptCount) {
+        return TestListenableWorkerBuilder.from(context, DeliveryWorker.class)
+                .setInputData(new Data.Builder()
+                        .putString(DeliveryWorker.KEY_PATH, target.getAbsolutePath())
+                        .build())
+                .setRunAttemptCount(runAttemptCount)
+                .setWorkerFactory(new WorkerFactory() {
+                    @Override
+                    public ListenableWorker createWorker(@NonNull Context appContext,
+                            @NonNull String workerClassName,
+                            @NonNull WorkerParameters workerParameters) {
+                        return new DeliveryWorker(appContext, workerParameters,
+                                new MockWebServerSender(server));
+                    }
+                })
+                .build();
+    }
+
+    private File write(String name, String request) throws IOException {
+        File file = new File(dir, name);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        writer.write(request);
+        writer.close();
+        return file;
+    }
+
+    private static String eventsRequest(String name) {
+        return "{\"path\":\"/v1/app/events\",\"headers\":{},"
+                + "\"body\":{\"events\":[{\"name\":\"" + name + "\"}]}}";
+    }
+
+    private static String eventName(RecordedRequest request) throws Exception {
+        return new JSONObject(request.getBody().readUtf8()).getJSONArray("events")
+                .getJSONObject(0).getString("name");
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
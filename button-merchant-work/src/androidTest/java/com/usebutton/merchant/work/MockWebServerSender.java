@@ -0,0 +1,97 @@
+/*
+ * MockWebServerSender.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant.work;
+
+import com.usebutton.merchant.exception.ButtonNetworkException;
+import com.usebutton.merchant.exception.HttpStatusException;
+import com.usebutton.merchant.exception.NetworkNotFoundException;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.util.Iterator;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Test {@link DeliveryWorker.Sender} that posts serialized uploads to a {@link MockWebServer}
+ * in place of the Button API, failing the way the library does.
+ */
+final class MockWebServerSender implements DeliveryWorker.Sender {
+
+    private final MockWebServer server;
+
+    MockWebServerSender(MockWebServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public void send(String request) throws ButtonNetworkException {
+        JSONObject requestJson;
+        try {
+            requestJson = new JSONObject(request);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Malformed durable request", e);
+        }
+
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) server.url(requestJson.getString("path")).url()
+                    .openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            JSONObject headers = requestJson.getJSONObject("headers");
+            Iterator<String> names = headers.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                connection.setRequestProperty(name, headers.getString(name));
+            }
+
+            Writer writer = new OutputStreamWriter(connection.getOutputStream(), "UTF-8");
+            writer.write(requestJson.getJSONObject("body").toString());
+            writer.close();
+
+            int responseCode = connection.getResponseCode();
+            if (responseCode >= 400) {
+                throw new HttpStatusException("HTTP StatusCode: " + responseCode, responseCode);
+            }
+        } catch (IOException e) {
+            throw new NetworkNotFoundException(e);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Malformed durable request", e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+}
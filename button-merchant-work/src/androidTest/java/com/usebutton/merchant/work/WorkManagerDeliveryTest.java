@@ -0,0 +1,194 @@
+/*
+ * WorkManagerDeliveryTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant.work;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.work.Configuration;
+import androidx.work.ListenableWorker;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.WorkerFactory;
+import androidx.work.WorkerParameters;
+import androidx.work.testing.SynchronousExecutor;
+import androidx.work.testing.WorkManagerTestInitHelper;
+
+import com.usebutton.merchant.module.DurableDelivery;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WorkManagerDeliveryTest {
+
+    private Context context;
+    private MockWebServer server;
+    private WorkManagerDelivery delivery;
+
+    @Before
+    public void setUp() throws IOException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        server = new MockWebServer();
+        server.start();
+
+        Configuration configuration = new Configuration.Builder()
+                .setMinimumLoggingLevel(Log.DEBUG)
+                .setExecutor(new SynchronousExecutor())
+                .setWorkerFactory(new WorkerFactory() {
+                    @Override
+                    public ListenableWorker createWorker(@NonNull Context appContext,
+                            @NonNull String workerClassName,
+                            @NonNull WorkerParameters workerParameters) {
+                        return new DeliveryWorker(appContext, workerParameters,
+                                new MockWebServerSender(server));
+                    }
+                })
+                .build();
+        WorkManagerTestInitHelper.initializeTestWorkManager(context, configuration);
+
+        delivery = new WorkManagerDelivery(context);
+        deleteRecursively(delivery.getOrdersDir());
+        deleteRecursively(delivery.getEventsDir());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        deleteRecursively(delivery.getOrdersDir());
+        deleteRecursively(delivery.getEventsDir());
+    }
+
+    @Test
+    public void enqueue_order_waitForNetwork() throws Exception {
+        assertTrue(delivery.enqueue(DurableDelivery.Type.ORDER, "order-1",
+                orderRequest("order-1")));
+
+        WorkInfo workInfo = uniqueWork(WorkManagerDelivery.ORDER_WORK_PREFIX + "order-1");
+        assertEquals(WorkInfo.State.ENQUEUED, workInfo.getState());
+        assertEquals(0, server.getRequestCount());
+        assertEquals(1, delivery.getOrdersDir().listFiles().length);
+    }
+
+    @Test
+    public void enqueue_orderWithNetwork_deliverAndDeleteUpload() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200));
+        delivery.enqueue(DurableDelivery.Type.ORDER, "order-1", orderRequest("order-1"));
+
+        WorkInfo workInfo = uniqueWork(WorkManagerDelivery.ORDER_WORK_PREFIX + "order-1");
+        WorkManagerTestInitHelper.getTestDriver(context).setAllConstraintsMet(workInfo.getId());
+
+        assertEquals(WorkInfo.State.SUCCEEDED,
+                uniqueWork(WorkManagerDelivery.ORDER_WORK_PREFIX + "order-1").getState());
+        assertEquals("order-1", new JSONObject(server.takeRequest().getBody().readUtf8())
+                .getString("order_id"));
+        assertEquals(0, delivery.getOrdersDir().listFiles().length);
+    }
+
+    @Test
+    public void enqueue_sameOrderTwice_coalesce() throws Exception {
+        delivery.enqueue(DurableDelivery.Type.ORDER, "order-1", orderRequest("order-1"));
+        delivery.enqueue(DurableDelivery.Type.ORDER, "order-1", orderRequest("order-1"));
+
+        List<WorkInfo> workInfos = WorkManager.getInstance(context)
+                .getWorkInfosForUniqueWork(WorkManagerDelivery.ORDER_WORK_PREFIX + "order-1")
+                .get();
+        assertEquals(1, workInfos.size());
+        assertEquals(1, delivery.getOrdersDir().listFiles().length);
+    }
+
+    @Test
+    public void enqueue_eventBatches_deliverInSingleRun() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        delivery.enqueue(DurableDelivery.Type.EVENTS, "event-1", eventsRequest());
+        delivery.enqueue(DurableDelivery.Type.EVENTS, "event-2", eventsRequest());
+
+        List<WorkInfo> workInfos = WorkManager.getInstance(context)
+                .getWorkInfosForUniqueWork(WorkManagerDelivery.EVENTS_WORK).get();
+        assertEquals(1, workInfos.size());
+        WorkManagerTestInitHelper.getTestDriver(context)
+                .setAllConstraintsMet(workInfos.get(0).getId());
+
+        assertEquals(WorkInfo.State.SUCCEEDED,
+                uniqueWork(WorkManagerDelivery.EVENTS_WORK).getState());
+        assertEquals(2, server.getRequestCount());
+        assertEquals(0, delivery.getEventsDir().listFiles().length);
+    }
+
+    @Test
+    public void enqueue_serverError_retryLater() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        delivery.enqueue(DurableDelivery.Type.ORDER, "order-1", orderRequest("order-1"));
+
+        WorkInfo workInfo = uniqueWork(WorkManagerDelivery.ORDER_WORK_PREFIX + "order-1");
+        WorkManagerTestInitHelper.getTestDriver(context).setAllConstraintsMet(workInfo.getId());
+
+        workInfo = uniqueWork(WorkManagerDelivery.ORDER_WORK_PREFIX + "order-1");
+        assertEquals(WorkInfo.State.ENQUEUED, workInfo.getState());
+        assertEquals(1, workInfo.getRunAttemptCount());
+        assertEquals(1, delivery.getOrdersDir().listFiles().length);
+    }
+
+    private WorkInfo uniqueWork(String name) throws Exception {
+        List<WorkInfo> workInfos =
+                WorkManager.getInstance(context).getWorkInfosForUniqueWork(name).get();
+        assertEquals(1, workInfos.size());
+        return workInfos.get(0);
+    }
+
+    private static String orderRequest(String orderId) {
+        return "{\"application_id\":\"app-test\",\"path\":\"/v1/app/order\",\"headers\":{},"
+                + "\"body\":{\"order_id\":\"" + orderId + "\"}}";
+    }
+
+    private static String eventsRequest() {
+        return "{\"path\":\"/v1/app/events\",\"headers\":{},\"body\":{\"events\":[]}}";
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * ButtonWork.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant.work;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+
+import com.usebutton.merchant.ButtonMerchant;
+
+/**
+ * Entry point for WorkManager backed durable delivery of Button orders and events.
+ *
+ * Once installed, orders and event batches are persisted to disk and delivered by WorkManager
+ * when the device is online, even if the app process dies first. Failed uploads are retried
+ * with exponential backoff.
+ */
+public final class ButtonWork {
+
+    private ButtonWork() {
+
+    }
+
+    /**
+     * Hands subsequent orders and events to WorkManager. Call this alongside
+     * {@link ButtonMerchant#configure(Context, String)}, typically in
+     * {@code Application#onCreate()}.
+     *
+     * @param context {@code Context}
+     */
+    public static void install(@NonNull Context context) {
+        ButtonMerchant.setDurableDelivery(context,
+                WorkManagerDelivery.getInstance(context.getApplicationContext()));
+    }
+
+    /**
+     * Sends orders and events in-process again. Uploads already handed to WorkManager are still
+     * delivered.
+     *
+     * @param context {@code Context}
+     */
+    public static void uninstall(@NonNull Context context) {
+        ButtonMerchant.setDurableDelivery(context, null);
+    }
+}
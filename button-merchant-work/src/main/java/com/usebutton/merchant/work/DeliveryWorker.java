@@ -0,0 +1,207 @@
+/*
+ * DeliveryWorker.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant.work;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.usebutton.merchant.ButtonMerchant;
+import com.usebutton.merchant.exception.ButtonNetworkException;
+import com.usebutton.merchant.exception.HttpStatusException;
+import com.usebutton.merchant.exception.NetworkNotFoundException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Delivers uploads persisted by {@link WorkManagerDelivery}.
+ *
+ * The input path is either a single upload file, or a directory whose uploads are all delivered
+ * oldest first. Uploads are deleted once delivered, or once the Button API rejects them. Network
+ * failures, server errors and rate limiting are retried with the work's backoff, up to
+ * {@link #MAX_RUN_ATTEMPTS} runs.
+ */
+public final class DeliveryWorker extends Worker {
+
+    private static final String TAG = DeliveryWorker.class.getSimpleName();
+
+    static final String KEY_PATH = "path";
+
+    @VisibleForTesting
+    static final int MAX_RUN_ATTEMPTS = 10;
+
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Sends a serialized upload to the Button API.
+     */
+    interface Sender {
+        void send(String request) throws ButtonNetworkException;
+    }
+
+    private final Sender sender;
+
+    public DeliveryWorker(@NonNull final Context context, @NonNull WorkerParameters params) {
+        this(context, params, new Sender() {
+            @Override
+            public void send(String request) throws ButtonNetworkException {
+                ButtonMerchant.deliver(context, request);
+            }
+        });
+    }
+
+    @VisibleForTesting
+    DeliveryWorker(@NonNull Context context, @NonNull WorkerParameters params, Sender sender) {
+        super(context, params);
+        this.sender = sender;
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String path = getInputData().getString(KEY_PATH);
+        if (path == null) {
+            return Result.failure();
+        }
+
+        File target = new File(path);
+        if (!target.isDirectory()) {
+            return !target.exists() || deliver(target) ? Result.success() : Result.retry();
+        }
+
+        // Batches persisted while draining are picked up by this run as well
+        Set<String> attempted = new HashSet<>();
+        File[] files;
+        while ((files = listPending(target, attempted)).length > 0) {
+            for (File file : files) {
+                attempted.add(file.getName());
+                if (!deliver(file)) {
+                    return Result.retry();
+                }
+            }
+        }
+
+        return Result.success();
+    }
+
+    /**
+     * @return false if the upload should be retried later
+     */
+    private boolean deliver(File file) {
+        String request;
+        try {
+            request = read(file);
+        } catch (IOException e) {
+            Log.e(TAG, "Dropping unreadable upload " + file.getName(), e);
+            delete(file);
+            return true;
+        }
+
+        try {
+            sender.send(request);
+        } catch (HttpStatusException e) {
+            if (e.wasServerError() || e.wasRateLimited()) {
+                return giveUp(file);
+            }
+            Log.e(TAG, "Upload rejected by the Button API, dropping it", e);
+        } catch (NetworkNotFoundException e) {
+            return giveUp(file);
+        } catch (ButtonNetworkException e) {
+            // The request was sent, but its response could not be read
+            Log.e(TAG, "Error reading response", e);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Dropping malformed upload " + file.getName(), e);
+        }
+
+        delete(file);
+        return true;
+    }
+
+    /**
+     * @return false so the upload is retried, unless this was the last attempt and it was
+     * dropped
+     */
+    private boolean giveUp(File file) {
+        if (getRunAttemptCount() + 1 < MAX_RUN_ATTEMPTS) {
+            return false;
+        }
+
+        Log.e(TAG, "Giving up on upload " + file.getName());
+        delete(file);
+        return true;
+    }
+
+    private static File[] listPending(File dir, Set<String> attempted) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(WorkManagerDelivery.PENDING_SUFFIX) && !attempted.contains(name)) {
+                files[count++] = file;
+            }
+        }
+
+        File[] pending = Arrays.copyOf(files, count);
+        Arrays.sort(pending);
+        return pending;
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString(ENCODING);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            Log.e(TAG, "Unable to delete upload " + file.getName());
+        }
+    }
+}
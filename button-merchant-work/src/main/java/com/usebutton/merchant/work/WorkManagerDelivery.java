@@ -0,0 +1,179 @@
+/*
+ * WorkManagerDelivery.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant.work;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.VisibleForTesting;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+import com.usebutton.merchant.module.DurableDelivery;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DurableDelivery} that writes each upload to a file and schedules a
+ * {@link DeliveryWorker} to send it.
+ *
+ * Each order is delivered by its own unique work, named after the order id, so reporting an
+ * order that is still pending does not schedule it twice. Event batches share a single unique
+ * work that drains every pending batch, so a burst of events is sent in one run.
+ */
+final class WorkManagerDelivery implements DurableDelivery {
+
+    private static final String TAG = WorkManagerDelivery.class.getSimpleName();
+
+    @VisibleForTesting
+    static final String ORDER_WORK_PREFIX = "button-merchant-order-";
+    @VisibleForTesting
+    static final String EVENTS_WORK = "button-merchant-events";
+
+    @VisibleForTesting
+    static final long INITIAL_BACKOFF_SECONDS = 30;
+
+    static final String PENDING_SUFFIX = ".tmp";
+
+    private static final String ROOT_DIR = "button-merchant-work";
+    private static final String ORDERS_DIR = "orders";
+    private static final String EVENTS_DIR = "events";
+    private static final String ENCODING = "UTF-8";
+
+    private static WorkManagerDelivery workManagerDelivery;
+
+    private final Context context;
+    private final File ordersDir;
+    private final File eventsDir;
+
+    static synchronized WorkManagerDelivery getInstance(Context context) {
+        if (workManagerDelivery == null) {
+            workManagerDelivery = new WorkManagerDelivery(context);
+        }
+
+        return workManagerDelivery;
+    }
+
+    @VisibleForTesting
+    WorkManagerDelivery(Context context) {
+        this.context = context;
+        File rootDir = new File(context.getFilesDir(), ROOT_DIR);
+        this.ordersDir = new File(rootDir, ORDERS_DIR);
+        this.eventsDir = new File(rootDir, EVENTS_DIR);
+    }
+
+    @Override
+    public boolean enqueue(Type type, String key, String request) {
+        try {
+            switch (type) {
+                case ORDER:
+                    File orderFile = new File(ordersDir, URLEncoder.encode(key, ENCODING));
+                    write(orderFile, request);
+                    WorkManager.getInstance(context).enqueueUniqueWork(ORDER_WORK_PREFIX + key,
+                            ExistingWorkPolicy.KEEP, newWorkRequest(orderFile));
+                    return true;
+                case EVENTS:
+                    // Prefixed with the time so batches are drained in the order reported
+                    File eventsFile = new File(eventsDir, System.currentTimeMillis() + "-"
+                            + URLEncoder.encode(key, ENCODING));
+                    write(eventsFile, request);
+                    WorkManager.getInstance(context).enqueueUniqueWork(EVENTS_WORK,
+                            ExistingWorkPolicy.KEEP, newWorkRequest(eventsDir));
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error persisting upload", e);
+            return false;
+        } catch (IllegalStateException e) {
+            // WorkManager was not initialized, e.g. its initializer was removed by the app
+            Log.e(TAG, "Error scheduling upload", e);
+            return false;
+        }
+    }
+
+    @VisibleForTesting
+    File getOrdersDir() {
+        return ordersDir;
+    }
+
+    @VisibleForTesting
+    File getEventsDir() {
+        return eventsDir;
+    }
+
+    private static OneTimeWorkRequest newWorkRequest(File target) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        Data inputData = new Data.Builder()
+                .putString(DeliveryWorker.KEY_PATH, target.getAbsolutePath())
+                .build();
+
+        return new OneTimeWorkRequest.Builder(DeliveryWorker.class)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, INITIAL_BACKOFF_SECONDS,
+                        TimeUnit.SECONDS)
+                .setInputData(inputData)
+                .build();
+    }
+
+    /**
+     * Writes the file atomically, so a worker draining the directory never reads a partial
+     * upload.
+     */
+    private static void write(File file, String request) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+
+        File pending = new File(file.getPath() + PENDING_SUFFIX);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(pending), ENCODING);
+        try {
+            writer.write(request);
+        } finally {
+            writer.close();
+        }
+
+        if (!pending.renameTo(file)) {
+            pending.delete();
+            throw new IOException("Unable to write " + file);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * ActivityBatcher.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups user activities reported within a short window so they can be uploaded in a single
+ * request.
+ *
+ * A batch is handed to the {@link Sink} when the window elapses, when it reaches the maximum
+ * size, or when the attribution token changes (every activity in a batch shares one
+ * {@code btn_ref}). The window is stretched by the {@link UploadPolicy} while device conditions
+ * call for sending less often.
+ */
+final class ActivityBatcher {
+
+    @VisibleForTesting
+    static final long DEFAULT_WINDOW_MS = 500;
+    @VisibleForTesting
+    static final int DEFAULT_MAX_BATCH_SIZE = 25;
+
+    /**
+     * Receives completed batches.
+     */
+    interface Sink {
+        void onBatch(List<ActivityEvent> activities, @Nullable String sourceToken);
+    }
+
+    private final ScheduledExecutorService executorService;
+    private final Sink sink;
+    private final UploadPolicy uploadPolicy;
+    private final long windowMs;
+    private final int maxBatchSize;
+
+    private List<ActivityEvent> pending = new ArrayList<>();
+    @Nullable
+    private String pendingSourceToken;
+    @Nullable
+    private Future<?> scheduledFlush;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    ActivityBatcher(ScheduledExecutorService executorService, Sink sink,
+            UploadPolicy uploadPolicy) {
+        this(executorService, sink, uploadPolicy, DEFAULT_WINDOW_MS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    @VisibleForTesting
+    ActivityBatcher(ScheduledExecutorService executorService, Sink sink,
+            UploadPolicy uploadPolicy, long windowMs, int maxBatchSize) {
+        this.executorService = executorService;
+        this.sink = sink;
+        this.uploadPolicy = uploadPolicy;
+        this.windowMs = windowMs;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    synchronized void add(ActivityEvent activity, @Nullable String sourceToken) {
+        boolean sameToken = sourceToken == null
+                ? pendingSourceToken == null : sourceToken.equals(pendingSourceToken);
+        if (!pending.isEmpty() && !sameToken) {
+            flush();
+        }
+
+        pending.add(activity);
+        pendingSourceToken = sourceToken;
+
+        if (pending.size() >= maxBatchSize) {
+            flush();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = executorService.schedule(flushRunnable,
+                    uploadPolicy.getBatchingWindow(windowMs), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Hands any pending activities to the sink immediately.
+     */
+    synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<ActivityEvent> batch = Collections.unmodifiableList(pending);
+        String sourceToken = pendingSourceToken;
+        pending = new ArrayList<>();
+        pendingSourceToken = null;
+        sink.onBatch(batch, sourceToken);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * ActivityEvent.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Internal class representing a single user activity awaiting upload.
+ */
+final class ActivityEvent {
+
+    private final String name;
+    private final List<ButtonProductCompatible> products;
+    @Nullable
+    private final CartTracker.Delta cartDelta;
+    private final long timestamp;
+
+    ActivityEvent(String name, List<ButtonProductCompatible> products, long timestamp) {
+        this.name = name;
+        // The caller may change its list while the event waits for its batch to be sent
+        this.products = new ArrayList<>(products);
+        this.cartDelta = null;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Creates a cart activity that carries only the changes since the last reported cart.
+     */
+    ActivityEvent(String name, CartTracker.Delta cartDelta, long timestamp) {
+        this.name = name;
+        this.products = Collections.emptyList();
+        this.cartDelta = cartDelta;
+        this.timestamp = timestamp;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    List<ButtonProductCompatible> getProducts() {
+        return products;
+    }
+
+    @Nullable
+    CartTracker.Delta getCartDelta() {
+        return cartDelta;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -29,29 +29,39 @@ import androidx.annotation.Nullable;
 
 import com.usebutton.merchant.module.Features;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Asynchronous task used to report user activity to Button.
+ * Asynchronous task used to report a batch of user activity to Button.
  */
 public class ActivityReportingTask extends Task<Void> {
 
     private final ButtonApi buttonApi;
     private final DeviceManager deviceManager;
     private final Features features;
-    private final String activityName;
-    private final List<ButtonProductCompatible> products;
+    private final List<ActivityEvent> activities;
     private final String sourceToken;
 
+    /**
+     * Creates a task that reports a single activity that happened now.
+     */
     public ActivityReportingTask(ButtonApi buttonApi, DeviceManager deviceManager,
             Features features, String activityName, List<ButtonProductCompatible> products,
             @Nullable String sourceToken, @Nullable Listener<Void> listener) {
+        this(buttonApi, deviceManager, features, Collections.singletonList(
+                new ActivityEvent(activityName, products, System.currentTimeMillis())),
+                sourceToken, listener);
+    }
+
+    ActivityReportingTask(ButtonApi buttonApi, DeviceManager deviceManager,
+            Features features, List<ActivityEvent> activities, @Nullable String sourceToken,
+            @Nullable Listener<Void> listener) {
         super(listener);
         this.buttonApi = buttonApi;
         this.deviceManager = deviceManager;
         this.features = features;
-        this.activityName = activityName;
-        this.products = products;
+        this.activities = activities;
         this.sourceToken = sourceToken;
     }
 
@@ -59,6 +69,6 @@ public class ActivityReportingTask extends Task<Void> {
     @Override
     Void execute() throws Exception {
         String advertisingId = features.getIncludesIfa() ? deviceManager.getAdvertisingId() : null;
-        return buttonApi.postActivity(activityName, products, sourceToken, advertisingId);
+        return buttonApi.postActivities(activities, sourceToken, advertisingId);
     }
 }
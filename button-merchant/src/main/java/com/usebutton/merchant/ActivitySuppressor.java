@@ -0,0 +1,189 @@
+/*
+ * ActivitySuppressor.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import android.util.Log;
+
+import com.usebutton.merchant.module.Features;
+
+import java.util.Arrays;
+
+/**
+ * Drops repeated (activity name, product id) pairs reported within the configured
+ * {@link Features#getActivitySuppressionWindow() suppression window}.
+ *
+ * Seen keys are kept as 64-bit hashes in two generations of open-addressed hash sets, each
+ * covering one window-sized time bucket. When the clock moves into a new bucket, the older
+ * generation is cleared and reused, so memory stays proportional to the number of distinct
+ * products reported in the last two windows. A repeat is therefore dropped for at least one and
+ * at most two windows after the activity was first reported.
+ */
+final class ActivitySuppressor {
+
+    private static final String TAG = ActivitySuppressor.class.getSimpleName();
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Features features;
+    private final TimeProvider timeProvider;
+    private final StripedCounter suppressedActivities;
+
+    private KeySet current = new KeySet();
+    private KeySet previous = new KeySet();
+    private long currentBucket;
+    private long windowMs;
+
+    ActivitySuppressor(Features features, TimeProvider timeProvider) {
+        this(features, timeProvider, MetricsRegistry.getInstance());
+    }
+
+    @VisibleForTesting
+    ActivitySuppressor(Features features, TimeProvider timeProvider, MetricsRegistry metrics) {
+        this.features = features;
+        this.timeProvider = timeProvider;
+        this.suppressedActivities = metrics.counter(MetricsSnapshot.COUNTER_SUPPRESSED_ACTIVITIES);
+    }
+
+    /**
+     * Records the activity and checks whether it repeats one reported within the window.
+     *
+     * @return true if the activity should be dropped
+     */
+    synchronized boolean shouldSuppress(String activityName, @Nullable String productId) {
+        long window = features.getActivitySuppressionWindow();
+        if (window <= 0 || productId == null) {
+            return false;
+        }
+
+        long bucket = timeProvider.getTimeInMs() / window;
+        if (window != windowMs || bucket > currentBucket + 1 || bucket < currentBucket) {
+            // Config changed, clock jumped or nothing seen for two windows
+            windowMs = window;
+            currentBucket = bucket;
+            current.clear();
+            previous.clear();
+        } else if (bucket == currentBucket + 1) {
+            KeySet expired = previous;
+            previous = current;
+            current = expired;
+            current.clear();
+            currentBucket = bucket;
+        }
+
+        long key = key(activityName, productId);
+        if (current.contains(key) || previous.contains(key)) {
+            suppressedActivities.increment();
+            Log.d(TAG, String.format("Suppressed repeated %s for product [%s]", activityName,
+                    productId));
+            return true;
+        }
+
+        current.add(key);
+        return false;
+    }
+
+    private static long key(String activityName, String productId) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < activityName.length(); i++) {
+            hash = (hash ^ activityName.charAt(i)) * FNV_PRIME;
+        }
+        hash = (hash ^ activityName.length()) * FNV_PRIME;
+        for (int i = 0; i < productId.length(); i++) {
+            hash = (hash ^ productId.charAt(i)) * FNV_PRIME;
+        }
+
+        // Zero marks an empty slot
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Open-addressed set of non-zero long keys with linear probing.
+     */
+    @VisibleForTesting
+    static final class KeySet {
+
+        private static final int INITIAL_CAPACITY = 32;
+
+        private long[] slots = new long[INITIAL_CAPACITY];
+        private int size;
+
+        boolean contains(long key) {
+            int mask = slots.length - 1;
+            for (int i = index(key, mask); slots[i] != 0; i = (i + 1) & mask) {
+                if (slots[i] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(long key) {
+            if ((size + 1) * 2 > slots.length) {
+                grow();
+            }
+
+            int mask = slots.length - 1;
+            int i = index(key, mask);
+            while (slots[i] != 0) {
+                if (slots[i] == key) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            slots[i] = key;
+            size++;
+        }
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(slots, 0);
+                size = 0;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void grow() {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            size = 0;
+            for (long key : old) {
+                if (key != 0) {
+                    add(key);
+                }
+            }
+        }
+
+        private static int index(long key, int mask) {
+            return (int) (key ^ (key >>> 32)) & mask;
+        }
+    }
+}
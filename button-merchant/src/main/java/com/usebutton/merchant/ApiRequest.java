@@ -25,8 +25,11 @@
 
 package com.usebutton.merchant;
 
+import androidx.annotation.Nullable;
+
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -52,16 +55,36 @@ class ApiRequest {
         }
     }
 
+    /**
+     * Request body that is written straight to the connection instead of being built as a
+     * {@link JSONObject} up front.
+     */
+    interface StreamingBody {
+
+        /**
+         * Writes the members of the root object. The enclosing object is opened and closed by
+         * the caller, which may append members of its own and chooses the wire format.
+         */
+        void writeMembers(BodyWriter writer) throws IOException;
+    }
+
     private final RequestMethod requestMethod;
     private final String path;
     private final Map<String, String> headers;
     private final JSONObject body;
+    @Nullable
+    private final StreamingBody streamingBody;
+    private final boolean cborAllowed;
+    private final boolean chunked;
 
     private ApiRequest(Builder builder) {
         this.requestMethod = builder.requestMethod;
         this.path = builder.path;
         this.headers = builder.headers;
         this.body = builder.body;
+        this.streamingBody = builder.streamingBody;
+        this.cborAllowed = builder.cborAllowed;
+        this.chunked = builder.chunked;
     }
 
     RequestMethod getRequestMethod() {
@@ -80,6 +103,39 @@ class ApiRequest {
         return body;
     }
 
+    @Nullable
+    StreamingBody getStreamingBody() {
+        return streamingBody;
+    }
+
+    /**
+     * @return true if the endpoint accepts a CBOR encoded streaming body
+     */
+    boolean isCborAllowed() {
+        return cborAllowed;
+    }
+
+    /**
+     * @return true if the streaming body may be large enough to send in chunks
+     */
+    boolean isChunked() {
+        return chunked;
+    }
+
+    /**
+     * @return a builder with this request's method, path, headers and body, e.g. for an
+     * {@link Interceptor} that changes the request
+     */
+    Builder newBuilder() {
+        Builder builder = new Builder(requestMethod, path);
+        builder.headers = new HashMap<>(headers);
+        builder.body = body;
+        builder.streamingBody = streamingBody;
+        builder.cborAllowed = cborAllowed;
+        builder.chunked = chunked;
+        return builder;
+    }
+
     /**
      * Constructor
      */
@@ -89,6 +145,10 @@ class ApiRequest {
         private final String path;
         private Map<String, String> headers = new HashMap<>();
         private JSONObject body = new JSONObject();
+        @Nullable
+        private StreamingBody streamingBody;
+        private boolean cborAllowed;
+        private boolean chunked;
 
         Builder(RequestMethod requestMethod, String path) {
             this.requestMethod = requestMethod;
@@ -105,6 +165,35 @@ class ApiRequest {
             return this;
         }
 
+        /**
+         * Streams the body when the request is executed; takes precedence over
+         * {@link #setBody(JSONObject)}.
+         */
+        Builder setBody(StreamingBody streamingBody) {
+            this.streamingBody = streamingBody;
+            return this;
+        }
+
+        /**
+         * Allows the streaming body to be sent as CBOR when
+         * {@link com.usebutton.merchant.module.Features#getCborEncoding() enabled}.
+         */
+        Builder setCborAllowed(boolean cborAllowed) {
+            this.cborAllowed = cborAllowed;
+            return this;
+        }
+
+        /**
+         * Sends the streaming body with chunked transfer encoding as it is written, rather than
+         * buffering it to send with a {@code Content-Length}. Only worthwhile for large bodies,
+         * since a chunked request is not retried on a stale pooled connection and some proxies
+         * reject it.
+         */
+        Builder setChunked(boolean chunked) {
+            this.chunked = chunked;
+            return this;
+        }
+
         ApiRequest build() {
             return new ApiRequest(this);
         }
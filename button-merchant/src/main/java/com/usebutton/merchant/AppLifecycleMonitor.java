@@ -0,0 +1,110 @@
+/*
+ * AppLifecycleMonitor.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks when the app moves between the foreground and the background from its activity
+ * lifecycle.
+ *
+ * Going to the background flushes batched and deferred uploads while the process is still
+ * likely to be alive, and coming to the foreground warms a connection for upcoming requests.
+ * Activities recreated for a configuration change do not count as a transition.
+ */
+final class AppLifecycleMonitor implements Application.ActivityLifecycleCallbacks {
+
+    /**
+     * Longest time a background flush keeps sending before the rest is deferred again.
+     */
+    @VisibleForTesting
+    static final long BACKGROUND_FLUSH_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+    private final ButtonRepository buttonRepository;
+    private int startedActivities;
+    private boolean changingConfigurations;
+
+    AppLifecycleMonitor(ButtonRepository buttonRepository) {
+        this.buttonRepository = buttonRepository;
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        if (startedActivities++ > 0) {
+            return;
+        }
+
+        if (changingConfigurations) {
+            changingConfigurations = false;
+            return;
+        }
+
+        buttonRepository.warmUp();
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        if (startedActivities == 0 || --startedActivities > 0) {
+            return;
+        }
+
+        changingConfigurations = activity.isChangingConfigurations();
+        if (!changingConfigurations) {
+            buttonRepository.flush(BACKGROUND_FLUSH_TIMEOUT);
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        // ignored
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+        // ignored
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+        // ignored
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        // ignored
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+        // ignored
+    }
+}
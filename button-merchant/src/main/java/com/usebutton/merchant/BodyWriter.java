@@ -0,0 +1,89 @@
+/*
+ * BodyWriter.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Forward-only encoder for request bodies made of objects, arrays and scalar values.
+ *
+ * Implementations choose the wire format. Object members with a {@code null} value are
+ * omitted; {@code null} array elements are written as the format's null.
+ *
+ * @see JsonStreamWriter
+ * @see CborStreamWriter
+ */
+interface BodyWriter extends Closeable, Flushable {
+
+    BodyWriter beginObject() throws IOException;
+
+    BodyWriter endObject() throws IOException;
+
+    BodyWriter beginArray() throws IOException;
+
+    BodyWriter endArray() throws IOException;
+
+    /**
+     * Sets the name of the next object member. The name is only written once a non-null value
+     * follows it.
+     */
+    BodyWriter name(String name);
+
+    BodyWriter value(@Nullable String value) throws IOException;
+
+    BodyWriter value(long value) throws IOException;
+
+    BodyWriter value(double value) throws IOException;
+
+    BodyWriter value(@Nullable Number value) throws IOException;
+
+    BodyWriter value(boolean value) throws IOException;
+
+    /**
+     * Writes null in an array, or drops the pending member name in an object.
+     */
+    BodyWriter nullValue() throws IOException;
+
+    /**
+     * @return true if already encoded JSON can be copied into the output with
+     * {@link #rawValue(String)}. Callers holding cached JSON skip the cache entirely when this is
+     * false and encode the value with this writer instead.
+     */
+    boolean acceptsRawJson();
+
+    /**
+     * Writes an already encoded JSON value verbatim.
+     *
+     * @param json a complete, valid JSON value
+     * @throws UnsupportedOperationException if {@link #acceptsRawJson()} is false
+     */
+    BodyWriter rawValue(String json) throws IOException;
+}
@@ -30,6 +30,7 @@ import androidx.annotation.WorkerThread;
 
 import com.usebutton.merchant.exception.ButtonNetworkException;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -49,6 +50,16 @@ interface ButtonApi {
             Map<String, String> signalsMap)
             throws ButtonNetworkException;
 
+    /**
+     * Looks up the pending link, sending a second request if no response has arrived after
+     * {@code hedgeDelayMs}.
+     */
+    @Nullable
+    @WorkerThread
+    PostInstallLink getPendingLink(String applicationId, @Nullable String advertisingId,
+            Map<String, String> signalsMap, long hedgeDelayMs)
+            throws ButtonNetworkException;
+
     @Nullable
     @WorkerThread
     Void postOrder(Order order, String applicationId, String sourceToken,
@@ -56,12 +67,50 @@ interface ButtonApi {
 
     @Nullable
     @WorkerThread
-    Void postActivity(String activityName, List<ButtonProductCompatible> products,
-            @Nullable String sourceToken, @Nullable String advertisingId)
-            throws ButtonNetworkException;
+    Void postOrders(List<Order> orders, String applicationId, @Nullable String sourceToken,
+            @Nullable String advertisingId) throws ButtonNetworkException;
+
+    @Nullable
+    @WorkerThread
+    Void postActivities(List<ActivityEvent> activities, @Nullable String sourceToken,
+            @Nullable String advertisingId) throws ButtonNetworkException;
 
     @Nullable
     @WorkerThread
     Void postEvents(List<Event> events, @Nullable String advertisingId)
             throws ButtonNetworkException;
+
+    /**
+     * @return the {@link #postOrder} request, serialized for a
+     * {@link com.usebutton.merchant.module.DurableDelivery}
+     */
+    String serializeOrder(Order order, String applicationId, @Nullable String sourceToken,
+            @Nullable String advertisingId) throws IOException;
+
+    /**
+     * @return the {@link #postEvents} request, serialized for a
+     * {@link com.usebutton.merchant.module.DurableDelivery}
+     */
+    String serializeEvents(List<Event> events, @Nullable String advertisingId)
+            throws IOException;
+
+    /**
+     * Sends a request serialized by {@link #serializeOrder} or {@link #serializeEvents}.
+     *
+     * @throws IllegalArgumentException if the request is malformed
+     */
+    @WorkerThread
+    void deliver(String request) throws ButtonNetworkException;
+
+    /**
+     * @return true if requests are failing fast because the Button API recently could not be
+     * reached
+     */
+    boolean isCircuitOpen();
+
+    /**
+     * Opens a connection to the Button API ahead of the next request.
+     */
+    @WorkerThread
+    void warmUp();
 }
@@ -31,11 +31,12 @@ import androidx.annotation.WorkerThread;
 import android.util.Log;
 
 import com.usebutton.merchant.exception.ButtonNetworkException;
+import com.usebutton.merchant.module.Features;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -46,9 +47,18 @@ import java.util.Map;
 final class ButtonApiImpl implements ButtonApi {
 
     private static final String TAG = ButtonApiImpl.class.getSimpleName();
+    private static final String CURRENT_TIME = "current_time";
+
+    /**
+     * Orders with more line items than this are sent in chunks rather than buffered in memory.
+     */
+    @VisibleForTesting
+    static final int CHUNKED_LINE_ITEM_THRESHOLD = 50;
     private static ButtonApi buttonApi;
 
     private final ConnectionManager connectionManager;
+    private final Features features;
+    private final ProductFragmentCache productFragmentCache = new ProductFragmentCache();
 
     static ButtonApi getInstance(ConnectionManager connectionManager) {
         if (buttonApi == null) {
@@ -60,7 +70,18 @@ final class ButtonApiImpl implements ButtonApi {
 
     @VisibleForTesting
     ButtonApiImpl(ConnectionManager connectionManager) {
+        this(connectionManager, FeaturesImpl.getInstance());
+    }
+
+    @VisibleForTesting
+    ButtonApiImpl(ConnectionManager connectionManager, Features features) {
         this.connectionManager = connectionManager;
+        this.features = features;
+    }
+
+    @VisibleForTesting
+    ProductFragmentCache getProductFragmentCache() {
+        return productFragmentCache;
     }
 
     @Override
@@ -80,21 +101,25 @@ final class ButtonApiImpl implements ButtonApi {
     public PostInstallLink getPendingLink(String applicationId, @Nullable String advertisingId,
             Map<String, String> signalsMap) throws
             ButtonNetworkException {
+        return getPendingLink(applicationId, advertisingId, signalsMap, 0);
+    }
 
-        try {
-            // Create request body
-            JSONObject requestBody = new JSONObject();
-            requestBody.put("application_id", applicationId);
-            requestBody.put("ifa", advertisingId);
-            requestBody.put("signals", new JSONObject(signalsMap));
+    @Nullable
+    @WorkerThread
+    @Override
+    public PostInstallLink getPendingLink(String applicationId, @Nullable String advertisingId,
+            Map<String, String> signalsMap, long hedgeDelayMs) throws ButtonNetworkException {
 
-            ApiRequest apiRequest = new ApiRequest.Builder(ApiRequest.RequestMethod.POST,
-                    "/v1/app/deferred-deeplink")
-                    .setBody(requestBody)
-                    .build();
+        try {
+            ApiRequest apiRequest =
+                    newPendingLinkRequest(applicationId, advertisingId, signalsMap);
 
             // Execute POST request and parse response
-            NetworkResponse response = connectionManager.executeRequest(apiRequest);
+            NetworkResponse response = hedgeDelayMs > 0
+                    ? connectionManager.executeHedgedRequest(apiRequest,
+                            newPendingLinkRequest(applicationId, advertisingId, signalsMap),
+                            hedgeDelayMs)
+                    : connectionManager.executeRequest(apiRequest);
             JSONObject responseBody = response.getBody().optJSONObject("object");
             if (responseBody != null) {
                 boolean match = responseBody.getBoolean("match");
@@ -121,193 +146,274 @@ final class ButtonApiImpl implements ButtonApi {
 
     @Nullable
     @Override
-    public Void postOrder(Order order, String applicationId, String sourceToken,
+    public Void postOrder(Order order, String applicationId, @Nullable String sourceToken,
             @Nullable String advertisingId) throws ButtonNetworkException {
 
-        try {
-            // Create request body
-            JSONObject requestBody = new JSONObject();
-            requestBody.put("currency", order.getCurrencyCode());
-            requestBody.put("btn_ref", sourceToken);
-            requestBody.put("order_id", order.getId());
-            requestBody.put("purchase_date", ButtonUtil.formatDate(order.getPurchaseDate()));
-            requestBody.put("customer_order_id", order.getCustomerOrderId());
-            requestBody.put("advertising_id", advertisingId);
-
-            JSONArray lineItemsJson = new JSONArray();
-            for (int i = 0; i < order.getLineItems().size(); i++) {
-                Order.LineItem lineItem = order.getLineItems().get(i);
-                JSONObject lineItemJson = new JSONObject();
-
-                List<String> lineItemCategory = lineItem.getCategory();
-                if (lineItemCategory != null) {
-                    JSONArray categoryJson = new JSONArray();
-                    for (String category : lineItemCategory) {
-                        categoryJson.put(category);
-                    }
+        connectionManager.executeRequest(
+                newOrderRequest(order, applicationId, sourceToken, advertisingId));
 
-                    lineItemJson.put("category", categoryJson);
-                }
+        return null;
+    }
 
-                lineItemJson.put("identifier", lineItem.getId());
-                lineItemJson.put("quantity", lineItem.getQuantity());
-                lineItemJson.put("total", lineItem.getTotal());
+    @Nullable
+    @Override
+    public Void postOrders(final List<Order> orders, String applicationId,
+            @Nullable final String sourceToken, @Nullable final String advertisingId)
+            throws ButtonNetworkException {
 
-                Map<String, String> lineItemAttributes = lineItem.getAttributes();
-                if (lineItemAttributes != null) {
-                    JSONObject attributesJson = new JSONObject();
-                    for (Map.Entry<String, String> entry : lineItemAttributes.entrySet()) {
-                        attributesJson.put(entry.getKey(), entry.getValue());
+        applicationId = ButtonUtil.base64Encode(applicationId + ":");
+        ApiRequest apiRequest = new ApiRequest.Builder(ApiRequest.RequestMethod.POST,
+                "/v1/app/orders")
+                .addHeader("Authorization", String.format("Basic %s", applicationId))
+                .setChunked(true)
+                .setBody(new ApiRequest.StreamingBody() {
+                    @Override
+                    public void writeMembers(BodyWriter writer) throws IOException {
+                        writer.name("btn_ref").value(sourceToken);
+                        writer.name("advertising_id").value(advertisingId);
+                        writer.name("orders").beginArray();
+                        for (int i = 0; i < orders.size(); i++) {
+                            writer.beginObject();
+                            ModelSerializer.writeOrderMembers(writer, orders.get(i));
+                            writer.endObject();
+                        }
+                        writer.endArray();
                     }
+                })
+                .build();
+        connectionManager.executeRequest(apiRequest);
 
-                    lineItemJson.put("attributes", attributesJson);
-                }
+        return null;
+    }
 
-                lineItemJson.put("upc", lineItem.getUpc());
-                lineItemJson.put("description", lineItem.getDescription());
-                lineItemJson.put("sku", lineItem.getSku());
+    @Nullable
+    @Override
+    public Void postActivities(final List<ActivityEvent> activities,
+            @Nullable final String sourceToken, @Nullable final String advertisingId)
+            throws ButtonNetworkException {
 
-                lineItemsJson.put(i, lineItemJson);
-            }
-            if (lineItemsJson.length() > 0) {
-                requestBody.put("line_items", lineItemsJson);
+        if (!features.getBatchedActivities()) {
+            for (int i = 0; i < activities.size(); i++) {
+                connectionManager.executeRequest(
+                        newActivityRequest(activities.get(i), sourceToken, advertisingId));
             }
+            return null;
+        }
 
-            Order.Customer customer = order.getCustomer();
-            if (customer != null) {
-                JSONObject customerJson = new JSONObject();
-                customerJson.put("id", customer.getId());
+        ApiRequest apiRequest = new ApiRequest.Builder(ApiRequest.RequestMethod.POST,
+                "/v1/app/activity")
+                .setCborAllowed(true)
+                .setBody(new ApiRequest.StreamingBody() {
+                    @Override
+                    public void writeMembers(BodyWriter writer) throws IOException {
+                        writer.name("ifa").value(advertisingId);
+                        writer.name("btn_ref").value(sourceToken);
+
+                        // Each distinct product is sent once and referenced by index
+                        ProductTable productTable = new ProductTable(productFragmentCache,
+                                writer);
+                        writer.name("activities").beginArray();
+                        for (int i = 0; i < activities.size(); i++) {
+                            writeActivity(writer, activities.get(i), productTable);
+                        }
+                        writer.endArray();
 
-                String email = customer.getEmail();
-                if (email != null) {
-                    if (ButtonUtil.isValidEmail(email)) {
-                        email = ButtonUtil.sha256Encode(email.toLowerCase());
+                        if (productTable.size() > 0) {
+                            writer.name("products");
+                            productTable.writeTo(writer);
+                        }
                     }
-                    customerJson.put("email_sha256", email);
-                }
+                })
+                .build();
+        connectionManager.executeRequest(apiRequest);
 
-                if (customer.isNew() != null) {
-                    customerJson.put("is_new", customer.isNew());
-                }
+        return null;
+    }
 
-                requestBody.put("customer", customerJson);
-            }
+    @Nullable
+    @Override
+    public Void postEvents(List<Event> events, @Nullable String advertisingId)
+            throws ButtonNetworkException {
+
+        connectionManager.executeRequest(newEventsRequest(events, advertisingId));
+
+        return null;
+    }
+
+    @Override
+    public String serializeOrder(Order order, String applicationId, @Nullable String sourceToken,
+            @Nullable String advertisingId) throws IOException {
+        return DurableRequests.write(
+                newOrderRequest(order, applicationId, sourceToken, advertisingId),
+                applicationId);
+    }
 
-            applicationId = ButtonUtil.base64Encode(applicationId + ":");
-            ApiRequest apiRequest = new ApiRequest.Builder(ApiRequest.RequestMethod.POST,
-                    "/v1/app/order")
-                    .addHeader("Authorization", String.format("Basic %s", applicationId))
-                    .setBody(requestBody)
-                    .build();
+    @Override
+    public String serializeEvents(List<Event> events, @Nullable String advertisingId)
+            throws IOException {
+        return DurableRequests.write(newEventsRequest(events, advertisingId),
+                getApplicationId());
+    }
 
-            connectionManager.executeRequest(apiRequest);
+    @WorkerThread
+    @Override
+    public void deliver(String request) throws ButtonNetworkException {
+        JSONObject requestJson;
+        ApiRequest apiRequest;
+        try {
+            requestJson = new JSONObject(request);
+            apiRequest = DurableRequests.read(requestJson);
+
+            // The server corrects for clock skew against the device time at delivery, not at
+            // hand-off, which may have been long before
+            JSONObject body = apiRequest.getBody();
+            if (body.has(CURRENT_TIME)) {
+                body.put(CURRENT_TIME, ButtonUtil.formatDate(new Date()));
+            }
         } catch (JSONException e) {
-            Log.e(TAG, "Error creating request body", e);
-            throw new ButtonNetworkException(e);
+            throw new IllegalArgumentException("Malformed durable request", e);
         }
 
-        return null;
+        // Delivery may run in a process where the library was not configured yet
+        String applicationId = DurableRequests.readApplicationId(requestJson);
+        if (getApplicationId() == null && applicationId != null) {
+            setApplicationId(applicationId);
+        }
+
+        connectionManager.executeRequest(apiRequest);
     }
 
-    @Nullable
+    @WorkerThread
     @Override
-    public Void postActivity(String activityName, List<ButtonProductCompatible> products,
-            @Nullable String sourceToken, @Nullable String advertisingId)
-            throws ButtonNetworkException {
+    public void warmUp() {
+        connectionManager.warmUp();
+    }
 
-        try {
-            JSONObject requestBody = new JSONObject();
-            JSONObject activityBody = new JSONObject();
-            requestBody.put("ifa", advertisingId);
-            requestBody.put("btn_ref", sourceToken);
-            activityBody.put("name", activityName);
-
-            if (!products.isEmpty()) {
-                JSONArray productsArray = new JSONArray();
-                for (int i = 0; i < products.size(); i++) {
-                    ButtonProductCompatible product = products.get(i);
-                    List<String> categories = product.getCategories();
-                    Map<String, String> attributes = product.getAttributes();
-                    JSONObject productJson = new JSONObject();
-
-                    // Convert categories list to JSON array
-                    JSONArray categoriesJson = new JSONArray();
-                    if (categories != null) {
-                        for (int j = 0; j < categories.size(); j++) {
-                            categoriesJson.put(j, categories.get(j));
+    @Override
+    public boolean isCircuitOpen() {
+        return connectionManager.isCircuitOpen();
+    }
+
+    private static ApiRequest newPendingLinkRequest(String applicationId,
+            @Nullable String advertisingId, Map<String, String> signalsMap) throws JSONException {
+        // Create request body
+        JSONObject requestBody = new JSONObject();
+        requestBody.put("application_id", applicationId);
+        requestBody.put("ifa", advertisingId);
+        requestBody.put("signals", new JSONObject(signalsMap));
+
+        return new ApiRequest.Builder(ApiRequest.RequestMethod.POST, "/v1/app/deferred-deeplink")
+                .setBody(requestBody)
+                .build();
+    }
+
+    private static ApiRequest newOrderRequest(final Order order, String applicationId,
+            @Nullable final String sourceToken, @Nullable final String advertisingId) {
+        // Line items are encoded one at a time as the body is written, so large orders
+        // never exist as a single JSON tree or String
+        applicationId = ButtonUtil.base64Encode(applicationId + ":");
+        return new ApiRequest.Builder(ApiRequest.RequestMethod.POST, "/v1/app/order")
+                .addHeader("Authorization", String.format("Basic %s", applicationId))
+                .setChunked(order.getLineItems().size() > CHUNKED_LINE_ITEM_THRESHOLD)
+                .setBody(new ApiRequest.StreamingBody() {
+                    @Override
+                    public void writeMembers(BodyWriter writer) throws IOException {
+                        writer.name("btn_ref").value(sourceToken);
+                        writer.name("advertising_id").value(advertisingId);
+                        ModelSerializer.writeOrderMembers(writer, order);
+                    }
+                })
+                .build();
+    }
+
+    private ApiRequest newEventsRequest(final List<Event> events,
+            @Nullable final String advertisingId) {
+        final boolean compact = features.getCompactEventBatches();
+        return new ApiRequest.Builder(ApiRequest.RequestMethod.POST, "/v1/app/events")
+                .setCborAllowed(true)
+                .setBody(new ApiRequest.StreamingBody() {
+                    @Override
+                    public void writeMembers(BodyWriter writer) throws IOException {
+                        writer.name("ifa").value(advertisingId);
+                        writer.name(CURRENT_TIME).value(ButtonUtil.formatDate(new Date()));
+                        if (compact) {
+                            ModelSerializer.writeEventBatchMembers(writer, events);
+                            return;
+                        }
+
+                        writer.name("events").beginArray();
+                        for (int i = 0; i < events.size(); i++) {
+                            ModelSerializer.writeEvent(writer, events.get(i));
                         }
-                        productJson.put("categories", categoriesJson);
+                        writer.endArray();
                     }
+                })
+                .build();
+    }
 
-                    // Convert custom attributes map to JSON object
-                    JSONObject attributesJson = new JSONObject();
-                    if (attributes != null) {
-                        for (Map.Entry<String, String> entry : attributes.entrySet()) {
-                            attributesJson.putOpt(entry.getKey(), entry.getValue());
+    /**
+     * @return a request reporting a single activity with its full product list
+     */
+    private static ApiRequest newActivityRequest(final ActivityEvent activity,
+            @Nullable final String sourceToken, @Nullable final String advertisingId) {
+        return new ApiRequest.Builder(ApiRequest.RequestMethod.POST, "/v1/app/activity")
+                .setCborAllowed(true)
+                .setBody(new ApiRequest.StreamingBody() {
+                    @Override
+                    public void writeMembers(BodyWriter writer) throws IOException {
+                        writer.name("ifa").value(advertisingId);
+                        writer.name("btn_ref").value(sourceToken);
+                        writer.name("activity_data").beginObject();
+                        writer.name("name").value(activity.getName());
+                        List<ButtonProductCompatible> products = activity.getProducts();
+                        if (!products.isEmpty()) {
+                            writer.name("products").beginArray();
+                            for (int i = 0; i < products.size(); i++) {
+                                ModelSerializer.writeProduct(writer, products.get(i));
+                            }
+                            writer.endArray();
                         }
-                        productJson.put("attributes", attributesJson);
+                        writer.endObject();
                     }
+                })
+                .build();
+    }
 
-                    // Put product data into a JSON object
-                    productJson.put("id", product.getId());
-                    productJson.put("upc", product.getUpc());
-                    productJson.put("name", product.getName());
-                    productJson.put("currency", product.getCurrency());
-                    productJson.put("value", product.getValue());
-                    productJson.put("quantity", product.getQuantity());
-                    productJson.put("url", product.getUrl());
-
-                    // Add to JSON array of products
-                    productsArray.put(i, productJson);
+    private static void writeActivity(BodyWriter writer, ActivityEvent activity,
+            ProductTable productTable) throws IOException {
+        writer.beginObject();
+        writer.name("name").value(activity.getName());
+        writer.name("time").value(ButtonUtil.formatTimestamp(activity.getTimestamp()));
+        writeProductRefs(writer, "product_refs", activity.getProducts(), productTable);
+
+        CartTracker.Delta cartDelta = activity.getCartDelta();
+        if (cartDelta != null) {
+            writer.name("cart_delta").beginObject();
+            writeProductRefs(writer, "added", cartDelta.getAdded(), productTable);
+            writeProductRefs(writer, "changed", cartDelta.getChanged(), productTable);
+            if (!cartDelta.getRemoved().isEmpty()) {
+                writer.name("removed").beginArray();
+                for (String id : cartDelta.getRemoved()) {
+                    writer.value(id);
                 }
-
-                // Append products only if available
-                activityBody.put("products", productsArray);
+                writer.endArray();
             }
-
-            // Append activity data to request body
-            requestBody.put("activity_data", activityBody);
-
-            ApiRequest apiRequest = new ApiRequest.Builder(ApiRequest.RequestMethod.POST,
-                    "/v1/app/activity")
-                    .setBody(requestBody)
-                    .build();
-            connectionManager.executeRequest(apiRequest);
-        } catch (JSONException e) {
-            Log.e(TAG, "Error creating request body", e);
-            throw new ButtonNetworkException(e);
+            writer.endObject();
         }
-
-        return null;
+        writer.endObject();
     }
 
-    @Nullable
-    @Override
-    public Void postEvents(List<Event> events, @Nullable String advertisingId)
-            throws ButtonNetworkException {
-
-        try {
-            JSONArray eventStream = new JSONArray();
-            for (int i = 0; i < events.size(); i++) {
-                JSONObject eventJson = events.get(i).toJson();
-                eventStream.put(i, eventJson);
-            }
-
-            JSONObject requestBody = new JSONObject();
-            requestBody.put("ifa", advertisingId);
-            requestBody.put("current_time", ButtonUtil.formatDate(new Date()));
-            requestBody.put("events", eventStream);
-
-            ApiRequest apiRequest = new ApiRequest.Builder(ApiRequest.RequestMethod.POST,
-                    "/v1/app/events")
-                    .setBody(requestBody)
-                    .build();
-            connectionManager.executeRequest(apiRequest);
-        } catch (JSONException e) {
-            Log.e(TAG, "Error creating request body", e);
-            throw new ButtonNetworkException(e);
+    private static void writeProductRefs(BodyWriter writer, String name,
+            List<ButtonProductCompatible> products, ProductTable productTable)
+            throws IOException {
+        if (products.isEmpty()) {
+            return;
         }
 
-        return null;
+        writer.name(name).beginArray();
+        for (int i = 0; i < products.size(); i++) {
+            writer.value(productTable.add(products.get(i)));
+        }
+        writer.endArray();
     }
 }
@@ -31,6 +31,7 @@ import androidx.annotation.Nullable;
 
 import com.usebutton.merchant.module.Features;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -63,6 +64,9 @@ interface ButtonInternal {
     void reportOrder(ButtonRepository buttonRepository, DeviceManager deviceManager,
             Features features, Order order, @Nullable OrderListener orderListener);
 
+    void reportOrders(ButtonRepository buttonRepository, DeviceManager deviceManager,
+            Features features, List<Order> orders, @Nullable OrdersListener ordersListener);
+
     void reportCustomEvent(ButtonRepository buttonRepository, DeviceManager deviceManager,
                            Features features, String eventName, Map<String, String> properties);
 }
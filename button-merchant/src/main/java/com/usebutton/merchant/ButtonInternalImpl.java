@@ -36,6 +36,8 @@ import com.usebutton.merchant.exception.ApplicationIdNotFoundException;
 import com.usebutton.merchant.module.Features;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
@@ -218,7 +220,7 @@ final class ButtonInternalImpl implements ButtonInternal {
     }
 
     @Override
-    public void reportOrder(ButtonRepository buttonRepository, DeviceManager deviceManager,
+    public void reportOrder(final ButtonRepository buttonRepository, DeviceManager deviceManager,
             Features features, Order order, @Nullable final OrderListener orderListener) {
 
         if (buttonRepository.getApplicationId() == null) {
@@ -250,6 +252,43 @@ final class ButtonInternalImpl implements ButtonInternal {
         });
     }
 
+    @Override
+    public void reportOrders(ButtonRepository buttonRepository, DeviceManager deviceManager,
+            Features features, final List<Order> orders,
+            @Nullable final OrdersListener ordersListener) {
+
+        if (buttonRepository.getApplicationId() == null) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (ordersListener != null) {
+                        ordersListener.onResult(
+                                failAll(orders, new ApplicationIdNotFoundException()));
+                    }
+                }
+            });
+            return;
+        }
+
+        buttonRepository.postOrders(orders, deviceManager, features,
+                new Task.Listener<List<OrderResult>>() {
+                    @Override
+                    public void onTaskComplete(@Nullable List<OrderResult> results) {
+                        if (ordersListener != null) {
+                            ordersListener.onResult(results != null ? results
+                                    : Collections.<OrderResult>emptyList());
+                        }
+                    }
+
+                    @Override
+                    public void onTaskError(Throwable throwable) {
+                        if (ordersListener != null) {
+                            ordersListener.onResult(failAll(orders, throwable));
+                        }
+                    }
+                });
+    }
+
     public void reportCustomEvent(ButtonRepository buttonRepository, DeviceManager deviceManager,
             Features features, String eventName, Map<String, String> properties) {
         if (buttonRepository.getApplicationId() == null) {
@@ -327,10 +366,18 @@ final class ButtonInternalImpl implements ButtonInternal {
 
         // Construct deeplink open event
         String sourceToken = getAttributionToken(buttonRepository);
-        Event deeplinkEvent = new Event(Event.Name.DEEPLINK_OPENED, sourceToken);
-        deeplinkEvent.addProperty(Event.Property.URL, strippedLink);
+        Event deeplinkEvent = new Event(Event.Name.DEEPLINK_OPENED, sourceToken,
+                Collections.singletonMap(Event.Property.URL, strippedLink));
 
         // Report event
         buttonRepository.reportEvent(deviceManager, features, deeplinkEvent);
     }
+
+    private static List<OrderResult> failAll(List<Order> orders, Throwable throwable) {
+        List<OrderResult> results = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            results.add(new OrderResult(order, throwable));
+        }
+        return results;
+    }
 }
@@ -25,19 +25,24 @@
 
 package com.usebutton.merchant;
 
+import android.app.Application;
 import android.content.Context;
 import android.content.Intent;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 
+import com.usebutton.merchant.exception.ButtonNetworkException;
 import com.usebutton.merchant.module.ButtonUserActivity;
+import com.usebutton.merchant.module.DurableDelivery;
 import com.usebutton.merchant.module.Features;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 /**
  * Primary entry point for the Button merchant library.
@@ -54,7 +59,10 @@ public final class ButtonMerchant {
     @VisibleForTesting
     static ButtonUserActivity activity = ButtonUserActivityImpl.getInstance();
 
-    private static ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private static ScheduledExecutorService executorService =
+            new ScheduledThreadPoolExecutor(1);
+    @Nullable
+    private static AppLifecycleMonitor appLifecycleMonitor;
     static final String BASE_URL = "https://mobileapi.usebutton.com";
     static final String FMT_BASE_URL_APP_ID = "https://%s.mobileapi.usebutton.com";
 
@@ -106,6 +114,10 @@ public final class ButtonMerchant {
     /**
      * Reports an order to Button
      *
+     * If {@link Features#setOrderDeduplication(boolean) order deduplication} is enabled, an
+     * order whose id was already reported recently is not sent again and the listener is called
+     * with an {@link com.usebutton.merchant.exception.OrderAlreadyReportedException}.
+     *
      * @param context a {@link Context) instance that can be used to access app resources like
      * SharedPreferences.
      * @param order Your {@link Order} object to be reported
@@ -120,6 +132,26 @@ button#report-orders-to-buttons-order-api">Reporting Orders to Button</a>
                 FeaturesImpl.getInstance(), order, orderListener);
     }
 
+    /**
+     * Reports many orders to Button, e.g. orders collected while offline.
+     *
+     * Orders are validated and uploaded in batches. The listener receives one
+     * {@link OrderResult} per order, so failed orders can be retried individually. Orders uploaded
+     * in the same batch share its outcome, so if the Button API rejects a batch every order in it
+     * fails, including valid ones. Report an order again with
+     * {@link #reportOrder(Context, Order, OrderListener)} to find out whether it was rejected.
+     *
+     * @param context a {@link Context) instance that can be used to access app resources like
+     * SharedPreferences.
+     * @param orders Your {@link Order} objects to be reported
+     * @param ordersListener A nullable {@link OrdersListener} interface
+     */
+    public static void reportOrders(@NonNull Context context, @NonNull List<Order> orders,
+            @Nullable OrdersListener ordersListener) {
+        buttonInternal.reportOrders(getButtonRepository(context), getDeviceManager(context),
+                FeaturesImpl.getInstance(), orders, ordersListener);
+    }
+
     /**
      * Reports an event and associated properties to Button
      *
@@ -217,6 +249,67 @@ button#report-orders-to-buttons-order-api">Reporting Orders to Button</a>
                 context.getPackageName(), listener);
     }
 
+    /**
+     * Follows the app's activity lifecycle so that batched and deferred uploads are flushed when
+     * the app goes to the background, and a connection to Button is warmed when it comes to the
+     * foreground. Call this once, typically in {@code Application#onCreate()}.
+     *
+     * @param application your {@link Application}
+     */
+    public static synchronized void trackAppLifecycle(@NonNull Application application) {
+        if (appLifecycleMonitor != null) {
+            return;
+        }
+
+        appLifecycleMonitor = new AppLifecycleMonitor(getButtonRepository(application));
+        application.registerActivityLifecycleCallbacks(appLifecycleMonitor);
+    }
+
+    /**
+     * Hands orders and events to a {@link DurableDelivery}, such as the WorkManager backed one
+     * in the {@code button-merchant-work} module, so they are delivered even if the app process
+     * dies before they are sent.
+     *
+     * While installed, the listener passed to {@link #reportOrder(Context, Order, OrderListener)}
+     * is called with no error as soon as the order is handed off.
+     *
+     * @param context {@link Context}
+     * @param durableDelivery the durable delivery to use, or {@code null} to send uploads
+     * in-process
+     */
+    public static void setDurableDelivery(@NonNull Context context,
+            @Nullable DurableDelivery durableDelivery) {
+        getButtonRepository(context).setDurableDelivery(durableDelivery);
+    }
+
+    /**
+     * Sends an upload previously handed to {@link DurableDelivery#enqueue}. Blocks until the
+     * Button API responds, so it must not be called on the main thread.
+     *
+     * @param context {@link Context}
+     * @param request the serialized request passed to the {@link DurableDelivery}
+     * @throws ButtonNetworkException if the upload was not delivered; a
+     * {@link com.usebutton.merchant.exception.HttpStatusException} carries the response status
+     * @throws IllegalArgumentException if the request is malformed and can never be delivered
+     */
+    @WorkerThread
+    public static void deliver(@NonNull Context context, @NonNull String request)
+            throws ButtonNetworkException {
+        getButtonRepository(context).deliver(request);
+    }
+
+    /**
+     * Takes a snapshot of the library's metrics: request latencies, task durations, payload
+     * sizes, queue depths and error counts. Values accumulate for the life of the process, so
+     * compare two snapshots to see what happened between them.
+     *
+     * @return a point-in-time copy of the library's metrics
+     */
+    @NonNull
+    public static MetricsSnapshot getMetrics() {
+        return MetricsRegistry.getInstance().snapshot();
+    }
+
     /**
      * An interface through which library features can be enabled/disabled.
      *
@@ -241,13 +334,18 @@ button#report-orders-to-buttons-order-api">Reporting Orders to Button</a>
 
         DeviceManager deviceManager = getDeviceManager(context);
 
+        ConnectivityMonitor connectivityMonitor =
+                ConnectivityMonitorImpl.getInstance(context.getApplicationContext());
+
         ConnectionManager connectionManager = ConnectionManagerImpl.getInstance(BASE_URL,
-                deviceManager.getUserAgent(), persistenceManager);
+                deviceManager.getUserAgent(), persistenceManager, connectivityMonitor);
 
         ButtonApi buttonApi = ButtonApiImpl.getInstance(connectionManager);
 
         return ButtonRepositoryImpl.getInstance(buttonApi, deviceManager, features(),
-                persistenceManager, executorService);
+                persistenceManager, executorService, connectivityMonitor,
+                new UploadPolicy(
+                        DeviceConditionsImpl.getInstance(context.getApplicationContext())));
     }
 
     private static DeviceManager getDeviceManager(Context context) {
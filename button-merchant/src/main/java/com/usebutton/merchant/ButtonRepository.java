@@ -26,7 +26,10 @@
 package com.usebutton.merchant;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
+import com.usebutton.merchant.exception.ButtonNetworkException;
+import com.usebutton.merchant.module.DurableDelivery;
 import com.usebutton.merchant.module.Features;
 
 import java.util.List;
@@ -58,7 +61,43 @@ interface ButtonRepository {
     void postOrder(Order order, DeviceManager deviceManager, Features features,
             Task.Listener listener);
 
+    void postOrders(List<Order> orders, DeviceManager deviceManager, Features features,
+            Task.Listener<List<OrderResult>> listener);
+
     void trackActivity(String eventName, List<ButtonProductCompatible> products);
 
+    void trackCartChanges(String eventName, CartTracker.Delta cartDelta);
+
+    /**
+     * Sets the {@link CartTracker} to reset whenever a reported cart may not have reached the
+     * server, so that the next cart is sent in full.
+     */
+    void setCartTracker(CartTracker cartTracker);
+
     void reportEvent(DeviceManager deviceManager, Features features, Event event);
+
+    /**
+     * Hands subsequent orders and events to the provided {@link DurableDelivery}, or sends them
+     * in-process again if {@code null}.
+     */
+    void setDurableDelivery(@Nullable DurableDelivery durableDelivery);
+
+    /**
+     * Sends a request previously handed to a {@link DurableDelivery}.
+     */
+    @WorkerThread
+    void deliver(String request) throws ButtonNetworkException;
+
+    /**
+     * Sends batched and deferred uploads now, e.g. when the app goes to the background. Uploads
+     * not started within the timeout are deferred again.
+     */
+    void flush(long timeoutMs);
+
+    /**
+     * Opens a connection to the Button API ahead of upcoming requests, at most once per
+     * {@link ButtonRepositoryImpl#MIN_WARM_UP_INTERVAL}. Requests submitted meanwhile do not wait
+     * for the warm-up.
+     */
+    void warmUp();
 }
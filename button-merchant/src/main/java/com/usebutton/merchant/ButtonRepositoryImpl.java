@@ -27,14 +27,27 @@ package com.usebutton.merchant;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 import android.util.Log;
 
+import com.usebutton.merchant.exception.ButtonNetworkException;
+import com.usebutton.merchant.exception.CircuitOpenException;
+import com.usebutton.merchant.exception.OrderAlreadyReportedException;
+import com.usebutton.merchant.module.DurableDelivery;
 import com.usebutton.merchant.module.Features;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class handles retrieving data from memory, api, and disk
@@ -44,22 +57,89 @@ final class ButtonRepositoryImpl implements ButtonRepository {
 
     private static final String TAG = ButtonRepository.class.getSimpleName();
 
+    /**
+     * Deferred events are uploaded together, at most this many per request.
+     */
+    @VisibleForTesting
+    static final int DEFERRED_EVENT_BATCH_SIZE = 100;
+
+    /**
+     * Oldest events are dropped once this many are deferred.
+     */
+    @VisibleForTesting
+    static final int MAX_DEFERRED_EVENTS = 1000;
+
+    /**
+     * Oldest non-order uploads, such as user activity batches, are dropped once this many are
+     * deferred.
+     */
+    @VisibleForTesting
+    static final int MAX_DEFERRED_TASKS = 100;
+
+    /**
+     * Longest time non-urgent uploads wait for the network to become active on its own.
+     */
+    @VisibleForTesting
+    static final long MAX_RADIO_IDLE_DELAY = TimeUnit.SECONDS.toMillis(60);
+
+    /**
+     * Connections are warmed at most this often, well within how long idle connections are kept.
+     */
+    @VisibleForTesting
+    static final long MIN_WARM_UP_INTERVAL = TimeUnit.SECONDS.toMillis(60);
+
+    private static final long WARM_UP_THREAD_KEEP_ALIVE = TimeUnit.SECONDS.toMillis(10);
+
+    private static final TimeProvider WALL_CLOCK_PROVIDER = new TimeProvider() {
+        @Override
+        public long getTimeInMs() {
+            return System.currentTimeMillis();
+        }
+    };
+
     private final ButtonApi buttonApi;
     private final DeviceManager deviceManager;
     private final Features features;
     private final PersistenceManager persistenceManager;
-    private final ExecutorService executorService;
+    private final ScheduledExecutorService executorService;
+    private final Executor warmUpExecutor;
+    private final ActivityBatcher activityBatcher;
+    private final ReportedOrderFilter reportedOrderFilter;
+    private final ConnectivityMonitor connectivityMonitor;
+    private final UploadPolicy uploadPolicy;
+    private final TimeProvider timeProvider;
+    private final StripedCounter droppedTasks;
+    @Nullable
+    private volatile DurableDelivery durableDelivery;
+    @Nullable
+    private volatile CartTracker cartTracker;
+    private long lastWarmUp = -MIN_WARM_UP_INTERVAL;
 
     private static ButtonRepository buttonRepository;
     private boolean isConfigured;
     private List<Task<?>> pendingTasks = new CopyOnWriteArrayList<>();
 
+    /**
+     * Uploads waiting for connectivity or an active network. Guarded by {@code deferredLock}.
+     * Orders are kept apart from low-priority uploads so they are always sent as soon as
+     * connectivity returns.
+     */
+    private final Object deferredLock = new Object();
+    private final List<Task<?>> deferredOrders = new ArrayList<>();
+    private final List<Task<?>> deferredTasks = new ArrayList<>();
+    private final List<Event> deferredEvents = new ArrayList<>();
+    @Nullable
+    private ScheduledFuture<?> deferredFlush;
+    @Nullable
+    private ScheduledFuture<?> deferredOrderFlush;
+
     static ButtonRepository getInstance(ButtonApi buttonApi, DeviceManager deviceManager,
             Features features, PersistenceManager persistenceManager,
-            ExecutorService executorService) {
+            ScheduledExecutorService executorService, ConnectivityMonitor connectivityMonitor,
+            UploadPolicy uploadPolicy) {
         if (buttonRepository == null) {
             buttonRepository = new ButtonRepositoryImpl(buttonApi, deviceManager, features,
-                    persistenceManager, executorService);
+                    persistenceManager, executorService, connectivityMonitor, uploadPolicy);
         }
 
         return buttonRepository;
@@ -67,21 +147,114 @@ final class ButtonRepositoryImpl implements ButtonRepository {
 
     @VisibleForTesting
     ButtonRepositoryImpl(ButtonApi buttonApi, DeviceManager deviceManager, Features features,
-            PersistenceManager persistenceManager, ExecutorService executorService) {
+            PersistenceManager persistenceManager, ScheduledExecutorService executorService,
+            ConnectivityMonitor connectivityMonitor, UploadPolicy uploadPolicy) {
+        this(buttonApi, deviceManager, features, persistenceManager, executorService,
+                connectivityMonitor, uploadPolicy, WALL_CLOCK_PROVIDER);
+    }
+
+    @VisibleForTesting
+    ButtonRepositoryImpl(ButtonApi buttonApi, DeviceManager deviceManager, Features features,
+            PersistenceManager persistenceManager, ScheduledExecutorService executorService,
+            ConnectivityMonitor connectivityMonitor, UploadPolicy uploadPolicy,
+            TimeProvider timeProvider) {
+        this(buttonApi, deviceManager, features, persistenceManager, executorService,
+                connectivityMonitor, uploadPolicy, timeProvider, MetricsRegistry.getInstance());
+    }
+
+    @VisibleForTesting
+    ButtonRepositoryImpl(ButtonApi buttonApi, DeviceManager deviceManager, Features features,
+            PersistenceManager persistenceManager, ScheduledExecutorService executorService,
+            ConnectivityMonitor connectivityMonitor, UploadPolicy uploadPolicy,
+            TimeProvider timeProvider, MetricsRegistry metrics) {
+        this(buttonApi, deviceManager, features, persistenceManager, executorService,
+                connectivityMonitor, uploadPolicy, timeProvider, metrics, newWarmUpExecutor());
+    }
+
+    @VisibleForTesting
+    ButtonRepositoryImpl(ButtonApi buttonApi, DeviceManager deviceManager, Features features,
+            PersistenceManager persistenceManager,
+            final ScheduledExecutorService executorService,
+            ConnectivityMonitor connectivityMonitor, UploadPolicy uploadPolicy,
+            TimeProvider timeProvider, MetricsRegistry metrics, Executor warmUpExecutor) {
         this.buttonApi = buttonApi;
         this.deviceManager = deviceManager;
         this.features = features;
         this.persistenceManager = persistenceManager;
         this.executorService = executorService;
+        this.warmUpExecutor = warmUpExecutor;
+        this.activityBatcher = new ActivityBatcher(executorService, new ActivityBatcher.Sink() {
+            @Override
+            public void onBatch(List<ActivityEvent> activities, @Nullable String sourceToken) {
+                reportActivities(activities, sourceToken);
+            }
+        }, uploadPolicy);
+        this.reportedOrderFilter = new ReportedOrderFilter(features,
+                ReportedOrderFilter.WALL_CLOCK_PROVIDER, persistenceManager);
+        this.connectivityMonitor = connectivityMonitor;
+        this.uploadPolicy = uploadPolicy;
+        this.timeProvider = timeProvider;
+        this.droppedTasks = metrics.counter(MetricsSnapshot.COUNTER_DROPPED_TASKS);
+        metrics.registerGauge(MetricsSnapshot.GAUGE_DEFERRED_QUEUE_DEPTH,
+                new MetricsRegistry.Gauge() {
+                    @Override
+                    public long getValue() {
+                        synchronized (deferredLock) {
+                            return deferredOrders.size() + deferredTasks.size()
+                                    + deferredEvents.size();
+                        }
+                    }
+                });
+        metrics.registerGauge(MetricsSnapshot.GAUGE_EXECUTOR_QUEUE_DEPTH,
+                new MetricsRegistry.Gauge() {
+                    @Override
+                    public long getValue() {
+                        return getReadyTaskCount(executorService);
+                    }
+                });
+        connectivityMonitor.addListener(new ConnectivityMonitor.Listener() {
+            @Override
+            public void onConnectivityChanged(boolean connected) {
+                if (!connected) {
+                    return;
+                }
+
+                flushDeferredOrders();
+                if (uploadPolicy.isConstrained()) {
+                    synchronized (deferredLock) {
+                        scheduleDeferredFlush(UploadPolicy.CONSTRAINED_DEFERRAL_DELAY);
+                    }
+                } else {
+                    flushDeferred();
+                }
+            }
+
+            @Override
+            public void onNetworkActive() {
+                if (!uploadPolicy.isConstrained()) {
+                    flushDeferred();
+                }
+            }
+        });
     }
 
     @Override
     public void setApplicationId(String applicationId) {
         isConfigured = true;
+        String previousApplicationId = buttonApi.getApplicationId();
         buttonApi.setApplicationId(applicationId);
 
+        if (features.getConnectionPreWarming() && ButtonUtil.isApplicationIdValid(applicationId)
+                && !applicationId.equals(previousApplicationId)) {
+            // The application id selects the API host, so earlier warm-ups do not carry over
+            synchronized (this) {
+                lastWarmUp = -MIN_WARM_UP_INTERVAL;
+            }
+            warmUp();
+        }
+
         for (Task<?> task : pendingTasks) {
-            executorService.submit(task);
+            submitWhenNetworkActive(task);
         }
         pendingTasks.clear();
     }
@@ -94,7 +267,13 @@ final class ButtonRepositoryImpl implements ButtonRepository {
 
     @Override
     public void setSourceToken(String sourceToken) {
+        String previousSourceToken = persistenceManager.getSourceToken();
         persistenceManager.setSourceToken(sourceToken);
+
+        // Carts are diffed per attribution, so the new one starts from a full snapshot
+        if (sourceToken != null && !sourceToken.equals(previousSourceToken)) {
+            resetCartTracker();
+        }
     }
 
     @Nullable
@@ -106,6 +285,8 @@ final class ButtonRepositoryImpl implements ButtonRepository {
     @Override
     public void clear() {
         persistenceManager.clear();
+        reportedOrderFilter.clear();
+        resetCartTracker();
     }
 
     @Override
@@ -129,17 +310,275 @@ final class ButtonRepositoryImpl implements ButtonRepository {
     }
 
     @Override
-    public void postOrder(Order order, DeviceManager deviceManager, Features features,
-            Task.Listener listener) {
-        executorService.submit(
-                new PostOrderTask(listener, buttonApi, order, getApplicationId(),
-                        getSourceToken(), deviceManager, features, new ThreadManager()));
+    public void postOrder(final Order order, final DeviceManager deviceManager,
+            final Features features, final Task.Listener listener) {
+        final String applicationId = getApplicationId();
+        final String sourceToken = getSourceToken();
+        final String orderId = order.getId();
+        if (orderId == null || !features.getOrderDeduplication()) {
+            submitOrder(order, applicationId, sourceToken, deviceManager, features, listener);
+            return;
+        }
+
+        // The filter is restored from disk on first use, so keep it off the caller's thread
+        executorService.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (!reportedOrderFilter.tryReserve(orderId)) {
+                    Log.d(TAG, String.format("Order [%s] was already reported, skipping",
+                            orderId));
+                    listener.onTaskError(new OrderAlreadyReportedException(orderId));
+                    return;
+                }
+
+                submitOrder(order, applicationId, sourceToken, deviceManager, features,
+                        new Task.Listener() {
+                    @Override
+                    public void onTaskComplete(@Nullable Object object) {
+                        reportedOrderFilter.add(orderId);
+                        listener.onTaskComplete(object);
+                    }
+
+                    @Override
+                    public void onTaskError(Throwable throwable) {
+                        reportedOrderFilter.release(orderId);
+                        listener.onTaskError(throwable);
+                    }
+                });
+            }
+        });
+    }
+
+    private void submitOrder(final Order order, @Nullable final String applicationId,
+            @Nullable final String sourceToken, final DeviceManager deviceManager,
+            final Features features, Task.Listener listener) {
+        ParkingOrderListener parkingListener = new ParkingOrderListener(listener);
+        PostOrderTask task = new PostOrderTask(parkingListener, buttonApi, order, applicationId,
+                sourceToken, deviceManager, features, new ThreadManager(),
+                RetryBudget.getInstance());
+        parkingListener.task = task;
+
+        DurableDelivery durableDelivery = this.durableDelivery;
+        if (durableDelivery == null) {
+            submitWhenOnline(task);
+            return;
+        }
+
+        // The durable delivery waits for connectivity itself
+        executorService.submit(new DurableHandoffTask(durableDelivery,
+                DurableDelivery.Type.ORDER, order.getId(), new DurableHandoffTask.RequestWriter() {
+            @Override
+            public String write() throws Exception {
+                return buttonApi.serializeOrder(order, applicationId, sourceToken,
+                        getAdvertisingId(deviceManager, features));
+            }
+        }, listener, task));
+    }
+
+    @Override
+    public void postOrders(final List<Order> orders, final DeviceManager deviceManager,
+            final Features features, final Task.Listener<List<OrderResult>> listener) {
+        final String applicationId = getApplicationId();
+        final String sourceToken = getSourceToken();
+        if (!features.getOrderDeduplication()) {
+            submitOrders(orders, applicationId, sourceToken, deviceManager, features, listener);
+            return;
+        }
+
+        // The filter is restored from disk on first use, so keep it off the caller's thread
+        executorService.submit(new Runnable() {
+            @Override
+            public void run() {
+                final OrderResult[] results = new OrderResult[orders.size()];
+                final List<Order> reserved = new ArrayList<>(orders.size());
+                final List<Integer> reservedIndexes = new ArrayList<>(orders.size());
+                for (int i = 0; i < orders.size(); i++) {
+                    Order order = orders.get(i);
+                    String orderId = order.getId();
+                    if (orderId != null && !reportedOrderFilter.tryReserve(orderId)) {
+                        Log.d(TAG, String.format("Order [%s] was already reported, skipping",
+                                orderId));
+                        results[i] = new OrderResult(order,
+                                new OrderAlreadyReportedException(orderId));
+                    } else {
+                        reserved.add(order);
+                        reservedIndexes.add(i);
+                    }
+                }
+
+                if (reserved.isEmpty()) {
+                    listener.onTaskComplete(Arrays.asList(results));
+                    return;
+                }
+
+                submitOrders(reserved, applicationId, sourceToken, deviceManager, features,
+                        new Task.Listener<List<OrderResult>>() {
+                    @Override
+                    public void onTaskComplete(@Nullable List<OrderResult> reservedResults) {
+                        for (int i = 0; i < reserved.size(); i++) {
+                            OrderResult result = reservedResults != null
+                                    ? reservedResults.get(i)
+                                    : new OrderResult(reserved.get(i), null);
+                            settle(result.getOrder(), result.isSuccessful());
+                            results[reservedIndexes.get(i)] = result;
+                        }
+                        listener.onTaskComplete(Arrays.asList(results));
+                    }
+
+                    @Override
+                    public void onTaskError(Throwable throwable) {
+                        for (int i = 0; i < reserved.size(); i++) {
+                            settle(reserved.get(i), false);
+                            results[reservedIndexes.get(i)] =
+                                    new OrderResult(reserved.get(i), throwable);
+                        }
+                        listener.onTaskComplete(Arrays.asList(results));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Records an order reserved with {@link ReportedOrderFilter#tryReserve(String)} as reported,
+     * or gives up the reservation if it failed.
+     */
+    private void settle(Order order, boolean reported) {
+        String orderId = order.getId();
+        if (orderId == null) {
+            return;
+        }
+
+        if (reported) {
+            reportedOrderFilter.add(orderId);
+        } else {
+            reportedOrderFilter.release(orderId);
+        }
+    }
+
+    private void submitOrders(List<Order> orders, @Nullable String applicationId,
+            @Nullable String sourceToken, DeviceManager deviceManager, Features features,
+            @Nullable Task.Listener<List<OrderResult>> listener) {
+        submitWhenOnline(newPostOrdersTask(orders, applicationId, sourceToken, deviceManager,
+                features, listener));
+    }
+
+    private PostOrdersTask newPostOrdersTask(List<Order> orders, @Nullable String applicationId,
+            @Nullable String sourceToken, DeviceManager deviceManager, Features features,
+            @Nullable Task.Listener<List<OrderResult>> listener) {
+        return new PostOrdersTask(new ParkingOrdersListener(orders, applicationId, sourceToken,
+                deviceManager, features, listener), buttonApi, orders, applicationId, sourceToken,
+                deviceManager, features, new ThreadManager(), RetryBudget.getInstance());
+    }
+
+    @Override
+    public void trackActivity(String eventName, List<ButtonProductCompatible> products) {
+        activityBatcher.add(new ActivityEvent(eventName, products, System.currentTimeMillis()),
+                getSourceToken());
     }
 
     @Override
-    public void trackActivity(final String eventName, List<ButtonProductCompatible> products) {
-        ActivityReportingTask task = new ActivityReportingTask(buttonApi, deviceManager, features,
-                eventName, products, getSourceToken(), new Task.Listener<Void>() {
+    public void trackCartChanges(String eventName, CartTracker.Delta cartDelta) {
+        activityBatcher.add(new ActivityEvent(eventName, cartDelta, System.currentTimeMillis()),
+                getSourceToken());
+    }
+
+    @Override
+    public void setCartTracker(CartTracker cartTracker) {
+        this.cartTracker = cartTracker;
+    }
+
+    @Override
+    public void reportEvent(final DeviceManager deviceManager, final Features features,
+            Event event) {
+        final List<Event> events = Collections.singletonList(event);
+        DurableDelivery durableDelivery = this.durableDelivery;
+        if (isConfigured && durableDelivery != null) {
+            executorService.submit(new DurableHandoffTask(durableDelivery,
+                    DurableDelivery.Type.EVENTS, event.getId().toString(),
+                    new DurableHandoffTask.RequestWriter() {
+                @Override
+                public String write() throws Exception {
+                    return buttonApi.serializeEvents(events,
+                            getAdvertisingId(deviceManager, features));
+                }
+            }, null, newEventReportingTask(deviceManager, features, events)));
+            return;
+        }
+
+        if (isConfigured && deferEvent(event)) {
+            return;
+        }
+
+        invokeIfConfigured(newEventReportingTask(deviceManager, features, events));
+    }
+
+    @Override
+    public void setDurableDelivery(@Nullable DurableDelivery durableDelivery) {
+        this.durableDelivery = durableDelivery;
+    }
+
+    @WorkerThread
+    @Override
+    public void deliver(String request) throws ButtonNetworkException {
+        buttonApi.deliver(request);
+    }
+
+    @Override
+    public void flush(long timeoutMs) {
+        activityBatcher.flush();
+        if (!connectivityMonitor.isConnected()) {
+            return;
+        }
+
+        final List<Task<?>> tasks = drainDeferred();
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        final long deadline = timeProvider.getTimeInMs() + timeoutMs;
+        executorService.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < tasks.size(); i++) {
+                    if (timeProvider.getTimeInMs() >= deadline) {
+                        Log.d(TAG, String.format("Flush timed out, deferring %d tasks.",
+                                tasks.size() - i));
+                        redefer(tasks.subList(i, tasks.size()));
+                        return;
+                    }
+                    tasks.get(i).run();
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized void warmUp() {
+        long now = timeProvider.getTimeInMs();
+        if (!connectivityMonitor.isConnected() || now - lastWarmUp < MIN_WARM_UP_INTERVAL) {
+            return;
+        }
+
+        lastWarmUp = now;
+        // Warm up alongside the task executor so queued requests never wait on the handshake
+        warmUpExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                buttonApi.warmUp();
+            }
+        });
+    }
+
+    @Nullable
+    private static String getAdvertisingId(DeviceManager deviceManager, Features features) {
+        return features.getIncludesIfa() ? deviceManager.getAdvertisingId() : null;
+    }
+
+    private EventReportingTask newEventReportingTask(DeviceManager deviceManager,
+            Features features, final List<Event> events) {
+        return new EventReportingTask(buttonApi, deviceManager, features, events,
+                new Task.Listener<Void>() {
             @Override
             public void onTaskComplete(@Nullable Void object) {
                 // ignored
@@ -147,18 +586,21 @@ final class ButtonRepositoryImpl implements ButtonRepository {
 
             @Override
             public void onTaskError(Throwable throwable) {
-                Log.e(TAG, String.format("Error reporting user activity [%s]", eventName),
-                        throwable);
+                if (events.size() == 1) {
+                    Log.e(TAG, String.format("Error reporting event [%s]",
+                            events.get(0).getName()), throwable);
+                } else {
+                    Log.e(TAG, String.format("Error reporting %d events", events.size()),
+                            throwable);
+                }
             }
         });
-
-        invokeIfConfigured(task);
     }
 
-    @Override
-    public void reportEvent(DeviceManager deviceManager, Features features, final Event event) {
-        EventReportingTask task = new EventReportingTask(buttonApi, deviceManager, features,
-                Collections.singletonList(event), new Task.Listener<Void>() {
+    private void reportActivities(final List<ActivityEvent> activities,
+            @Nullable String sourceToken) {
+        ActivityReportingTask task = new ActivityReportingTask(buttonApi, deviceManager, features,
+                activities, sourceToken, new Task.Listener<Void>() {
             @Override
             public void onTaskComplete(@Nullable Void object) {
                 // ignored
@@ -166,13 +608,34 @@ final class ButtonRepositoryImpl implements ButtonRepository {
 
             @Override
             public void onTaskError(Throwable throwable) {
-                Log.e(TAG, String.format("Error reporting event [%s]", event.getName()), throwable);
+                Log.e(TAG, String.format("Error reporting %d user activities", activities.size()),
+                        throwable);
+                if (containsCart(activities)) {
+                    // The server never saw this cart, so later deltas would not apply to it
+                    resetCartTracker();
+                }
             }
         });
 
         invokeIfConfigured(task);
     }
 
+    private static boolean containsCart(List<ActivityEvent> activities) {
+        for (int i = 0; i < activities.size(); i++) {
+            if (ButtonUserActivityImpl.EVENT_CART_VIEWED.equals(activities.get(i).getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void resetCartTracker() {
+        CartTracker cartTracker = this.cartTracker;
+        if (cartTracker != null) {
+            cartTracker.reset();
+        }
+    }
+
     /**
      * If the Merchant Library has been configured, the provided {@link Task} is submitted
      * immediately. Otherwise, it queued up to be invoked once the Library is configured.
@@ -181,10 +644,389 @@ final class ButtonRepositoryImpl implements ButtonRepository {
      */
     private void invokeIfConfigured(Task<?> task) {
         if (isConfigured) {
-            executorService.submit(task);
+            submitWhenNetworkActive(task);
         } else {
             Log.d(TAG, "Application ID unavailable! Queueing Task.");
             pendingTasks.add(task);
         }
     }
+
+    /**
+     * Submits the provided {@link Task} if the device is connected. Otherwise, it is parked until
+     * connectivity returns rather than waiting out connection timeouts and retries. While the
+     * Button API is unreachable, it is parked until the API has had time to recover.
+     *
+     * @param task the task to submit
+     */
+    private void submitWhenOnline(Task<?> task) {
+        synchronized (deferredLock) {
+            if (!connectivityMonitor.isConnected()) {
+                Log.d(TAG, "Device offline! Deferring Task.");
+                deferredOrders.add(task);
+                return;
+            }
+
+            if (buttonApi.isCircuitOpen()) {
+                parkOrder(task);
+                return;
+            }
+        }
+
+        executorService.submit(task);
+    }
+
+    /**
+     * Parks an order until the Button API has had time to recover. Must be called while holding
+     * {@code deferredLock}.
+     */
+    private void parkOrder(Task<?> task) {
+        Log.d(TAG, "Button API unreachable! Deferring Task.");
+        deferredOrders.add(task);
+        if (deferredOrderFlush == null) {
+            deferredOrderFlush = executorService.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (deferredLock) {
+                        deferredOrderFlush = null;
+                    }
+                    flushDeferredOrders();
+                }
+            }, CircuitBreaker.INITIAL_OPEN_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Submits the provided non-urgent {@link Task} if the network is already active. Otherwise,
+     * it is parked until other traffic wakes the radio, or at most {@link #MAX_RADIO_IDLE_DELAY},
+     * so that it does not power up the cellular radio on its own. While the {@link UploadPolicy}
+     * is constrained, it is parked for up to {@link UploadPolicy#CONSTRAINED_DEFERRAL_DELAY}.
+     *
+     * @param task the task to submit
+     */
+    private void submitWhenNetworkActive(Task<?> task) {
+        synchronized (deferredLock) {
+            if (shouldDefer()) {
+                if (deferredTasks.size() >= MAX_DEFERRED_TASKS) {
+                    Log.d(TAG, "Deferred task queue full! Dropping oldest task.");
+                    deferredTasks.remove(0).discard(
+                            new IllegalStateException("Deferred task queue full"));
+                    droppedTasks.increment();
+                }
+                deferredTasks.add(task);
+                return;
+            }
+        }
+
+        executorService.submit(task);
+    }
+
+    /**
+     * @return an executor whose single thread exits while there is nothing to warm up
+     */
+    private static Executor newWarmUpExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, WARM_UP_THREAD_KEEP_ALIVE,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return the number of tasks waiting to run now, not counting ones scheduled for later
+     */
+    @VisibleForTesting
+    static long getReadyTaskCount(ScheduledExecutorService executorService) {
+        if (!(executorService instanceof ThreadPoolExecutor)) {
+            return -1;
+        }
+
+        long count = 0;
+        for (Runnable runnable : ((ThreadPoolExecutor) executorService).getQueue()) {
+            if (!(runnable instanceof Delayed)
+                    || ((Delayed) runnable).getDelay(TimeUnit.MILLISECONDS) <= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return true if the event was parked to be uploaded in a batch later
+     */
+    private boolean deferEvent(Event event) {
+        synchronized (deferredLock) {
+            if (!shouldDefer()) {
+                return false;
+            }
+
+            if (deferredEvents.size() >= MAX_DEFERRED_EVENTS) {
+                Log.d(TAG, "Deferred event queue full! Dropping oldest event.");
+                deferredEvents.remove(0);
+                droppedTasks.increment();
+            }
+            deferredEvents.add(event);
+            return true;
+        }
+    }
+
+    /**
+     * Must be called while holding {@code deferredLock}.
+     *
+     * @return true if non-urgent uploads should be deferred, in which case a flush is scheduled
+     */
+    private boolean shouldDefer() {
+        if (!connectivityMonitor.isConnected()) {
+            return true;
+        }
+
+        if (uploadPolicy.shouldDeferLowPriority()) {
+            scheduleDeferredFlush(UploadPolicy.CONSTRAINED_DEFERRAL_DELAY);
+            return true;
+        }
+
+        if (connectivityMonitor.isNetworkActive()) {
+            return false;
+        }
+
+        scheduleDeferredFlush(MAX_RADIO_IDLE_DELAY);
+        return true;
+    }
+
+    /**
+     * Schedules a flush of deferred uploads unless one is already scheduled. Must be called while
+     * holding {@code deferredLock}.
+     */
+    private void scheduleDeferredFlush(long delayMs) {
+        if (deferredFlush == null) {
+            deferredFlush = executorService.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (deferredLock) {
+                        deferredFlush = null;
+                        if (!connectivityMonitor.isConnected()) {
+                            // Flushed once connectivity returns
+                            return;
+                        }
+                    }
+                    flushDeferred();
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Submits every deferred upload, with deferred events combined into batches.
+     */
+    @VisibleForTesting
+    void flushDeferred() {
+        for (Task<?> task : drainDeferred()) {
+            executorService.submit(task);
+        }
+    }
+
+    /**
+     * Submits deferred orders, leaving low-priority uploads deferred. Orders are parked again if
+     * the device is offline or the Button API is still unreachable.
+     */
+    private void flushDeferredOrders() {
+        List<Task<?>> orders;
+        synchronized (deferredLock) {
+            orders = new ArrayList<>(deferredOrders);
+            deferredOrders.clear();
+        }
+
+        if (!orders.isEmpty()) {
+            Log.d(TAG, String.format("Flushing %d deferred orders.", orders.size()));
+        }
+        for (Task<?> task : orders) {
+            submitWhenOnline(task);
+        }
+    }
+
+    /**
+     * Puts uploads that were drained but not sent back at the front of their deferred queues.
+     */
+    private void redefer(List<Task<?>> tasks) {
+        synchronized (deferredLock) {
+            List<Task<?>> orders = new ArrayList<>();
+            List<Task<?>> others = new ArrayList<>();
+            for (Task<?> task : tasks) {
+                if (isOrderTask(task)) {
+                    orders.add(task);
+                } else {
+                    others.add(task);
+                }
+            }
+            deferredOrders.addAll(0, orders);
+            deferredTasks.addAll(0, others);
+            scheduleDeferredFlush(MAX_RADIO_IDLE_DELAY);
+        }
+    }
+
+    private static boolean isOrderTask(Task<?> task) {
+        return task instanceof PostOrderTask || task instanceof PostOrdersTask;
+    }
+
+    /**
+     * @return every deferred upload, with deferred events combined into batches
+     */
+    private List<Task<?>> drainDeferred() {
+        List<Task<?>> orders;
+        List<Task<?>> tasks;
+        List<Event> events;
+        synchronized (deferredLock) {
+            orders = new ArrayList<>(deferredOrders);
+            tasks = new ArrayList<>(deferredTasks);
+            events = new ArrayList<>(deferredEvents);
+            deferredOrders.clear();
+            deferredTasks.clear();
+            deferredEvents.clear();
+            if (deferredFlush != null) {
+                deferredFlush.cancel(false);
+                deferredFlush = null;
+            }
+        }
+
+        if (!orders.isEmpty() || !tasks.isEmpty() || !events.isEmpty()) {
+            Log.d(TAG, String.format("Flushing %d deferred orders, %d tasks and %d events "
+                    + "(%d uploads deferred and %d batching windows stretched by device "
+                    + "conditions so far).", orders.size(), tasks.size(), events.size(),
+                    uploadPolicy.getDeferralCount(), uploadPolicy.getStretchedWindowCount()));
+        }
+
+        List<Task<?>> drained = new ArrayList<>(orders);
+        for (int start = 0; start < events.size(); start += DEFERRED_EVENT_BATCH_SIZE) {
+            int end = Math.min(start + DEFERRED_EVENT_BATCH_SIZE, events.size());
+            drained.add(newEventReportingTask(deviceManager, features,
+                    new ArrayList<>(events.subList(start, end))));
+        }
+        drained.addAll(tasks);
+        return drained;
+    }
+
+    /**
+     * Parks the orders of a bulk upload that failed fast because the Button API looked
+     * unreachable, like {@link ParkingOrderListener}. They are sent again once the API recovers,
+     * and the listener is called once with the results of every order.
+     */
+    private final class ParkingOrdersListener implements Task.Listener<List<OrderResult>> {
+
+        private final List<Order> orders;
+        @Nullable
+        private final String applicationId;
+        @Nullable
+        private final String sourceToken;
+        private final DeviceManager deviceManager;
+        private final Features features;
+        @Nullable
+        private final Task.Listener<List<OrderResult>> listener;
+
+        ParkingOrdersListener(List<Order> orders, @Nullable String applicationId,
+                @Nullable String sourceToken, DeviceManager deviceManager, Features features,
+                @Nullable Task.Listener<List<OrderResult>> listener) {
+            this.orders = orders;
+            this.applicationId = applicationId;
+            this.sourceToken = sourceToken;
+            this.deviceManager = deviceManager;
+            this.features = features;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onTaskComplete(@Nullable List<OrderResult> results) {
+            if (results == null) {
+                forward(null);
+                return;
+            }
+
+            final List<Order> parked = new ArrayList<>();
+            final List<Integer> parkedIndexes = new ArrayList<>();
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i).getError() instanceof CircuitOpenException) {
+                    parked.add(results.get(i).getOrder());
+                    parkedIndexes.add(i);
+                }
+            }
+
+            if (parked.isEmpty()) {
+                forward(results);
+                return;
+            }
+
+            final OrderResult[] merged = results.toArray(new OrderResult[results.size()]);
+            PostOrdersTask task = newPostOrdersTask(parked, applicationId, sourceToken,
+                    deviceManager, features, new Task.Listener<List<OrderResult>>() {
+                        @Override
+                        public void onTaskComplete(@Nullable List<OrderResult> parkedResults) {
+                            for (int i = 0; i < parked.size(); i++) {
+                                merged[parkedIndexes.get(i)] = parkedResults != null
+                                        ? parkedResults.get(i)
+                                        : new OrderResult(parked.get(i), null);
+                            }
+                            forward(Arrays.asList(merged));
+                        }
+
+                        @Override
+                        public void onTaskError(Throwable throwable) {
+                            for (int i = 0; i < parked.size(); i++) {
+                                merged[parkedIndexes.get(i)] =
+                                        new OrderResult(parked.get(i), throwable);
+                            }
+                            forward(Arrays.asList(merged));
+                        }
+                    });
+            synchronized (deferredLock) {
+                parkOrder(task);
+            }
+        }
+
+        @Override
+        public void onTaskError(Throwable throwable) {
+            if (listener != null) {
+                listener.onTaskError(throwable);
+            }
+        }
+
+        private void forward(@Nullable List<OrderResult> results) {
+            if (listener != null) {
+                listener.onTaskComplete(results);
+            }
+        }
+    }
+
+    /**
+     * Parks an order that failed fast because the Button API looked unreachable, so it is sent
+     * once the API recovers instead of failing.
+     */
+    private final class ParkingOrderListener implements Task.Listener {
+
+        @Nullable
+        private final Task.Listener listener;
+        @Nullable
+        Task<?> task;
+
+        ParkingOrderListener(@Nullable Task.Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onTaskComplete(@Nullable Object object) {
+            if (listener != null) {
+                listener.onTaskComplete(object);
+            }
+        }
+
+        @Override
+        public void onTaskError(Throwable throwable) {
+            if (throwable instanceof CircuitOpenException && task != null) {
+                synchronized (deferredLock) {
+                    parkOrder(task);
+                }
+                return;
+            }
+
+            if (listener != null) {
+                listener.onTaskError(throwable);
+            }
+        }
+    }
 }
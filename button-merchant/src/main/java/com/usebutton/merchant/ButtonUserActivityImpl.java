@@ -29,6 +29,7 @@ import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.usebutton.merchant.module.ButtonUserActivity;
+import com.usebutton.merchant.module.Features;
 
 import java.util.Collections;
 import java.util.List;
@@ -45,6 +46,9 @@ class ButtonUserActivityImpl implements ButtonUserActivity {
 
     private static ButtonUserActivity activity;
 
+    private final Features features;
+    private final CartTracker cartTracker;
+    private final ActivitySuppressor activitySuppressor;
     @Nullable
     private ButtonRepository buttonRepository;
     // TODO: Move logic to ButtonRepository
@@ -58,8 +62,26 @@ class ButtonUserActivityImpl implements ButtonUserActivity {
         return activity;
     }
 
+    ButtonUserActivityImpl() {
+        this(FeaturesImpl.getInstance(), new CartTracker(TtlReference.REALTIME_MILLIS_PROVIDER),
+                new ActivitySuppressor(FeaturesImpl.getInstance(),
+                        TtlReference.REALTIME_MILLIS_PROVIDER));
+    }
+
+    @VisibleForTesting
+    ButtonUserActivityImpl(Features features, CartTracker cartTracker,
+            ActivitySuppressor activitySuppressor) {
+        this.features = features;
+        this.cartTracker = cartTracker;
+        this.activitySuppressor = activitySuppressor;
+    }
+
     @Override
     public void productViewed(@Nullable ButtonProductCompatible product) {
+        if (isRepeated(EVENT_PRODUCT_VIEWED, product)) {
+            return;
+        }
+
         Event event = new Event(
                 EVENT_PRODUCT_VIEWED,
                 product != null ? Collections.singletonList(product)
@@ -71,6 +93,7 @@ class ButtonUserActivityImpl implements ButtonUserActivity {
 
     @Override
     public void productAddedToCart(@Nullable ButtonProductCompatible product) {
+        // Not suppressed, since a repeated add-to-cart is a real change to the cart
         Event event = new Event(
                 EVENT_ADD_TO_CART,
                 product != null ? Collections.singletonList(product)
@@ -82,17 +105,34 @@ class ButtonUserActivityImpl implements ButtonUserActivity {
 
     @Override
     public void cartViewed(@Nullable List<ButtonProductCompatible> products) {
-        Event event = new Event(
-                EVENT_CART_VIEWED,
-                products != null ? products : Collections.<ButtonProductCompatible>emptyList()
-        );
+        List<ButtonProductCompatible> cart =
+                products != null ? products : Collections.<ButtonProductCompatible>emptyList();
+
+        if (!features.getBatchedActivities()) {
+            // Each activity carries its full product list, so a later delta would have no base
+            cartTracker.reset();
+            trackOrQueueEvent(new Event(EVENT_CART_VIEWED, cart));
+            return;
+        }
+
+        // Only send what changed since the last reported cart, unless a snapshot is due. An
+        // unchanged cart is still a view, so an empty delta is reported too.
+        CartTracker.Delta cartDelta = cartTracker.track(cart);
+        Event event = cartDelta != null
+                ? new Event(EVENT_CART_VIEWED, cartDelta)
+                : new Event(EVENT_CART_VIEWED, cart);
 
         trackOrQueueEvent(event);
     }
 
+    private boolean isRepeated(String activityName, @Nullable ButtonProductCompatible product) {
+        return product != null
+                && activitySuppressor.shouldSuppress(activityName, product.getId());
+    }
+
     private void trackOrQueueEvent(Event event) {
         if (buttonRepository != null) {
-            buttonRepository.trackActivity(event.name, event.products);
+            track(buttonRepository, event);
         } else {
             queuedActivityEvents.add(event);
         }
@@ -100,23 +140,41 @@ class ButtonUserActivityImpl implements ButtonUserActivity {
 
     void flushQueue(ButtonRepository buttonRepository) {
         this.buttonRepository = buttonRepository;
+        buttonRepository.setCartTracker(cartTracker);
 
         for (Event event : queuedActivityEvents) {
-            buttonRepository.trackActivity(event.name, event.products);
+            track(buttonRepository, event);
         }
         queuedActivityEvents.clear();
     }
 
+    private static void track(ButtonRepository buttonRepository, Event event) {
+        if (event.cartDelta != null) {
+            buttonRepository.trackCartChanges(event.name, event.cartDelta);
+        } else {
+            buttonRepository.trackActivity(event.name, event.products);
+        }
+    }
+
     /**
      * Internal class representing an activity event
      */
     private static class Event {
         private final String name;
         private final List<ButtonProductCompatible> products;
+        @Nullable
+        private final CartTracker.Delta cartDelta;
 
         Event(String name, List<ButtonProductCompatible> products) {
             this.name = name;
             this.products = products;
+            this.cartDelta = null;
+        }
+
+        Event(String name, CartTracker.Delta cartDelta) {
+            this.name = name;
+            this.products = Collections.emptyList();
+            this.cartDelta = cartDelta;
         }
     }
 }
@@ -0,0 +1,191 @@
+/*
+ * CartTracker.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the last reported cart so that subsequent cart views can be reported as the lines
+ * that were added, removed or changed since then.
+ *
+ * A full snapshot is requested for the first cart, periodically (every
+ * {@link #DEFAULT_SNAPSHOT_INTERVAL} reports or {@link #DEFAULT_SNAPSHOT_PERIOD_MS}) so the
+ * server can resync, for empty carts, and whenever lines cannot be matched by product id. The
+ * tracker must be {@link #reset()} whenever a reported cart may not have reached the server.
+ */
+final class CartTracker {
+
+    @VisibleForTesting
+    static final int DEFAULT_SNAPSHOT_INTERVAL = 10;
+    @VisibleForTesting
+    static final long DEFAULT_SNAPSHOT_PERIOD_MS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Cart lines that differ from the previously reported cart.
+     */
+    static final class Delta {
+
+        private final List<ButtonProductCompatible> added;
+        private final List<ButtonProductCompatible> changed;
+        private final List<String> removed;
+
+        Delta(List<ButtonProductCompatible> added, List<ButtonProductCompatible> changed,
+                List<String> removed) {
+            this.added = added;
+            this.changed = changed;
+            this.removed = removed;
+        }
+
+        List<ButtonProductCompatible> getAdded() {
+            return added;
+        }
+
+        List<ButtonProductCompatible> getChanged() {
+            return changed;
+        }
+
+        /**
+         * @return the ids of the products no longer in the cart
+         */
+        List<String> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return true if the cart is unchanged since the last report
+         */
+        boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private final TimeProvider timeProvider;
+    private final int snapshotInterval;
+    private final long snapshotPeriodMs;
+
+    /** Product id to content fingerprint of the last reported cart. */
+    @Nullable
+    private Map<String, Long> lastCart;
+    private int reportsSinceSnapshot;
+    private long lastSnapshotTime;
+
+    CartTracker(TimeProvider timeProvider) {
+        this(timeProvider, DEFAULT_SNAPSHOT_INTERVAL, DEFAULT_SNAPSHOT_PERIOD_MS);
+    }
+
+    @VisibleForTesting
+    CartTracker(TimeProvider timeProvider, int snapshotInterval, long snapshotPeriodMs) {
+        this.timeProvider = timeProvider;
+        this.snapshotInterval = snapshotInterval;
+        this.snapshotPeriodMs = snapshotPeriodMs;
+    }
+
+    /**
+     * Records the cart and computes what changed since the last report.
+     *
+     * @param cart the full current cart
+     * @return the changes since the last report, which are empty if the cart is unchanged, or
+     * null if the full cart should be sent
+     */
+    @Nullable
+    synchronized Delta track(List<ButtonProductCompatible> cart) {
+        Map<String, Long> currentCart = fingerprint(cart);
+        long now = timeProvider.getTimeInMs();
+        Map<String, Long> previousCart = lastCart;
+        lastCart = currentCart;
+
+        if (previousCart == null
+                || currentCart == null
+                || currentCart.isEmpty()
+                || reportsSinceSnapshot + 1 >= snapshotInterval
+                || now - lastSnapshotTime >= snapshotPeriodMs) {
+            reportsSinceSnapshot = 0;
+            lastSnapshotTime = now;
+            return null;
+        }
+
+        List<ButtonProductCompatible> added = new ArrayList<>();
+        List<ButtonProductCompatible> changed = new ArrayList<>();
+        for (ButtonProductCompatible product : cart) {
+            Long previous = previousCart.get(product.getId());
+            if (previous == null) {
+                added.add(product);
+            } else if (!previous.equals(currentCart.get(product.getId()))) {
+                changed.add(product);
+            }
+        }
+
+        List<String> removed = new ArrayList<>();
+        for (String id : previousCart.keySet()) {
+            if (!currentCart.containsKey(id)) {
+                removed.add(id);
+            }
+        }
+
+        Delta delta =
+                new Delta(unmodifiable(added), unmodifiable(changed), unmodifiable(removed));
+        if (!delta.isEmpty()) {
+            reportsSinceSnapshot++;
+        }
+        return delta;
+    }
+
+    /**
+     * Forgets the last reported cart so the next report is a full snapshot.
+     */
+    synchronized void reset() {
+        lastCart = null;
+        reportsSinceSnapshot = 0;
+    }
+
+    /**
+     * @return product id to fingerprint, or null if a line has no id or a duplicate id
+     */
+    @Nullable
+    private static Map<String, Long> fingerprint(List<ButtonProductCompatible> cart) {
+        Map<String, Long> fingerprints = new LinkedHashMap<>(cart.size() * 2);
+        for (ButtonProductCompatible product : cart) {
+            String id = product.getId();
+            if (id == null || fingerprints.containsKey(id)) {
+                return null;
+            }
+            fingerprints.put(id, ProductFragmentCache.fingerprint(product));
+        }
+        return fingerprints;
+    }
+
+    private static <T> List<T> unmodifiable(List<T> list) {
+        return list.isEmpty() ? Collections.<T>emptyList() : Collections.unmodifiableList(list);
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * CborStreamWriter.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Minimal forward-only CBOR (RFC 8949) encoder that writes straight to an
+ * {@link OutputStream}.
+ *
+ * Objects and arrays use indefinite-length encoding so nothing has to be counted or buffered
+ * up front. Integers use the shortest header, doubles are always 64-bit floats, and member
+ * names are text strings, so a body decodes to the same structure as its JSON counterpart.
+ */
+final class CborStreamWriter implements BodyWriter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1 << 5;
+    private static final int MAJOR_TEXT = 3 << 5;
+    private static final int MAJOR_ARRAY = 4 << 5;
+    private static final int MAJOR_MAP = 5 << 5;
+
+    private static final int INDEFINITE_LENGTH = 31;
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int FLOAT_64 = 0xfb;
+    private static final int BREAK = 0xff;
+
+    private static final int OBJECT = 1;
+    private static final int ARRAY = 2;
+
+    private final OutputStream out;
+    private final byte[] scratch = new byte[9];
+    private int[] stack = new int[8];
+    private int stackSize = 0;
+    @Nullable
+    private String deferredName;
+
+    CborStreamWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public CborStreamWriter beginObject() throws IOException {
+        beforeValue();
+        out.write(MAJOR_MAP | INDEFINITE_LENGTH);
+        push(OBJECT);
+        return this;
+    }
+
+    @Override
+    public CborStreamWriter endObject() throws IOException {
+        if (deferredName != null) {
+            throw new IllegalStateException("Dangling name: " + deferredName);
+        }
+        return close(OBJECT);
+    }
+
+    @Override
+    public CborStreamWriter beginArray() throws IOException {
+        beforeValue();
+        out.write(MAJOR_ARRAY | INDEFINITE_LENGTH);
+        push(ARRAY);
+        return this;
+    }
+
+    @Override
+    public CborStreamWriter endArray() throws IOException {
+        return close(ARRAY);
+    }
+
+    @Override
+    public CborStreamWriter name(String name) {
+        if (deferredName != null || peek() != OBJECT) {
+            throw new IllegalStateException("Nesting problem");
+        }
+        deferredName = name;
+        return this;
+    }
+
+    @Override
+    public CborStreamWriter value(@Nullable String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        text(value);
+        return this;
+    }
+
+    @Override
+    public CborStreamWriter value(long value) throws IOException {
+        beforeValue();
+        if (value >= 0) {
+            header(MAJOR_UNSIGNED, value);
+        } else {
+            // -1 - value cannot overflow, even for Long.MIN_VALUE
+            header(MAJOR_NEGATIVE, -1 - value);
+        }
+        return this;
+    }
+
+    @Override
+    public CborStreamWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        beforeValue();
+        long bits = Double.doubleToLongBits(value);
+        scratch[0] = (byte) FLOAT_64;
+        for (int i = 0; i < 8; i++) {
+            scratch[8 - i] = (byte) (bits >>> (i * 8));
+        }
+        out.write(scratch, 0, 9);
+        return this;
+    }
+
+    @Override
+    public CborStreamWriter value(@Nullable Number value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return value(value.doubleValue());
+        }
+        return value(value.longValue());
+    }
+
+    @Override
+    public CborStreamWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? TRUE : FALSE);
+        return this;
+    }
+
+    @Override
+    public CborStreamWriter nullValue() throws IOException {
+        if (deferredName != null) {
+            deferredName = null;
+            return this;
+        }
+        beforeValue();
+        out.write(NULL);
+        return this;
+    }
+
+    @Override
+    public boolean acceptsRawJson() {
+        return false;
+    }
+
+    @Override
+    public CborStreamWriter rawValue(String json) {
+        throw new UnsupportedOperationException("CBOR output cannot contain raw JSON");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void beforeValue() throws IOException {
+        if (stackSize == 0 || stack[stackSize - 1] == ARRAY) {
+            return;
+        }
+
+        if (deferredName == null) {
+            throw new IllegalStateException("Missing name for object member");
+        }
+        text(deferredName);
+        deferredName = null;
+    }
+
+    private CborStreamWriter close(int context) throws IOException {
+        if (peek() != context) {
+            throw new IllegalStateException("Nesting problem");
+        }
+        stackSize--;
+        out.write(BREAK);
+        return this;
+    }
+
+    private void push(int context) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = context;
+    }
+
+    private int peek() {
+        if (stackSize == 0) {
+            throw new IllegalStateException("CborStreamWriter is not inside an object or array");
+        }
+        return stack[stackSize - 1];
+    }
+
+    private void text(String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        header(MAJOR_TEXT, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a major type with its argument in the shortest form.
+     *
+     * @param argument an unsigned value
+     */
+    private void header(int majorType, long argument) throws IOException {
+        int length;
+        if (argument >= 0 && argument < 24) {
+            out.write(majorType | (int) argument);
+            return;
+        } else if (argument >= 0 && argument <= 0xff) {
+            scratch[0] = (byte) (majorType | 24);
+            length = 1;
+        } else if (argument >= 0 && argument <= 0xffff) {
+            scratch[0] = (byte) (majorType | 25);
+            length = 2;
+        } else if (argument >= 0 && argument <= 0xffffffffL) {
+            scratch[0] = (byte) (majorType | 26);
+            length = 4;
+        } else {
+            scratch[0] = (byte) (majorType | 27);
+            length = 8;
+        }
+
+        for (int i = 0; i < length; i++) {
+            scratch[length - i] = (byte) (argument >>> (i * 8));
+        }
+        out.write(scratch, 0, length + 1);
+    }
+}
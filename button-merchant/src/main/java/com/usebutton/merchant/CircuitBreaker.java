@@ -0,0 +1,145 @@
+/*
+ * CircuitBreaker.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks whether the Button API is reachable so requests can fail fast while it is not.
+ *
+ * The breaker starts {@link State#CLOSED}. After {@link #FAILURE_THRESHOLD} consecutive
+ * connection failures it opens and rejects requests until the open delay has passed. It then
+ * lets a single probe request through ({@link State#HALF_OPEN}): if the probe reaches the API
+ * the breaker closes, otherwise it opens again with the delay doubled, up to
+ * {@link #MAX_OPEN_DELAY}.
+ */
+final class CircuitBreaker {
+
+    private static final TimeProvider WALL_CLOCK_PROVIDER = new TimeProvider() {
+        @Override
+        public long getTimeInMs() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    @VisibleForTesting
+    static final int FAILURE_THRESHOLD = 3;
+
+    @VisibleForTesting
+    static final long INITIAL_OPEN_DELAY = TimeUnit.SECONDS.toMillis(30);
+
+    @VisibleForTesting
+    static final long MAX_OPEN_DELAY = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Breaker states.
+     */
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final TimeProvider timeProvider;
+    private State state = State.CLOSED;
+    private int failureCount;
+    private long openDelay = INITIAL_OPEN_DELAY;
+    private long openedAt;
+
+    CircuitBreaker() {
+        this(WALL_CLOCK_PROVIDER);
+    }
+
+    @VisibleForTesting
+    CircuitBreaker(TimeProvider timeProvider) {
+        this.timeProvider = timeProvider;
+    }
+
+    /**
+     * @return true if a request may be sent, false if it should fail fast
+     */
+    synchronized boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+
+        // While half-open, a probe that never reported back is replaced after the same delay
+        long now = timeProvider.getTimeInMs();
+        if (now - openedAt < openDelay) {
+            return false;
+        }
+
+        state = State.HALF_OPEN;
+        openedAt = now;
+        return true;
+    }
+
+    /**
+     * Records a request that reached the API, whatever its response status.
+     */
+    synchronized void recordSuccess() {
+        state = State.CLOSED;
+        failureCount = 0;
+        openDelay = INITIAL_OPEN_DELAY;
+    }
+
+    /**
+     * Records a request that could not reach the API.
+     */
+    synchronized void recordFailure() {
+        if (state == State.HALF_OPEN) {
+            openDelay = Math.min(openDelay * 2, MAX_OPEN_DELAY);
+            open();
+        } else if (state == State.CLOSED && ++failureCount >= FAILURE_THRESHOLD) {
+            open();
+        }
+    }
+
+    /**
+     * Closes the breaker, e.g. once the device regains connectivity and earlier failures no
+     * longer say anything about the API.
+     */
+    synchronized void reset() {
+        recordSuccess();
+    }
+
+    /**
+     * @return true if requests are currently being rejected
+     */
+    synchronized boolean isOpen() {
+        return state != State.CLOSED && timeProvider.getTimeInMs() - openedAt < openDelay;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = timeProvider.getTimeInMs();
+    }
+}
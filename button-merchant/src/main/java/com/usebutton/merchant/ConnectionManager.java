@@ -40,4 +40,32 @@ interface ConnectionManager {
     String getApplicationId();
 
     NetworkResponse executeRequest(ApiRequest request) throws ButtonNetworkException;
+
+    /**
+     * Executes an idempotent request, sending {@code hedge} on another connection if no response
+     * has arrived after {@code hedgeDelayMs}. The first response is returned and the other
+     * request is cancelled.
+     *
+     * @param hedge a copy of {@code request}; the two must not share a body
+     */
+    NetworkResponse executeHedgedRequest(ApiRequest request, ApiRequest hedge, long hedgeDelayMs)
+            throws ButtonNetworkException;
+
+    /**
+     * Adds an interceptor that runs, in the order added, around every request after those
+     * already added. Built-in interceptors are added first.
+     */
+    void addInterceptor(Interceptor interceptor);
+
+    /**
+     * @return true if requests are failing fast because the Button API recently could not be
+     * reached
+     */
+    boolean isCircuitOpen();
+
+    /**
+     * Resolves the API host and completes a TLS handshake, leaving a pooled connection for the
+     * next request. Failures are ignored.
+     */
+    void warmUp();
 }
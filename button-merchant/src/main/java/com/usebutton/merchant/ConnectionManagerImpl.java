@@ -31,21 +31,40 @@ import androidx.annotation.VisibleForTesting;
 import android.util.Log;
 
 import com.usebutton.merchant.exception.ButtonNetworkException;
+import com.usebutton.merchant.exception.CircuitOpenException;
 import com.usebutton.merchant.exception.HttpStatusException;
 import com.usebutton.merchant.exception.NetworkNotFoundException;
+import com.usebutton.merchant.module.Features;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -60,10 +79,12 @@ final class ConnectionManagerImpl implements ConnectionManager {
 
     private static ConnectionManager instance;
 
-    private static final int CONNECT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(5);
-    private static final int READ_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(15);
     private static final String CONTENT_TYPE_JSON = "application/json";
+    private static final String CONTENT_TYPE_CBOR = "application/cbor";
     private static final String ENCODING = "UTF-8";
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final String HTTP_DATE = "EEE, dd MMM yyyy HH:mm:ss zzz";
+    private static final String WARM_UP_PATH = "/";
 
     private String applicationId;
 
@@ -71,11 +92,36 @@ final class ConnectionManagerImpl implements ConnectionManager {
     String baseUrl;
     private final String userAgent;
     private final PersistenceManager persistenceManager;
+    private final Features features;
+    private final RetryBudget retryBudget;
+    private final CircuitBreaker circuitBreaker;
+    private final LatencyEstimator latencyEstimator;
+
+    /**
+     * Every interceptor in order, ending with the one that sends requests over the network.
+     * Replaced as a whole when an interceptor is added, so requests share it without copying.
+     */
+    private volatile List<Interceptor> interceptors;
+
+    private final MetricsRegistry metrics;
+    @Nullable
+    private final ConnectivityMonitor connectivityMonitor;
+    private final StripedCounter bytesSent;
+    private final StripedCounter bytesReceived;
+
+    /**
+     * Paths with a first-byte estimate gauge registered.
+     */
+    private final Set<String> firstByteGaugePaths =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile boolean cborRejected;
 
     static ConnectionManager getInstance(String baseUrl, String userAgent,
-            PersistenceManager persistenceManager) {
+            PersistenceManager persistenceManager, ConnectivityMonitor connectivityMonitor) {
         if (instance == null) {
-            instance = new ConnectionManagerImpl(baseUrl, userAgent, persistenceManager);
+            instance = new ConnectionManagerImpl(baseUrl, userAgent, persistenceManager,
+                    FeaturesImpl.getInstance(), RetryBudget.getInstance(), new CircuitBreaker(),
+                    new LatencyEstimator(), MetricsRegistry.getInstance(), connectivityMonitor);
         }
 
         return instance;
@@ -83,9 +129,97 @@ final class ConnectionManagerImpl implements ConnectionManager {
 
     @VisibleForTesting
     ConnectionManagerImpl(String baseUrl, String userAgent, PersistenceManager persistenceManager) {
+        this(baseUrl, userAgent, persistenceManager, FeaturesImpl.getInstance());
+    }
+
+    @VisibleForTesting
+    ConnectionManagerImpl(String baseUrl, String userAgent, PersistenceManager persistenceManager,
+            Features features) {
+        this(baseUrl, userAgent, persistenceManager, features, RetryBudget.getInstance());
+    }
+
+    @VisibleForTesting
+    ConnectionManagerImpl(String baseUrl, String userAgent, PersistenceManager persistenceManager,
+            Features features, RetryBudget retryBudget) {
+        this(baseUrl, userAgent, persistenceManager, features, retryBudget, new CircuitBreaker());
+    }
+
+    @VisibleForTesting
+    ConnectionManagerImpl(String baseUrl, String userAgent, PersistenceManager persistenceManager,
+            Features features, RetryBudget retryBudget, CircuitBreaker circuitBreaker) {
+        this(baseUrl, userAgent, persistenceManager, features, retryBudget, circuitBreaker,
+                new LatencyEstimator());
+    }
+
+    @VisibleForTesting
+    ConnectionManagerImpl(String baseUrl, String userAgent, PersistenceManager persistenceManager,
+            Features features, RetryBudget retryBudget, CircuitBreaker circuitBreaker,
+            LatencyEstimator latencyEstimator) {
+        this(baseUrl, userAgent, persistenceManager, features, retryBudget, circuitBreaker,
+                latencyEstimator, MetricsRegistry.getInstance());
+    }
+
+    @VisibleForTesting
+    ConnectionManagerImpl(String baseUrl, String userAgent, PersistenceManager persistenceManager,
+            Features features, RetryBudget retryBudget, CircuitBreaker circuitBreaker,
+            LatencyEstimator latencyEstimator, MetricsRegistry metrics) {
+        this(baseUrl, userAgent, persistenceManager, features, retryBudget, circuitBreaker,
+                latencyEstimator, metrics, null);
+    }
+
+    /**
+     * @param connectivityMonitor used to tell an unreachable API from a device that is offline,
+     * or null to treat every connection failure as the API being unreachable
+     */
+    @VisibleForTesting
+    ConnectionManagerImpl(String baseUrl, String userAgent, PersistenceManager persistenceManager,
+            Features features, RetryBudget retryBudget, final CircuitBreaker circuitBreaker,
+            final LatencyEstimator latencyEstimator, MetricsRegistry metrics,
+            @Nullable ConnectivityMonitor connectivityMonitor) {
         this.baseUrl = baseUrl;
         this.userAgent = userAgent;
         this.persistenceManager = persistenceManager;
+        this.features = features;
+        this.retryBudget = retryBudget;
+        this.circuitBreaker = circuitBreaker;
+        this.latencyEstimator = latencyEstimator;
+        this.metrics = metrics;
+        this.connectivityMonitor = connectivityMonitor;
+        this.bytesSent = metrics.counter(MetricsSnapshot.COUNTER_BYTES_SENT);
+        this.bytesReceived = metrics.counter(MetricsSnapshot.COUNTER_BYTES_RECEIVED);
+        metrics.registerGauge(MetricsSnapshot.GAUGE_CONNECT_TIME_ESTIMATE,
+                new MetricsRegistry.Gauge() {
+                    @Override
+                    public long getValue() {
+                        return latencyEstimator.getConnectEstimate();
+                    }
+                });
+        interceptors = Collections.<Interceptor>singletonList(new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) throws ButtonNetworkException {
+                return executeNetworkRequest(chain.request(), null);
+            }
+        });
+        // Metrics runs outermost, so its latencies include the session interceptor
+        addInterceptor(new MetricsInterceptor(metrics));
+        addInterceptor(new SessionInterceptor(persistenceManager));
+
+        if (connectivityMonitor != null) {
+            connectivityMonitor.addListener(new ConnectivityMonitor.Listener() {
+                @Override
+                public void onConnectivityChanged(boolean connected) {
+                    if (connected) {
+                        // Failures while offline said nothing about the API
+                        circuitBreaker.reset();
+                    }
+                }
+
+                @Override
+                public void onNetworkActive() {
+                    // ignored
+                }
+            });
+        }
     }
 
     @Override
@@ -110,44 +244,181 @@ final class ConnectionManagerImpl implements ConnectionManager {
     @Override
     public NetworkResponse executeRequest(@NonNull ApiRequest request)
             throws ButtonNetworkException {
+        return executeRequest(request, null);
+    }
+
+    @Override
+    public NetworkResponse executeHedgedRequest(@NonNull ApiRequest request,
+            @NonNull final ApiRequest hedge, final long hedgeDelayMs)
+            throws ButtonNetworkException {
+        final Cancellation requestCancellation = new Cancellation();
+        final Cancellation hedgeCancellation = new Cancellation();
+        final HedgeResult hedgeResult = new HedgeResult();
+        ScheduledExecutorService hedgeExecutor = Executors.newSingleThreadScheduledExecutor();
+        Future<?> scheduledHedge = hedgeExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                Log.d(TAG, String.format(Locale.US, "No response after %dms, hedging request to %s",
+                        hedgeDelayMs, hedge.getPath()));
+                try {
+                    hedgeResult.set(executeRequest(hedge, hedgeCancellation), null);
+                    requestCancellation.cancel();
+                } catch (ButtonNetworkException e) {
+                    hedgeResult.set(null, e);
+                } catch (RuntimeException e) {
+                    hedgeResult.set(null, new ButtonNetworkException(e));
+                    throw e;
+                }
+            }
+        }, hedgeDelayMs, TimeUnit.MILLISECONDS);
+
+        try {
+            NetworkResponse response = executeRequest(request, requestCancellation);
+            scheduledHedge.cancel(false);
+            hedgeCancellation.cancel();
+            return response;
+        } catch (ButtonNetworkException e) {
+            // An error status is a response too, so only wait on a hedge that was sent
+            if (scheduledHedge.cancel(false) || e instanceof HttpStatusException) {
+                hedgeCancellation.cancel();
+                throw e;
+            }
+
+            return hedgeResult.await();
+        } finally {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public synchronized void addInterceptor(Interceptor interceptor) {
+        List<Interceptor> updated = new ArrayList<>(interceptors);
+        updated.add(updated.size() - 1, interceptor);
+        interceptors = Collections.unmodifiableList(updated);
+    }
+
+    private NetworkResponse executeRequest(@NonNull ApiRequest request,
+            @Nullable final Cancellation cancellation) throws ButtonNetworkException {
+        List<Interceptor> chainInterceptors = interceptors;
+        if (cancellation != null) {
+            // Hedged requests are sent by a network interceptor that can cancel them
+            chainInterceptors = new ArrayList<>(chainInterceptors);
+            chainInterceptors.set(chainInterceptors.size() - 1, new Interceptor() {
+                @Override
+                public NetworkResponse intercept(Chain chain) throws ButtonNetworkException {
+                    return executeNetworkRequest(chain.request(), cancellation);
+                }
+            });
+        }
+        return new InterceptorChain(chainInterceptors, 0, request).proceed(request);
+    }
+
+    private NetworkResponse executeNetworkRequest(@NonNull ApiRequest request,
+            @Nullable Cancellation cancellation) throws ButtonNetworkException {
+        if (!circuitBreaker.allowRequest()) {
+            Log.d(TAG, "Button API unreachable, skipping request to " + request.getPath());
+            throw new CircuitOpenException("Button API unreachable");
+        }
+
         HttpURLConnection urlConnection = null;
+        boolean connected = false;
+        boolean reachable = false;
 
         try {
             urlConnection = getConnection(request.getPath());
+            if (cancellation != null && !cancellation.attach(urlConnection)) {
+                throw new IOException("Request cancelled");
+            }
             urlConnection.setRequestMethod(request.getRequestMethod().getValue());
-            urlConnection.setRequestProperty("Content-Type", CONTENT_TYPE_JSON);
+
+            ApiRequest.StreamingBody streamingBody = request.getStreamingBody();
+            boolean cbor = streamingBody != null && request.isCborAllowed()
+                    && features.getCborEncoding() && !cborRejected;
+            if (cbor) {
+                urlConnection.setRequestProperty("Content-Type", CONTENT_TYPE_CBOR);
+                urlConnection.setRequestProperty("Accept", CONTENT_TYPE_JSON);
+            } else {
+                urlConnection.setRequestProperty("Content-Type", CONTENT_TYPE_JSON);
+            }
 
             Map<String, String> headers = request.getHeaders();
             for (Map.Entry<String, String> entry : headers.entrySet()) {
                 urlConnection.setRequestProperty(entry.getKey(), entry.getValue());
             }
 
-            JSONObject body = request.getBody();
-
-            // Append necessary information to each request
-            body.put("application_id", applicationId);
-            body.put("session_id", persistenceManager.getSessionId());
-
-            OutputStreamWriter writer = new OutputStreamWriter(urlConnection.getOutputStream(),
-                    ENCODING);
-            writer.write(body.toString());
-            writer.close();
+            if (streamingBody != null && request.isChunked()) {
+                // Without a streaming mode the connection buffers the entire body before sending
+                urlConnection.setChunkedStreamingMode(0);
+            }
+            connect(urlConnection);
+            connected = true;
+
+            CountingOutputStream out = new CountingOutputStream(urlConnection.getOutputStream());
+            if (streamingBody != null) {
+                writeStreamingBody(out, streamingBody, cbor);
+            } else {
+                JSONObject body = request.getBody();
+
+                // Append necessary information to each request
+                body.put("application_id", applicationId);
+                body.put("session_id", persistenceManager.getSessionId());
+
+                OutputStreamWriter writer = new OutputStreamWriter(out, ENCODING);
+                writer.write(body.toString());
+                writer.close();
+                Log.d(TAG, "Request Body: " + body);
+            }
+            bytesSent.add(out.count);
+            metrics.requestSizes().record(out.count);
 
+            long sentAt = System.nanoTime();
             int responseCode = urlConnection.getResponseCode();
-            Log.d(TAG, "Request Body: " + body);
+            latencyEstimator.recordFirstByte(request.getPath(), elapsedMs(sentAt));
+            registerFirstByteGauge(request.getPath());
             Log.d(TAG, "Response Code: " + responseCode);
+            reachable = true;
+            circuitBreaker.recordSuccess();
+
+            if (cbor && responseCode == HttpURLConnection.HTTP_UNSUPPORTED_TYPE) {
+                // Fall back to JSON for the rest of the session
+                Log.d(TAG, "CBOR body rejected, retrying as JSON");
+                cborRejected = true;
+                return executeNetworkRequest(request, cancellation);
+            }
 
             if (responseCode >= 400) {
                 String message = "Unsuccessful Request. HTTP StatusCode: " + responseCode;
                 Log.e(TAG, message);
-                throw new HttpStatusException(message, responseCode);
+                long retryAfter = 0;
+                if (responseCode == HTTP_TOO_MANY_REQUESTS
+                        || responseCode == HttpURLConnection.HTTP_UNAVAILABLE) {
+                    retryAfter = parseRetryAfter(urlConnection.getHeaderField("Retry-After"),
+                            System.currentTimeMillis());
+                }
+                throw new HttpStatusException(message, responseCode, retryAfter);
             }
 
-            JSONObject responseJson = readResponseBody(urlConnection);
-            refreshSessionIfAvailable(responseJson);
-            return new NetworkResponse(responseCode, responseJson);
+            retryBudget.recordSuccess();
+
+            CountingInputStream in = new CountingInputStream(urlConnection.getInputStream());
+            String responseBody = readResponseBody(in);
+            bytesReceived.add(in.count);
+            return new NetworkResponse(responseCode, new JSONObject(responseBody));
         } catch (IOException e) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                // Another request won, this one says nothing about the network
+                Log.d(TAG, "Request to " + request.getPath() + " cancelled");
+                throw new NetworkNotFoundException(e);
+            }
+
             Log.e(TAG, "Error has occurred", e);
+            if (e instanceof SocketTimeoutException) {
+                latencyEstimator.recordTimeout(request.getPath(), connected);
+                registerFirstByteGauge(request.getPath());
+            }
+            if (!reachable && isDeviceConnected()) {
+                circuitBreaker.recordFailure();
+            }
             throw new NetworkNotFoundException(e);
         } catch (JSONException e) {
             Log.e(TAG, "Error has occurred", e);
@@ -159,13 +430,75 @@ final class ConnectionManagerImpl implements ConnectionManager {
         }
     }
 
+    @Override
+    public boolean isCircuitOpen() {
+        return circuitBreaker.isOpen();
+    }
+
+    /**
+     * @return false only if the device is known to be offline, in which case a connection
+     * failure says nothing about the API
+     */
+    private boolean isDeviceConnected() {
+        return connectivityMonitor == null || connectivityMonitor.isConnected();
+    }
+
+    @Override
+    public void warmUp() {
+        if (circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+            return;
+        }
+
+        HttpURLConnection urlConnection = null;
+        try {
+            urlConnection = getConnection(WARM_UP_PATH);
+            urlConnection.setRequestMethod("HEAD");
+            urlConnection.setDoOutput(false);
+            connect(urlConnection);
+            Log.d(TAG, "Warm-up Response Code: " + urlConnection.getResponseCode());
+        } catch (IOException e) {
+            Log.d(TAG, "Warm-up failed", e);
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * @param retryAfter {@code Retry-After} header value, in delta-seconds or as an HTTP-date
+     * @return the requested delay in milliseconds, or 0 if absent or malformed
+     */
+    @VisibleForTesting
+    static long parseRetryAfter(@Nullable String retryAfter, long now) {
+        if (retryAfter == null) {
+            return 0;
+        }
+
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException ignored) {
+            // Not delta-seconds, try an HTTP-date
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(value).getTime() - now);
+        } catch (ParseException e) {
+            Log.d(TAG, "Ignoring malformed Retry-After: " + retryAfter);
+            return 0;
+        }
+    }
+
     private HttpURLConnection getConnection(String path)
             throws IOException {
         URL url = new URL(baseUrl + path);
         HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
 
-        urlConnection.setConnectTimeout(CONNECT_TIMEOUT);
-        urlConnection.setReadTimeout(READ_TIMEOUT);
+        urlConnection.setConnectTimeout(latencyEstimator.getConnectTimeout());
+        urlConnection.setReadTimeout(latencyEstimator.getReadTimeout(path));
         urlConnection.setRequestProperty("User-Agent", userAgent);
         urlConnection.setRequestProperty("Accept", CONTENT_TYPE_JSON);
         urlConnection.setDoOutput(true);
@@ -173,40 +506,191 @@ final class ConnectionManagerImpl implements ConnectionManager {
         return urlConnection;
     }
 
-    private static JSONObject readResponseBody(HttpURLConnection connection)
-            throws IOException, JSONException {
-        InputStream in = new BufferedInputStream(connection.getInputStream());
-        BufferedReader reader = new BufferedReader(new InputStreamReader(in, ENCODING));
+    /**
+     * Opens the connection, recording how long it took. Pooled connections open immediately.
+     */
+    private void connect(HttpURLConnection urlConnection) throws IOException {
+        long start = System.nanoTime();
+        urlConnection.connect();
+        latencyEstimator.recordConnect(elapsedMs(start));
+    }
+
+    /**
+     * Exposes the first-byte estimate for {@code path} in the metrics, once per path.
+     */
+    private void registerFirstByteGauge(final String path) {
+        if (!firstByteGaugePaths.add(path)) {
+            return;
+        }
+
+        metrics.registerGauge(MetricsSnapshot.GAUGE_FIRST_BYTE_TIME_ESTIMATE_PREFIX + path,
+                new MetricsRegistry.Gauge() {
+                    @Override
+                    public long getValue() {
+                        return latencyEstimator.getFirstByteEstimate(path);
+                    }
+                });
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private void writeStreamingBody(OutputStream out, ApiRequest.StreamingBody streamingBody,
+            boolean cbor) throws IOException {
+        BodyWriter writer = cbor
+                ? new CborStreamWriter(new BufferedOutputStream(out, Utf8Sink.DEFAULT_BUFFER_SIZE))
+                : new JsonStreamWriter(new Utf8Sink(out));
+        try {
+            writer.beginObject();
+            streamingBody.writeMembers(writer);
+
+            // Append necessary information to each request
+            writer.name("application_id").value(applicationId);
+            writer.name("session_id").value(persistenceManager.getSessionId());
+            writer.endObject();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String readResponseBody(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new BufferedInputStream(in), ENCODING));
         StringBuilder response = new StringBuilder();
         String line;
         while ((line = reader.readLine()) != null) {
             response.append(line);
         }
         reader.close();
-        return new JSONObject(response.toString());
+        return response.toString();
     }
 
     /**
-     * Refreshes the current session if provided in the network response.
-     * If a null session is provided, the Library data is cleared.
-     *
-     * @param responseBody the JSON body of the network response
+     * Lets another thread abort a request by disconnecting its connection, which fails any
+     * blocked read or write.
      */
-    private void refreshSessionIfAvailable(@Nullable JSONObject responseBody) {
-        if (responseBody == null) return;
+    private static final class Cancellation {
+
+        @Nullable
+        private HttpURLConnection urlConnection;
+        private boolean cancelled;
+
+        /**
+         * @return false if the request was already cancelled
+         */
+        synchronized boolean attach(HttpURLConnection urlConnection) {
+            this.urlConnection = urlConnection;
+            return !cancelled;
+        }
 
-        try {
-            JSONObject metaJson = responseBody.getJSONObject("meta");
-            if (metaJson.has("session_id")) {
-                String sessionId = metaJson.optString("session_id", null);
-                if (sessionId != null) {
-                    persistenceManager.setSessionId(sessionId);
-                } else {
-                    persistenceManager.clear();
+        synchronized void cancel() {
+            cancelled = true;
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Outcome of a hedge request, handed from the hedge thread to the caller.
+     */
+    private static final class HedgeResult {
+
+        @Nullable
+        private NetworkResponse response;
+        @Nullable
+        private ButtonNetworkException exception;
+        private boolean done;
+
+        synchronized void set(@Nullable NetworkResponse response,
+                @Nullable ButtonNetworkException exception) {
+            this.response = response;
+            this.exception = exception;
+            done = true;
+            notifyAll();
+        }
+
+        synchronized NetworkResponse await() throws ButtonNetworkException {
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ButtonNetworkException(e);
                 }
             }
-        } catch (JSONException e) {
-            Log.e(TAG, "Error parsing session data from response body", e);
+
+            if (exception != null) {
+                throw exception;
+            }
+
+            return response;
+        }
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
         }
     }
 }
@@ -0,0 +1,56 @@
+/*
+ * ConnectivityMonitor.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+/**
+ * Reports whether the device currently has network connectivity.
+ */
+interface ConnectivityMonitor {
+
+    boolean isConnected();
+
+    /**
+     * @return true if the default network is already in a high power state, for instance because
+     * of the host app's own traffic, so a request now costs little extra battery
+     */
+    boolean isNetworkActive();
+
+    /**
+     * Registers a listener notified whenever connectivity is gained or lost, and whenever the
+     * default network becomes active.
+     */
+    void addListener(Listener listener);
+
+    /**
+     * Connectivity callbacks.
+     */
+    interface Listener {
+        void onConnectivityChanged(boolean connected);
+
+        void onNetworkActive();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * ConnectivityMonitorImpl.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.Build;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ConnectivityMonitor} backed by the platform {@link ConnectivityManager}.
+ *
+ * Changes are observed with a default network callback on Android N and above, and with the
+ * connectivity broadcast before that. Network activity is only reported on Lollipop and above;
+ * earlier versions always report the network as active. Once a listener is registered, activity
+ * is tracked from the platform's network active callbacks rather than queried, since
+ * {@link #isNetworkActive()} is called on the caller's thread for every upload. If connectivity
+ * cannot be determined, for instance when the app lacks the network state permission, the
+ * device is assumed to be connected so uploads are never held back indefinitely.
+ */
+final class ConnectivityMonitorImpl implements ConnectivityMonitor {
+
+    private static final String TAG = ConnectivityMonitorImpl.class.getSimpleName();
+
+    /**
+     * How long the default network is considered active after the platform reports it active.
+     * Cellular radios stay in a high power state for several seconds after the last traffic.
+     */
+    @VisibleForTesting
+    static final long NETWORK_ACTIVE_WINDOW = TimeUnit.SECONDS.toMillis(5);
+
+    private static ConnectivityMonitor connectivityMonitor;
+
+    private final Context context;
+    @Nullable
+    private final ConnectivityManager connectivityManager;
+    private final TimeProvider timeProvider;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean connected;
+    private volatile boolean observingNetworkActivity;
+    private volatile long networkActiveUntil;
+    private boolean registered;
+
+    static synchronized ConnectivityMonitor getInstance(Context context) {
+        if (connectivityMonitor == null) {
+            connectivityMonitor = new ConnectivityMonitorImpl(context);
+        }
+
+        return connectivityMonitor;
+    }
+
+    @VisibleForTesting
+    ConnectivityMonitorImpl(Context context) {
+        this(context, TtlReference.REALTIME_MILLIS_PROVIDER);
+    }
+
+    @VisibleForTesting
+    ConnectivityMonitorImpl(Context context, TimeProvider timeProvider) {
+        this.context = context;
+        this.timeProvider = timeProvider;
+        this.connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.connected = queryConnected();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return registered ? connected : queryConnected();
+    }
+
+    @Override
+    public boolean isNetworkActive() {
+        if (observingNetworkActivity) {
+            return timeProvider.getTimeInMs() < networkActiveUntil;
+        }
+
+        return queryNetworkActive();
+    }
+
+    private boolean queryNetworkActive() {
+        if (connectivityManager == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return true;
+        }
+
+        try {
+            return connectivityManager.isDefaultNetworkActive();
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public synchronized void addListener(Listener listener) {
+        listeners.add(listener);
+        if (!registered) {
+            connected = queryConnected();
+            registered = register();
+        }
+    }
+
+    private boolean register() {
+        if (connectivityManager == null) {
+            return false;
+        }
+
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                connectivityManager.registerDefaultNetworkCallback(
+                        new ConnectivityManager.NetworkCallback() {
+                            @Override
+                            public void onAvailable(Network network) {
+                                update(true);
+                            }
+
+                            @Override
+                            public void onLost(Network network) {
+                                update(queryConnected());
+                            }
+                        });
+            } else {
+                context.registerReceiver(new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context context, Intent intent) {
+                        update(queryConnected());
+                    }
+                }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                connectivityManager.addDefaultNetworkActiveListener(
+                        new ConnectivityManager.OnNetworkActiveListener() {
+                            @Override
+                            public void onNetworkActive() {
+                                onDefaultNetworkActive();
+                            }
+                        });
+                if (queryNetworkActive()) {
+                    networkActiveUntil = timeProvider.getTimeInMs() + NETWORK_ACTIVE_WINDOW;
+                }
+                observingNetworkActivity = true;
+            }
+            return true;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to observe connectivity changes", e);
+            return false;
+        }
+    }
+
+    @VisibleForTesting
+    void onDefaultNetworkActive() {
+        networkActiveUntil = timeProvider.getTimeInMs() + NETWORK_ACTIVE_WINDOW;
+        for (Listener listener : listeners) {
+            listener.onNetworkActive();
+        }
+    }
+
+    private void update(boolean connected) {
+        if (this.connected == connected) {
+            return;
+        }
+
+        this.connected = connected;
+        for (Listener listener : listeners) {
+            listener.onConnectivityChanged(connected);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private boolean queryConnected() {
+        if (connectivityManager == null) {
+            return true;
+        }
+
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(
+                        connectivityManager.getActiveNetwork());
+                return capabilities != null
+                        && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+            }
+
+            NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+            return networkInfo != null && networkInfo.isConnected();
+        } catch (SecurityException e) {
+            return true;
+        }
+    }
+}
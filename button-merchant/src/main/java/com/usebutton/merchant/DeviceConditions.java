@@ -0,0 +1,75 @@
+/*
+ * DeviceConditions.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+/**
+ * Device state that affects how eagerly background uploads should be sent.
+ */
+interface DeviceConditions {
+
+    /**
+     * Conditions of a device that is charging on an unmetered network.
+     */
+    DeviceConditions UNCONSTRAINED = new DeviceConditions() {
+        @Override
+        public boolean isBatteryLow() {
+            return false;
+        }
+
+        @Override
+        public boolean isPowerSaveMode() {
+            return false;
+        }
+
+        @Override
+        public boolean isDeviceIdle() {
+            return false;
+        }
+
+        @Override
+        public boolean isNetworkMetered() {
+            return false;
+        }
+    };
+
+    /**
+     * @return true if the battery is low and not charging
+     */
+    boolean isBatteryLow();
+
+    boolean isPowerSaveMode();
+
+    /**
+     * @return true if the device is in Doze
+     */
+    boolean isDeviceIdle();
+
+    /**
+     * @return true if the active network is metered, such as cellular data
+     */
+    boolean isNetworkMetered();
+}
@@ -0,0 +1,195 @@
+/*
+ * DeviceConditionsImpl.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DeviceConditions} read from the platform battery, power and connectivity services.
+ *
+ * Conditions that cannot be read on the running API level, or without a permission, are reported
+ * as unconstrained. Every upload checks these conditions on the caller's thread, so power save,
+ * Doze and metered state are read once and then refreshed by the platform's change broadcasts,
+ * and the battery level is reused for a minute.
+ */
+final class DeviceConditionsImpl implements DeviceConditions {
+
+    @VisibleForTesting
+    static final int LOW_BATTERY_PERCENT = 15;
+
+    private static final long BATTERY_TTL = TimeUnit.MINUTES.toMillis(1);
+
+    private static DeviceConditions deviceConditions;
+
+    private final Context context;
+    @Nullable
+    private final PowerManager powerManager;
+    @Nullable
+    private final ConnectivityManager connectivityManager;
+    @Nullable
+    private TtlReference<Boolean> batteryLow;
+    private volatile boolean powerSaveMode;
+    private volatile boolean deviceIdle;
+    private volatile boolean networkMetered;
+    private final boolean observing;
+
+    static synchronized DeviceConditions getInstance(Context context) {
+        if (deviceConditions == null) {
+            deviceConditions = new DeviceConditionsImpl(context);
+        }
+
+        return deviceConditions;
+    }
+
+    @VisibleForTesting
+    DeviceConditionsImpl(Context context) {
+        this.context = context;
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        this.connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        refresh();
+        this.observing = register();
+    }
+
+    @Override
+    public synchronized boolean isBatteryLow() {
+        Boolean cached = batteryLow != null ? batteryLow.get() : null;
+        if (cached != null) {
+            return cached;
+        }
+
+        boolean low = false;
+        Intent battery = readBatteryStatus();
+        if (battery != null) {
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+            boolean charging = status == BatteryManager.BATTERY_STATUS_CHARGING
+                    || status == BatteryManager.BATTERY_STATUS_FULL;
+            low = !charging && level >= 0 && scale > 0
+                    && level * 100 / scale <= LOW_BATTERY_PERCENT;
+        }
+
+        // The sticky broadcast is an IPC, so reuse the answer for a while
+        batteryLow = new TtlReference<>(low, BATTERY_TTL);
+        return low;
+    }
+
+    @Override
+    public boolean isPowerSaveMode() {
+        return observing ? powerSaveMode : queryPowerSaveMode();
+    }
+
+    @Override
+    public boolean isDeviceIdle() {
+        return observing ? deviceIdle : queryDeviceIdle();
+    }
+
+    @Override
+    public boolean isNetworkMetered() {
+        return observing ? networkMetered : queryNetworkMetered();
+    }
+
+    /**
+     * Reads the power save, Doze and metered state again. Each read is an IPC.
+     */
+    private void refresh() {
+        powerSaveMode = queryPowerSaveMode();
+        deviceIdle = queryDeviceIdle();
+        networkMetered = queryNetworkMetered();
+    }
+
+    /**
+     * @return true if the cached state is kept up to date by change broadcasts
+     */
+    @SuppressWarnings("deprecation")
+    private boolean register() {
+        IntentFilter filter = new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            filter.addAction(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED);
+        }
+
+        try {
+            context.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    refresh();
+                }
+            }, filter);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private boolean queryPowerSaveMode() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && powerManager != null && powerManager.isPowerSaveMode();
+    }
+
+    private boolean queryDeviceIdle() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                && powerManager != null && powerManager.isDeviceIdleMode();
+    }
+
+    private boolean queryNetworkMetered() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                || connectivityManager == null) {
+            return false;
+        }
+
+        try {
+            return connectivityManager.isActiveNetworkMetered();
+        } catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    @Nullable
+    private Intent readBatteryStatus() {
+        try {
+            return context.registerReceiver(null,
+                    new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
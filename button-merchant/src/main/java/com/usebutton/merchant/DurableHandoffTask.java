@@ -0,0 +1,100 @@
+/*
+ * DurableHandoffTask.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+import android.util.Log;
+
+import com.usebutton.merchant.module.DurableDelivery;
+
+/**
+ * Asynchronous task used to hand an upload to a {@link DurableDelivery}.
+ *
+ * If the upload cannot be serialized or is not accepted, the fallback task sends it in-process
+ * instead and notifies its own listener.
+ */
+final class DurableHandoffTask extends Task<Void> {
+
+    private static final String TAG = DurableHandoffTask.class.getSimpleName();
+
+    /**
+     * Serializes the upload on the background thread.
+     */
+    interface RequestWriter {
+        String write() throws Exception;
+    }
+
+    private final DurableDelivery durableDelivery;
+    private final DurableDelivery.Type type;
+    private final String key;
+    private final RequestWriter requestWriter;
+    @Nullable
+    private final Listener handoffListener;
+    private final Task<?> fallback;
+    private boolean accepted;
+
+    /**
+     * @param handoffListener notified once the upload has been handed off
+     */
+    DurableHandoffTask(DurableDelivery durableDelivery, DurableDelivery.Type type, String key,
+            RequestWriter requestWriter, @Nullable Listener handoffListener, Task<?> fallback) {
+        super(null);
+        this.durableDelivery = durableDelivery;
+        this.type = type;
+        this.key = key;
+        this.requestWriter = requestWriter;
+        this.handoffListener = handoffListener;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Runs the fallback, if needed, only after the hand-off finished, so the hand-off duration
+     * does not include the fallback, which records its own.
+     */
+    @Override
+    public void run() {
+        super.run();
+        if (!accepted) {
+            fallback.run();
+        }
+    }
+
+    @Nullable
+    @Override
+    Void execute() {
+        try {
+            accepted = durableDelivery.enqueue(type, key, requestWriter.write());
+        } catch (Exception e) {
+            Log.e(TAG, "Error handing off upload, sending it directly", e);
+        }
+
+        if (accepted && handoffListener != null) {
+            handoffListener.onTaskComplete(null);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * DurableRequests.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Serializes {@link ApiRequest}s handed to a
+ * {@link com.usebutton.merchant.module.DurableDelivery} and restores them for delivery.
+ *
+ * A serialized request is a JSON object holding the path, headers and body members of the
+ * request, along with the application id it was created under. Members that
+ * {@link ConnectionManager} appends to every request are added again when it is delivered.
+ */
+final class DurableRequests {
+
+    private static final String APPLICATION_ID = "application_id";
+    private static final String PATH = "path";
+    private static final String HEADERS = "headers";
+    private static final String BODY = "body";
+
+    private DurableRequests() {
+
+    }
+
+    static String write(ApiRequest request, @Nullable String applicationId) throws IOException {
+        StringWriter out = new StringWriter();
+        JsonStreamWriter writer = new JsonStreamWriter(out);
+        writer.beginObject();
+        writer.name(APPLICATION_ID).value(applicationId);
+        writer.name(PATH).value(request.getPath());
+
+        writer.name(HEADERS).beginObject();
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            writer.name(header.getKey()).value(header.getValue());
+        }
+        writer.endObject();
+
+        writer.name(BODY);
+        ApiRequest.StreamingBody streamingBody = request.getStreamingBody();
+        if (streamingBody != null) {
+            writer.beginObject();
+            streamingBody.writeMembers(writer);
+            writer.endObject();
+        } else {
+            writer.rawValue(request.getBody().toString());
+        }
+
+        writer.endObject();
+        writer.close();
+        return out.toString();
+    }
+
+    static ApiRequest read(JSONObject request) throws JSONException {
+        ApiRequest.Builder builder = new ApiRequest.Builder(ApiRequest.RequestMethod.POST,
+                request.getString(PATH))
+                .setBody(request.getJSONObject(BODY));
+
+        JSONObject headers = request.getJSONObject(HEADERS);
+        Iterator<String> names = headers.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            builder.addHeader(name, headers.getString(name));
+        }
+
+        return builder.build();
+    }
+
+    @Nullable
+    static String readApplicationId(JSONObject request) {
+        return request.isNull(APPLICATION_ID) ? null : request.optString(APPLICATION_ID);
+    }
+}
@@ -26,11 +26,14 @@
 package com.usebutton.merchant;
 
 import androidx.annotation.Nullable;
-import android.util.Log;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -39,8 +42,6 @@ import java.util.UUID;
  */
 class Event {
 
-    private static final String TAG = Event.class.getSimpleName();
-
     /**
      * Button event names.
      */
@@ -102,7 +103,7 @@ class Event {
     private final Source source;
     @Nullable
     private final String sourceToken;
-    private final JSONObject eventBody;
+    private final Map<String, String> properties;
 
     /**
      * Creates a Button sourced event.
@@ -111,7 +112,18 @@ class Event {
      * @param sourceToken Nullable attribution token
      */
     Event(Name name, @Nullable String sourceToken) {
-        this(name.eventName, Source.BUTTON, sourceToken, null);
+        this(name, sourceToken, Collections.<Property, String>emptyMap());
+    }
+
+    /**
+     * Creates a Button sourced event with known properties.
+     *
+     * @param name Known event name
+     * @param sourceToken Nullable attribution token
+     * @param properties Known event properties
+     */
+    Event(Name name, @Nullable String sourceToken, Map<Property, String> properties) {
+        this(name.eventName, Source.BUTTON, sourceToken, toPropertyNames(properties));
     }
 
     /**
@@ -122,34 +134,17 @@ class Event {
      * @param properties Optional properties
      */
     Event(String name, @Nullable String sourceToken, @Nullable Map<String, String> properties) {
-        this(name, Source.CUSTOM, sourceToken, properties);
+        this(name, Source.CUSTOM, sourceToken, snapshot(properties));
     }
 
     private Event(String name, Source source, @Nullable String sourceToken,
-                  @Nullable Map<String, String> properties) {
-        this.id = UUID.randomUUID();
+            Map<String, String> properties) {
+        this.id = EventIdGenerator.getInstance().nextId();
         this.timestamp = System.currentTimeMillis();
         this.name = name;
         this.source = source;
         this.sourceToken = sourceToken;
-        this.eventBody = new JSONObject();
-        if (properties != null) {
-            for (Map.Entry<String, String> prop : properties.entrySet()) {
-                addProperty(prop.getKey(), prop.getValue());
-            }
-        }
-    }
-
-    void addProperty(Property key, @Nullable String value) {
-        this.addProperty(key.propertyName, value);
-    }
-
-    private void addProperty(String key, @Nullable String value) {
-        try {
-            eventBody.put(key, value);
-        } catch (JSONException e) {
-            Log.e(TAG, String.format("Error adding property [%s] to event [%s]", key, name), e);
-        }
+        this.properties = properties;
     }
 
     public UUID getId() {
@@ -173,23 +168,40 @@ class Event {
         return sourceToken;
     }
 
-    public JSONObject getEventBody() {
-        return eventBody;
+    /**
+     * @return an immutable snapshot of the event properties
+     */
+    public Map<String, String> getProperties() {
+        return properties;
     }
 
     JSONObject toJson() throws JSONException {
-        JSONObject json = new JSONObject();
-        json.put("name", name);
-        json.put("source", source.sourceName);
-        json.put("source_token", sourceToken);
-        json.put("time", ButtonUtil.formatTimestamp(timestamp));
-        json.put("uuid", id.toString());
-        json.put("value", eventBody);
-        if (source == Source.CUSTOM && eventBody.length() > 0) {
-            JSONObject value = new JSONObject();
-            value.put("extra", eventBody);
-            json.put("value", value);
+        StringWriter out = new StringWriter();
+        try {
+            ModelSerializer.writeEvent(new JsonStreamWriter(out), this);
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new JSONException(e.getMessage());
+        }
+        return new JSONObject(out.toString());
+    }
+
+    private static Map<String, String> toPropertyNames(Map<Property, String> properties) {
+        if (properties.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> named = new LinkedHashMap<>(properties.size());
+        for (Map.Entry<Property, String> property : properties.entrySet()) {
+            named.put(property.getKey().propertyName, property.getValue());
+        }
+        return Collections.unmodifiableMap(named);
+    }
+
+    private static Map<String, String> snapshot(@Nullable Map<String, String> properties) {
+        if (properties == null || properties.isEmpty()) {
+            return Collections.emptyMap();
         }
-        return json;
+        return Collections.unmodifiableMap(new LinkedHashMap<>(properties));
     }
 }
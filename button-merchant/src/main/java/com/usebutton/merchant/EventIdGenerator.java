@@ -0,0 +1,120 @@
+/*
+ * EventIdGenerator.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.UUID;
+
+/**
+ * Generates time-ordered (UUIDv7 layout) identifiers for {@link Event}s.
+ *
+ * The 48 most significant bits hold the Unix timestamp in milliseconds and the following 12 bits
+ * hold a counter that is randomly seeded every millisecond and incremented for events created
+ * within the same millisecond. The remaining bits are filled from a seeded, non-blocking
+ * pseudo-random source, so creating an event never has to wait on {@code SecureRandom}.
+ *
+ * Identifiers returned by a single generator are strictly increasing, even if the wall clock
+ * moves backwards, which lets the server sort and de-duplicate events cheaply.
+ */
+final class EventIdGenerator {
+
+    private static final TimeProvider WALL_CLOCK_PROVIDER = new TimeProvider() {
+        @Override
+        public long getTimeInMs() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000000000000000L;
+    private static final long RANDOM_MASK = 0x3FFFFFFFFFFFFFFFL;
+    private static final int MAX_SEQUENCE = 0xFFF;
+
+    /**
+     * The per-millisecond counter is seeded within the lower half of its range so that a burst of
+     * events in one millisecond has at least 2048 increments before spilling into the next.
+     */
+    private static final int SEQUENCE_SEED_BITS = 11;
+
+    private static EventIdGenerator eventIdGenerator;
+
+    private final TimeProvider timeProvider;
+    private long state;
+    private long lastTimestamp = -1;
+    private int sequence;
+
+    static synchronized EventIdGenerator getInstance() {
+        if (eventIdGenerator == null) {
+            long seed = System.nanoTime() ^ (System.currentTimeMillis() << 16)
+                    ^ System.identityHashCode(Thread.currentThread());
+            eventIdGenerator = new EventIdGenerator(WALL_CLOCK_PROVIDER, seed);
+        }
+
+        return eventIdGenerator;
+    }
+
+    @VisibleForTesting
+    EventIdGenerator(TimeProvider timeProvider, long seed) {
+        this.timeProvider = timeProvider;
+        this.state = seed;
+    }
+
+    /**
+     * @return a new, unique identifier that sorts after every identifier previously returned by
+     * this generator
+     */
+    synchronized UUID nextId() {
+        long now = timeProvider.getTimeInMs();
+        if (now > lastTimestamp) {
+            lastTimestamp = now;
+            sequence = (int) (nextRandom() >>> (Long.SIZE - SEQUENCE_SEED_BITS));
+        } else if (sequence < MAX_SEQUENCE) {
+            // Same millisecond, or the clock moved backwards: keep the last timestamp
+            sequence++;
+        } else {
+            // Counter exhausted: borrow the next millisecond
+            lastTimestamp++;
+            sequence = 0;
+        }
+
+        long mostSigBits = lastTimestamp << 16 | VERSION | sequence;
+        long leastSigBits = nextRandom() & RANDOM_MASK | VARIANT;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * SplitMix64 step: cheap and well distributed across all 64 bits. Callers must hold the
+     * monitor.
+     */
+    private long nextRandom() {
+        state += 0x9E3779B97F4A7C15L;
+        long z = state;
+        z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+        return z ^ z >>> 31;
+    }
+}
@@ -27,12 +27,29 @@ package com.usebutton.merchant;
 
 import com.usebutton.merchant.module.Features;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Class that handles controls merchant config for features
  */
 final class FeaturesImpl implements Features {
 
+    private static final long DEFAULT_ACTIVITY_SUPPRESSION_WINDOW_MS = 1000;
+    private static final long DEFAULT_ORDER_DEDUPLICATION_WINDOW_MS = TimeUnit.HOURS.toMillis(24);
+    private static final double DEFAULT_ORDER_FALSE_POSITIVE_RATE = 0.0001;
+    private static final double MIN_ORDER_FALSE_POSITIVE_RATE = 0.000001;
+    private static final double MAX_ORDER_FALSE_POSITIVE_RATE = 0.1;
+
     private boolean includesIfa = true;
+    private volatile long activitySuppressionWindowMs = DEFAULT_ACTIVITY_SUPPRESSION_WINDOW_MS;
+    private volatile boolean orderDeduplication = false;
+    private volatile long orderDeduplicationWindowMs = DEFAULT_ORDER_DEDUPLICATION_WINDOW_MS;
+    private volatile double orderFalsePositiveRate = DEFAULT_ORDER_FALSE_POSITIVE_RATE;
+    private volatile boolean cborEncoding = false;
+    private volatile boolean compactEventBatches = false;
+    private volatile boolean batchedActivities = false;
+    private volatile boolean connectionPreWarming = false;
+    private volatile long pendingLinkHedgeDelayMs = 0;
 
     private static Features features;
 
@@ -58,4 +75,144 @@ final class FeaturesImpl implements Features {
     public boolean getIncludesIfa() {
         return includesIfa;
     }
+
+    /**
+     * Drop repeated product activity within this window
+     *
+     * @param windowMs window in milliseconds, 0 to disable
+     */
+    @Override
+    public void setActivitySuppressionWindow(long windowMs) {
+        this.activitySuppressionWindowMs = Math.max(0, windowMs);
+    }
+
+    @Override
+    public long getActivitySuppressionWindow() {
+        return activitySuppressionWindowMs;
+    }
+
+    /**
+     * Skip orders already reported within the deduplication window
+     *
+     * @param orderDeduplication true or false
+     */
+    @Override
+    public void setOrderDeduplication(boolean orderDeduplication) {
+        this.orderDeduplication = orderDeduplication;
+    }
+
+    @Override
+    public boolean getOrderDeduplication() {
+        return orderDeduplication;
+    }
+
+    /**
+     * Remember reported order ids for this window
+     *
+     * @param windowMs window in milliseconds, 0 to disable
+     */
+    @Override
+    public void setOrderDeduplicationWindow(long windowMs) {
+        this.orderDeduplicationWindowMs = Math.max(0, windowMs);
+    }
+
+    @Override
+    public long getOrderDeduplicationWindow() {
+        return orderDeduplicationWindowMs;
+    }
+
+    /**
+     * Probability of skipping an order that was never reported
+     *
+     * @param falsePositiveRate rate, clamped to [0.000001, 0.1]
+     */
+    @Override
+    public void setOrderDeduplicationFalsePositiveRate(double falsePositiveRate) {
+        if (Double.isNaN(falsePositiveRate)) {
+            return;
+        }
+
+        this.orderFalsePositiveRate = Math.min(MAX_ORDER_FALSE_POSITIVE_RATE,
+                Math.max(MIN_ORDER_FALSE_POSITIVE_RATE, falsePositiveRate));
+    }
+
+    @Override
+    public double getOrderDeduplicationFalsePositiveRate() {
+        return orderFalsePositiveRate;
+    }
+
+    /**
+     * Send event and activity requests as CBOR
+     *
+     * @param cborEncoding true or false
+     */
+    @Override
+    public void setCborEncoding(boolean cborEncoding) {
+        this.cborEncoding = cborEncoding;
+    }
+
+    @Override
+    public boolean getCborEncoding() {
+        return cborEncoding;
+    }
+
+    /**
+     * Send event batches with shared fields in the header
+     *
+     * @param compactEventBatches true or false
+     */
+    @Override
+    public void setCompactEventBatches(boolean compactEventBatches) {
+        this.compactEventBatches = compactEventBatches;
+    }
+
+    @Override
+    public boolean getCompactEventBatches() {
+        return compactEventBatches;
+    }
+
+    /**
+     * Send several user activities per request
+     *
+     * @param batchedActivities true or false
+     */
+    @Override
+    public void setBatchedActivities(boolean batchedActivities) {
+        this.batchedActivities = batchedActivities;
+    }
+
+    @Override
+    public boolean getBatchedActivities() {
+        return batchedActivities;
+    }
+
+    /**
+     * Warm a connection to the Button API on configure
+     *
+     * @param connectionPreWarming true or false
+     */
+    @Override
+    public void setConnectionPreWarming(boolean connectionPreWarming) {
+        this.connectionPreWarming = connectionPreWarming;
+    }
+
+    @Override
+    public boolean getConnectionPreWarming() {
+        return connectionPreWarming;
+    }
+
+    /**
+     * Delay before the deferred deeplink lookup is sent a second time
+     *
+     * @param delayMs hedge delay in milliseconds, 0 or less to disable
+     */
+    @Override
+    public void setPendingLinkHedgeDelay(long delayMs) {
+        this.pendingLinkHedgeDelayMs = Math.max(0, delayMs);
+    }
+
+    @Override
+    public long getPendingLinkHedgeDelay() {
+        return pendingLinkHedgeDelayMs;
+    }
 }
@@ -53,6 +53,12 @@ final class GetPendingLinkTask extends Task<PostInstallLink> {
     @Override
     PostInstallLink execute() throws Exception {
         String advertisingId = features.getIncludesIfa() ? deviceManager.getAdvertisingId() : null;
+        long hedgeDelay = features.getPendingLinkHedgeDelay();
+        if (hedgeDelay > 0) {
+            return buttonApi.getPendingLink(applicationId, advertisingId,
+                    deviceManager.getSignals(), hedgeDelay);
+        }
+
         return buttonApi.getPendingLink(applicationId, advertisingId, deviceManager.getSignals());
     }
 }
@@ -0,0 +1,52 @@
+/*
+ * Interceptor.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import com.usebutton.merchant.exception.ButtonNetworkException;
+
+/**
+ * Observes or changes requests made through {@link ConnectionManager}, and the responses to them.
+ *
+ * Interceptors run in the order they were added: the first sees the request first and the
+ * response last. Each one passes the request, changed or not, to the next by calling
+ * {@link Chain#proceed(ApiRequest)}, and may call it more than once to retry or not at all to
+ * answer the request itself. Errors thrown further down the chain propagate back through it.
+ */
+interface Interceptor {
+
+    NetworkResponse intercept(Chain chain) throws ButtonNetworkException;
+
+    /**
+     * The rest of the interceptor chain, ending with the network.
+     */
+    interface Chain {
+
+        ApiRequest request();
+
+        NetworkResponse proceed(ApiRequest request) throws ButtonNetworkException;
+    }
+}
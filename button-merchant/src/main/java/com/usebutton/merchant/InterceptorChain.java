@@ -0,0 +1,63 @@
+/*
+ * InterceptorChain.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import com.usebutton.merchant.exception.ButtonNetworkException;
+
+import java.util.List;
+
+/**
+ * {@link Interceptor.Chain} positioned at one interceptor in a list. The last interceptor must
+ * answer the request without proceeding, as the one that sends it over the network does.
+ */
+final class InterceptorChain implements Interceptor.Chain {
+
+    private final List<Interceptor> interceptors;
+    private final int index;
+    private final ApiRequest request;
+
+    InterceptorChain(List<Interceptor> interceptors, int index, ApiRequest request) {
+        this.interceptors = interceptors;
+        this.index = index;
+        this.request = request;
+    }
+
+    @Override
+    public ApiRequest request() {
+        return request;
+    }
+
+    @Override
+    public NetworkResponse proceed(ApiRequest request) throws ButtonNetworkException {
+        if (index >= interceptors.size()) {
+            throw new IllegalStateException("No interceptor left to handle " + request.getPath());
+        }
+
+        Interceptor.Chain next = new InterceptorChain(interceptors, index + 1, request);
+        return interceptors.get(index).intercept(next);
+    }
+}
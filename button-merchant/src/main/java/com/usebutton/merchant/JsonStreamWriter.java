@@ -0,0 +1,295 @@
+/*
+ * JsonStreamWriter.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Minimal forward-only JSON encoder that writes straight to a {@link Writer}.
+ *
+ * Used to serialize request bodies without first building a {@link org.json.JSONObject} tree.
+ * Like {@link org.json.JSONObject#put(String, Object)}, object members with a {@code null} value
+ * are omitted; {@code null} array elements are written as a literal {@code null}.
+ */
+final class JsonStreamWriter implements BodyWriter {
+
+    private static final int EMPTY_OBJECT = 1;
+    private static final int NONEMPTY_OBJECT = 2;
+    private static final int EMPTY_ARRAY = 3;
+    private static final int NONEMPTY_ARRAY = 4;
+
+    private final Writer out;
+    private final char[] digits = new char[20];
+    private int[] stack = new int[8];
+    private int stackSize = 0;
+    @Nullable
+    private String deferredName;
+
+    JsonStreamWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public JsonStreamWriter beginObject() throws IOException {
+        beforeValue();
+        out.write('{');
+        push(EMPTY_OBJECT);
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter endObject() throws IOException {
+        if (deferredName != null) {
+            throw new IllegalStateException("Dangling name: " + deferredName);
+        }
+        return close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+    }
+
+    @Override
+    public JsonStreamWriter beginArray() throws IOException {
+        beforeValue();
+        out.write('[');
+        push(EMPTY_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter endArray() throws IOException {
+        return close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+    }
+
+    /**
+     * Sets the name of the next object member. The name is only written once a non-null value
+     * follows it.
+     */
+    @Override
+    public JsonStreamWriter name(String name) {
+        int context = peek();
+        if (deferredName != null
+                || (context != EMPTY_OBJECT && context != NONEMPTY_OBJECT)) {
+            throw new IllegalStateException("Nesting problem");
+        }
+        deferredName = name;
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter value(@Nullable String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        string(value);
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter value(long value) throws IOException {
+        beforeValue();
+        if (value == Long.MIN_VALUE) {
+            out.write(Long.toString(value));
+            return this;
+        }
+
+        // Format into scratch space rather than allocating a String per number
+        boolean negative = value < 0;
+        long remaining = negative ? -value : value;
+        int start = digits.length;
+        do {
+            digits[--start] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        if (negative) {
+            digits[--start] = '-';
+        }
+        out.write(digits, start, digits.length - start);
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        beforeValue();
+        out.write(Double.toString(value));
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter value(@Nullable Number value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return value(value.doubleValue());
+        }
+        if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            return value(value.longValue());
+        }
+        beforeValue();
+        out.write(value.toString());
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Writes {@code null} in an array, or drops the pending member name in an object.
+     */
+    @Override
+    public JsonStreamWriter nullValue() throws IOException {
+        if (deferredName != null) {
+            deferredName = null;
+            return this;
+        }
+        beforeValue();
+        out.write("null");
+        return this;
+    }
+
+    @Override
+    public boolean acceptsRawJson() {
+        return true;
+    }
+
+    @Override
+    public JsonStreamWriter rawValue(String json) throws IOException {
+        beforeValue();
+        out.write(json);
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void beforeValue() throws IOException {
+        if (stackSize == 0) {
+            return;
+        }
+
+        int context = stack[stackSize - 1];
+        switch (context) {
+            case NONEMPTY_ARRAY:
+                out.write(',');
+                break;
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_OBJECT:
+            case EMPTY_OBJECT:
+                if (deferredName == null) {
+                    throw new IllegalStateException("Missing name for object member");
+                }
+                if (context == NONEMPTY_OBJECT) {
+                    out.write(',');
+                }
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                string(deferredName);
+                out.write(':');
+                deferredName = null;
+                break;
+            default:
+                throw new IllegalStateException("Nesting problem");
+        }
+    }
+
+    private JsonStreamWriter close(int empty, int nonEmpty, char closeBracket)
+            throws IOException {
+        int context = peek();
+        if (context != empty && context != nonEmpty) {
+            throw new IllegalStateException("Nesting problem");
+        }
+        stackSize--;
+        out.write(closeBracket);
+        return this;
+    }
+
+    private void push(int context) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = context;
+    }
+
+    private int peek() {
+        if (stackSize == 0) {
+            throw new IllegalStateException("JsonStreamWriter is not inside an object or array");
+        }
+        return stack[stackSize - 1];
+    }
+
+    private void string(String value) throws IOException {
+        out.write('"');
+        int last = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c == '"') {
+                replacement = "\\\"";
+            } else if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c == '\n') {
+                replacement = "\\n";
+            } else if (c == '\r') {
+                replacement = "\\r";
+            } else if (c == '\t') {
+                replacement = "\\t";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                replacement = String.format("\\u%04x", (int) c);
+            } else {
+                continue;
+            }
+            if (last < i) {
+                out.write(value, last, i - last);
+            }
+            out.write(replacement);
+            last = i + 1;
+        }
+        if (last < length) {
+            out.write(value, last, length - last);
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * LatencyEstimator.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Derives connection timeouts from the latency of earlier requests.
+ *
+ * Connect times are tracked for the API host and first-byte times for each request path, as a
+ * smoothed mean and mean deviation in the same way TCP estimates its retransmission timeout
+ * (RFC 6298). A timeout is the mean plus {@link #DEVIATION_WEIGHT} deviations, kept within fixed
+ * bounds. Until a sample is recorded the default timeout is used, and each timeout doubles the
+ * next one until a request completes. Connects that reuse a pooled connection are not samples,
+ * since they say nothing about how long a new connection takes.
+ */
+final class LatencyEstimator {
+
+    @VisibleForTesting
+    static final long DEFAULT_CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+    @VisibleForTesting
+    static final long MIN_CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis(2);
+    @VisibleForTesting
+    static final long MAX_CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis(20);
+
+    /**
+     * Connects quicker than this reused a pooled connection rather than opening a socket.
+     */
+    @VisibleForTesting
+    static final long MIN_CONNECT_SAMPLE = 10;
+
+    @VisibleForTesting
+    static final long DEFAULT_READ_TIMEOUT = TimeUnit.SECONDS.toMillis(15);
+    @VisibleForTesting
+    static final long MIN_READ_TIMEOUT = TimeUnit.SECONDS.toMillis(4);
+    @VisibleForTesting
+    static final long MAX_READ_TIMEOUT = TimeUnit.SECONDS.toMillis(45);
+
+    @VisibleForTesting
+    static final int DEVIATION_WEIGHT = 4;
+
+    private static final int MAX_BACKOFF = 16;
+
+    private final Estimate connect = new Estimate();
+    private final Map<String, Estimate> firstByte = new HashMap<>();
+
+    /**
+     * @return the connect timeout for the next request, in milliseconds
+     */
+    synchronized int getConnectTimeout() {
+        return (int) connect.getTimeout(DEFAULT_CONNECT_TIMEOUT, MIN_CONNECT_TIMEOUT,
+                MAX_CONNECT_TIMEOUT);
+    }
+
+    /**
+     * @return the read timeout for the next request to {@code path}, in milliseconds
+     */
+    synchronized int getReadTimeout(String path) {
+        return (int) getFirstByte(path).getTimeout(DEFAULT_READ_TIMEOUT, MIN_READ_TIMEOUT,
+                MAX_READ_TIMEOUT);
+    }
+
+    synchronized void recordConnect(long elapsedMs) {
+        if (elapsedMs < MIN_CONNECT_SAMPLE) {
+            return;
+        }
+
+        connect.add(elapsedMs);
+    }
+
+    synchronized void recordFirstByte(String path, long elapsedMs) {
+        getFirstByte(path).add(elapsedMs);
+    }
+
+    /**
+     * Records a request to {@code path} that timed out.
+     *
+     * @param connected true if the connection was established and the response timed out
+     */
+    synchronized void recordTimeout(String path, boolean connected) {
+        (connected ? getFirstByte(path) : connect).backOff();
+    }
+
+    /**
+     * @return the smoothed connect time in milliseconds, or -1 before any sample
+     */
+    synchronized long getConnectEstimate() {
+        return connect.smoothed;
+    }
+
+    /**
+     * @return the smoothed first-byte time for {@code path} in milliseconds, or -1 before any
+     * sample
+     */
+    synchronized long getFirstByteEstimate(String path) {
+        Estimate estimate = firstByte.get(path);
+        return estimate == null ? -1 : estimate.smoothed;
+    }
+
+    private Estimate getFirstByte(String path) {
+        Estimate estimate = firstByte.get(path);
+        if (estimate == null) {
+            estimate = new Estimate();
+            firstByte.put(path, estimate);
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Smoothed mean and mean deviation of one kind of sample.
+     */
+    private static final class Estimate {
+
+        private long smoothed = -1;
+        private long deviation;
+        private int backoff = 1;
+
+        void add(long sample) {
+            if (smoothed < 0) {
+                smoothed = sample;
+                deviation = sample / 2;
+            } else {
+                long error = sample - smoothed;
+                smoothed += error / 8;
+                deviation += (Math.abs(error) - deviation) / 4;
+            }
+            backoff = 1;
+        }
+
+        void backOff() {
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        }
+
+        long getTimeout(long defaultTimeout, long min, long max) {
+            long timeout = smoothed < 0 ? defaultTimeout : smoothed + DEVIATION_WEIGHT * deviation;
+            return Math.min(max, Math.max(min, timeout * backoff));
+        }
+    }
+}
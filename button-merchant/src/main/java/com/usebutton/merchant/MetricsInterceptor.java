@@ -0,0 +1,63 @@
+/*
+ * MetricsInterceptor.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import com.usebutton.merchant.exception.ButtonNetworkException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts requests and errors, and records the latency of each request by path.
+ */
+final class MetricsInterceptor implements Interceptor {
+
+    private final MetricsRegistry metrics;
+    private final StripedCounter requests;
+    private final StripedCounter requestErrors;
+
+    MetricsInterceptor(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        this.requests = metrics.counter(MetricsSnapshot.COUNTER_REQUESTS);
+        this.requestErrors = metrics.counter(MetricsSnapshot.COUNTER_REQUEST_ERRORS);
+    }
+
+    @Override
+    public NetworkResponse intercept(Chain chain) throws ButtonNetworkException {
+        ApiRequest request = chain.request();
+        requests.increment();
+        long start = System.nanoTime();
+        try {
+            return chain.proceed(request);
+        } catch (ButtonNetworkException e) {
+            requestErrors.increment();
+            throw e;
+        } finally {
+            metrics.requestLatency(request.getPath())
+                    .record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * MetricsRegistry.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the library's counters, gauges and histograms, and copies them into a
+ * {@link MetricsSnapshot} on request.
+ *
+ * Components look up the counters they update once and keep them, so the hot path is a striped
+ * increment. Gauges are only read when a snapshot is taken.
+ */
+final class MetricsRegistry {
+
+    /**
+     * A value read when a snapshot is taken.
+     */
+    interface Gauge {
+        long getValue();
+    }
+
+    private static MetricsRegistry instance;
+
+    private final ConcurrentHashMap<String, StripedCounter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, BucketHistogram> requestLatencies =
+            new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, BucketHistogram> taskDurations =
+            new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, BucketHistogram> taskClassDurations =
+            new ConcurrentHashMap<>();
+    private final BucketHistogram requestSizes = new BucketHistogram();
+
+    static synchronized MetricsRegistry getInstance() {
+        if (instance == null) {
+            instance = new MetricsRegistry();
+        }
+
+        return instance;
+    }
+
+    @VisibleForTesting
+    MetricsRegistry() {
+    }
+
+    StripedCounter counter(String name) {
+        StripedCounter counter = counters.get(name);
+        if (counter == null) {
+            counters.putIfAbsent(name, new StripedCounter());
+            counter = counters.get(name);
+        }
+        return counter;
+    }
+
+    /**
+     * Registers a gauge, replacing any earlier one with the same name.
+     */
+    void registerGauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    BucketHistogram requestLatency(String path) {
+        return getHistogram(requestLatencies, path);
+    }
+
+    BucketHistogram taskDuration(String taskName) {
+        return getHistogram(taskDurations, taskName);
+    }
+
+    /**
+     * @return the duration histogram of a task class, named after the class. The name is only
+     * resolved the first time, since tasks look this up on every run.
+     */
+    BucketHistogram taskDuration(Class<?> taskClass) {
+        BucketHistogram histogram = taskClassDurations.get(taskClass);
+        if (histogram == null) {
+            String name = taskClass.getSimpleName();
+            histogram = taskDuration(name.isEmpty() ? "Task" : name);
+            taskClassDurations.putIfAbsent(taskClass, histogram);
+        }
+        return histogram;
+    }
+
+    BucketHistogram requestSizes() {
+        return requestSizes;
+    }
+
+    MetricsSnapshot snapshot() {
+        Map<String, Long> counterValues = new HashMap<>();
+        for (Map.Entry<String, StripedCounter> entry : counters.entrySet()) {
+            counterValues.put(entry.getKey(), entry.getValue().sum());
+        }
+
+        Map<String, Long> gaugeValues = new HashMap<>();
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            gaugeValues.put(entry.getKey(), entry.getValue().getValue());
+        }
+
+        return new MetricsSnapshot(counterValues, gaugeValues, snapshot(requestLatencies),
+                snapshot(taskDurations), requestSizes.snapshot());
+    }
+
+    private static Map<String, MetricsSnapshot.Histogram> snapshot(
+            Map<String, BucketHistogram> histograms) {
+        Map<String, MetricsSnapshot.Histogram> snapshots = new HashMap<>();
+        for (Map.Entry<String, BucketHistogram> entry : histograms.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshots;
+    }
+
+    private static BucketHistogram getHistogram(
+            ConcurrentHashMap<String, BucketHistogram> histograms, String name) {
+        BucketHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histograms.putIfAbsent(name, new BucketHistogram());
+            histogram = histograms.get(name);
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * MetricsSnapshot.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of the counters, gauges and histograms the library keeps about its own
+ * behavior, from {@link ButtonMerchant#getMetrics()}. Values accumulate from process start.
+ */
+public final class MetricsSnapshot {
+
+    /**
+     * Requests sent to the Button API, including retries.
+     */
+    public static final String COUNTER_REQUESTS = "requests";
+
+    /**
+     * Requests that failed with a network error or an error status.
+     */
+    public static final String COUNTER_REQUEST_ERRORS = "request_errors";
+
+    /**
+     * Retries of failed order uploads.
+     */
+    public static final String COUNTER_RETRIES = "retries";
+
+    /**
+     * Deferred uploads dropped because the offline queue was full.
+     */
+    public static final String COUNTER_DROPPED_TASKS = "dropped_tasks";
+
+    /**
+     * Background tasks that ended with an error.
+     */
+    public static final String COUNTER_TASK_FAILURES = "task_failures";
+
+    /**
+     * Repeated activities dropped within the activity suppression window.
+     */
+    public static final String COUNTER_SUPPRESSED_ACTIVITIES = "suppressed_activities";
+
+    /**
+     * Request body bytes written.
+     */
+    public static final String COUNTER_BYTES_SENT = "bytes_sent";
+
+    /**
+     * Response body bytes read.
+     */
+    public static final String COUNTER_BYTES_RECEIVED = "bytes_received";
+
+    /**
+     * Tasks waiting for the library's worker thread.
+     */
+    public static final String GAUGE_EXECUTOR_QUEUE_DEPTH = "executor_queue_depth";
+
+    /**
+     * Uploads held back while offline or to save battery and data.
+     */
+    public static final String GAUGE_DEFERRED_QUEUE_DEPTH = "deferred_queue_depth";
+
+    /**
+     * Smoothed time to open a connection to the Button API, or -1 before one was opened.
+     */
+    public static final String GAUGE_CONNECT_TIME_ESTIMATE = "connect_time_estimate_ms";
+
+    /**
+     * Prefix of the gauges holding the smoothed time to the first response byte from each API
+     * path, named by appending the path, e.g. {@code first_byte_time_estimate_ms:/v1/app/events}.
+     */
+    public static final String GAUGE_FIRST_BYTE_TIME_ESTIMATE_PREFIX =
+            "first_byte_time_estimate_ms:";
+
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+    private final Map<String, Histogram> requestLatencies;
+    private final Map<String, Histogram> taskDurations;
+    private final Histogram requestSizes;
+
+    MetricsSnapshot(Map<String, Long> counters, Map<String, Long> gauges,
+            Map<String, Histogram> requestLatencies, Map<String, Histogram> taskDurations,
+            Histogram requestSizes) {
+        this.counters = Collections.unmodifiableMap(counters);
+        this.gauges = Collections.unmodifiableMap(gauges);
+        this.requestLatencies = Collections.unmodifiableMap(requestLatencies);
+        this.taskDurations = Collections.unmodifiableMap(taskDurations);
+        this.requestSizes = requestSizes;
+    }
+
+    /**
+     * @param name one of the {@code COUNTER_} constants
+     * @return the counter value, or 0 if nothing was counted
+     */
+    public long getCounter(@NonNull String name) {
+        Long value = counters.get(name);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * @param name one of the {@code GAUGE_} constants, or a {@code _PREFIX} constant followed
+     * by its key
+     * @return the gauge value, or null if it is not tracked
+     */
+    @Nullable
+    public Long getGauge(@NonNull String name) {
+        return gauges.get(name);
+    }
+
+    @NonNull
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    @NonNull
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    /**
+     * @return request latency in milliseconds, by API path
+     */
+    @NonNull
+    public Map<String, Histogram> getRequestLatencies() {
+        return requestLatencies;
+    }
+
+    /**
+     * @return time spent running each kind of background task, in milliseconds
+     */
+    @NonNull
+    public Map<String, Histogram> getTaskDurations() {
+        return taskDurations;
+    }
+
+    /**
+     * @return request body sizes in bytes
+     */
+    @NonNull
+    public Histogram getRequestSizes() {
+        return requestSizes;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{counters=" + counters
+                + ", gauges=" + gauges
+                + ", requestLatencies=" + requestLatencies
+                + ", taskDurations=" + taskDurations
+                + ", requestSizes=" + requestSizes + "}";
+    }
+
+    /**
+     * Distribution of recorded values. Percentiles are accurate to within 12.5%.
+     */
+    public static final class Histogram {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Histogram(long[] counts, long sum, long max) {
+            long count = 0;
+            for (long bucketCount : counts) {
+                count += bucketCount;
+            }
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile between 0 and 100, e.g. 99 for the 99th percentile
+         * @return a value at or just above the given percentile of recorded values, or 0 if
+         * none were recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    return bucket == counts.length - 1
+                            ? max : Math.min(BucketHistogram.getUpperBound(bucket), max);
+                }
+            }
+
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count
+                    + ", p50=" + getValueAtPercentile(50)
+                    + ", p99=" + getValueAtPercentile(99)
+                    + ", max=" + max + "}";
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * ModelSerializer.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encoders for the public model classes sent to the Button API.
+ *
+ * Each encoder reads the model's getters and writes members straight to a {@link BodyWriter}
+ * in a fixed key order, without reflection or an intermediate {@link org.json.JSONObject}. As
+ * JSON, key order and value formatting match the bodies previously built with
+ * {@code JSONObject.put}; see {@code ModelSerializerTest} for the golden output.
+ */
+final class ModelSerializer {
+
+    private ModelSerializer() {
+    }
+
+    /**
+     * Writes the members of an order, without the enclosing object, so they can be combined with
+     * request-level members such as {@code btn_ref}.
+     */
+    static void writeOrderMembers(BodyWriter writer, Order order) throws IOException {
+        writer.name("currency").value(order.getCurrencyCode());
+        writer.name("order_id").value(order.getId());
+        writer.name("purchase_date").value(ButtonUtil.formatDate(order.getPurchaseDate()));
+        writer.name("customer_order_id").value(order.getCustomerOrderId());
+
+        List<Order.LineItem> lineItems = order.getLineItems();
+        if (!lineItems.isEmpty()) {
+            writer.name("line_items").beginArray();
+            for (int i = 0; i < lineItems.size(); i++) {
+                writeLineItem(writer, lineItems.get(i));
+            }
+            writer.endArray();
+        }
+
+        Order.Customer customer = order.getCustomer();
+        if (customer != null) {
+            writer.name("customer");
+            writeCustomer(writer, customer);
+        }
+    }
+
+    static void writeLineItem(BodyWriter writer, Order.LineItem lineItem)
+            throws IOException {
+        writer.beginObject();
+
+        List<String> lineItemCategory = lineItem.getCategory();
+        if (lineItemCategory != null) {
+            writer.name("category");
+            writeStrings(writer, lineItemCategory);
+        }
+
+        writer.name("identifier").value(lineItem.getId());
+        writer.name("quantity").value(lineItem.getQuantity());
+        writer.name("total").value(lineItem.getTotal());
+
+        Map<String, String> lineItemAttributes = lineItem.getAttributes();
+        if (lineItemAttributes != null) {
+            writer.name("attributes");
+            writeStringMap(writer, lineItemAttributes);
+        }
+
+        writer.name("upc").value(lineItem.getUpc());
+        writer.name("description").value(lineItem.getDescription());
+        writer.name("sku").value(lineItem.getSku());
+        writer.endObject();
+    }
+
+    /**
+     * Writes a customer. Valid email addresses are sent as a SHA-256 hash of the lowercased
+     * address, anything else is passed through.
+     */
+    static void writeCustomer(BodyWriter writer, Order.Customer customer)
+            throws IOException {
+        writer.beginObject();
+        writer.name("id").value(customer.getId());
+
+        String email = customer.getEmail();
+        if (email != null) {
+            if (ButtonUtil.isValidEmail(email)) {
+                email = ButtonUtil.sha256Encode(email.toLowerCase());
+            }
+            writer.name("email_sha256").value(email);
+        }
+
+        Boolean isNew = customer.isNew();
+        if (isNew != null) {
+            writer.name("is_new").value(isNew.booleanValue());
+        }
+        writer.endObject();
+    }
+
+    static void writeProduct(BodyWriter writer, ButtonProductCompatible product)
+            throws IOException {
+        writer.beginObject();
+
+        List<String> categories = product.getCategories();
+        if (categories != null) {
+            writer.name("categories");
+            writeStrings(writer, categories);
+        }
+
+        Map<String, String> attributes = product.getAttributes();
+        if (attributes != null) {
+            writer.name("attributes");
+            writeStringMap(writer, attributes);
+        }
+
+        writer.name("id").value(product.getId());
+        writer.name("upc").value(product.getUpc());
+        writer.name("name").value(product.getName());
+        writer.name("currency").value(product.getCurrency());
+        writer.name("value").value(product.getValue());
+        writer.name("quantity").value(product.getQuantity());
+        writer.name("url").value(product.getUrl());
+        writer.endObject();
+    }
+
+    /**
+     * Writes an event. Custom event properties are nested under {@code value.extra}, Button
+     * event properties are written directly into {@code value}.
+     */
+    static void writeEvent(BodyWriter writer, Event event) throws IOException {
+        writer.beginObject();
+        writer.name("name").value(event.getName());
+        writer.name("source").value(event.getSource().toString());
+        writer.name("source_token").value(event.getSourceToken());
+        writer.name("time").value(ButtonUtil.formatTimestamp(event.getTimestamp()));
+        writer.name("uuid").value(event.getId().toString());
+        writeEventValue(writer, event);
+        writer.endObject();
+    }
+
+    /**
+     * Writes a batch of events with the fields they share hoisted into the batch header.
+     *
+     * {@code source} and {@code source_token} are written once in the header when every event
+     * in the batch has the same value, and per event otherwise. Times are written as
+     * {@code time_base}, the first event's epoch milliseconds, and a per-event
+     * {@code time_offset} in milliseconds from {@code time_base}. Offsets do not depend on each
+     * other and may be negative, since merged batches are not ordered by time.
+     */
+    static void writeEventBatchMembers(BodyWriter writer, List<Event> events)
+            throws IOException {
+        boolean sharedSource = true;
+        boolean sharedSourceToken = true;
+        Event first = events.isEmpty() ? null : events.get(0);
+        for (int i = 1; i < events.size(); i++) {
+            Event event = events.get(i);
+            sharedSource &= event.getSource() == first.getSource();
+            sharedSourceToken &= equal(event.getSourceToken(), first.getSourceToken());
+        }
+
+        if (first != null) {
+            writer.name("time_base").value(first.getTimestamp());
+            if (sharedSource) {
+                writer.name("source").value(first.getSource().toString());
+            }
+            if (sharedSourceToken) {
+                writer.name("source_token").value(first.getSourceToken());
+            }
+        }
+
+        writer.name("events").beginArray();
+        long timeBase = first != null ? first.getTimestamp() : 0;
+        for (int i = 0; i < events.size(); i++) {
+            Event event = events.get(i);
+            writer.beginObject();
+            writer.name("name").value(event.getName());
+            if (!sharedSource) {
+                writer.name("source").value(event.getSource().toString());
+            }
+            if (!sharedSourceToken) {
+                writer.name("source_token").value(event.getSourceToken());
+            }
+            writer.name("time_offset").value(event.getTimestamp() - timeBase);
+            writer.name("uuid").value(event.getId().toString());
+            writeEventValue(writer, event);
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+
+    /**
+     * @return the product as a standalone JSON object string
+     */
+    static String toJson(ButtonProductCompatible product) throws IOException {
+        StringWriter out = new StringWriter();
+        writeProduct(new JsonStreamWriter(out), product);
+        return out.toString();
+    }
+
+    private static void writeEventValue(BodyWriter writer, Event event) throws IOException {
+        writer.name("value").beginObject();
+        Map<String, String> properties = event.getProperties();
+        if (event.getSource() == Event.Source.CUSTOM && !properties.isEmpty()) {
+            writer.name("extra");
+            writeStringMap(writer, properties);
+        } else {
+            writeStringMapMembers(writer, properties);
+        }
+        writer.endObject();
+    }
+
+    private static boolean equal(@Nullable String a, @Nullable String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static void writeStrings(BodyWriter writer, List<String> values)
+            throws IOException {
+        writer.beginArray();
+        for (int i = 0; i < values.size(); i++) {
+            writer.value(values.get(i));
+        }
+        writer.endArray();
+    }
+
+    private static void writeStringMap(BodyWriter writer, Map<String, String> values)
+            throws IOException {
+        writer.beginObject();
+        writeStringMapMembers(writer, values);
+        writer.endObject();
+    }
+
+    private static void writeStringMapMembers(BodyWriter writer,
+            Map<String, String> values) throws IOException {
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            writer.name(entry.getKey()).value(entry.getValue());
+        }
+    }
+}
@@ -50,4 +50,9 @@ interface PersistenceManager {
     boolean checkedDeferredDeepLink();
 
     void updateCheckDeferredDeepLink(boolean checkedDeferredDeepLink);
+
+    void setReportedOrderFilter(String reportedOrderFilter);
+
+    @Nullable
+    String getReportedOrderFilter();
 }
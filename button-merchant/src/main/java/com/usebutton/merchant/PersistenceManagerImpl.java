@@ -92,6 +92,18 @@ final class PersistenceManagerImpl implements PersistenceManager {
                 checkedDeferredDeepLink).apply();
     }
 
+    @Override
+    public void setReportedOrderFilter(String reportedOrderFilter) {
+        sharedPreferences.edit().putString(Key.REPORTED_ORDER_FILTER, reportedOrderFilter)
+                .apply();
+    }
+
+    @Nullable
+    @Override
+    public String getReportedOrderFilter() {
+        return sharedPreferences.getString(Key.REPORTED_ORDER_FILTER, null);
+    }
+
     /**
      * Class contains all of the keys for the shared preferences
      */
@@ -104,5 +116,7 @@ final class PersistenceManagerImpl implements PersistenceManager {
         static final String SOURCE_TOKEN = PREFIX + "source_token";
 
         static final String CHECKED_DEFERRED_DEEP_LINK = PREFIX + "checked_deferred_deep_link";
+
+        static final String REPORTED_ORDER_FILTER = PREFIX + "reported_order_filter";
     }
 }
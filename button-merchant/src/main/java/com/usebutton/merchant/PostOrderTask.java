@@ -27,17 +27,26 @@ package com.usebutton.merchant;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import android.util.Log;
 
 import com.usebutton.merchant.exception.ButtonNetworkException;
+import com.usebutton.merchant.exception.CircuitOpenException;
 import com.usebutton.merchant.exception.HttpStatusException;
 import com.usebutton.merchant.exception.NetworkNotFoundException;
 import com.usebutton.merchant.module.Features;
 
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Asynchronous task used to report order to the Button API.
  */
 class PostOrderTask extends Task {
 
+    private static final String TAG = PostOrderTask.class.getSimpleName();
+
+    private static final Random RANDOM = new Random();
+
     private final ButtonApi buttonApi;
     private final String applicationId;
     private final String sourceToken;
@@ -45,15 +54,24 @@ class PostOrderTask extends Task {
     private final DeviceManager deviceManager;
     private final Features features;
     private final ThreadManager threadManager;
+    private final RetryBudget retryBudget;
 
     @VisibleForTesting
     static final int MAX_RETRIES = 4;
 
+    /**
+     * Longest {@code Retry-After} a task will wait for; longer requests give up instead.
+     */
+    @VisibleForTesting
+    static final long MAX_RETRY_AFTER = TimeUnit.SECONDS.toMillis(30);
+
+    private static final long BASE_RETRY_DELAY = 100;
+
     private int retryCount = 0;
 
     PostOrderTask(@Nullable Listener listener, ButtonApi buttonApi, Order order,
             String applicationId, String sourceToken, DeviceManager deviceManager,
-            Features features, ThreadManager threadManager) {
+            Features features, ThreadManager threadManager, RetryBudget retryBudget) {
         super(listener);
         this.buttonApi = buttonApi;
         this.order = order;
@@ -62,12 +80,15 @@ class PostOrderTask extends Task {
         this.deviceManager = deviceManager;
         this.features = features;
         this.threadManager = threadManager;
+        this.retryBudget = retryBudget;
     }
 
     @Nullable
     @Override
     Void execute() throws Exception {
         String advertisingId = features.getIncludesIfa() ? deviceManager.getAdvertisingId() : null;
+        // A task parked while the API was unreachable runs again with a fresh retry count
+        retryCount = 0;
         // loop and execute postOrder until max retries is met or non case exception is met
         while (true) {
             try {
@@ -87,28 +108,56 @@ class PostOrderTask extends Task {
      * @return true if should retry
      */
     private boolean shouldRetry(ButtonNetworkException exception) throws InterruptedException {
+        return shouldRetry(exception, retryCount, threadManager, retryBudget);
+    }
+
+    /**
+     * Sleeps for the backoff delay if the request should be retried.
+     *
+     * Retries spend from the shared {@link RetryBudget} and are delayed by a random "full
+     * jitter" backoff, added to any {@code Retry-After} the server sent with a 429 or 503.
+     *
+     * @param exception exception thrown by api request
+     * @param retryCount number of retries already made
+     * @return true if should retry
+     */
+    static boolean shouldRetry(ButtonNetworkException exception, int retryCount,
+            ThreadManager threadManager, RetryBudget retryBudget) throws InterruptedException {
         if (retryCount >= MAX_RETRIES) {
             return false;
         }
 
-        double delay = getRetryDelay();
-        if (exception instanceof NetworkNotFoundException) {
-            threadManager.sleep((long) delay);
-            return true;
-        }
-
+        long retryAfter = 0;
         if (exception instanceof HttpStatusException) {
             HttpStatusException httpStatusException = (HttpStatusException) exception;
-            if (httpStatusException.wasServerError()) {
-                threadManager.sleep((long) delay);
-                return true;
+            if (!httpStatusException.wasServerError() && !httpStatusException.wasRateLimited()) {
+                return false;
             }
+            retryAfter = httpStatusException.getRetryAfterMillis();
+        } else if (!(exception instanceof NetworkNotFoundException)
+                || exception instanceof CircuitOpenException) {
+            return false;
+        }
+
+        if (retryAfter > MAX_RETRY_AFTER) {
+            return false;
         }
 
-        return false;
+        if (!retryBudget.tryAcquire()) {
+            Log.d(TAG, "Retry budget exhausted, not retrying");
+            return false;
+        }
+
+        MetricsRegistry.getInstance().counter(MetricsSnapshot.COUNTER_RETRIES).increment();
+        threadManager.sleep(retryAfter + getRetryDelay(retryCount));
+        return true;
     }
 
-    private double getRetryDelay() {
-        return Math.pow(2, retryCount) * 100;
+    /**
+     * @return a random delay between zero and the exponential backoff for the retry
+     */
+    @VisibleForTesting
+    static long getRetryDelay(int retryCount) {
+        return (long) (RANDOM.nextDouble() * BASE_RETRY_DELAY * (1L << retryCount));
     }
 }
@@ -0,0 +1,160 @@
+/*
+ * PostOrdersTask.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.usebutton.merchant.exception.ButtonNetworkException;
+import com.usebutton.merchant.module.Features;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Asynchronous task used to report many orders to the Button API in chunked batches.
+ *
+ * Orders are validated first; invalid orders fail without being uploaded. Valid orders are sent
+ * {@link #CHUNK_SIZE} per request, and each request is retried like {@link PostOrderTask}.
+ * Every order in a chunk shares the outcome of its request, since the response does not report
+ * on orders individually.
+ */
+class PostOrdersTask extends Task<List<OrderResult>> {
+
+    @VisibleForTesting
+    static final int CHUNK_SIZE = 100;
+
+    private final ButtonApi buttonApi;
+    private final List<Order> orders;
+    private final String applicationId;
+    private final String sourceToken;
+    private final DeviceManager deviceManager;
+    private final Features features;
+    private final ThreadManager threadManager;
+    private final RetryBudget retryBudget;
+
+    PostOrdersTask(@Nullable Listener<List<OrderResult>> listener, ButtonApi buttonApi,
+            List<Order> orders, String applicationId, String sourceToken,
+            DeviceManager deviceManager, Features features, ThreadManager threadManager,
+            RetryBudget retryBudget) {
+        super(listener);
+        this.buttonApi = buttonApi;
+        this.orders = orders;
+        this.applicationId = applicationId;
+        this.sourceToken = sourceToken;
+        this.deviceManager = deviceManager;
+        this.features = features;
+        this.threadManager = threadManager;
+        this.retryBudget = retryBudget;
+    }
+
+    @Override
+    List<OrderResult> execute() throws Exception {
+        String advertisingId = features.getIncludesIfa() ? deviceManager.getAdvertisingId() : null;
+        OrderResult[] results = new OrderResult[orders.size()];
+
+        List<Order> chunk = new ArrayList<>(CHUNK_SIZE);
+        List<Integer> chunkIndexes = new ArrayList<>(CHUNK_SIZE);
+        for (int i = 0; i < orders.size(); i++) {
+            Order order = orders.get(i);
+            Throwable error = validate(order);
+            if (error != null) {
+                results[i] = new OrderResult(order, error);
+                continue;
+            }
+
+            chunk.add(order);
+            chunkIndexes.add(i);
+            if (chunk.size() == CHUNK_SIZE) {
+                postChunk(chunk, chunkIndexes, advertisingId, results);
+                chunk = new ArrayList<>(CHUNK_SIZE);
+                chunkIndexes = new ArrayList<>(CHUNK_SIZE);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            postChunk(chunk, chunkIndexes, advertisingId, results);
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Uploads the chunk and records the outcome for each of its orders.
+     */
+    private void postChunk(List<Order> chunk, List<Integer> chunkIndexes,
+            @Nullable String advertisingId, OrderResult[] results) throws InterruptedException {
+        Throwable error = null;
+        int retryCount = 0;
+        while (true) {
+            try {
+                buttonApi.postOrders(chunk, applicationId, sourceToken, advertisingId);
+                break;
+            } catch (ButtonNetworkException exception) {
+                if (!PostOrderTask.shouldRetry(exception, retryCount, threadManager,
+                        retryBudget)) {
+                    error = exception;
+                    break;
+                }
+
+                retryCount++;
+            }
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            results[chunkIndexes.get(i)] = new OrderResult(chunk.get(i), error);
+        }
+    }
+
+    /**
+     * @return the reason the order cannot be reported, or null if it is valid
+     */
+    @Nullable
+    @VisibleForTesting
+    static Throwable validate(Order order) {
+        String id = order.getId();
+        if (id == null || id.isEmpty()) {
+            return new IllegalArgumentException("Order id is required");
+        }
+
+        if (order.getPurchaseDate() == null) {
+            return new IllegalArgumentException(
+                    String.format("Order [%s] is missing a purchase date", id));
+        }
+
+        if (order.getLineItems() == null) {
+            return new IllegalArgumentException(
+                    String.format("Order [%s] is missing line items", id));
+        }
+
+        if (order.getCurrencyCode() == null) {
+            return new IllegalArgumentException(
+                    String.format("Order [%s] is missing a currency code", id));
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * ProductFragmentCache.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of serialized product JSON, keyed by a 64-bit fingerprint of the product
+ * fields.
+ *
+ * Merchants tend to report the same products over and over (e.g. the whole cart on every
+ * {@code cartViewed}), so a hit lets the encoder copy the cached fragment instead of
+ * serializing the product again.
+ */
+final class ProductFragmentCache {
+
+    @VisibleForTesting
+    static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long NULL_MARKER = 0x9e3779b97f4a7c15L;
+
+    private final Map<Long, String> fragments;
+    private int hitCount;
+    private int missCount;
+
+    ProductFragmentCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    @VisibleForTesting
+    ProductFragmentCache(final int maxSize) {
+        this.fragments = new LinkedHashMap<Long, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the JSON object for this product, serialized at most once while it stays cached
+     */
+    synchronized String get(ButtonProductCompatible product) throws IOException {
+        Long key = fingerprint(product);
+        String fragment = fragments.get(key);
+        if (fragment != null) {
+            hitCount++;
+            return fragment;
+        }
+
+        missCount++;
+        fragment = ModelSerializer.toJson(product);
+        fragments.put(key, fragment);
+        return fragment;
+    }
+
+    @VisibleForTesting
+    synchronized int size() {
+        return fragments.size();
+    }
+
+    @VisibleForTesting
+    synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    @VisibleForTesting
+    synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Hashes every serialized field of the product (FNV-1a over the characters, with a
+     * separator after each field) without allocating.
+     */
+    static long fingerprint(ButtonProductCompatible product) {
+        long hash = FNV_OFFSET_BASIS;
+
+        List<String> categories = product.getCategories();
+        if (categories == null) {
+            hash = mix(hash, NULL_MARKER);
+        } else {
+            hash = mix(hash, categories.size());
+            for (int i = 0; i < categories.size(); i++) {
+                hash = hash(hash, categories.get(i));
+            }
+        }
+
+        Map<String, String> attributes = product.getAttributes();
+        if (attributes == null) {
+            hash = mix(hash, NULL_MARKER);
+        } else {
+            hash = mix(hash, attributes.size());
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                hash = hash(hash, entry.getKey());
+                hash = hash(hash, entry.getValue());
+            }
+        }
+
+        hash = hash(hash, product.getId());
+        hash = hash(hash, product.getUpc());
+        hash = hash(hash, product.getName());
+        hash = hash(hash, product.getCurrency());
+        hash = hash(hash, product.getValue());
+        hash = hash(hash, product.getQuantity());
+        hash = hash(hash, product.getUrl());
+        return hash;
+    }
+
+    private static long hash(long hash, @Nullable String value) {
+        if (value == null) {
+            return mix(hash, NULL_MARKER);
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return mix(hash, value.length());
+    }
+
+    private static long hash(long hash, @Nullable Integer value) {
+        return value == null ? mix(hash, NULL_MARKER) : mix(hash, value);
+    }
+
+    private static long mix(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * ProductTable.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table of the distinct products referenced by a batch of activities.
+ *
+ * Each product is serialized once; activities refer to it by its index in the table. Products
+ * are considered the same when every serialized field is identical, so a product whose quantity
+ * changed between two activities gets its own entry. JSON tables copy the cached fragment of
+ * each product; tables for other formats do not touch the JSON cache at all.
+ */
+final class ProductTable {
+
+    @Nullable
+    private final ProductFragmentCache fragmentCache;
+    private final Map<Object, Integer> indexes = new HashMap<>();
+    private final List<String> fragments = new ArrayList<>();
+    private final List<ButtonProductCompatible> products = new ArrayList<>();
+
+    /**
+     * @param writer the writer the table will be written to
+     */
+    ProductTable(ProductFragmentCache fragmentCache, BodyWriter writer) {
+        this.fragmentCache = writer.acceptsRawJson() ? fragmentCache : null;
+    }
+
+    /**
+     * Adds a product to the table if it is not present yet.
+     *
+     * @return the index of the product in the table
+     */
+    int add(ButtonProductCompatible product) throws IOException {
+        String fragment = null;
+        Object key;
+        if (fragmentCache != null) {
+            fragment = fragmentCache.get(product);
+            key = fragment;
+        } else {
+            key = ProductFragmentCache.fingerprint(product);
+        }
+
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = products.size();
+            indexes.put(key, index);
+            products.add(product);
+            if (fragment != null) {
+                fragments.add(fragment);
+            }
+        }
+        return index;
+    }
+
+    int size() {
+        return products.size();
+    }
+
+    /**
+     * Writes the table as an array of product objects, in index order.
+     *
+     * @param writer the writer the table was created for
+     */
+    void writeTo(BodyWriter writer) throws IOException {
+        writer.beginArray();
+        if (fragmentCache != null) {
+            for (int i = 0; i < fragments.size(); i++) {
+                writer.rawValue(fragments.get(i));
+            }
+        } else {
+            for (int i = 0; i < products.size(); i++) {
+                ModelSerializer.writeProduct(writer, products.get(i));
+            }
+        }
+        writer.endArray();
+    }
+}
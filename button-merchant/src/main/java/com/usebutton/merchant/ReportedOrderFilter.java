@@ -0,0 +1,349 @@
+/*
+ * ReportedOrderFilter.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import android.util.Log;
+
+import com.usebutton.merchant.module.Features;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Remembers order ids reported within the configured
+ * {@link Features#getOrderDeduplicationWindow() deduplication window}, so a repeated
+ * {@link ButtonMerchant#reportOrder} call for the same order can be answered without a request.
+ *
+ * Ids are kept in two generations of fixed-size Bloom filters sized for {@link #CAPACITY} ids
+ * at the configured {@link Features#getOrderDeduplicationFalsePositiveRate() false positive
+ * rate}. A generation is retired once it is a window old or full, so an id is remembered for at
+ * least one window unless more than {@link #CAPACITY} orders are reported within it. Both
+ * generations are persisted after every insert and restored on first use.
+ */
+final class ReportedOrderFilter {
+
+    private static final String TAG = ReportedOrderFilter.class.getSimpleName();
+
+    @VisibleForTesting
+    static final int CAPACITY = 512;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String SEPARATOR = ";";
+    private static final double LN_2 = Math.log(2);
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    static final TimeProvider WALL_CLOCK_PROVIDER = new TimeProvider() {
+        @Override
+        public long getTimeInMs() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final Features features;
+    private final TimeProvider timeProvider;
+    private final PersistenceManager persistenceManager;
+
+    private boolean loaded;
+    private int bitCount;
+    private int hashCount;
+    private long[] current = new long[0];
+    private long[] previous = new long[0];
+    private int currentSize;
+    private long currentStartMs;
+    private final Set<String> inFlight = new HashSet<>();
+
+    ReportedOrderFilter(Features features, TimeProvider timeProvider,
+            PersistenceManager persistenceManager) {
+        this.features = features;
+        this.timeProvider = timeProvider;
+        this.persistenceManager = persistenceManager;
+    }
+
+    /**
+     * @return true if the order id was probably reported within the window, false if it
+     * definitely was not
+     */
+    synchronized boolean mightContain(String orderId) {
+        prepare();
+        long hash = hash(orderId);
+        return contains(current, hash) || contains(previous, hash);
+    }
+
+    /**
+     * Claims an order id for reporting, so that a second report of the same order made while the
+     * first is still being sent is skipped too. Call {@link #add(String)} once the order is
+     * reported, or {@link #release(String)} if it fails.
+     *
+     * @return true if the order should be reported, false if it was probably reported already
+     */
+    synchronized boolean tryReserve(String orderId) {
+        if (inFlight.contains(orderId) || mightContain(orderId)) {
+            return false;
+        }
+
+        inFlight.add(orderId);
+        return true;
+    }
+
+    /**
+     * Gives up a claim made with {@link #tryReserve(String)} without recording the order.
+     */
+    synchronized void release(String orderId) {
+        inFlight.remove(orderId);
+    }
+
+    /**
+     * Records a reported order id and persists the filter.
+     */
+    synchronized void add(String orderId) {
+        inFlight.remove(orderId);
+        prepare();
+        if (currentSize >= CAPACITY) {
+            rotate(timeProvider.getTimeInMs());
+        }
+
+        long hash = hash(orderId);
+        if (!contains(current, hash)) {
+            for (int i = 0; i < hashCount; i++) {
+                int bit = bitIndex(hash, i);
+                current[bit >>> 6] |= 1L << bit;
+            }
+            currentSize++;
+        }
+
+        persistenceManager.setReportedOrderFilter(serialize());
+    }
+
+    /**
+     * Forgets every order id. Persisted state is expected to be cleared by the caller.
+     */
+    synchronized void clear() {
+        loaded = true;
+        Arrays.fill(current, 0);
+        Arrays.fill(previous, 0);
+        currentSize = 0;
+    }
+
+    /**
+     * Restores persisted state on first use, applies config changes and retires expired
+     * generations.
+     */
+    private void prepare() {
+        int bits = bitCount(CAPACITY, features.getOrderDeduplicationFalsePositiveRate());
+        int hashes = hashCount(bits, CAPACITY);
+        long now = timeProvider.getTimeInMs();
+
+        if (!loaded) {
+            loaded = true;
+            if (restore(persistenceManager.getReportedOrderFilter(), bits, hashes)) {
+                Log.d(TAG, String.format("Restored filter with %d recent orders", currentSize));
+            }
+        }
+
+        if (bits != bitCount || hashes != hashCount) {
+            // False positive rate changed, the old bits cannot be reinterpreted
+            bitCount = bits;
+            hashCount = hashes;
+            current = new long[(bits + 63) >>> 6];
+            previous = new long[current.length];
+            currentSize = 0;
+            currentStartMs = now;
+            return;
+        }
+
+        long window = features.getOrderDeduplicationWindow();
+        long age = now - currentStartMs;
+        if (age < 0 || age >= window * 2) {
+            // Clock moved backwards or nothing reported for two windows
+            Arrays.fill(current, 0);
+            Arrays.fill(previous, 0);
+            currentSize = 0;
+            currentStartMs = now;
+        } else if (age >= window) {
+            rotate(now);
+        }
+    }
+
+    private void rotate(long now) {
+        long[] expired = previous;
+        previous = current;
+        current = expired;
+        Arrays.fill(current, 0);
+        currentSize = 0;
+        currentStartMs = now;
+    }
+
+    private boolean contains(long[] filter, long hash) {
+        for (int i = 0; i < hashCount; i++) {
+            int bit = bitIndex(hash, i);
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Derives the i-th bit from the two halves of the hash (Kirsch-Mitzenmacher).
+     */
+    private int bitIndex(long hash, int i) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+    }
+
+    @VisibleForTesting
+    String serialize() {
+        StringBuilder builder = new StringBuilder(32 + current.length * 32);
+        builder.append(FORMAT_VERSION).append(SEPARATOR)
+                .append(bitCount).append(SEPARATOR)
+                .append(hashCount).append(SEPARATOR)
+                .append(currentStartMs).append(SEPARATOR)
+                .append(currentSize).append(SEPARATOR);
+        appendHex(builder, current);
+        builder.append(SEPARATOR);
+        appendHex(builder, previous);
+        return builder.toString();
+    }
+
+    /**
+     * @return true if the persisted state matched the current config and was restored
+     */
+    private boolean restore(@Nullable String serialized, int bits, int hashes) {
+        if (serialized == null) {
+            return false;
+        }
+
+        String[] parts = serialized.split(SEPARATOR);
+        if (parts.length != 7) {
+            return false;
+        }
+
+        try {
+            if (Integer.parseInt(parts[0]) != FORMAT_VERSION
+                    || Integer.parseInt(parts[1]) != bits
+                    || Integer.parseInt(parts[2]) != hashes) {
+                return false;
+            }
+
+            int words = (bits + 63) >>> 6;
+            long[] restoredCurrent = parseHex(parts[5], words);
+            long[] restoredPrevious = parseHex(parts[6], words);
+            if (restoredCurrent == null || restoredPrevious == null) {
+                return false;
+            }
+
+            currentStartMs = Long.parseLong(parts[3]);
+            currentSize = Integer.parseInt(parts[4]);
+            current = restoredCurrent;
+            previous = restoredPrevious;
+            bitCount = bits;
+            hashCount = hashes;
+            return true;
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Error restoring reported order filter", e);
+            return false;
+        }
+    }
+
+    private static void appendHex(StringBuilder builder, long[] words) {
+        for (long word : words) {
+            String hex = Long.toHexString(word);
+            for (int i = hex.length(); i < 16; i++) {
+                builder.append('0');
+            }
+            builder.append(hex);
+        }
+    }
+
+    @Nullable
+    private static long[] parseHex(String hex, int words) {
+        if (hex.length() != words * 16) {
+            return null;
+        }
+
+        long[] result = new long[words];
+        for (int i = 0; i < words; i++) {
+            int offset = i * 16;
+            long high = Long.parseLong(hex.substring(offset, offset + 8), 16);
+            long low = Long.parseLong(hex.substring(offset + 8, offset + 16), 16);
+            result[i] = high << 32 | low;
+        }
+        return result;
+    }
+
+    /**
+     * Optimal number of bits for {@code capacity} entries at the given false positive rate,
+     * {@code m = -n ln(p) / ln(2)^2}.
+     */
+    @VisibleForTesting
+    static int bitCount(int capacity, double falsePositiveRate) {
+        double bits = -capacity * Math.log(falsePositiveRate) / (LN_2 * LN_2);
+        return Math.max(64, (int) Math.ceil(bits));
+    }
+
+    /**
+     * Optimal number of hash functions, {@code k = m / n ln(2)}.
+     */
+    @VisibleForTesting
+    static int hashCount(int bitCount, int capacity) {
+        return Math.max(1, (int) Math.round((double) bitCount / capacity * LN_2));
+    }
+
+    /**
+     * Expected false positive rate with {@code size} entries, {@code (1 - e^(-kn/m))^k}.
+     */
+    @VisibleForTesting
+    static double expectedFalsePositiveRate(int bitCount, int hashCount, int size) {
+        return Math.pow(1 - Math.exp(-(double) hashCount * size / bitCount), hashCount);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the id, finalized with the MurmurHash3 mixer so both halves can be
+     * used for double hashing.
+     */
+    @VisibleForTesting
+    static long hash(String orderId) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < orderId.length(); i++) {
+            hash ^= orderId.charAt(i);
+            hash *= FNV_PRIME;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * RetryBudget.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Token bucket shared by every task that retries requests to the Button API.
+ *
+ * Each retry spends a whole token and each successful request deposits a fraction of one, so
+ * once the initial burst is spent retries are capped at a fixed percentage of successful
+ * traffic. During an outage nothing succeeds, the bucket drains, and failed requests are no
+ * longer multiplied by retries until the API recovers.
+ */
+final class RetryBudget {
+
+    @VisibleForTesting
+    static final int MAX_TOKENS = 10;
+
+    /**
+     * Retries allowed per successful request once the initial tokens are spent (10%).
+     */
+    @VisibleForTesting
+    static final double TOKENS_PER_SUCCESS = 0.1;
+
+    /**
+     * Tokens are counted in thousandths so fractional deposits add up exactly.
+     */
+    private static final int SCALE = 1000;
+
+    private static RetryBudget retryBudget;
+
+    private final long maxBalance;
+    private final long deposit;
+    private long balance;
+
+    static synchronized RetryBudget getInstance() {
+        if (retryBudget == null) {
+            retryBudget = new RetryBudget(MAX_TOKENS, TOKENS_PER_SUCCESS);
+        }
+
+        return retryBudget;
+    }
+
+    @VisibleForTesting
+    RetryBudget(int maxTokens, double tokensPerSuccess) {
+        this.maxBalance = (long) maxTokens * SCALE;
+        this.deposit = Math.round(tokensPerSuccess * SCALE);
+        this.balance = maxBalance;
+    }
+
+    /**
+     * Records a successful request, refilling the bucket.
+     */
+    synchronized void recordSuccess() {
+        balance = Math.min(maxBalance, balance + deposit);
+    }
+
+    /**
+     * @return true if a retry may be made, in which case a token is spent
+     */
+    synchronized boolean tryAcquire() {
+        if (balance < SCALE) {
+            return false;
+        }
+
+        balance -= SCALE;
+        return true;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * SessionInterceptor.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+import android.util.Log;
+
+import com.usebutton.merchant.exception.ButtonNetworkException;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Refreshes the current session when a response provides one. If a null session is provided,
+ * the Library data is cleared.
+ */
+final class SessionInterceptor implements Interceptor {
+
+    private static final String TAG = SessionInterceptor.class.getSimpleName();
+
+    private final PersistenceManager persistenceManager;
+
+    SessionInterceptor(PersistenceManager persistenceManager) {
+        this.persistenceManager = persistenceManager;
+    }
+
+    @Override
+    public NetworkResponse intercept(Chain chain) throws ButtonNetworkException {
+        NetworkResponse response = chain.proceed(chain.request());
+        refreshSessionIfAvailable(response.getBody());
+        return response;
+    }
+
+    /**
+     * @param responseBody the JSON body of the network response
+     */
+    private void refreshSessionIfAvailable(@Nullable JSONObject responseBody) {
+        if (responseBody == null) return;
+
+        try {
+            JSONObject metaJson = responseBody.getJSONObject("meta");
+            if (metaJson.has("session_id")) {
+                String sessionId = metaJson.optString("session_id", null);
+                if (sessionId != null) {
+                    persistenceManager.setSessionId(sessionId);
+                } else {
+                    persistenceManager.clear();
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Error parsing session data from response body", e);
+        }
+    }
+}
@@ -27,6 +27,8 @@ package com.usebutton.merchant;
 
 import androidx.annotation.Nullable;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Class that handles running the api request
  *
@@ -43,19 +45,38 @@ abstract class Task<T> implements Runnable {
 
     @Override
     public void run() {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        long start = System.nanoTime();
         try {
             T object = execute();
+            recordDuration(metrics, start);
 
             if (listener != null) {
                 listener.onTaskComplete(object);
             }
         } catch (Exception e) {
+            recordDuration(metrics, start);
+            metrics.counter(MetricsSnapshot.COUNTER_TASK_FAILURES).increment();
             if (listener != null) {
                 listener.onTaskError(e);
             }
         }
     }
 
+    /**
+     * Reports the task as failed without running it, e.g. when it is dropped from a full queue.
+     */
+    void discard(Exception reason) {
+        if (listener != null) {
+            listener.onTaskError(reason);
+        }
+    }
+
+    private void recordDuration(MetricsRegistry metrics, long start) {
+        metrics.taskDuration(getClass())
+                .record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
     @Nullable
     abstract T execute() throws Exception;
 
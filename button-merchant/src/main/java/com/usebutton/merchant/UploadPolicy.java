@@ -0,0 +1,107 @@
+/*
+ * UploadPolicy.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides how eagerly low-priority uploads (events and user activity) are sent, based on
+ * {@link DeviceConditions}.
+ *
+ * While the battery is low, or power save or Doze is on, activity batching windows are
+ * stretched and low-priority uploads are deferred for up to {@link #CONSTRAINED_DEFERRAL_DELAY}.
+ * A metered network alone only stretches batching windows: most mobile sessions are on
+ * cellular data, and deferred uploads are held in memory and lost if the process dies. Orders
+ * and deferred deeplinks are never held back.
+ */
+final class UploadPolicy {
+
+    @VisibleForTesting
+    static final int CONSTRAINED_WINDOW_MULTIPLIER = 8;
+
+    @VisibleForTesting
+    static final long CONSTRAINED_DEFERRAL_DELAY = TimeUnit.MINUTES.toMillis(15);
+
+    private final DeviceConditions deviceConditions;
+    private final AtomicInteger deferralCount = new AtomicInteger();
+    private final AtomicInteger stretchedWindowCount = new AtomicInteger();
+
+    UploadPolicy(DeviceConditions deviceConditions) {
+        this.deviceConditions = deviceConditions;
+    }
+
+    /**
+     * @return true if any device condition calls for deferring low-priority uploads
+     */
+    boolean isConstrained() {
+        return deviceConditions.isBatteryLow()
+                || deviceConditions.isPowerSaveMode()
+                || deviceConditions.isDeviceIdle();
+    }
+
+    /**
+     * @param windowMs the default batching window
+     * @return the batching window to use under the current conditions
+     */
+    long getBatchingWindow(long windowMs) {
+        if (!isConstrained() && !deviceConditions.isNetworkMetered()) {
+            return windowMs;
+        }
+
+        stretchedWindowCount.incrementAndGet();
+        return windowMs * CONSTRAINED_WINDOW_MULTIPLIER;
+    }
+
+    /**
+     * @return true if a low-priority upload should be deferred, which is counted
+     */
+    boolean shouldDeferLowPriority() {
+        if (!isConstrained()) {
+            return false;
+        }
+
+        deferralCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return number of low-priority uploads deferred because of device conditions
+     */
+    int getDeferralCount() {
+        return deferralCount.get();
+    }
+
+    /**
+     * @return number of batching windows stretched because of device conditions
+     */
+    int getStretchedWindowCount() {
+        return stretchedWindowCount.get();
+    }
+}
@@ -30,10 +30,26 @@ package com.usebutton.merchant.exception;
  */
 public class HttpStatusException extends ButtonNetworkException {
     private final int statusCode;
+    private final long retryAfterMillis;
 
     public HttpStatusException(String message, int statusCode) {
+        this(message, statusCode, 0);
+    }
+
+    /**
+     * @param retryAfterMillis delay requested by the server's {@code Retry-After} header, or 0
+     */
+    public HttpStatusException(String message, int statusCode, long retryAfterMillis) {
         super(message);
         this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return the delay in milliseconds the server asked for before retrying, or 0 if none
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
     }
 
     /**
@@ -35,4 +35,8 @@ public class NetworkNotFoundException extends ButtonNetworkException {
     public NetworkNotFoundException(Exception e) {
         super(e);
     }
+
+    public NetworkNotFoundException(String message) {
+        super(message);
+    }
 }
@@ -0,0 +1,66 @@
+/*
+ * DurableDelivery.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant.module;
+
+/**
+ * Persists uploads so they are delivered even if the app process dies before they are sent.
+ *
+ * Install an implementation, such as the one in the {@code button-merchant-work} module, with
+ * {@link com.usebutton.merchant.ButtonMerchant#setDurableDelivery}. Requests are later sent
+ * with {@link com.usebutton.merchant.ButtonMerchant#deliver}.
+ */
+public interface DurableDelivery {
+
+    /**
+     * Kinds of uploads handed to a {@link DurableDelivery}.
+     */
+    enum Type {
+        /**
+         * A single order. The key is the order id.
+         */
+        ORDER,
+
+        /**
+         * A batch of events. The key is unique to the batch.
+         */
+        EVENTS
+    }
+
+    /**
+     * Persists an upload and schedules its delivery.
+     *
+     * Called on a background thread.
+     *
+     * @param type the kind of upload
+     * @param key identifies the upload within its type; an upload with the same type and key as
+     * one that is still pending may be coalesced with it
+     * @param request the serialized request, to be passed to
+     * {@link com.usebutton.merchant.ButtonMerchant#deliver}
+     * @return true if the upload was persisted; otherwise the library sends it itself
+     */
+    boolean enqueue(Type type, String key, String request);
+}
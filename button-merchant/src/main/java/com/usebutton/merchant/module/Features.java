@@ -40,4 +40,115 @@ public interface Features {
     void setIncludesIfa(boolean includesIfa);
 
     boolean getIncludesIfa();
+
+    /**
+     * Sets the window in which repeated {@code productViewed} calls for the same product are
+     * dropped, e.g. when a list rebinds its views. Repeats are dropped for at least the window
+     * and at most twice the window after the first call. {@code productAddedToCart} calls are
+     * never dropped. The default value is 1000 milliseconds.
+     *
+     * @param windowMs the suppression window in milliseconds, or 0 to report every call
+     */
+    void setActivitySuppressionWindow(long windowMs);
+
+    long getActivitySuppressionWindow();
+
+    /**
+     * Indicates whether or not {@code reportOrder} and {@code reportOrders} skip orders whose id
+     * was already reported within the {@link #setOrderDeduplicationWindow(long) deduplication
+     * window}. A skipped order is reported to its listener, or in its {@code OrderResult}, as an
+     * {@link com.usebutton.merchant.exception.OrderAlreadyReportedException}. Only enable this
+     * if your app never reports a corrected order with the same id, and can tolerate the
+     * {@link #setOrderDeduplicationFalsePositiveRate(double) rare false positive}.
+     * The default value is {@link Boolean#FALSE}
+     *
+     * @param orderDeduplication If set to {@link Boolean#FALSE}, every order is reported.
+     */
+    void setOrderDeduplication(boolean orderDeduplication);
+
+    boolean getOrderDeduplication();
+
+    /**
+     * Sets how long a reported order id is remembered for deduplication.
+     * The default value is 24 hours.
+     *
+     * @param windowMs the deduplication window in milliseconds, or 0 to report every order
+     */
+    void setOrderDeduplicationWindow(long windowMs);
+
+    long getOrderDeduplicationWindow();
+
+    /**
+     * Sets the probability that an order that was never reported is mistaken for a reported
+     * one and skipped. Lower rates use more storage. The default value is 0.0001.
+     *
+     * @param falsePositiveRate a rate between 0.000001 and 0.1
+     */
+    void setOrderDeduplicationFalsePositiveRate(double falsePositiveRate);
+
+    double getOrderDeduplicationFalsePositiveRate();
+
+    /**
+     * Indicates whether or not event and activity requests are sent as CBOR, a compact binary
+     * encoding of the same data, instead of JSON. If the server rejects CBOR, the library falls
+     * back to JSON for the rest of the session.
+     * The default value is {@link Boolean#FALSE}
+     *
+     * @param cborEncoding If set to {@link Boolean#TRUE}, supported requests are sent as CBOR.
+     */
+    void setCborEncoding(boolean cborEncoding);
+
+    boolean getCborEncoding();
+
+    /**
+     * Indicates whether or not event requests hoist the fields that every event in a batch
+     * shares, such as the attribution token and time, into the batch header instead of
+     * repeating them for each event.
+     * The default value is {@link Boolean#FALSE}
+     *
+     * @param compactEventBatches If set to {@link Boolean#TRUE}, event batches are sent with
+     * shared fields in the header.
+     */
+    void setCompactEventBatches(boolean compactEventBatches);
+
+    boolean getCompactEventBatches();
+
+    /**
+     * Indicates whether or not user activity is reported several activities per request, with
+     * each distinct product sent once per request and viewed carts sent as the changes since the
+     * last reported cart. When disabled, each activity is sent in its own request with its full
+     * product list.
+     * The default value is {@link Boolean#FALSE}
+     *
+     * @param batchedActivities If set to {@link Boolean#TRUE}, user activity is sent in batches.
+     */
+    void setBatchedActivities(boolean batchedActivities);
+
+    boolean getBatchedActivities();
+
+    /**
+     * Indicates whether or not {@code ButtonMerchant.configure} opens a connection to the Button
+     * API in the background, so the first request, often the deferred deeplink lookup, does not
+     * wait on DNS and TLS setup.
+     * The default value is {@link Boolean#FALSE}
+     *
+     * @param connectionPreWarming If set to {@link Boolean#TRUE}, connections are warmed on
+     * configure.
+     */
+    void setConnectionPreWarming(boolean connectionPreWarming);
+
+    boolean getConnectionPreWarming();
+
+    /**
+     * Sets how long the deferred deeplink lookup waits for a response before sending a second,
+     * identical request on another connection. Whichever response arrives first is used and the
+     * other request is cancelled. A delay near the 95th percentile of lookup latency for your
+     * users sends a second request for about 1 in 20 lookups.
+     * The default value is 0, which sends a single request.
+     *
+     * @param delayMs the hedge delay in milliseconds, or 0 to disable hedging
+     */
+    void setPendingLinkHedgeDelay(long delayMs);
+
+    long getPendingLinkHedgeDelay();
 }
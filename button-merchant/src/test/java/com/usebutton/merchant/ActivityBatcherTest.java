@@ -0,0 +1,233 @@
+/*
+ * ActivityBatcherTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import androidx.annotation.Nullable;
+
+import com.usebutton.merchant.module.Features;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ActivityBatcherTest {
+
+    private ScheduledExecutorService executorService;
+    private ScheduledFuture future;
+    private TestSink sink;
+    private FakeDeviceConditions deviceConditions;
+    private UploadPolicy uploadPolicy;
+    private ActivityBatcher batcher;
+
+    @Before
+    public void setUp() {
+        executorService = mock(ScheduledExecutorService.class);
+        future = mock(ScheduledFuture.class);
+        when(executorService.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class)))
+                .thenReturn(future);
+        sink = new TestSink();
+        deviceConditions = new FakeDeviceConditions();
+        uploadPolicy = new UploadPolicy(deviceConditions);
+        batcher = new ActivityBatcher(executorService, sink, uploadPolicy, 500, 3);
+    }
+
+    @Test
+    public void add_firstActivity_shouldScheduleFlushOnce() {
+        batcher.add(activity("one"), "token");
+        batcher.add(activity("two"), "token");
+
+        verify(executorService).schedule(any(Runnable.class), eq(500L),
+                eq(TimeUnit.MILLISECONDS));
+        assertTrue(sink.batches.isEmpty());
+    }
+
+    @Test
+    public void add_constrained_shouldStretchWindow() {
+        deviceConditions.powerSaveMode = true;
+
+        batcher.add(activity("one"), "token");
+
+        verify(executorService).schedule(any(Runnable.class),
+                eq(500L * UploadPolicy.CONSTRAINED_WINDOW_MULTIPLIER),
+                eq(TimeUnit.MILLISECONDS));
+        assertEquals(1, uploadPolicy.getStretchedWindowCount());
+    }
+
+    @Test
+    public void scheduledFlush_shouldDeliverSingleBatch() {
+        batcher.add(activity("one"), "token");
+        batcher.add(activity("two"), "token");
+
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).schedule(captor.capture(), anyLong(), any(TimeUnit.class));
+        captor.getValue().run();
+
+        assertEquals(1, sink.batches.size());
+        assertEquals(2, sink.batches.get(0).size());
+        assertEquals("one", sink.batches.get(0).get(0).getName());
+        assertEquals("two", sink.batches.get(0).get(1).getName());
+        assertEquals("token", sink.sourceTokens.get(0));
+    }
+
+    @Test
+    public void add_maxBatchSize_shouldFlushImmediatelyAndCancelTimer() {
+        batcher.add(activity("one"), "token");
+        batcher.add(activity("two"), "token");
+        batcher.add(activity("three"), "token");
+
+        assertEquals(1, sink.batches.size());
+        assertEquals(3, sink.batches.get(0).size());
+        verify(future).cancel(false);
+    }
+
+    @Test
+    public void add_differentSourceToken_shouldFlushPendingBatch() {
+        batcher.add(activity("one"), "token-one");
+        batcher.add(activity("two"), null);
+
+        assertEquals(1, sink.batches.size());
+        assertEquals("token-one", sink.sourceTokens.get(0));
+
+        batcher.flush();
+
+        assertEquals(2, sink.batches.size());
+        assertNull(sink.sourceTokens.get(1));
+        assertEquals("two", sink.batches.get(1).get(0).getName());
+    }
+
+    @Test
+    public void add_afterFlush_shouldScheduleNewWindow() {
+        batcher.add(activity("one"), "token");
+        batcher.flush();
+        batcher.add(activity("two"), "token");
+
+        verify(executorService, times(2)).schedule(any(Runnable.class), anyLong(),
+                any(TimeUnit.class));
+    }
+
+    @Test
+    public void flush_noPendingActivities_shouldNotDeliver() {
+        batcher.flush();
+
+        assertTrue(sink.batches.isEmpty());
+        verify(executorService, never()).schedule(any(Runnable.class), anyLong(),
+                any(TimeUnit.class));
+    }
+
+    @Test
+    public void trackActivity_1000Activities_shouldBatchRequests() throws Exception {
+        final AtomicInteger activityCount = new AtomicInteger();
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                try {
+                    JSONObject body = new JSONObject(request.getBody().readUtf8());
+                    activityCount.addAndGet(body.getJSONArray("activities").length());
+                } catch (Exception e) {
+                    return new MockResponse().setResponseCode(400);
+                }
+                return new MockResponse().setResponseCode(200).setBody("{}");
+            }
+        });
+        server.start();
+        HttpUrl baseUrl = server.url("");
+        String url = baseUrl.url().toString();
+        url = url.substring(0, url.length() - 1);
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        ConnectionManager connectionManager = new ConnectionManagerImpl(url, "test-agent",
+                mock(PersistenceManager.class));
+        ButtonRepository repository = new ButtonRepositoryImpl(
+                new ButtonApiImpl(connectionManager, batchedActivities()),
+                mock(DeviceManager.class),
+                mock(Features.class), mock(PersistenceManager.class), executor,
+                new FakeConnectivityMonitor(), new UploadPolicy(DeviceConditions.UNCONSTRAINED));
+        repository.setApplicationId("app-test");
+        ((ConnectionManagerImpl) connectionManager).baseUrl = url;
+
+        List<ButtonProductCompatible> products = Collections.emptyList();
+        for (int i = 0; i < 1000; i++) {
+            repository.trackActivity("product-viewed", products);
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        server.close();
+
+        // One request per activity before batching
+        assertEquals(1000, activityCount.get());
+        assertEquals(1000 / ActivityBatcher.DEFAULT_MAX_BATCH_SIZE, server.getRequestCount());
+    }
+
+    private static ActivityEvent activity(String name) {
+        return new ActivityEvent(name, Collections.<ButtonProductCompatible>emptyList(), 1000L);
+    }
+
+    private static Features batchedActivities() {
+        Features features = new FeaturesImpl();
+        features.setBatchedActivities(true);
+        return features;
+    }
+
+    private static class TestSink implements ActivityBatcher.Sink {
+
+        private final List<List<ActivityEvent>> batches = new ArrayList<>();
+        private final List<String> sourceTokens = new ArrayList<>();
+
+        @Override
+        public void onBatch(List<ActivityEvent> activities, @Nullable String sourceToken) {
+            batches.add(activities);
+            sourceTokens.add(sourceToken);
+        }
+    }
+}
@@ -29,12 +29,15 @@ import com.usebutton.merchant.module.Features;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.verify;
@@ -47,17 +50,36 @@ public class ActivityReportingTaskTest {
     @Mock private Features features;
     @Mock private Task.Listener<Void> listener;
 
-    private String activityName = "test-activity";
     private String sourceToken = "test-token";
-    private List<ButtonProductCompatible> products = new ArrayList<>();
+    private List<ActivityEvent> activities = Collections.singletonList(new ActivityEvent(
+            "test-activity", new ArrayList<ButtonProductCompatible>(), 1000L));
 
     private ActivityReportingTask task;
 
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
-        task = new ActivityReportingTask(buttonApi, deviceManager, features, activityName,
+        task = new ActivityReportingTask(buttonApi, deviceManager, features, activities,
+                sourceToken, listener);
+    }
+
+    @Test
+    public void execute_singleActivity_verifyApiCall() throws Exception {
+        List<ButtonProductCompatible> products = new ArrayList<>();
+        products.add(new ButtonProduct());
+        task = new ActivityReportingTask(buttonApi, deviceManager, features, "test-activity",
                 products, sourceToken, listener);
+
+        // Changes made after the activity was reported are not sent
+        products.clear();
+        task.execute();
+
+        ArgumentCaptor<List<ActivityEvent>> captor = ArgumentCaptor.forClass(List.class);
+        verify(buttonApi).postActivities(captor.capture(), eq(sourceToken),
+                (String) isNull());
+        assertEquals(1, captor.getValue().size());
+        assertEquals("test-activity", captor.getValue().get(0).getName());
+        assertEquals(1, captor.getValue().get(0).getProducts().size());
     }
 
     @Test
@@ -68,7 +90,7 @@ public class ActivityReportingTaskTest {
 
         task.execute();
 
-        verify(buttonApi).postActivity(activityName, products, sourceToken, "valid_advertising_id");
+        verify(buttonApi).postActivities(activities, sourceToken, "valid_advertising_id");
     }
 
     @Test
@@ -78,8 +100,7 @@ public class ActivityReportingTaskTest {
 
         task.execute();
 
-        verify(buttonApi).postActivity(eq(activityName), eq(products), eq(sourceToken),
-                (String) isNull());
+        verify(buttonApi).postActivities(eq(activities), eq(sourceToken), (String) isNull());
     }
 
     @Test
@@ -89,7 +110,6 @@ public class ActivityReportingTaskTest {
 
         task.execute();
 
-        verify(buttonApi).postActivity(eq(activityName), eq(products), eq(sourceToken),
-                (String) isNull());
+        verify(buttonApi).postActivities(eq(activities), eq(sourceToken), (String) isNull());
     }
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+/*
+ * ActivitySuppressorTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import com.usebutton.merchant.module.Features;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ActivitySuppressorTest {
+
+    private Features features;
+    private TestTimeProvider timeProvider;
+    private MetricsRegistry metrics;
+    private ActivitySuppressor suppressor;
+
+    @Before
+    public void setUp() {
+        features = mock(Features.class);
+        when(features.getActivitySuppressionWindow()).thenReturn(1000L);
+        timeProvider = new TestTimeProvider();
+        metrics = new MetricsRegistry();
+        suppressor = new ActivitySuppressor(features, timeProvider, metrics);
+    }
+
+    @Test
+    public void shouldSuppress_repeatWithinWindow_shouldSuppress() {
+        assertFalse(suppressor.shouldSuppress("product-viewed", "one"));
+        timeProvider.time += 200;
+        assertTrue(suppressor.shouldSuppress("product-viewed", "one"));
+        assertTrue(suppressor.shouldSuppress("product-viewed", "one"));
+
+        assertEquals(2, suppressedActivities());
+    }
+
+    @Test
+    public void shouldSuppress_differentKey_shouldNotSuppress() {
+        assertFalse(suppressor.shouldSuppress("product-viewed", "one"));
+        assertFalse(suppressor.shouldSuppress("product-viewed", "two"));
+        assertFalse(suppressor.shouldSuppress("add-to-cart", "one"));
+
+        assertEquals(0, suppressedActivities());
+    }
+
+    @Test
+    public void shouldSuppress_acrossBucketBoundary_shouldSuppress() {
+        timeProvider.time = 10999;
+        assertFalse(suppressor.shouldSuppress("product-viewed", "one"));
+
+        timeProvider.time = 11001;
+        assertTrue(suppressor.shouldSuppress("product-viewed", "one"));
+    }
+
+    @Test
+    public void shouldSuppress_afterTwoWindows_shouldReportAgain() {
+        timeProvider.time = 10000;
+        assertFalse(suppressor.shouldSuppress("product-viewed", "one"));
+
+        timeProvider.time = 12000;
+        assertFalse(suppressor.shouldSuppress("product-viewed", "one"));
+        assertEquals(0, suppressedActivities());
+    }
+
+    @Test
+    public void shouldSuppress_olderGenerationExpires() {
+        timeProvider.time = 10000;
+        assertFalse(suppressor.shouldSuppress("product-viewed", "one"));
+        timeProvider.time = 11000;
+        assertFalse(suppressor.shouldSuppress("product-viewed", "two"));
+
+        timeProvider.time = 12000;
+        assertFalse(suppressor.shouldSuppress("product-viewed", "one"));
+        assertTrue(suppressor.shouldSuppress("product-viewed", "two"));
+    }
+
+    @Test
+    public void shouldSuppress_clockMovedBack_shouldReset() {
+        timeProvider.time = 10000;
+        assertFalse(suppressor.shouldSuppress("product-viewed", "one"));
+
+        timeProvider.time = 5000;
+        assertFalse(suppressor.shouldSuppress("product-viewed", "one"));
+    }
+
+    @Test
+    public void shouldSuppress_windowDisabled_shouldNotSuppress() {
+        when(features.getActivitySuppressionWindow()).thenReturn(0L);
+
+        assertFalse(suppressor.shouldSuppress("product-viewed", "one"));
+        assertFalse(suppressor.shouldSuppress("product-viewed", "one"));
+    }
+
+    @Test
+    public void shouldSuppress_nullProductId_shouldNotSuppress() {
+        assertFalse(suppressor.shouldSuppress("product-viewed", null));
+        assertFalse(suppressor.shouldSuppress("product-viewed", null));
+    }
+
+    @Test
+    public void shouldSuppress_manyProducts_shouldTrackAll() {
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(suppressor.shouldSuppress("product-viewed", "sku-" + i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(suppressor.shouldSuppress("product-viewed", "sku-" + i));
+        }
+
+        assertEquals(1000, suppressedActivities());
+    }
+
+    @Test
+    public void keySet_shouldGrowAndClear() {
+        ActivitySuppressor.KeySet keySet = new ActivitySuppressor.KeySet();
+        for (long key = 1; key <= 100; key++) {
+            keySet.add(key * 31);
+        }
+        keySet.add(31);
+
+        assertEquals(100, keySet.size());
+        assertTrue(keySet.contains(31 * 100));
+        assertFalse(keySet.contains(30));
+
+        keySet.clear();
+        assertEquals(0, keySet.size());
+        assertFalse(keySet.contains(31));
+    }
+
+    private long suppressedActivities() {
+        return metrics.snapshot().getCounter(MetricsSnapshot.COUNTER_SUPPRESSED_ACTIVITIES);
+    }
+
+    private static class TestTimeProvider implements TimeProvider {
+
+        private long time = 10000L;
+
+        @Override
+        public long getTimeInMs() {
+            return time;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.junit.Test;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class ApiRequestTest {
@@ -44,6 +45,7 @@ public class ApiRequestTest {
         assertEquals("/", apiRequest.getPath());
         assertTrue(apiRequest.getHeaders().isEmpty());
         assertEquals(new JSONObject().toString(), apiRequest.getBody().toString());
+        assertFalse(apiRequest.isChunked());
     }
 
     @Test
@@ -67,4 +69,27 @@ public class ApiRequestTest {
 
         assertEquals(body, apiRequest.getBody());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void newBuilder_verifyCopy() {
+        JSONObject body = new JSONObject();
+        ApiRequest apiRequest = new ApiRequest.Builder(ApiRequest.RequestMethod.POST, "/")
+                .addHeader("header_key", "header_value")
+                .setBody(body)
+                .setCborAllowed(true)
+                .setChunked(true)
+                .build();
+
+        ApiRequest copy = apiRequest.newBuilder()
+                .addHeader("other_key", "other_value")
+                .build();
+
+        assertEquals("/", copy.getPath());
+        assertEquals(body, copy.getBody());
+        assertTrue(copy.isCborAllowed());
+        assertTrue(copy.isChunked());
+        assertEquals("header_value", copy.getHeaders().get("header_key"));
+        assertEquals("other_value", copy.getHeaders().get("other_key"));
+        assertEquals(1, apiRequest.getHeaders().size());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * AppLifecycleMonitorTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import android.app.Activity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AppLifecycleMonitorTest {
+
+    @Mock ButtonRepository buttonRepository;
+
+    private AppLifecycleMonitor appLifecycleMonitor;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        appLifecycleMonitor = new AppLifecycleMonitor(buttonRepository);
+    }
+
+    @Test
+    public void onActivityStarted_foreground_warmUp() {
+        appLifecycleMonitor.onActivityStarted(mock(Activity.class));
+
+        verify(buttonRepository).warmUp();
+    }
+
+    @Test
+    public void onActivityStarted_alreadyForeground_doNotWarmUpAgain() {
+        appLifecycleMonitor.onActivityStarted(mock(Activity.class));
+        appLifecycleMonitor.onActivityStarted(mock(Activity.class));
+
+        verify(buttonRepository).warmUp();
+    }
+
+    @Test
+    public void onActivityStopped_background_flush() {
+        Activity activity = mock(Activity.class);
+        appLifecycleMonitor.onActivityStarted(activity);
+
+        appLifecycleMonitor.onActivityStopped(activity);
+
+        verify(buttonRepository).flush(AppLifecycleMonitor.BACKGROUND_FLUSH_TIMEOUT);
+    }
+
+    @Test
+    public void onActivityStopped_otherActivityStarted_doNotFlush() {
+        Activity first = mock(Activity.class);
+        Activity second = mock(Activity.class);
+        appLifecycleMonitor.onActivityStarted(first);
+
+        appLifecycleMonitor.onActivityStarted(second);
+        appLifecycleMonitor.onActivityStopped(first);
+
+        verify(buttonRepository, never()).flush(anyLong());
+    }
+
+    @Test
+    public void onActivityStopped_changingConfigurations_doNotFlushOrWarmUp() {
+        Activity activity = mock(Activity.class);
+        when(activity.isChangingConfigurations()).thenReturn(true);
+        appLifecycleMonitor.onActivityStarted(activity);
+
+        appLifecycleMonitor.onActivityStopped(activity);
+        appLifecycleMonitor.onActivityStarted(mock(Activity.class));
+
+        verify(buttonRepository, never()).flush(anyLong());
+        verify(buttonRepository).warmUp();
+    }
+
+    @Test
+    public void onActivityStarted_returnFromBackground_warmUpAgain() {
+        Activity activity = mock(Activity.class);
+        appLifecycleMonitor.onActivityStarted(activity);
+        appLifecycleMonitor.onActivityStopped(activity);
+
+        appLifecycleMonitor.onActivityStarted(activity);
+
+        verify(buttonRepository, times(2)).warmUp();
+    }
+
+    @Test
+    public void onActivityStopped_unbalanced_ignore() {
+        appLifecycleMonitor.onActivityStopped(mock(Activity.class));
+
+        verify(buttonRepository, never()).flush(anyLong());
+    }
+}
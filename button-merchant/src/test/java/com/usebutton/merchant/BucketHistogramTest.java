@@ -0,0 +1,135 @@
+/*
+ * BucketHistogramTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BucketHistogramTest {
+
+    @Test
+    public void getBucket_smallValues_shouldHaveOwnBucket() {
+        for (int value = 0; value < BucketHistogram.SUB_BUCKETS; value++) {
+            assertEquals(value, BucketHistogram.getBucket(value));
+        }
+    }
+
+    @Test
+    public void getBucket_shouldSplitPowersOfTwo() {
+        assertEquals(8, BucketHistogram.getBucket(8));
+        assertEquals(15, BucketHistogram.getBucket(15));
+        assertEquals(16, BucketHistogram.getBucket(16));
+        assertEquals(16, BucketHistogram.getBucket(17));
+        assertEquals(17, BucketHistogram.getBucket(18));
+    }
+
+    @Test
+    public void getBucket_hugeValue_shouldUseLastBucket() {
+        assertEquals(BucketHistogram.BUCKET_COUNT - 1, BucketHistogram.getBucket(1L << 40));
+        assertEquals(BucketHistogram.BUCKET_COUNT - 1,
+                BucketHistogram.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void getUpperBound_shouldBeLargestValueInBucket() {
+        for (int bucket = 0; bucket < BucketHistogram.BUCKET_COUNT - 1; bucket++) {
+            long upperBound = BucketHistogram.getUpperBound(bucket);
+            assertEquals(bucket, BucketHistogram.getBucket(upperBound));
+            assertEquals(bucket + 1, BucketHistogram.getBucket(upperBound + 1));
+        }
+    }
+
+    @Test
+    public void getUpperBound_shouldBeWithinRelativeError() {
+        for (long value = 8; value < 100000; value += 7) {
+            long upperBound = BucketHistogram.getUpperBound(BucketHistogram.getBucket(value));
+            assertTrue(String.valueOf(value), upperBound < value * 1.125);
+        }
+    }
+
+    @Test
+    public void snapshot_empty_shouldReportZeroes() {
+        MetricsSnapshot.Histogram histogram = new BucketHistogram().snapshot();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void snapshot_shouldReportCountMeanAndMax() {
+        BucketHistogram histogram = new BucketHistogram();
+        histogram.record(10);
+        histogram.record(20);
+        histogram.record(60);
+
+        MetricsSnapshot.Histogram snapshot = histogram.snapshot();
+
+        assertEquals(3, snapshot.getCount());
+        assertEquals(30, snapshot.getMean(), 0);
+        assertEquals(60, snapshot.getMax());
+    }
+
+    @Test
+    public void snapshot_shouldReportPercentiles() {
+        BucketHistogram histogram = new BucketHistogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        MetricsSnapshot.Histogram snapshot = histogram.snapshot();
+
+        assertWithinError(500, snapshot.getValueAtPercentile(50));
+        assertWithinError(990, snapshot.getValueAtPercentile(99));
+        assertEquals(1000, snapshot.getValueAtPercentile(100));
+        assertEquals(1, snapshot.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void snapshot_overflowValue_shouldReportMax() {
+        BucketHistogram histogram = new BucketHistogram();
+        histogram.record(Long.MAX_VALUE / 2);
+
+        assertEquals(Long.MAX_VALUE / 2, histogram.snapshot().getValueAtPercentile(50));
+    }
+
+    @Test
+    public void record_negativeValue_shouldCountAsZero() {
+        BucketHistogram histogram = new BucketHistogram();
+        histogram.record(-5);
+
+        MetricsSnapshot.Histogram snapshot = histogram.snapshot();
+        assertEquals(1, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+    }
+
+    private static void assertWithinError(long expected, long actual) {
+        assertTrue(actual + " for " + expected, actual >= expected && actual < expected * 1.125);
+    }
+}
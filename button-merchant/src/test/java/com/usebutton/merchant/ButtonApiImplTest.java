@@ -26,6 +26,7 @@
 package com.usebutton.merchant;
 
 import com.usebutton.merchant.exception.ButtonNetworkException;
+import com.usebutton.merchant.module.Features;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -37,7 +38,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -50,7 +53,11 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -59,6 +66,9 @@ public class ButtonApiImplTest {
     @Mock
     private ConnectionManager connectionManager;
 
+    @Mock
+    private Features features;
+
     @InjectMocks
     private ButtonApiImpl buttonApi;
 
@@ -137,6 +147,25 @@ public class ButtonApiImplTest {
                 Collections.<String, String>emptyMap());
     }
 
+    @Test
+    public void getPendingLink_hedgeDelay_executeHedgedRequest() throws Exception {
+        ArgumentCaptor<ApiRequest> requestCaptor = ArgumentCaptor.forClass(ApiRequest.class);
+        ArgumentCaptor<ApiRequest> hedgeCaptor = ArgumentCaptor.forClass(ApiRequest.class);
+        NetworkResponse response = new NetworkResponse(200, new JSONObject());
+        when(connectionManager.executeHedgedRequest(requestCaptor.capture(),
+                hedgeCaptor.capture(), eq(500L))).thenReturn(response);
+
+        buttonApi.getPendingLink("valid_application_id", "valid_ifa",
+                Collections.singletonMap("key", "value"), 500);
+
+        ApiRequest apiRequest = requestCaptor.getValue();
+        ApiRequest hedge = hedgeCaptor.getValue();
+        assertEquals("/v1/app/deferred-deeplink", hedge.getPath());
+        assertTrue(apiRequest.getBody() != hedge.getBody());
+        assertEquals(apiRequest.getBody().toString(), hedge.getBody().toString());
+        verify(connectionManager, never()).executeRequest(any(ApiRequest.class));
+    }
+
     @Test
     public void postOrder_validateRequestMethodAndPath() throws Exception {
         Order order = new Order.Builder("123", new Date(), Collections.<Order.LineItem>emptyList())
@@ -151,6 +180,23 @@ public class ButtonApiImplTest {
 
         assertEquals(ApiRequest.RequestMethod.POST, apiRequest.getRequestMethod());
         assertEquals("/v1/app/order", apiRequest.getPath());
+        assertFalse(apiRequest.isChunked());
+    }
+
+    @Test
+    public void postOrder_manyLineItems_shouldSendInChunks() throws Exception {
+        List<Order.LineItem> lineItems = new ArrayList<>();
+        for (int i = 0; i <= ButtonApiImpl.CHUNKED_LINE_ITEM_THRESHOLD; i++) {
+            lineItems.add(new Order.LineItem.Builder("sku-" + i, 100).build());
+        }
+        Order order = new Order.Builder("123", new Date(), lineItems).build();
+
+        buttonApi.postOrder(order, "valid_application_id",
+                "valid_source_token", "valid_advertising_id");
+
+        ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
+        verify(connectionManager).executeRequest(argumentCaptor.capture());
+        assertTrue(argumentCaptor.getValue().isChunked());
     }
 
     @Test
@@ -194,7 +240,7 @@ public class ButtonApiImplTest {
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
 
-        JSONObject requestBody = apiRequest.getBody();
+        JSONObject requestBody = streamedBody(apiRequest);
         assertEquals(currencyCode, requestBody.getString("currency"));
         assertEquals(sourceToken, requestBody.getString("btn_ref"));
         assertEquals(orderId, requestBody.getString("order_id"));
@@ -237,7 +283,7 @@ public class ButtonApiImplTest {
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
 
-        JSONObject requestBody = apiRequest.getBody();
+        JSONObject requestBody = streamedBody(apiRequest);
         JSONArray lineItemsJsonArray = requestBody.getJSONArray("line_items");
         assertEquals(1, lineItemsJsonArray.length());
 
@@ -291,7 +337,7 @@ public class ButtonApiImplTest {
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
 
-        JSONObject requestBody = apiRequest.getBody();
+        JSONObject requestBody = streamedBody(apiRequest);
         JSONArray lineItemsJsonArray = requestBody.getJSONArray("line_items");
         assertEquals(2, lineItemsJsonArray.length());
 
@@ -353,7 +399,7 @@ public class ButtonApiImplTest {
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
 
-        JSONObject requestBody = apiRequest.getBody();
+        JSONObject requestBody = streamedBody(apiRequest);
         JSONObject customerJson = requestBody.getJSONObject("customer");
         assertEquals(customerId, customerJson.getString("id"));
         assertEquals(customerEmail, customerJson.getString("email_sha256"));
@@ -377,7 +423,7 @@ public class ButtonApiImplTest {
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
 
-        JSONObject requestBody = apiRequest.getBody();
+        JSONObject requestBody = streamedBody(apiRequest);
         JSONObject customerJson = requestBody.getJSONObject("customer");
         assertEquals(customerId, customerJson.getString("id"));
         assertFalse(customerJson.has("email_sha256"));
@@ -418,7 +464,7 @@ public class ButtonApiImplTest {
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
 
-        JSONObject requestBody = apiRequest.getBody();
+        JSONObject requestBody = streamedBody(apiRequest);
         JSONObject customerJson = requestBody.getJSONObject("customer");
         assertEquals(ButtonUtil.sha256Encode(customerEmail.toLowerCase()),
                 customerJson.getString("email_sha256"));
@@ -445,43 +491,126 @@ public class ButtonApiImplTest {
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
 
-        JSONObject requestBody = apiRequest.getBody();
+        JSONObject requestBody = streamedBody(apiRequest);
         JSONObject customerJson = requestBody.getJSONObject("customer");
         assertEquals(customerEmail, customerJson.getString("email_sha256"));
     }
 
     @Test
-    public void postActivity_validateRequest() throws Exception {
+    public void postOrders_validateRequest() throws Exception {
+        Order order = new Order.Builder("123", new Date(), Collections.<Order.LineItem>emptyList())
+                .build();
+
+        String applicationId = "valid_application_id";
+        buttonApi.postOrders(Collections.singletonList(order), applicationId,
+                "valid_source_token", "valid_advertising_id");
+
         ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
+        verify(connectionManager).executeRequest(argumentCaptor.capture());
+        ApiRequest apiRequest = argumentCaptor.getValue();
+
+        assertEquals(ApiRequest.RequestMethod.POST, apiRequest.getRequestMethod());
+        assertEquals("/v1/app/orders", apiRequest.getPath());
+        assertEquals("Basic " + ButtonUtil.base64Encode(applicationId + ":"),
+                apiRequest.getHeaders().get("Authorization"));
+        assertTrue(apiRequest.isChunked());
+    }
 
-        buttonApi.postActivity("test-activity", Collections.<ButtonProductCompatible>emptyList(),
+    @Test
+    public void postOrders_validateOrders() throws Exception {
+        Date purchaseDate = new Date();
+        Order.LineItem lineItem = new Order.LineItem.Builder("valid_line_item_id", 100)
+                .setCategory(Collections.singletonList("valid_line_item_category"))
+                .setAttributes(Collections.singletonMap("valid_key", "valid_value"))
+                .setQuantity(2)
+                .build();
+        Order.Customer customer = new Order.Customer.Builder("valid_customer_id")
+                .setEmail("customer@usebutton.com")
+                .build();
+        Order first = new Order.Builder("first", purchaseDate,
+                Collections.singletonList(lineItem))
+                .setCurrencyCode("EUR")
+                .setCustomerOrderId("valid_customer_order_id")
+                .setCustomer(customer)
+                .build();
+        Order second = new Order.Builder("second", purchaseDate,
+                Collections.<Order.LineItem>emptyList())
+                .build();
+
+        buttonApi.postOrders(Arrays.asList(first, second), "valid_application_id",
+                "valid_source_token", "valid_advertising_id");
+
+        ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
+        verify(connectionManager).executeRequest(argumentCaptor.capture());
+        JSONObject requestBody = streamedBody(argumentCaptor.getValue());
+        JSONArray ordersJson = requestBody.getJSONArray("orders");
+
+        assertEquals("valid_source_token", requestBody.getString("btn_ref"));
+        assertEquals("valid_advertising_id", requestBody.getString("advertising_id"));
+        assertEquals(2, ordersJson.length());
+
+        JSONObject firstJson = ordersJson.getJSONObject(0);
+        assertEquals("EUR", firstJson.getString("currency"));
+        assertEquals("first", firstJson.getString("order_id"));
+        assertEquals(ButtonUtil.formatDate(purchaseDate), firstJson.getString("purchase_date"));
+        assertEquals("valid_customer_order_id", firstJson.getString("customer_order_id"));
+
+        JSONObject lineItemJson = firstJson.getJSONArray("line_items").getJSONObject(0);
+        assertEquals("valid_line_item_id", lineItemJson.getString("identifier"));
+        assertEquals(2, lineItemJson.getInt("quantity"));
+        assertEquals(100, lineItemJson.getLong("total"));
+        assertEquals("valid_line_item_category",
+                lineItemJson.getJSONArray("category").getString(0));
+        assertEquals("valid_value",
+                lineItemJson.getJSONObject("attributes").getString("valid_key"));
+
+        JSONObject customerJson = firstJson.getJSONObject("customer");
+        assertEquals("valid_customer_id", customerJson.getString("id"));
+        assertEquals(ButtonUtil.sha256Encode("customer@usebutton.com"),
+                customerJson.getString("email_sha256"));
+
+        JSONObject secondJson = ordersJson.getJSONObject(1);
+        assertEquals("USD", secondJson.getString("currency"));
+        assertFalse(secondJson.has("line_items"));
+        assertFalse(secondJson.has("customer"));
+    }
+
+    @Test
+    public void postActivities_validateRequest() throws Exception {
+        ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
+
+        buttonApi.postActivities(activities(Collections.<ButtonProductCompatible>emptyList()),
                 null, null);
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
 
         assertEquals("/v1/app/activity", apiRequest.getPath());
         assertEquals(ApiRequest.RequestMethod.POST, apiRequest.getRequestMethod());
+        assertTrue(apiRequest.isCborAllowed());
     }
 
     @Test
-    public void postActivity_noProducts_shouldPostActivity() throws Exception {
+    public void postActivities_noProducts_shouldPostActivities() throws Exception {
+        when(features.getBatchedActivities()).thenReturn(true);
         ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
 
-        buttonApi.postActivity("test-activity", Collections.<ButtonProductCompatible>emptyList(),
+        buttonApi.postActivities(activities(Collections.<ButtonProductCompatible>emptyList()),
                 "test-token", null);
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
-        JSONObject requestBody = apiRequest.getBody();
-        JSONObject activityBody = requestBody.getJSONObject("activity_data");
+        JSONObject requestBody = streamedBody(apiRequest);
+        JSONObject activityBody = requestBody.getJSONArray("activities").getJSONObject(0);
 
         assertEquals("test-activity", activityBody.getString("name"));
-        assertFalse(activityBody.has("products"));
+        assertFalse(activityBody.has("product_refs"));
+        assertFalse(requestBody.has("products"));
         assertEquals("test-token", requestBody.getString("btn_ref"));
         assertFalse(requestBody.has("ifa"));
     }
 
     @Test
-    public void postActivity_multipleProducts_shouldPostActivity() throws Exception {
+    public void postActivities_multipleProducts_shouldPostActivities() throws Exception {
+        when(features.getBatchedActivities()).thenReturn(true);
         ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
         final ButtonProductCompatible productOne = new ButtonProduct() {{
             setId("one");
@@ -490,43 +619,45 @@ public class ButtonApiImplTest {
             setId("two");
         }};
 
-        buttonApi.postActivity("test-activity", new ArrayList<ButtonProductCompatible>() {{
+        buttonApi.postActivities(activities(new ArrayList<ButtonProductCompatible>() {{
             add(productOne);
             add(productTwo);
-        }}, "test-token", null);
+        }}), "test-token", null);
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
-        JSONObject requestBody = apiRequest.getBody();
-        JSONObject activityBody = requestBody.getJSONObject("activity_data");
+        JSONObject requestBody = streamedBody(apiRequest);
+        JSONObject activityBody = requestBody.getJSONArray("activities").getJSONObject(0);
 
         assertEquals("test-activity", activityBody.getString("name"));
-        assertEquals(2, activityBody.getJSONArray("products").length());
-        assertEquals("one", activityBody.getJSONArray("products").getJSONObject(0).getString("id"));
-        assertEquals("two", activityBody.getJSONArray("products").getJSONObject(1).getString("id"));
+        assertEquals(2, resolveProducts(requestBody, activityBody).length());
+        assertEquals("one", resolveProducts(requestBody, activityBody).getJSONObject(0).getString("id"));
+        assertEquals("two", resolveProducts(requestBody, activityBody).getJSONObject(1).getString("id"));
         assertEquals("test-token", requestBody.getString("btn_ref"));
         assertFalse(requestBody.has("ifa"));
     }
 
     @Test
-    public void postActivity_withEmptyProductInfo_shouldPostActivity() throws Exception {
+    public void postActivities_withEmptyProductInfo_shouldPostActivities() throws Exception {
+        when(features.getBatchedActivities()).thenReturn(true);
         ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
         ButtonProductCompatible product = new ButtonProduct();
 
-        buttonApi.postActivity("test-activity", Collections.singletonList(product), null, null);
+        buttonApi.postActivities(activities(Collections.singletonList(product)), null, null);
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
-        JSONObject requestBody = apiRequest.getBody();
-        JSONObject activityBody = requestBody.getJSONObject("activity_data");
+        JSONObject requestBody = streamedBody(apiRequest);
+        JSONObject activityBody = requestBody.getJSONArray("activities").getJSONObject(0);
 
         assertEquals("test-activity", activityBody.getString("name"));
-        assertEquals(1, activityBody.getJSONArray("products").length());
-        assertEquals(0, activityBody.getJSONArray("products").getJSONObject(0).length());
+        assertEquals(1, resolveProducts(requestBody, activityBody).length());
+        assertEquals(0, resolveProducts(requestBody, activityBody).getJSONObject(0).length());
         assertFalse(requestBody.has("btn_ref"));
         assertFalse(requestBody.has("ifa"));
     }
 
     @Test
-    public void postActivity_withCompleteProductInfo_shouldPostActivity() throws Exception {
+    public void postActivities_withCompleteProductInfo_shouldPostActivities() throws Exception {
+        when(features.getBatchedActivities()).thenReturn(true);
         ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
         List<String> categories = new ArrayList<>();
         categories.add("cat-one");
@@ -545,19 +676,19 @@ public class ButtonApiImplTest {
         product.setUrl("test-url");
         product.setAttributes(attributes);
 
-        buttonApi.postActivity("test-activity", new ArrayList<ButtonProductCompatible>() {{
+        buttonApi.postActivities(activities(new ArrayList<ButtonProductCompatible>() {{
             add(product);
-        }}, "test-token", "test-ifa");
+        }}), "test-token", "test-ifa");
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
-        JSONObject requestBody = apiRequest.getBody();
-        JSONObject activityBody = requestBody.getJSONObject("activity_data");
+        JSONObject requestBody = streamedBody(apiRequest);
+        JSONObject activityBody = requestBody.getJSONArray("activities").getJSONObject(0);
 
         assertEquals("test-ifa", requestBody.getString("ifa"));
         assertEquals("test-token", requestBody.getString("btn_ref"));
         assertEquals("test-activity", activityBody.getString("name"));
-        assertEquals(1, activityBody.getJSONArray("products").length());
-        JSONObject productJson = activityBody.getJSONArray("products").getJSONObject(0);
+        assertEquals(1, resolveProducts(requestBody, activityBody).length());
+        JSONObject productJson = resolveProducts(requestBody, activityBody).getJSONObject(0);
         assertEquals("test-id", productJson.getString("id"));
         assertEquals("test-upc", productJson.getString("upc"));
         assertEquals("test-name", productJson.getString("name"));
@@ -573,32 +704,132 @@ public class ButtonApiImplTest {
         assertEquals("2", productJson.getJSONObject("attributes").getString("attr-two"));
     }
 
+    @Test
+    public void postActivities_multipleActivities_shouldShareHeader() throws Exception {
+        when(features.getBatchedActivities()).thenReturn(true);
+        ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
+        List<ActivityEvent> activities = new ArrayList<>();
+        activities.add(new ActivityEvent("product-viewed",
+                Collections.<ButtonProductCompatible>emptyList(), 1000L));
+        activities.add(new ActivityEvent("add-to-cart",
+                Collections.<ButtonProductCompatible>emptyList(), 2000L));
+
+        buttonApi.postActivities(activities, "test-token", "test-ifa");
+        verify(connectionManager).executeRequest(argumentCaptor.capture());
+        JSONObject requestBody = streamedBody(argumentCaptor.getValue());
+        JSONArray activitiesJson = requestBody.getJSONArray("activities");
+
+        assertEquals("test-ifa", requestBody.getString("ifa"));
+        assertEquals("test-token", requestBody.getString("btn_ref"));
+        assertEquals(2, activitiesJson.length());
+        assertEquals("product-viewed", activitiesJson.getJSONObject(0).getString("name"));
+        assertEquals(ButtonUtil.formatTimestamp(1000L),
+                activitiesJson.getJSONObject(0).getString("time"));
+        assertEquals("add-to-cart", activitiesJson.getJSONObject(1).getString("name"));
+        assertFalse(activitiesJson.getJSONObject(1).has("btn_ref"));
+    }
+
+    @Test
+    public void postActivities_repeatedProduct_shouldSendProductOnce() throws Exception {
+        when(features.getBatchedActivities()).thenReturn(true);
+        ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
+        ButtonProduct shoe = new ButtonProduct();
+        shoe.setId("shoe");
+        ButtonProduct sameShoe = new ButtonProduct();
+        sameShoe.setId("shoe");
+        ButtonProduct sock = new ButtonProduct();
+        sock.setId("sock");
+        List<ActivityEvent> activities = new ArrayList<>();
+        activities.add(new ActivityEvent("product-viewed",
+                Collections.<ButtonProductCompatible>singletonList(shoe), 1000L));
+        activities.add(new ActivityEvent("add-to-cart",
+                Collections.<ButtonProductCompatible>singletonList(sameShoe), 2000L));
+        activities.add(new ActivityEvent("cart-viewed",
+                Arrays.<ButtonProductCompatible>asList(sock, shoe), 3000L));
+
+        buttonApi.postActivities(activities, null, null);
+        verify(connectionManager).executeRequest(argumentCaptor.capture());
+        JSONObject requestBody = streamedBody(argumentCaptor.getValue());
+        JSONArray activitiesJson = requestBody.getJSONArray("activities");
+
+        assertEquals(2, requestBody.getJSONArray("products").length());
+        assertEquals("[0]", activitiesJson.getJSONObject(0).getJSONArray("product_refs")
+                .toString());
+        assertEquals("[0]", activitiesJson.getJSONObject(1).getJSONArray("product_refs")
+                .toString());
+        assertEquals("[1,0]", activitiesJson.getJSONObject(2).getJSONArray("product_refs")
+                .toString());
+        assertEquals("sock", resolveProducts(requestBody, activitiesJson.getJSONObject(2))
+                .getJSONObject(0).getString("id"));
+    }
+
+    @Test
+    public void postActivities_batchedActivitiesDisabled_shouldPostEachActivity()
+            throws Exception {
+        ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
+        ButtonProduct shoe = new ButtonProduct();
+        shoe.setId("shoe");
+        List<ActivityEvent> activities = new ArrayList<>();
+        activities.add(new ActivityEvent("product-viewed",
+                Collections.<ButtonProductCompatible>singletonList(shoe), 1000L));
+        activities.add(new ActivityEvent("add-to-cart",
+                Collections.<ButtonProductCompatible>emptyList(), 2000L));
+
+        buttonApi.postActivities(activities, "test-token", "test-ifa");
+        verify(connectionManager, times(2)).executeRequest(argumentCaptor.capture());
+        List<ApiRequest> requests = argumentCaptor.getAllValues();
+        JSONObject firstBody = streamedBody(requests.get(0));
+        JSONObject secondBody = streamedBody(requests.get(1));
+        JSONObject firstActivity = firstBody.getJSONObject("activity_data");
+        JSONObject secondActivity = secondBody.getJSONObject("activity_data");
+
+        assertEquals("/v1/app/activity", requests.get(0).getPath());
+        assertEquals("test-ifa", firstBody.getString("ifa"));
+        assertEquals("test-token", firstBody.getString("btn_ref"));
+        assertFalse(firstBody.has("activities"));
+        assertEquals("product-viewed", firstActivity.getString("name"));
+        assertEquals("shoe", firstActivity.getJSONArray("products").getJSONObject(0)
+                .getString("id"));
+        assertEquals("add-to-cart", secondActivity.getString("name"));
+        assertFalse(secondActivity.has("products"));
+    }
+
     @Test
     public void postEvents_singleEvent_shouldReportCorrectly() throws Exception {
+        when(features.getCompactEventBatches()).thenReturn(true);
         ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
         List<Event> events = new ArrayList<>();
-        Event event = new Event(Event.Name.DEEPLINK_OPENED, "valid_token");
-        event.addProperty(Event.Property.URL, "valid_url");
+        Event event = new Event(Event.Name.DEEPLINK_OPENED, "valid_token",
+                Collections.singletonMap(Event.Property.URL, "valid_url"));
         events.add(event);
 
         buttonApi.postEvents(events, null);
 
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
-        JSONObject requestBody = apiRequest.getBody();
+        JSONObject requestBody = streamedBody(apiRequest);
         JSONArray eventsJson = requestBody.getJSONArray("events");
         JSONObject eventJson = eventsJson.getJSONObject(0);
 
         assertEquals(1, eventsJson.length());
-        assertEquals(eventJson.toString(), event.toJson().toString());
+        assertEquals("button", requestBody.getString("source"));
+        assertEquals("valid_token", requestBody.getString("source_token"));
+        assertEquals(event.getTimestamp(), requestBody.getLong("time_base"));
+        assertEquals("btn:deeplink-opened", eventJson.getString("name"));
+        assertEquals(0, eventJson.getLong("time_offset"));
+        assertEquals(event.getId().toString(), eventJson.getString("uuid"));
+        assertEquals("valid_url", eventJson.getJSONObject("value").getString("url"));
+        assertFalse(eventJson.has("source_token"));
+        assertTrue(apiRequest.isCborAllowed());
     }
 
     @Test
     public void postEvents_multipleEvents_shouldReportCorrectly() throws Exception {
+        when(features.getCompactEventBatches()).thenReturn(true);
         ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
         List<Event> events = new ArrayList<>();
-        Event event = new Event(Event.Name.DEEPLINK_OPENED, "valid_token");
-        event.addProperty(Event.Property.URL, "valid_url");
+        Event event = new Event(Event.Name.DEEPLINK_OPENED, "valid_token",
+                Collections.singletonMap(Event.Property.URL, "valid_url"));
         events.add(event);
         events.add(event);
 
@@ -606,29 +837,69 @@ public class ButtonApiImplTest {
 
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
-        JSONObject requestBody = apiRequest.getBody();
+        JSONObject requestBody = streamedBody(apiRequest);
         JSONArray eventsJson = requestBody.getJSONArray("events");
         JSONObject eventOneJson = eventsJson.getJSONObject(0);
         JSONObject eventTwoJson = eventsJson.getJSONObject(1);
 
         assertEquals(2, eventsJson.length());
-        assertEquals(eventOneJson.toString(), event.toJson().toString());
-        assertEquals(eventTwoJson.toString(), event.toJson().toString());
+        assertEquals("valid_token", requestBody.getString("source_token"));
+        assertEquals(event.getId().toString(), eventOneJson.getString("uuid"));
+        assertEquals(event.getId().toString(), eventTwoJson.getString("uuid"));
+        assertEquals(0, eventTwoJson.getLong("time_offset"));
     }
 
     @Test
-    public void postEvents_validIfa_shouldIncludeIfa() throws Exception {
+    public void postEvents_differentSourceTokens_shouldNotHoistToken() throws Exception {
+        when(features.getCompactEventBatches()).thenReturn(true);
         ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
         List<Event> events = new ArrayList<>();
+        events.add(new Event(Event.Name.DEEPLINK_OPENED, "token_one"));
+        events.add(new Event(Event.Name.DEEPLINK_OPENED, null));
+
+        buttonApi.postEvents(events, null);
+
+        verify(connectionManager).executeRequest(argumentCaptor.capture());
+        JSONObject requestBody = streamedBody(argumentCaptor.getValue());
+        JSONArray eventsJson = requestBody.getJSONArray("events");
+
+        assertEquals("button", requestBody.getString("source"));
+        assertFalse(requestBody.has("source_token"));
+        assertEquals("token_one", eventsJson.getJSONObject(0).getString("source_token"));
+        assertFalse(eventsJson.getJSONObject(1).has("source_token"));
+    }
+
+    @Test
+    public void postEvents_compactEventBatchesDisabled_shouldWriteEachEvent() throws Exception {
+        ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
         Event event = new Event(Event.Name.DEEPLINK_OPENED, "valid_token");
-        event.addProperty(Event.Property.URL, "valid_url");
+
+        buttonApi.postEvents(Collections.singletonList(event), null);
+
+        verify(connectionManager).executeRequest(argumentCaptor.capture());
+        JSONObject requestBody = streamedBody(argumentCaptor.getValue());
+        JSONObject eventJson = requestBody.getJSONArray("events").getJSONObject(0);
+
+        assertFalse(requestBody.has("time_base"));
+        assertFalse(requestBody.has("source_token"));
+        assertEquals("valid_token", eventJson.getString("source_token"));
+        assertEquals(ButtonUtil.formatTimestamp(event.getTimestamp()),
+                eventJson.getString("time"));
+    }
+
+    @Test
+    public void postEvents_validIfa_shouldIncludeIfa() throws Exception {
+        ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
+        List<Event> events = new ArrayList<>();
+        Event event = new Event(Event.Name.DEEPLINK_OPENED, "valid_token",
+                Collections.singletonMap(Event.Property.URL, "valid_url"));
         events.add(event);
 
         buttonApi.postEvents(events, "valid_ifa");
 
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
-        JSONObject requestBody = apiRequest.getBody();
+        JSONObject requestBody = streamedBody(apiRequest);
 
         assertEquals(requestBody.getString("ifa"), "valid_ifa");
     }
@@ -644,8 +915,112 @@ public class ButtonApiImplTest {
 
         verify(connectionManager).executeRequest(argumentCaptor.capture());
         ApiRequest apiRequest = argumentCaptor.getValue();
-        JSONObject requestBody = apiRequest.getBody();
+        JSONObject requestBody = streamedBody(apiRequest);
 
         assertTrue(requestBody.has("current_time"));
     }
+
+    @Test
+    public void serializeOrder_deliver_shouldSendOrder() throws Exception {
+        Order order = new Order.Builder("123", new Date(), Collections.<Order.LineItem>emptyList())
+                .build();
+        String request = buttonApi.serializeOrder(order, "valid_application_id",
+                "valid_source_token", "valid_advertising_id");
+
+        buttonApi.deliver(request);
+
+        ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
+        verify(connectionManager).executeRequest(argumentCaptor.capture());
+        ApiRequest apiRequest = argumentCaptor.getValue();
+        assertEquals("/v1/app/order", apiRequest.getPath());
+        assertEquals("Basic " + ButtonUtil.base64Encode("valid_application_id:"),
+                apiRequest.getHeaders().get("Authorization"));
+        assertEquals("123", apiRequest.getBody().getString("order_id"));
+        assertEquals("valid_source_token", apiRequest.getBody().getString("btn_ref"));
+    }
+
+    @Test
+    public void serializeEvents_deliver_shouldSendEvents() throws Exception {
+        Event event = new Event(Event.Name.DEEPLINK_OPENED, "valid_token");
+        String request = buttonApi.serializeEvents(Collections.singletonList(event), "valid_ifa");
+
+        buttonApi.deliver(request);
+
+        ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
+        verify(connectionManager).executeRequest(argumentCaptor.capture());
+        ApiRequest apiRequest = argumentCaptor.getValue();
+        JSONObject requestBody = apiRequest.getBody();
+        assertEquals("/v1/app/events", apiRequest.getPath());
+        assertEquals("valid_ifa", requestBody.getString("ifa"));
+        assertEquals(event.getId().toString(),
+                requestBody.getJSONArray("events").getJSONObject(0).getString("uuid"));
+    }
+
+    @Test
+    public void serializeEvents_deliverLater_shouldSendCurrentTimeOfDelivery() throws Exception {
+        Event event = new Event(Event.Name.DEEPLINK_OPENED, "valid_token");
+        JSONObject request = new JSONObject(
+                buttonApi.serializeEvents(Collections.singletonList(event), "valid_ifa"));
+        String handOffTime = ButtonUtil.formatDate(new Date(0));
+        request.getJSONObject("body").put("current_time", handOffTime);
+
+        buttonApi.deliver(request.toString());
+
+        ArgumentCaptor<ApiRequest> argumentCaptor = ArgumentCaptor.forClass(ApiRequest.class);
+        verify(connectionManager).executeRequest(argumentCaptor.capture());
+        String currentTime = argumentCaptor.getValue().getBody().getString("current_time");
+        assertFalse(handOffTime.equals(currentTime));
+    }
+
+    @Test
+    public void deliver_notConfigured_shouldRestoreApplicationId() throws Exception {
+        Order order = new Order.Builder("123", new Date(), Collections.<Order.LineItem>emptyList())
+                .build();
+        String request = buttonApi.serializeOrder(order, "app-abc123", null, null);
+
+        buttonApi.deliver(request);
+
+        verify(connectionManager).setApplicationId("app-abc123");
+    }
+
+    @Test
+    public void deliver_configured_shouldKeepApplicationId() throws Exception {
+        when(connectionManager.getApplicationId()).thenReturn("app-current");
+        Order order = new Order.Builder("123", new Date(), Collections.<Order.LineItem>emptyList())
+                .build();
+        String request = buttonApi.serializeOrder(order, "app-abc123", null, null);
+
+        buttonApi.deliver(request);
+
+        verify(connectionManager, never()).setApplicationId(anyString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deliver_malformedRequest_throwIllegalArgumentException() throws Exception {
+        buttonApi.deliver("{\"path\":");
+    }
+
+    private static JSONObject streamedBody(ApiRequest apiRequest) throws Exception {
+        StringWriter out = new StringWriter();
+        JsonStreamWriter writer = new JsonStreamWriter(out);
+        writer.beginObject();
+        apiRequest.getStreamingBody().writeMembers(writer);
+        writer.endObject();
+        return new JSONObject(out.toString());
+    }
+
+    private static JSONArray resolveProducts(JSONObject requestBody, JSONObject activityBody)
+            throws JSONException {
+        JSONArray productTable = requestBody.getJSONArray("products");
+        JSONArray refs = activityBody.getJSONArray("product_refs");
+        JSONArray products = new JSONArray();
+        for (int i = 0; i < refs.length(); i++) {
+            products.put(productTable.getJSONObject(refs.getInt(i)));
+        }
+        return products;
+    }
+
+    private static List<ActivityEvent> activities(List<ButtonProductCompatible> products) {
+        return Collections.singletonList(new ActivityEvent("test-activity", products, 1000L));
+    }
 }
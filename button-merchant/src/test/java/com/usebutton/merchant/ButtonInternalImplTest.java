@@ -37,17 +37,17 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Executor;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
@@ -480,6 +480,81 @@ public class ButtonInternalImplTest {
         verify(orderListener).onResult(exception);
     }
 
+    @Test
+    public void reportOrders_nullApplicationId_verifyExceptionPerOrder() {
+        ButtonRepository buttonRepository = mock(ButtonRepository.class);
+        when(buttonRepository.getApplicationId()).thenReturn(null);
+        OrdersListener ordersListener = mock(OrdersListener.class);
+        List<Order> orders = Arrays.asList(mock(Order.class), mock(Order.class));
+
+        buttonInternal.reportOrders(buttonRepository, mock(DeviceManager.class),
+                mock(Features.class), orders, ordersListener);
+
+        ArgumentCaptor<List> argumentCaptor = ArgumentCaptor.forClass(List.class);
+        verify(ordersListener).onResult(argumentCaptor.capture());
+        List<OrderResult> results = argumentCaptor.getValue();
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).getError() instanceof ApplicationIdNotFoundException);
+        assertTrue(results.get(1).getError() instanceof ApplicationIdNotFoundException);
+    }
+
+    @Test
+    public void reportOrders_hasApplicationId_verifyPostOrders() {
+        ButtonRepository buttonRepository = mock(ButtonRepository.class);
+        when(buttonRepository.getApplicationId()).thenReturn("valid_application_id");
+        DeviceManager deviceManager = mock(DeviceManager.class);
+        Features features = mock(Features.class);
+        List<Order> orders = Collections.singletonList(mock(Order.class));
+
+        buttonInternal.reportOrders(buttonRepository, deviceManager, features, orders,
+                mock(OrdersListener.class));
+
+        verify(buttonRepository).postOrders(eq(orders), eq(deviceManager), eq(features),
+                any(Task.Listener.class));
+    }
+
+    @Test
+    public void reportOrders_onTaskComplete_verifyCallback() {
+        ButtonRepository buttonRepository = mock(ButtonRepository.class);
+        when(buttonRepository.getApplicationId()).thenReturn("valid_application_id");
+        OrdersListener ordersListener = mock(OrdersListener.class);
+        Order order = mock(Order.class);
+
+        buttonInternal.reportOrders(buttonRepository, mock(DeviceManager.class),
+                mock(Features.class), Collections.singletonList(order), ordersListener);
+
+        ArgumentCaptor<Task.Listener> argumentCaptor = ArgumentCaptor.forClass(Task.Listener.class);
+        verify(buttonRepository).postOrders(any(List.class), any(DeviceManager.class),
+                any(Features.class), argumentCaptor.capture());
+        List<OrderResult> results = Collections.singletonList(new OrderResult(order, null));
+        argumentCaptor.getValue().onTaskComplete(results);
+        verify(ordersListener).onResult(results);
+    }
+
+    @Test
+    public void reportOrders_onTaskError_verifyErrorPerOrder() {
+        ButtonRepository buttonRepository = mock(ButtonRepository.class);
+        when(buttonRepository.getApplicationId()).thenReturn("valid_application_id");
+        OrdersListener ordersListener = mock(OrdersListener.class);
+        Order order = mock(Order.class);
+
+        buttonInternal.reportOrders(buttonRepository, mock(DeviceManager.class),
+                mock(Features.class), Collections.singletonList(order), ordersListener);
+
+        ArgumentCaptor<Task.Listener> argumentCaptor = ArgumentCaptor.forClass(Task.Listener.class);
+        verify(buttonRepository).postOrders(any(List.class), any(DeviceManager.class),
+                any(Features.class), argumentCaptor.capture());
+        Exception exception = mock(Exception.class);
+        argumentCaptor.getValue().onTaskError(exception);
+
+        ArgumentCaptor<List> resultsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(ordersListener).onResult(resultsCaptor.capture());
+        List<OrderResult> results = resultsCaptor.getValue();
+        assertEquals(1, results.size());
+        assertEquals(order, results.get(0).getOrder());
+        assertEquals(exception, results.get(0).getError());
+    }
+
     @Test
     public void reportEvent_nullApplicationId_doesNothing() {
         ButtonRepository buttonRepository = mock(ButtonRepository.class);
@@ -509,7 +584,7 @@ public class ButtonInternalImplTest {
         assertEquals("test-event", event.getName());
         assertEquals(Event.Source.CUSTOM, event.getSource());
         assertEquals("test-token", event.getSourceToken());
-        assertEquals("{\"key\":\"value\"}", event.getEventBody().toString());
+        assertEquals(Collections.singletonMap("key", "value"), event.getProperties());
     }
 
     @Test
@@ -527,7 +602,7 @@ public class ButtonInternalImplTest {
 
         assertEquals("test-event", event.getName());
         assertEquals(Event.Source.CUSTOM, event.getSource());
-        assertEquals(0, event.getEventBody().length());
+        assertTrue(event.getProperties().isEmpty());
     }
 
     private class TestMainThreadExecutor implements Executor {
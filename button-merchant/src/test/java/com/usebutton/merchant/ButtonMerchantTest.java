@@ -51,6 +51,7 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class ButtonMerchantTest {
@@ -175,6 +176,17 @@ public class ButtonMerchantTest {
                 any(Features.class), eq(order), eq(orderListener));
     }
 
+    @Test
+    public void reportOrders_verifyButtonInternal() {
+        List<Order> orders = Collections.singletonList(mock(Order.class));
+        OrdersListener ordersListener = mock(OrdersListener.class);
+
+        ButtonMerchant.reportOrders(context, orders, ordersListener);
+
+        verify(buttonInternal).reportOrders(any(ButtonRepository.class),
+                any(DeviceManager.class), any(Features.class), eq(orders), eq(ordersListener));
+    }
+
     @Test
     public void reportEvent_verifyButtonInternal() {
         Map<String, String> props = Collections.singletonMap("test-key", "test-value");
@@ -194,4 +206,11 @@ public class ButtonMerchantTest {
     public void activity_verifyInstanceType() {
         assertTrue(ButtonMerchant.activity() instanceof ButtonUserActivityImpl);
     }
+
+    @Test
+    public void getMetrics_shouldReflectRecordedMetrics() {
+        MetricsRegistry.getInstance().counter(MetricsSnapshot.COUNTER_RETRIES).increment();
+
+        assertTrue(ButtonMerchant.getMetrics().getCounter(MetricsSnapshot.COUNTER_RETRIES) > 0);
+    }
 }
\ No newline at end of file
@@ -25,18 +25,48 @@
 
 package com.usebutton.merchant;
 
+import com.usebutton.merchant.exception.ButtonNetworkException;
+import com.usebutton.merchant.exception.CircuitOpenException;
+import com.usebutton.merchant.exception.HttpStatusException;
+import com.usebutton.merchant.exception.OrderAlreadyReportedException;
+import com.usebutton.merchant.module.DurableDelivery;
 import com.usebutton.merchant.module.Features;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -49,15 +79,29 @@ public class ButtonRepositoryImplTest {
     @Mock DeviceManager deviceManager;
     @Mock Features features;
     @Mock PersistenceManager persistenceManager;
-    @Mock ExecutorService executorService;
+    @Mock ScheduledExecutorService executorService;
+    @Mock Executor warmUpExecutor;
 
+    private FakeConnectivityMonitor connectivityMonitor;
+    private FakeDeviceConditions deviceConditions;
+    private UploadPolicy uploadPolicy;
+    private TestTimeProvider timeProvider;
+    private MetricsRegistry metrics;
     private ButtonRepositoryImpl buttonRepository;
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        when(executorService.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class)))
+                .thenReturn(mock(ScheduledFuture.class));
+        connectivityMonitor = new FakeConnectivityMonitor();
+        deviceConditions = new FakeDeviceConditions();
+        uploadPolicy = new UploadPolicy(deviceConditions);
+        timeProvider = new TestTimeProvider();
+        metrics = new MetricsRegistry();
         buttonRepository = new ButtonRepositoryImpl(buttonApi, deviceManager, features,
-                persistenceManager, executorService);
+                persistenceManager, executorService, connectivityMonitor, uploadPolicy,
+                timeProvider, metrics, warmUpExecutor);
     }
 
     @Test
@@ -104,6 +148,18 @@ public class ButtonRepositoryImplTest {
         verify(persistenceManager).setSourceToken("valid_source_token");
     }
 
+    @Test
+    public void setSourceToken_tokenChanged_verifyCartTrackerReset() {
+        CartTracker cartTracker = trackedCart();
+        when(persistenceManager.getSourceToken()).thenReturn("token-one");
+
+        buttonRepository.setSourceToken("token-one");
+        assertNotNull(cartTracker.track(cart()));
+
+        buttonRepository.setSourceToken("token-two");
+        assertNull(cartTracker.track(cart()));
+    }
+
     @Test
     public void getSourceToken_retrieveFromPersistenceManager() {
         when(persistenceManager.getSourceToken()).thenReturn("valid_source_token");
@@ -119,6 +175,15 @@ public class ButtonRepositoryImplTest {
         verify(persistenceManager).clear();
     }
 
+    @Test
+    public void clear_verifyCartTrackerReset() {
+        CartTracker cartTracker = trackedCart();
+
+        buttonRepository.clear();
+
+        assertNull(cartTracker.track(cart()));
+    }
+
     @Test
     public void getPendingLink_executeTask() {
         buttonRepository.getPendingLink(mock(DeviceManager.class), mock(Features.class),
@@ -150,18 +215,241 @@ public class ButtonRepositoryImplTest {
     }
 
     @Test
-    public void trackActivity_configured_executeTask() {
+    public void postOrder_deduplication_reportedOrder_verifyOrderAlreadyReported()
+            throws Exception {
+        List<Runnable> submitted = captureSubmitted();
+        Order order = deduplicatedOrder();
+        Task.Listener first = mock(Task.Listener.class);
+        Task.Listener second = mock(Task.Listener.class);
+
+        buttonRepository.postOrder(order, deviceManager, features, first);
+        runAll(submitted);
+        buttonRepository.postOrder(order, deviceManager, features, second);
+        runAll(submitted);
+
+        verify(first).onTaskComplete(null);
+        verify(second).onTaskError(any(OrderAlreadyReportedException.class));
+        verify(buttonApi, times(1)).postOrder(eq(order), (String) isNull(), (String) isNull(),
+                (String) isNull());
+    }
+
+    @Test
+    public void postOrder_deduplication_shouldCheckOnExecutor() {
+        List<Runnable> submitted = captureSubmitted();
+
+        buttonRepository.postOrder(deduplicatedOrder(), deviceManager, features,
+                mock(Task.Listener.class));
+
+        verify(persistenceManager, never()).getReportedOrderFilter();
+        runAll(submitted);
+        verify(persistenceManager).getReportedOrderFilter();
+    }
+
+    @Test
+    public void postOrder_deduplication_orderInFlight_verifyOrderAlreadyReported() {
+        List<Runnable> submitted = captureSubmitted();
+        Order order = deduplicatedOrder();
+        Task.Listener second = mock(Task.Listener.class);
+
+        buttonRepository.postOrder(order, deviceManager, features, mock(Task.Listener.class));
+        buttonRepository.postOrder(order, deviceManager, features, second);
+        submitted.remove(0).run();
+        submitted.remove(0).run();
+
+        verify(second).onTaskError(any(OrderAlreadyReportedException.class));
+    }
+
+    @Test
+    public void postOrder_deduplication_failedOrder_verifyReportedAgain() throws Exception {
+        List<Runnable> submitted = captureSubmitted();
+        Order order = deduplicatedOrder();
+        when(buttonApi.postOrder(eq(order), (String) isNull(), (String) isNull(),
+                (String) isNull())).thenThrow(new HttpStatusException("Bad Request", 400))
+                .thenReturn(null);
+        Task.Listener second = mock(Task.Listener.class);
+
+        buttonRepository.postOrder(order, deviceManager, features, mock(Task.Listener.class));
+        runAll(submitted);
+        buttonRepository.postOrder(order, deviceManager, features, second);
+        runAll(submitted);
+
+        verify(second).onTaskComplete(null);
+    }
+
+    @Test
+    public void postOrder_deduplicationDisabled_verifyReportedAgain() throws Exception {
+        List<Runnable> submitted = captureSubmitted();
+        Order order = deduplicatedOrder();
+        when(features.getOrderDeduplication()).thenReturn(false);
+
+        buttonRepository.postOrder(order, deviceManager, features, mock(Task.Listener.class));
+        buttonRepository.postOrder(order, deviceManager, features, mock(Task.Listener.class));
+        runAll(submitted);
+
+        verify(buttonApi, times(2)).postOrder(eq(order), (String) isNull(), (String) isNull(),
+                (String) isNull());
+    }
+
+    @Test
+    public void clear_verifyReportedOrdersForgotten() {
+        List<Runnable> submitted = captureSubmitted();
+        Order order = deduplicatedOrder();
+        Task.Listener second = mock(Task.Listener.class);
+        buttonRepository.postOrder(order, deviceManager, features, mock(Task.Listener.class));
+        runAll(submitted);
+
+        buttonRepository.clear();
+        buttonRepository.postOrder(order, deviceManager, features, second);
+        runAll(submitted);
+
+        verify(second).onTaskComplete(null);
+    }
+
+    @Test
+    public void postOrders_executeTask() {
+        buttonRepository.postOrders(Collections.singletonList(mock(Order.class)),
+                mock(DeviceManager.class), mock(Features.class), mock(Task.Listener.class));
+
+        verify(executorService).submit(any(PostOrdersTask.class));
+    }
+
+    @Test
+    public void postOrders_deduplication_reportedOrder_verifyOrderAlreadyReported()
+            throws Exception {
+        List<Runnable> submitted = captureSubmitted();
+        Order reported = deduplicatedOrder();
+        Order other = bulkOrder("other_order_id");
+        buttonRepository.postOrder(reported, deviceManager, features, mock(Task.Listener.class));
+        runAll(submitted);
+
+        Task.Listener<List<OrderResult>> listener = mock(Task.Listener.class);
+        buttonRepository.postOrders(Arrays.asList(reported, other), deviceManager, features,
+                listener);
+        runAll(submitted);
+
+        List<OrderResult> results = captureResults(listener);
+        assertTrue(results.get(0).getError() instanceof OrderAlreadyReportedException);
+        assertSame(other, results.get(1).getOrder());
+        assertTrue(results.get(1).isSuccessful());
+        verify(buttonApi).postOrders(eq(Collections.singletonList(other)), (String) isNull(),
+                (String) isNull(), (String) isNull());
+    }
+
+    @Test
+    public void postOrders_deduplication_verifyReportedOrdersRemembered() {
+        List<Runnable> submitted = captureSubmitted();
+        Order order = bulkOrder("valid_order_id");
+        Task.Listener second = mock(Task.Listener.class);
+
+        buttonRepository.postOrders(Collections.singletonList(order), deviceManager, features,
+                mock(Task.Listener.class));
+        runAll(submitted);
+        buttonRepository.postOrder(order, deviceManager, features, second);
+        runAll(submitted);
+
+        verify(second).onTaskError(any(OrderAlreadyReportedException.class));
+    }
+
+    @Test
+    public void postOrders_deduplication_failedOrders_verifyReportedAgain() throws Exception {
+        List<Runnable> submitted = captureSubmitted();
+        Order order = bulkOrder("valid_order_id");
+        when(buttonApi.postOrders(ArgumentMatchers.<Order>anyList(), (String) isNull(),
+                (String) isNull(), (String) isNull()))
+                .thenThrow(new HttpStatusException("Bad Request", 400)).thenReturn(null);
+        Task.Listener<List<OrderResult>> first = mock(Task.Listener.class);
+        Task.Listener<List<OrderResult>> second = mock(Task.Listener.class);
+
+        buttonRepository.postOrders(Collections.singletonList(order), deviceManager, features,
+                first);
+        runAll(submitted);
+        buttonRepository.postOrders(Collections.singletonList(order), deviceManager, features,
+                second);
+        runAll(submitted);
+
+        assertFalse(captureResults(first).get(0).isSuccessful());
+        assertTrue(captureResults(second).get(0).isSuccessful());
+    }
+
+    @Test
+    public void trackActivity_configured_executeTaskAfterWindow() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        buttonRepository.trackActivity("test-activity", products());
+
+        verify(executorService, never()).submit(any(ActivityReportingTask.class));
+        runScheduledFlush();
+
+        verify(executorService).submit(any(ActivityReportingTask.class));
+    }
+
+    @Test
+    public void trackActivity_withinWindow_executeSingleTask() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        buttonRepository.trackActivity("test-activity", products());
+        buttonRepository.trackActivity("test-activity", products());
+        buttonRepository.trackActivity("test-activity", products());
+        runScheduledFlush();
+
+        verify(executorService).submit(any(ActivityReportingTask.class));
+    }
+
+    @Test
+    public void trackActivity_sourceTokenChanged_flushPreviousBatch() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        when(persistenceManager.getSourceToken()).thenReturn("token-one");
+        buttonRepository.trackActivity("test-activity", products());
+        when(persistenceManager.getSourceToken()).thenReturn("token-two");
+        buttonRepository.trackActivity("test-activity", products());
+
+        verify(executorService).submit(any(ActivityReportingTask.class));
+    }
+
+    @Test
+    public void trackCartChanges_configured_executeTaskAfterWindow() {
         buttonRepository.setApplicationId("invalid_application_id");
-        buttonRepository.trackActivity("test-activity", mock(List.class));
+        buttonRepository.trackCartChanges("cart-viewed", new CartTracker.Delta(
+                Collections.<ButtonProductCompatible>emptyList(),
+                Collections.<ButtonProductCompatible>emptyList(),
+                Collections.<String>emptyList()));
+        runScheduledFlush();
 
         verify(executorService).submit(any(ActivityReportingTask.class));
     }
 
+    @Test
+    public void trackCartChanges_uploadFailed_verifyCartTrackerReset() throws Exception {
+        CartTracker cartTracker = trackedCart();
+        failActivityUploads();
+        buttonRepository.setApplicationId("invalid_application_id");
+        buttonRepository.trackCartChanges(ButtonUserActivityImpl.EVENT_CART_VIEWED,
+                new CartTracker.Delta(Collections.<ButtonProductCompatible>emptyList(),
+                        Collections.<ButtonProductCompatible>emptyList(),
+                        Collections.singletonList("one")));
+        runScheduledFlush();
+        runSubmittedActivityTask();
+
+        assertNull(cartTracker.track(cart()));
+    }
+
+    @Test
+    public void trackActivity_uploadFailed_verifyCartTrackerNotReset() throws Exception {
+        CartTracker cartTracker = trackedCart();
+        failActivityUploads();
+        buttonRepository.setApplicationId("invalid_application_id");
+        buttonRepository.trackActivity(ButtonUserActivityImpl.EVENT_PRODUCT_VIEWED,
+                Collections.<ButtonProductCompatible>emptyList());
+        runScheduledFlush();
+        runSubmittedActivityTask();
+
+        assertNotNull(cartTracker.track(cart()));
+    }
+
     @Test
     public void trackActivity_unConfigured_queueTaskAndExecuteWhenConfigured() {
-        buttonRepository.trackActivity("test-activity", mock(List.class));
+        buttonRepository.trackActivity("test-activity", products());
+        runScheduledFlush();
 
-        verify(executorService, never()).submit(any(EventReportingTask.class));
+        verify(executorService, never()).submit(any(ActivityReportingTask.class));
         buttonRepository.setApplicationId("invalid_application_id");
 
         verify(executorService).submit(any(ActivityReportingTask.class));
@@ -186,4 +474,820 @@ public class ButtonRepositoryImplTest {
 
         verify(executorService).submit(any(EventReportingTask.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void postOrder_offline_deferTaskUntilOnline() {
+        connectivityMonitor.setConnected(false);
+
+        buttonRepository.postOrder(mock(Order.class), mock(DeviceManager.class),
+                mock(Features.class), mock(Task.Listener.class));
+
+        verify(executorService, never()).submit(any(PostOrderTask.class));
+        connectivityMonitor.setConnected(true);
+        verify(executorService).submit(any(PostOrderTask.class));
+    }
+
+    @Test
+    public void trackActivity_offline_deferTaskUntilOnline() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setConnected(false);
+        buttonRepository.trackActivity("product-viewed",
+                Collections.<ButtonProductCompatible>emptyList());
+
+        runScheduledFlush();
+
+        verify(executorService, never()).submit(any(ActivityReportingTask.class));
+        connectivityMonitor.setConnected(true);
+        verify(executorService).submit(any(ActivityReportingTask.class));
+    }
+
+    @Test
+    public void trackActivity_offlineQueueFull_shouldCountDroppedTask() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setConnected(false);
+        for (int i = 0; i <= ButtonRepositoryImpl.MAX_DEFERRED_TASKS; i++) {
+            buttonRepository.trackActivity("product-viewed", products());
+            buttonRepository.flush(0);
+        }
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getCounter(MetricsSnapshot.COUNTER_DROPPED_TASKS));
+        assertEquals(Long.valueOf(ButtonRepositoryImpl.MAX_DEFERRED_TASKS),
+                snapshot.getGauge(MetricsSnapshot.GAUGE_DEFERRED_QUEUE_DEPTH));
+    }
+
+    @Test
+    public void trackActivity_offlineQueueFull_verifyCartTrackerReset() {
+        CartTracker cartTracker = trackedCart();
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setConnected(false);
+        buttonRepository.trackCartChanges(ButtonUserActivityImpl.EVENT_CART_VIEWED,
+                new CartTracker.Delta(Collections.<ButtonProductCompatible>emptyList(),
+                        Collections.<ButtonProductCompatible>emptyList(),
+                        Collections.singletonList("one")));
+        buttonRepository.flush(0);
+        for (int i = 0; i < ButtonRepositoryImpl.MAX_DEFERRED_TASKS; i++) {
+            buttonRepository.trackActivity("product-viewed", products());
+            buttonRepository.flush(0);
+        }
+
+        assertNull(cartTracker.track(cart()));
+    }
+
+    @Test
+    public void setApplicationId_offline_deferPendingTasksUntilOnline() {
+        connectivityMonitor.setConnected(false);
+        buttonRepository.reportEvent(mock(DeviceManager.class), mock(Features.class),
+                mock(Event.class));
+
+        buttonRepository.setApplicationId("invalid_application_id");
+
+        verify(executorService, never()).submit(any(EventReportingTask.class));
+        connectivityMonitor.setConnected(true);
+        verify(executorService).submit(any(EventReportingTask.class));
+    }
+
+    @Test
+    public void reportEvent_offline_flushInBatchesWhenOnline() throws Exception {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setConnected(false);
+        int eventCount = ButtonRepositoryImpl.DEFERRED_EVENT_BATCH_SIZE * 2 + 50;
+        for (int i = 0; i < eventCount; i++) {
+            buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+        }
+        verify(executorService, never()).submit(any(EventReportingTask.class));
+
+        connectivityMonitor.setConnected(true);
+
+        ArgumentCaptor<EventReportingTask> taskCaptor =
+                ArgumentCaptor.forClass(EventReportingTask.class);
+        verify(executorService, times(3)).submit(taskCaptor.capture());
+        for (EventReportingTask task : taskCaptor.getAllValues()) {
+            task.execute();
+        }
+        ArgumentCaptor<List> eventsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(buttonApi, times(3)).postEvents(eventsCaptor.capture(), (String) isNull());
+        assertEquals(ButtonRepositoryImpl.DEFERRED_EVENT_BATCH_SIZE,
+                eventsCaptor.getAllValues().get(0).size());
+        assertEquals(ButtonRepositoryImpl.DEFERRED_EVENT_BATCH_SIZE,
+                eventsCaptor.getAllValues().get(1).size());
+        assertEquals(50, eventsCaptor.getAllValues().get(2).size());
+    }
+
+    @Test
+    public void reportEvent_offlineQueueFull_dropOldestEvent() throws Exception {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setConnected(false);
+        Event oldest = mock(Event.class);
+        buttonRepository.reportEvent(deviceManager, features, oldest);
+        for (int i = 0; i < ButtonRepositoryImpl.MAX_DEFERRED_EVENTS; i++) {
+            buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+        }
+
+        connectivityMonitor.setConnected(true);
+
+        ArgumentCaptor<EventReportingTask> taskCaptor =
+                ArgumentCaptor.forClass(EventReportingTask.class);
+        verify(executorService, times(ButtonRepositoryImpl.MAX_DEFERRED_EVENTS
+                / ButtonRepositoryImpl.DEFERRED_EVENT_BATCH_SIZE)).submit(taskCaptor.capture());
+        taskCaptor.getAllValues().get(0).execute();
+        ArgumentCaptor<List> eventsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(buttonApi).postEvents(eventsCaptor.capture(), (String) isNull());
+        assertFalse(eventsCaptor.getValue().contains(oldest));
+    }
+
+    @Test
+    public void reportEvent_offlineQueueFull_shouldCountDroppedEvent() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setConnected(false);
+        for (int i = 0; i <= ButtonRepositoryImpl.MAX_DEFERRED_EVENTS; i++) {
+            buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+        }
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getCounter(MetricsSnapshot.COUNTER_DROPPED_TASKS));
+        assertEquals(Long.valueOf(ButtonRepositoryImpl.MAX_DEFERRED_EVENTS),
+                snapshot.getGauge(MetricsSnapshot.GAUGE_DEFERRED_QUEUE_DEPTH));
+    }
+
+    @Test
+    public void getReadyTaskCount_shouldCountOnlyTasksDueNow() throws Exception {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        };
+        Runnable noop = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        try {
+            executor.submit(blocking);
+            executor.submit(noop);
+            executor.submit(noop);
+            executor.schedule(noop, 1, TimeUnit.HOURS);
+
+            // The blocking task has left the queue once the worker is running it
+            started.await();
+            assertEquals(2, ButtonRepositoryImpl.getReadyTaskCount(executor));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void getReadyTaskCount_unknownExecutor_shouldReturnNegative() {
+        assertEquals(-1, ButtonRepositoryImpl.getReadyTaskCount(executorService));
+    }
+
+    @Test
+    public void flushDeferred_shouldOnlySubmitDeferredTasksOnce() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setConnected(false);
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+
+        connectivityMonitor.setConnected(true);
+        buttonRepository.flushDeferred();
+        connectivityMonitor.setConnected(false);
+        connectivityMonitor.setConnected(true);
+
+        verify(executorService).submit(any(EventReportingTask.class));
+    }
+
+    @Test
+    public void reportEvent_networkIdle_deferUntilNetworkActive() throws Exception {
+        ScheduledFuture deferredFlush = mock(ScheduledFuture.class);
+        when(executorService.schedule(any(Runnable.class),
+                eq(ButtonRepositoryImpl.MAX_RADIO_IDLE_DELAY), eq(TimeUnit.MILLISECONDS)))
+                .thenReturn(deferredFlush);
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setNetworkActive(false);
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+
+        verify(executorService, never()).submit(any(EventReportingTask.class));
+        connectivityMonitor.setNetworkActive(true);
+
+        ArgumentCaptor<EventReportingTask> taskCaptor =
+                ArgumentCaptor.forClass(EventReportingTask.class);
+        verify(executorService).submit(taskCaptor.capture());
+        taskCaptor.getValue().execute();
+        ArgumentCaptor<List> eventsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(buttonApi).postEvents(eventsCaptor.capture(), (String) isNull());
+        assertEquals(2, eventsCaptor.getValue().size());
+        verify(deferredFlush).cancel(false);
+    }
+
+    @Test
+    public void reportEvent_networkIdle_flushAfterMaxDelay() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setNetworkActive(false);
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+
+        scheduledRadioFlush().run();
+
+        verify(executorService).submit(any(EventReportingTask.class));
+    }
+
+    @Test
+    public void reportEvent_networkIdleThenOffline_doNotFlushAfterMaxDelay() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setNetworkActive(false);
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+        connectivityMonitor.setConnected(false);
+
+        scheduledRadioFlush().run();
+
+        verify(executorService, never()).submit(any(EventReportingTask.class));
+        connectivityMonitor.setConnected(true);
+        verify(executorService).submit(any(EventReportingTask.class));
+    }
+
+    @Test
+    public void reportEvent_networkIdle_scheduleSingleFlush() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setNetworkActive(false);
+
+        for (int i = 0; i < 5; i++) {
+            buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+        }
+
+        scheduledRadioFlush();
+        verify(executorService, never()).submit(any(EventReportingTask.class));
+    }
+
+    @Test
+    public void trackActivity_networkIdle_deferUntilNetworkActive() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        buttonRepository.trackActivity("product-viewed",
+                Collections.<ButtonProductCompatible>emptyList());
+        connectivityMonitor.setNetworkActive(false);
+        runScheduledFlush();
+
+        verify(executorService, never()).submit(any(ActivityReportingTask.class));
+        connectivityMonitor.setNetworkActive(true);
+        verify(executorService).submit(any(ActivityReportingTask.class));
+    }
+
+    @Test
+    public void postOrder_networkIdle_bypassDeferral() {
+        connectivityMonitor.setNetworkActive(false);
+
+        buttonRepository.postOrder(mock(Order.class), mock(DeviceManager.class),
+                mock(Features.class), mock(Task.Listener.class));
+
+        verify(executorService).submit(any(PostOrderTask.class));
+    }
+
+    @Test
+    public void getPendingLink_networkIdle_bypassDeferral() {
+        connectivityMonitor.setNetworkActive(false);
+
+        buttonRepository.getPendingLink(mock(DeviceManager.class), mock(Features.class),
+                mock(Task.Listener.class));
+
+        verify(executorService).submit(any(GetPendingLinkTask.class));
+    }
+
+    @Test
+    public void reportEvent_constrained_deferWhileNetworkActive() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        deviceConditions.batteryLow = true;
+
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+
+        verify(executorService, never()).submit(any(EventReportingTask.class));
+        verify(executorService).schedule(any(Runnable.class),
+                eq(UploadPolicy.CONSTRAINED_DEFERRAL_DELAY), eq(TimeUnit.MILLISECONDS));
+        assertEquals(2, uploadPolicy.getDeferralCount());
+    }
+
+    @Test
+    public void reportEvent_constrained_ignoreNetworkActive() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        deviceConditions.batteryLow = true;
+        connectivityMonitor.setNetworkActive(false);
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+
+        connectivityMonitor.setNetworkActive(true);
+
+        verify(executorService, never()).submit(any(EventReportingTask.class));
+    }
+
+    @Test
+    public void reportEvent_constrained_flushAfterDeferralDelay() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        deviceConditions.deviceIdle = true;
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).schedule(captor.capture(),
+                eq(UploadPolicy.CONSTRAINED_DEFERRAL_DELAY), eq(TimeUnit.MILLISECONDS));
+        captor.getValue().run();
+
+        verify(executorService).submit(any(EventReportingTask.class));
+    }
+
+    @Test
+    public void reportEvent_constrainedWhenReconnected_keepDeferred() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setConnected(false);
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+        deviceConditions.batteryLow = true;
+
+        connectivityMonitor.setConnected(true);
+
+        verify(executorService, never()).submit(any(EventReportingTask.class));
+        verify(executorService).schedule(any(Runnable.class),
+                eq(UploadPolicy.CONSTRAINED_DEFERRAL_DELAY), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void reportEvent_networkMetered_submitWithoutDeferral() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        deviceConditions.networkMetered = true;
+
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+
+        verify(executorService).submit(any(EventReportingTask.class));
+        assertEquals(0, uploadPolicy.getDeferralCount());
+    }
+
+    @Test
+    public void postOrder_offlineConstrainedWhenReconnected_submitOrder() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setConnected(false);
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+        buttonRepository.postOrder(mock(Order.class), mock(DeviceManager.class),
+                mock(Features.class), mock(Task.Listener.class));
+        deviceConditions.batteryLow = true;
+
+        connectivityMonitor.setConnected(true);
+
+        verify(executorService).submit(any(PostOrderTask.class));
+        verify(executorService, never()).submit(any(EventReportingTask.class));
+    }
+
+    @Test
+    public void postOrder_circuitOpen_deferUntilApiRecovers() {
+        when(buttonApi.isCircuitOpen()).thenReturn(true);
+
+        buttonRepository.postOrder(mock(Order.class), mock(DeviceManager.class),
+                mock(Features.class), mock(Task.Listener.class));
+
+        verify(executorService, never()).submit(any(PostOrderTask.class));
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).schedule(captor.capture(), eq(CircuitBreaker.INITIAL_OPEN_DELAY),
+                eq(TimeUnit.MILLISECONDS));
+
+        when(buttonApi.isCircuitOpen()).thenReturn(false);
+        captor.getValue().run();
+
+        verify(executorService).submit(any(PostOrderTask.class));
+    }
+
+    @Test
+    public void postOrder_circuitOpensWhileSending_deferInsteadOfFailing() throws Exception {
+        List<Runnable> submitted = captureSubmitted();
+        Order order = mock(Order.class);
+        when(buttonApi.postOrder(eq(order), (String) isNull(), (String) isNull(),
+                (String) isNull())).thenThrow(new CircuitOpenException("unreachable"))
+                .thenReturn(null);
+        Task.Listener listener = mock(Task.Listener.class);
+
+        buttonRepository.postOrder(order, deviceManager, features, listener);
+        runAll(submitted);
+
+        verify(listener, never()).onTaskError(any(Throwable.class));
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).schedule(captor.capture(), eq(CircuitBreaker.INITIAL_OPEN_DELAY),
+                eq(TimeUnit.MILLISECONDS));
+
+        captor.getValue().run();
+        runAll(submitted);
+
+        verify(listener).onTaskComplete(null);
+    }
+
+    @Test
+    public void postOrders_circuitOpensWhileSending_deferInsteadOfFailing() throws Exception {
+        List<Runnable> submitted = captureSubmitted();
+        Order first = bulkOrder("first_order_id");
+        Order second = bulkOrder("second_order_id");
+        when(buttonApi.postOrders(ArgumentMatchers.<Order>anyList(), (String) isNull(),
+                (String) isNull(), (String) isNull()))
+                .thenThrow(new CircuitOpenException("unreachable")).thenReturn(null);
+        Task.Listener<List<OrderResult>> listener = mock(Task.Listener.class);
+
+        buttonRepository.postOrders(Arrays.asList(first, second), deviceManager, features,
+                listener);
+        runAll(submitted);
+
+        verify(listener, never()).onTaskComplete(ArgumentMatchers.<List<OrderResult>>any());
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).schedule(captor.capture(), eq(CircuitBreaker.INITIAL_OPEN_DELAY),
+                eq(TimeUnit.MILLISECONDS));
+
+        captor.getValue().run();
+        runAll(submitted);
+
+        List<OrderResult> results = captureResults(listener);
+        assertSame(first, results.get(0).getOrder());
+        assertTrue(results.get(0).isSuccessful());
+        assertSame(second, results.get(1).getOrder());
+        assertTrue(results.get(1).isSuccessful());
+    }
+
+    @Test
+    public void postOrders_offlineNetworkIdleWhenReconnected_submitOrders() {
+        connectivityMonitor.setConnected(false);
+        buttonRepository.postOrders(Collections.singletonList(mock(Order.class)),
+                mock(DeviceManager.class), mock(Features.class), mock(Task.Listener.class));
+        connectivityMonitor.setNetworkActive(false);
+        deviceConditions.deviceIdle = true;
+
+        connectivityMonitor.setConnected(true);
+
+        verify(executorService).submit(any(PostOrdersTask.class));
+    }
+
+    @Test
+    public void postOrder_constrained_bypassDeferral() {
+        deviceConditions.powerSaveMode = true;
+
+        buttonRepository.postOrder(mock(Order.class), mock(DeviceManager.class),
+                mock(Features.class), mock(Task.Listener.class));
+
+        verify(executorService).submit(any(PostOrderTask.class));
+        assertEquals(0, uploadPolicy.getDeferralCount());
+    }
+
+    @Test
+    public void postOrder_durableDelivery_handOffWhileOffline() {
+        buttonRepository.setDurableDelivery(mock(DurableDelivery.class));
+        connectivityMonitor.setConnected(false);
+
+        buttonRepository.postOrder(mock(Order.class), mock(DeviceManager.class),
+                mock(Features.class), mock(Task.Listener.class));
+
+        verify(executorService).submit(any(DurableHandoffTask.class));
+        verify(executorService, never()).submit(any(PostOrderTask.class));
+    }
+
+    @Test
+    public void postOrder_durableDelivery_enqueueSerializedOrder() throws Exception {
+        DurableDelivery durableDelivery = mock(DurableDelivery.class);
+        when(durableDelivery.enqueue(any(DurableDelivery.Type.class), anyString(), anyString()))
+                .thenReturn(true);
+        Order order = mock(Order.class);
+        when(order.getId()).thenReturn("order-id");
+        when(buttonApi.getApplicationId()).thenReturn("valid_application_id");
+        when(persistenceManager.getSourceToken()).thenReturn("valid_source_token");
+        when(buttonApi.serializeOrder(order, "valid_application_id", "valid_source_token",
+                null)).thenReturn("request");
+        Task.Listener listener = mock(Task.Listener.class);
+        buttonRepository.setDurableDelivery(durableDelivery);
+
+        buttonRepository.postOrder(order, deviceManager, features, listener);
+
+        ArgumentCaptor<DurableHandoffTask> captor =
+                ArgumentCaptor.forClass(DurableHandoffTask.class);
+        verify(executorService).submit(captor.capture());
+        captor.getValue().run();
+        verify(durableDelivery).enqueue(DurableDelivery.Type.ORDER, "order-id", "request");
+        verify(listener).onTaskComplete(isNull());
+        verify(buttonApi, never()).postOrder(any(Order.class), anyString(), anyString(),
+                (String) isNull());
+    }
+
+    @Test
+    public void reportEvent_durableDelivery_handOffWhileNetworkIdle() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        buttonRepository.setDurableDelivery(mock(DurableDelivery.class));
+        connectivityMonitor.setNetworkActive(false);
+        Event event = mock(Event.class);
+        when(event.getId()).thenReturn(UUID.randomUUID());
+
+        buttonRepository.reportEvent(deviceManager, features, event);
+
+        verify(executorService).submit(any(DurableHandoffTask.class));
+    }
+
+    @Test
+    public void reportEvent_durableDeliveryNotConfigured_queueTask() {
+        buttonRepository.setDurableDelivery(mock(DurableDelivery.class));
+
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+
+        verify(executorService, never()).submit(any(Runnable.class));
+    }
+
+    @Test
+    public void deliver_shouldDeliverThroughButtonApi() throws Exception {
+        buttonRepository.deliver("request");
+
+        verify(buttonApi).deliver("request");
+    }
+
+    @Test
+    public void flush_networkIdle_sendDeferredEvents() throws Exception {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setNetworkActive(false);
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+
+        buttonRepository.flush(AppLifecycleMonitor.BACKGROUND_FLUSH_TIMEOUT);
+
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).submit(captor.capture());
+        captor.getValue().run();
+        ArgumentCaptor<List> eventsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(buttonApi).postEvents(eventsCaptor.capture(), (String) isNull());
+        assertEquals(2, eventsCaptor.getValue().size());
+    }
+
+    @Test
+    public void flush_constrained_sendDeferredEvents() throws Exception {
+        buttonRepository.setApplicationId("invalid_application_id");
+        deviceConditions.batteryLow = true;
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+
+        buttonRepository.flush(AppLifecycleMonitor.BACKGROUND_FLUSH_TIMEOUT);
+
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).submit(captor.capture());
+        captor.getValue().run();
+        verify(buttonApi).postEvents(any(List.class), (String) isNull());
+    }
+
+    @Test
+    public void flush_deadlinePassed_redeferRemainingTasks() throws Exception {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setNetworkActive(false);
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+        buttonRepository.flush(AppLifecycleMonitor.BACKGROUND_FLUSH_TIMEOUT);
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).submit(captor.capture());
+
+        timeProvider.time += AppLifecycleMonitor.BACKGROUND_FLUSH_TIMEOUT;
+        captor.getValue().run();
+
+        verify(buttonApi, never()).postEvents(any(List.class), (String) isNull());
+        connectivityMonitor.setNetworkActive(true);
+        verify(executorService).submit(any(EventReportingTask.class));
+    }
+
+    @Test
+    public void flush_offline_keepDeferredTasks() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        connectivityMonitor.setConnected(false);
+        buttonRepository.reportEvent(deviceManager, features, mock(Event.class));
+
+        buttonRepository.flush(AppLifecycleMonitor.BACKGROUND_FLUSH_TIMEOUT);
+
+        verify(executorService, never()).submit(any(Runnable.class));
+        connectivityMonitor.setConnected(true);
+        verify(executorService).submit(any(EventReportingTask.class));
+    }
+
+    @Test
+    public void flush_pendingActivities_sendBatchNow() {
+        buttonRepository.setApplicationId("invalid_application_id");
+        buttonRepository.trackActivity("product-viewed",
+                Collections.<ButtonProductCompatible>emptyList());
+
+        buttonRepository.flush(AppLifecycleMonitor.BACKGROUND_FLUSH_TIMEOUT);
+
+        verify(executorService).submit(any(ActivityReportingTask.class));
+    }
+
+    @Test
+    public void warmUp_shouldWarmUpButtonApi() {
+        buttonRepository.warmUp();
+
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(warmUpExecutor).execute(captor.capture());
+        captor.getValue().run();
+        verify(buttonApi).warmUp();
+    }
+
+    @Test
+    public void warmUp_withinMinInterval_warmUpOnce() {
+        buttonRepository.warmUp();
+        timeProvider.time += ButtonRepositoryImpl.MIN_WARM_UP_INTERVAL - 1;
+        buttonRepository.warmUp();
+        verify(warmUpExecutor).execute(any(Runnable.class));
+
+        timeProvider.time += 1;
+        buttonRepository.warmUp();
+        verify(warmUpExecutor, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void warmUp_offline_skip() {
+        connectivityMonitor.setConnected(false);
+
+        buttonRepository.warmUp();
+
+        verify(warmUpExecutor, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void setApplicationId_connectionPreWarming_warmUp() {
+        when(features.getConnectionPreWarming()).thenReturn(true);
+
+        buttonRepository.setApplicationId("app-abcdef1234567890");
+
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(warmUpExecutor).execute(captor.capture());
+        captor.getValue().run();
+        verify(buttonApi).warmUp();
+    }
+
+    @Test
+    public void setApplicationId_connectionPreWarming_doNotDelayPendingLink() throws Exception {
+        final CountDownLatch warming = new CountDownLatch(1);
+        final CountDownLatch handshake = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception {
+                // A slow network: the warm-up handshake has not completed yet
+                warming.countDown();
+                handshake.await();
+                return null;
+            }
+        }).when(buttonApi).warmUp();
+        when(features.getConnectionPreWarming()).thenReturn(true);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        buttonRepository = new ButtonRepositoryImpl(buttonApi, deviceManager, features,
+                persistenceManager, executor, connectivityMonitor, uploadPolicy, timeProvider,
+                metrics);
+        final CountDownLatch linked = new CountDownLatch(1);
+        try {
+            long start = System.nanoTime();
+            buttonRepository.setApplicationId("app-abcdef1234567890");
+            buttonRepository.getPendingLink(deviceManager, features,
+                    new Task.Listener<PostInstallLink>() {
+                        @Override
+                        public void onTaskComplete(PostInstallLink object) {
+                            linked.countDown();
+                        }
+
+                        @Override
+                        public void onTaskError(Throwable throwable) {
+                            linked.countDown();
+                        }
+                    });
+
+            assertTrue(linked.await(5, TimeUnit.SECONDS));
+            long latencyUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+
+            // The warm-up is still in flight, so the lookup did not wait for it
+            assertEquals("pending link completed " + latencyUs + "us after configure", 1,
+                    handshake.getCount());
+            assertTrue(warming.await(5, TimeUnit.SECONDS));
+        } finally {
+            handshake.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void setApplicationId_connectionPreWarming_ignoreRecentWarmUp() {
+        when(features.getConnectionPreWarming()).thenReturn(true);
+        buttonRepository.warmUp();
+
+        buttonRepository.setApplicationId("app-abcdef1234567890");
+
+        verify(warmUpExecutor, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void setApplicationId_connectionPreWarmingSameId_doNotWarmUpAgain() {
+        when(features.getConnectionPreWarming()).thenReturn(true);
+        when(buttonApi.getApplicationId()).thenReturn("app-abcdef1234567890");
+
+        buttonRepository.setApplicationId("app-abcdef1234567890");
+
+        verify(warmUpExecutor, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void setApplicationId_connectionPreWarmingDisabled_doNotWarmUp() {
+        buttonRepository.setApplicationId("app-abcdef1234567890");
+
+        verify(warmUpExecutor, never()).execute(any(Runnable.class));
+    }
+
+    private Runnable scheduledRadioFlush() {
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).schedule(captor.capture(),
+                eq(ButtonRepositoryImpl.MAX_RADIO_IDLE_DELAY), eq(TimeUnit.MILLISECONDS));
+        return captor.getValue();
+    }
+
+    /**
+     * @return a tracker provided to the repository that has already reported {@link #cart()}
+     */
+    private CartTracker trackedCart() {
+        CartTracker cartTracker = new CartTracker(timeProvider);
+        cartTracker.track(cart());
+        buttonRepository.setCartTracker(cartTracker);
+        return cartTracker;
+    }
+
+    private static List<ButtonProductCompatible> products() {
+        return Collections.<ButtonProductCompatible>singletonList(new ButtonProduct());
+    }
+
+    private static List<ButtonProductCompatible> cart() {
+        ButtonProduct product = new ButtonProduct();
+        product.setId("one");
+        return Collections.<ButtonProductCompatible>singletonList(product);
+    }
+
+    private void failActivityUploads() throws Exception {
+        when(buttonApi.postActivities(ArgumentMatchers.<ActivityEvent>anyList(),
+                isNull(String.class), isNull(String.class)))
+                .thenThrow(new ButtonNetworkException("offline"));
+    }
+
+    private void runSubmittedActivityTask() {
+        ArgumentCaptor<ActivityReportingTask> captor =
+                ArgumentCaptor.forClass(ActivityReportingTask.class);
+        verify(executorService).submit(captor.capture());
+        captor.getValue().run();
+    }
+
+    private void runScheduledFlush() {
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).schedule(captor.capture(), anyLong(), eq(TimeUnit.MILLISECONDS));
+        captor.getValue().run();
+    }
+
+    private static class TestTimeProvider implements TimeProvider {
+
+        private long time = 1000L;
+
+        @Override
+        public long getTimeInMs() {
+            return time;
+        }
+    }
+
+    private Order deduplicatedOrder() {
+        when(features.getOrderDeduplication()).thenReturn(true);
+        when(features.getOrderDeduplicationWindow()).thenReturn(60000L);
+        when(features.getOrderDeduplicationFalsePositiveRate()).thenReturn(0.0001);
+        Order order = mock(Order.class);
+        when(order.getId()).thenReturn("valid_order_id");
+        return order;
+    }
+
+    /**
+     * @return a valid order with deduplication enabled
+     */
+    private Order bulkOrder(String id) {
+        deduplicatedOrder();
+        return new Order.Builder(id, new Date(), Collections.<Order.LineItem>emptyList())
+                .build();
+    }
+
+    private static List<OrderResult> captureResults(Task.Listener<List<OrderResult>> listener) {
+        ArgumentCaptor<List<OrderResult>> captor = ArgumentCaptor.forClass(List.class);
+        verify(listener).onTaskComplete(captor.capture());
+        return captor.getValue();
+    }
+
+    /**
+     * @return runnables submitted to the executor from now on, in order, without running them
+     */
+    private List<Runnable> captureSubmitted() {
+        final List<Runnable> submitted = new ArrayList<>();
+        when(executorService.submit(any(Runnable.class))).thenAnswer(new Answer<Future<?>>() {
+            @Override
+            public Future<?> answer(InvocationOnMock invocation) {
+                submitted.add((Runnable) invocation.getArgument(0));
+                return null;
+            }
+        });
+        return submitted;
+    }
+
+    private static void runAll(List<Runnable> runnables) {
+        while (!runnables.isEmpty()) {
+            runnables.remove(0).run();
+        }
+    }
+}
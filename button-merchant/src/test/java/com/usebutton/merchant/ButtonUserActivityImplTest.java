@@ -26,29 +26,41 @@
 package com.usebutton.merchant;
 
 import com.usebutton.merchant.module.ButtonUserActivity;
+import com.usebutton.merchant.module.Features;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class ButtonUserActivityImplTest {
 
     private ButtonRepository buttonRepository;
+    private Features features;
     private ButtonUserActivity activityModule;
 
     @Before
     public void setUp() throws Exception {
         buttonRepository = mock(ButtonRepository.class);
-        activityModule = new ButtonUserActivityImpl();
+        features = mock(Features.class);
+        activityModule = new ButtonUserActivityImpl(features,
+                new CartTracker(TtlReference.REALTIME_MILLIS_PROVIDER),
+                new ActivitySuppressor(features, TtlReference.REALTIME_MILLIS_PROVIDER));
     }
 
     @Test
@@ -212,4 +224,125 @@ public class ButtonUserActivityImplTest {
         verify(buttonRepository).trackActivity(ButtonUserActivityImpl.EVENT_CART_VIEWED,
                 products);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void cartViewed_repeatedCart_shouldTrackCartChanges() {
+        when(features.getBatchedActivities()).thenReturn(true);
+        ButtonProduct product = new ButtonProduct();
+        product.setId("one");
+        List<ButtonProductCompatible> products = new ArrayList<>();
+        products.add(product);
+        ((ButtonUserActivityImpl) activityModule).flushQueue(buttonRepository);
+
+        activityModule.cartViewed(products);
+        List<ButtonProductCompatible> changed = new ArrayList<>(products);
+        changed.add(new ButtonProduct());
+        ((ButtonProduct) changed.get(1)).setId("two");
+        activityModule.cartViewed(changed);
+
+        verify(buttonRepository).trackActivity(ButtonUserActivityImpl.EVENT_CART_VIEWED,
+                products);
+        verify(buttonRepository).trackCartChanges(eq(ButtonUserActivityImpl.EVENT_CART_VIEWED),
+                any(CartTracker.Delta.class));
+    }
+
+    @Test
+    public void cartViewed_repositoryUnavailable_shouldQueueCartChanges() {
+        when(features.getBatchedActivities()).thenReturn(true);
+        ButtonProduct product = new ButtonProduct();
+        product.setId("one");
+        List<ButtonProductCompatible> products = new ArrayList<>();
+        products.add(product);
+
+        activityModule.cartViewed(products);
+        List<ButtonProductCompatible> changed = new ArrayList<>(products);
+        changed.add(new ButtonProduct());
+        ((ButtonProduct) changed.get(1)).setId("two");
+        activityModule.cartViewed(changed);
+        ((ButtonUserActivityImpl) activityModule).flushQueue(buttonRepository);
+
+        verify(buttonRepository).trackActivity(ButtonUserActivityImpl.EVENT_CART_VIEWED,
+                products);
+        verify(buttonRepository).trackCartChanges(eq(ButtonUserActivityImpl.EVENT_CART_VIEWED),
+                any(CartTracker.Delta.class));
+    }
+
+    @Test
+    public void cartViewed_unchangedCart_shouldStillReportView() {
+        when(features.getBatchedActivities()).thenReturn(true);
+        ButtonProduct product = new ButtonProduct();
+        product.setId("one");
+        List<ButtonProductCompatible> products = new ArrayList<>();
+        products.add(product);
+        ((ButtonUserActivityImpl) activityModule).flushQueue(buttonRepository);
+
+        activityModule.cartViewed(products);
+        activityModule.cartViewed(products);
+
+        ArgumentCaptor<CartTracker.Delta> captor = ArgumentCaptor.forClass(CartTracker.Delta.class);
+        verify(buttonRepository).trackActivity(ButtonUserActivityImpl.EVENT_CART_VIEWED,
+                products);
+        verify(buttonRepository).trackCartChanges(eq(ButtonUserActivityImpl.EVENT_CART_VIEWED),
+                captor.capture());
+        assertTrue(captor.getValue().isEmpty());
+    }
+
+    @Test
+    public void cartViewed_batchedActivitiesDisabled_shouldTrackFullCart() {
+        ButtonProduct product = new ButtonProduct();
+        product.setId("one");
+        List<ButtonProductCompatible> products = new ArrayList<>();
+        products.add(product);
+        ((ButtonUserActivityImpl) activityModule).flushQueue(buttonRepository);
+
+        activityModule.cartViewed(products);
+        activityModule.cartViewed(products);
+
+        verify(buttonRepository, times(2)).trackActivity(ButtonUserActivityImpl.EVENT_CART_VIEWED,
+                products);
+        verify(buttonRepository, never()).trackCartChanges(anyString(),
+                any(CartTracker.Delta.class));
+    }
+
+    @Test
+    public void flushQueue_shouldProvideCartTracker() {
+        CartTracker cartTracker = new CartTracker(mock(TimeProvider.class));
+        ButtonUserActivityImpl activity = new ButtonUserActivityImpl(features, cartTracker,
+                new ActivitySuppressor(features, mock(TimeProvider.class)));
+
+        activity.flushQueue(buttonRepository);
+
+        verify(buttonRepository).setCartTracker(cartTracker);
+    }
+
+    @Test
+    public void productViewed_repeatedWithinWindow_shouldTrackViewOnce() {
+        Features features = mock(Features.class);
+        when(features.getActivitySuppressionWindow()).thenReturn(1000L);
+        MetricsRegistry metrics = new MetricsRegistry();
+        ActivitySuppressor suppressor = new ActivitySuppressor(features, new TimeProvider() {
+            @Override
+            public long getTimeInMs() {
+                return 5000L;
+            }
+        }, metrics);
+        ButtonUserActivityImpl activity = new ButtonUserActivityImpl(features,
+                new CartTracker(mock(TimeProvider.class)), suppressor);
+        activity.flushQueue(buttonRepository);
+        ButtonProduct product = new ButtonProduct();
+        product.setId("one");
+
+        activity.productViewed(product);
+        activity.productViewed(product);
+        activity.productAddedToCart(product);
+        activity.productAddedToCart(product);
+
+        verify(buttonRepository).trackActivity(ButtonUserActivityImpl.EVENT_PRODUCT_VIEWED,
+                Collections.<ButtonProductCompatible>singletonList(product));
+        // Adding the same product again is a real change to the cart
+        verify(buttonRepository, times(2)).trackActivity(ButtonUserActivityImpl.EVENT_ADD_TO_CART,
+                Collections.<ButtonProductCompatible>singletonList(product));
+        assertEquals(1, metrics.snapshot()
+                .getCounter(MetricsSnapshot.COUNTER_SUPPRESSED_ACTIVITIES));
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * CartTrackerTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import com.usebutton.merchant.module.Features;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class CartTrackerTest {
+
+    private TestTimeProvider timeProvider;
+    private CartTracker cartTracker;
+
+    @Before
+    public void setUp() {
+        timeProvider = new TestTimeProvider();
+        cartTracker = new CartTracker(timeProvider, 5, 60000);
+    }
+
+    @Test
+    public void track_firstCart_shouldRequestSnapshot() {
+        assertNull(cartTracker.track(cart(product("one", 1))));
+    }
+
+    @Test
+    public void track_unchangedCart_shouldReturnEmptyDelta() {
+        cartTracker.track(cart(product("one", 1), product("two", 1)));
+
+        CartTracker.Delta delta = cartTracker.track(cart(product("one", 1), product("two", 1)));
+
+        assertNotNull(delta);
+        assertTrue(delta.isEmpty());
+        assertTrue(delta.getAdded().isEmpty());
+        assertTrue(delta.getChanged().isEmpty());
+        assertTrue(delta.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void track_shouldReconcileAddedRemovedAndChangedLines() {
+        cartTracker.track(cart(product("one", 1), product("two", 1), product("three", 1)));
+        ButtonProduct changed = product("two", 4);
+        ButtonProduct added = product("four", 1);
+
+        CartTracker.Delta delta = cartTracker.track(cart(product("one", 1), changed, added));
+
+        assertNotNull(delta);
+        assertEquals(1, delta.getAdded().size());
+        assertSame(added, delta.getAdded().get(0));
+        assertEquals(1, delta.getChanged().size());
+        assertSame(changed, delta.getChanged().get(0));
+        assertEquals(Collections.singletonList("three"), delta.getRemoved());
+    }
+
+    @Test
+    public void track_shouldDiffAgainstLastReportedCart() {
+        cartTracker.track(cart(product("one", 1)));
+        cartTracker.track(cart(product("one", 1), product("two", 1)));
+
+        CartTracker.Delta delta = cartTracker.track(cart(product("two", 1)));
+
+        assertNotNull(delta);
+        assertTrue(delta.getAdded().isEmpty());
+        assertEquals(Collections.singletonList("one"), delta.getRemoved());
+    }
+
+    @Test
+    public void track_snapshotInterval_shouldRequestPeriodicSnapshot() {
+        assertNull(cartTracker.track(cart(product("one", 1))));
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(cartTracker.track(cart(product("one", i + 2))));
+        }
+
+        assertNull(cartTracker.track(cart(product("one", 6))));
+        assertNotNull(cartTracker.track(cart(product("one", 7))));
+    }
+
+    @Test
+    public void track_snapshotPeriodElapsed_shouldRequestSnapshot() {
+        cartTracker.track(cart(product("one", 1)));
+        timeProvider.time += 59999;
+        assertNotNull(cartTracker.track(cart(product("one", 1))));
+
+        timeProvider.time += 1;
+        assertNull(cartTracker.track(cart(product("one", 1))));
+    }
+
+    @Test
+    public void track_emptyCart_shouldRequestSnapshot() {
+        cartTracker.track(cart(product("one", 1)));
+
+        assertNull(cartTracker.track(Collections.<ButtonProductCompatible>emptyList()));
+        CartTracker.Delta delta = cartTracker.track(cart(product("one", 1)));
+        assertNotNull(delta);
+        assertEquals(1, delta.getAdded().size());
+    }
+
+    @Test
+    public void track_missingOrDuplicateId_shouldRequestSnapshot() {
+        cartTracker.track(cart(product("one", 1)));
+        assertNull(cartTracker.track(cart(product("one", 1), new ButtonProduct())));
+
+        cartTracker.track(cart(product("one", 1)));
+        assertNull(cartTracker.track(cart(product("one", 1), product("one", 2))));
+    }
+
+    @Test
+    public void track_unchangedCart_shouldNotCountTowardsSnapshot() {
+        assertNull(cartTracker.track(cart(product("one", 1))));
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cartTracker.track(cart(product("one", 1))));
+        }
+    }
+
+    @Test
+    public void reset_shouldRequestSnapshot() {
+        cartTracker.track(cart(product("one", 1)));
+        cartTracker.reset();
+
+        assertNull(cartTracker.track(cart(product("one", 1))));
+    }
+
+    @Test
+    public void cartViewed_repeatedVisits_shouldReduceUploadedBytes() throws Exception {
+        List<ButtonProductCompatible> cart = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            cart.add(product("sku-" + i, 1));
+        }
+
+        // Twenty cart screen visits, changing one line every other visit
+        int fullBytes = 0;
+        int deltaBytes = 0;
+        CartTracker tracker = new CartTracker(timeProvider);
+        for (int visit = 0; visit < 20; visit++) {
+            if (visit % 2 == 1) {
+                cart.set(visit, product("sku-" + visit, 2));
+            }
+            ActivityEvent full = new ActivityEvent("cart-viewed", new ArrayList<>(cart), 1000L);
+            CartTracker.Delta delta = tracker.track(cart);
+            ActivityEvent sent = delta != null
+                    ? new ActivityEvent("cart-viewed", delta, 1000L) : full;
+
+            fullBytes += postActivity(full).length();
+            deltaBytes += postActivity(sent).length();
+        }
+
+        // Two snapshots and eighteen small deltas instead of twenty full carts
+        assertTrue(deltaBytes * 4 < fullBytes);
+    }
+
+    @Test
+    public void postActivities_cartDelta_shouldEncodeChanges() throws Exception {
+        CartTracker.Delta delta = new CartTracker.Delta(
+                Collections.<ButtonProductCompatible>singletonList(product("added", 1)),
+                Collections.<ButtonProductCompatible>singletonList(product("changed", 2)),
+                Arrays.asList("removed-one", "removed-two"));
+
+        JSONObject body = new JSONObject(postActivity(
+                new ActivityEvent("cart-viewed", delta, 1000L)));
+        JSONObject activity = body.getJSONArray("activities").getJSONObject(0);
+        JSONObject cartDelta = activity.getJSONObject("cart_delta");
+
+        assertTrue(!activity.has("product_refs"));
+        assertEquals("added", body.getJSONArray("products")
+                .getJSONObject(cartDelta.getJSONArray("added").getInt(0)).getString("id"));
+        assertEquals("changed", body.getJSONArray("products")
+                .getJSONObject(cartDelta.getJSONArray("changed").getInt(0)).getString("id"));
+        assertEquals("removed-two", cartDelta.getJSONArray("removed").getString(1));
+    }
+
+    private static String postActivity(ActivityEvent activity) throws Exception {
+        ConnectionManager connectionManager = mock(ConnectionManager.class);
+        ArgumentCaptor<ApiRequest> captor = ArgumentCaptor.forClass(ApiRequest.class);
+
+        new ButtonApiImpl(connectionManager, batchedActivities()).postActivities(
+                Collections.singletonList(activity), "token", null);
+        verify(connectionManager).executeRequest(captor.capture());
+
+        StringWriter out = new StringWriter();
+        JsonStreamWriter writer = new JsonStreamWriter(out);
+        writer.beginObject();
+        captor.getValue().getStreamingBody().writeMembers(writer);
+        writer.endObject();
+        return out.toString();
+    }
+
+    private static List<ButtonProductCompatible> cart(ButtonProductCompatible... products) {
+        return Arrays.asList(products);
+    }
+
+    private static ButtonProduct product(String id, int quantity) {
+        ButtonProduct product = new ButtonProduct();
+        product.setId(id);
+        product.setName("Product " + id);
+        product.setCurrency("USD");
+        product.setValue(1999);
+        product.setQuantity(quantity);
+        product.setUrl("https://example.com/products/" + id);
+        product.setCategories(Arrays.asList("Home", "Kitchen"));
+        return product;
+    }
+
+    private static Features batchedActivities() {
+        Features features = new FeaturesImpl();
+        features.setBatchedActivities(true);
+        return features;
+    }
+
+    private static class TestTimeProvider implements TimeProvider {
+
+        private long time = 1000L;
+
+        @Override
+        public long getTimeInMs() {
+            return time;
+        }
+    }
+}
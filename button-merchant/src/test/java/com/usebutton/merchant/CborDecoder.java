@@ -0,0 +1,140 @@
+/*
+ * CborDecoder.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Test stand-in for the server side CBOR decoder. Supports the subset written by
+ * {@link CborStreamWriter} and decodes it to the equivalent {@link JSONObject} structure.
+ */
+final class CborDecoder {
+
+    private static final Object BREAK = new Object();
+
+    private final DataInputStream in;
+
+    private CborDecoder(byte[] bytes) {
+        in = new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    static JSONObject decodeObject(byte[] bytes) throws IOException, JSONException {
+        CborDecoder decoder = new CborDecoder(bytes);
+        Object value = decoder.read();
+        if (decoder.in.available() != 0) {
+            throw new IOException("Trailing bytes after top level value");
+        }
+        return (JSONObject) value;
+    }
+
+    private Object read() throws IOException, JSONException {
+        int initial = in.readUnsignedByte();
+        int majorType = initial >>> 5;
+        int info = initial & 0x1f;
+        switch (majorType) {
+            case 0:
+                return argument(info);
+            case 1:
+                return -1 - argument(info);
+            case 3:
+                byte[] bytes = new byte[(int) argument(info)];
+                in.readFully(bytes);
+                return new String(bytes, "UTF-8");
+            case 4:
+                return readArray(info);
+            case 5:
+                return readMap(info);
+            case 7:
+                return readSimple(info);
+            default:
+                throw new IOException("Unsupported major type " + majorType);
+        }
+    }
+
+    private JSONArray readArray(int info) throws IOException, JSONException {
+        JSONArray array = new JSONArray();
+        if (info != 31) {
+            throw new IOException("Expected indefinite length array");
+        }
+        for (Object item = read(); item != BREAK; item = read()) {
+            array.put(item);
+        }
+        return array;
+    }
+
+    private JSONObject readMap(int info) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+        if (info != 31) {
+            throw new IOException("Expected indefinite length map");
+        }
+        for (Object key = read(); key != BREAK; key = read()) {
+            object.put((String) key, read());
+        }
+        return object;
+    }
+
+    private Object readSimple(int info) throws IOException {
+        switch (info) {
+            case 20:
+                return false;
+            case 21:
+                return true;
+            case 22:
+                return JSONObject.NULL;
+            case 27:
+                return in.readDouble();
+            case 31:
+                return BREAK;
+            default:
+                throw new IOException("Unsupported simple value " + info);
+        }
+    }
+
+    private long argument(int info) throws IOException {
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24:
+                return in.readUnsignedByte();
+            case 25:
+                return in.readUnsignedShort();
+            case 26:
+                return in.readInt() & 0xffffffffL;
+            case 27:
+                return in.readLong();
+            default:
+                throw new IOException("Unsupported argument " + info);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * CborStreamWriterTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CborStreamWriterTest {
+
+    private ByteArrayOutputStream out;
+    private CborStreamWriter writer;
+
+    @Before
+    public void setUp() {
+        out = new ByteArrayOutputStream();
+        writer = new CborStreamWriter(out);
+    }
+
+    @Test
+    public void value_integers_shouldUseShortestHeader() throws Exception {
+        writer.beginArray()
+                .value(0).value(23).value(24).value(256).value(65536).value(4294967296L)
+                .value(-1).value(-25)
+                .endArray();
+
+        assertArrayEquals(bytes(0x9f,
+                0x00, 0x17, 0x18, 0x18, 0x19, 0x01, 0x00, 0x1a, 0x00, 0x01, 0x00, 0x00,
+                0x1b, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00,
+                0x20, 0x38, 0x18,
+                0xff), out.toByteArray());
+    }
+
+    @Test
+    public void writeObject_shouldMatchRfcEncoding() throws Exception {
+        writer.beginObject()
+                .name("a").value("b")
+                .name("c").value(1.5)
+                .name("d").value(true)
+                .endObject();
+
+        assertArrayEquals(bytes(0xbf,
+                0x61, 'a', 0x61, 'b',
+                0x61, 'c', 0xfb, 0x3f, 0xf8, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x61, 'd', 0xf5,
+                0xff), out.toByteArray());
+    }
+
+    @Test
+    public void nullMember_shouldBeOmitted() throws Exception {
+        writer.beginObject()
+                .name("first").value((String) null)
+                .name("second").nullValue()
+                .endObject();
+        writer.beginArray().nullValue().endArray();
+
+        assertArrayEquals(bytes(0xbf, 0xff, 0x9f, 0xf6, 0xff), out.toByteArray());
+    }
+
+    @Test
+    public void text_nonAscii_shouldWriteUtf8() throws Exception {
+        writer.beginArray().value("ü水").endArray();
+
+        assertArrayEquals(bytes(0x9f, 0x65, 0xc3, 0xbc, 0xe6, 0xb0, 0xb4, 0xff),
+                out.toByteArray());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void value_nan_shouldThrow() throws Exception {
+        writer.beginArray().value(Double.NaN);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void value_withoutName_shouldThrow() throws Exception {
+        writer.beginObject().value("value");
+    }
+
+    @Test
+    public void writeEvents_shouldDecodeToSameStructureAsJson() throws Exception {
+        List<Event> events = events(20);
+
+        JSONObject json = new JSONObject(new String(json(events)));
+        JSONObject decoded = CborDecoder.decodeObject(cbor(events));
+
+        assertTrue(json.similar(decoded));
+        assertEquals(20, decoded.getJSONArray("events").length());
+    }
+
+    @Test
+    public void writeEvents_shouldBeSmallerThanJson() throws Exception {
+        List<Event> events = events(50);
+
+        int jsonSize = json(events).length;
+        int cborSize = cbor(events).length;
+
+        assertTrue("cbor " + cborSize + " json " + jsonSize, cborSize < jsonSize * 0.9);
+    }
+
+    private static List<Event> events(int count) {
+        List<Event> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(new Event(Event.Name.DEEPLINK_OPENED, "srctok-" + i,
+                    Collections.singletonMap(Event.Property.URL,
+                            "https://example.com/product/" + i)));
+        }
+        return events;
+    }
+
+    private static byte[] json(List<Event> events) throws IOException {
+        StringWriter json = new StringWriter();
+        writeEvents(new JsonStreamWriter(json), events);
+        return json.toString().getBytes("UTF-8");
+    }
+
+    private static byte[] cbor(List<Event> events) throws IOException {
+        ByteArrayOutputStream cbor = new ByteArrayOutputStream();
+        writeEvents(new CborStreamWriter(cbor), events);
+        return cbor.toByteArray();
+    }
+
+    private static void writeEvents(BodyWriter writer, List<Event> events) throws IOException {
+        writer.beginObject();
+        writer.name("ifa").value("valid_ifa");
+        writer.name("events").beginArray();
+        for (Event event : events) {
+            ModelSerializer.writeEvent(writer, event);
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * CircuitBreakerTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.usebutton.merchant.CircuitBreaker.FAILURE_THRESHOLD;
+import static com.usebutton.merchant.CircuitBreaker.INITIAL_OPEN_DELAY;
+import static com.usebutton.merchant.CircuitBreaker.MAX_OPEN_DELAY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private TestTimeProvider timeProvider;
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() {
+        timeProvider = new TestTimeProvider();
+        circuitBreaker = new CircuitBreaker(timeProvider);
+    }
+
+    @Test
+    public void initialState_shouldBeClosed() {
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void recordFailure_belowThreshold_shouldStayClosed() {
+        for (int i = 0; i < FAILURE_THRESHOLD - 1; i++) {
+            circuitBreaker.recordFailure();
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void recordSuccess_shouldResetFailureCount() {
+        for (int i = 0; i < FAILURE_THRESHOLD - 1; i++) {
+            circuitBreaker.recordFailure();
+        }
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void recordFailure_atThreshold_shouldOpenAndRejectRequests() {
+        open();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+        timeProvider.time += INITIAL_OPEN_DELAY - 1;
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void isOpen_shouldMatchRejectedRequests() {
+        assertFalse(circuitBreaker.isOpen());
+        open();
+
+        assertTrue(circuitBreaker.isOpen());
+        timeProvider.time += INITIAL_OPEN_DELAY;
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void reset_shouldCloseAndAllowRequests() {
+        open();
+
+        circuitBreaker.reset();
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertFalse(circuitBreaker.isOpen());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void allowRequest_afterOpenDelay_shouldAllowSingleProbe() {
+        open();
+        timeProvider.time += INITIAL_OPEN_DELAY;
+
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void halfOpen_probeSucceeds_shouldClose() {
+        open();
+        timeProvider.time += INITIAL_OPEN_DELAY;
+        circuitBreaker.allowRequest();
+
+        circuitBreaker.recordSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void halfOpen_probeFails_shouldReopenWithDoubledDelay() {
+        open();
+        timeProvider.time += INITIAL_OPEN_DELAY;
+        circuitBreaker.allowRequest();
+
+        circuitBreaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        timeProvider.time += INITIAL_OPEN_DELAY;
+        assertFalse(circuitBreaker.allowRequest());
+        timeProvider.time += INITIAL_OPEN_DELAY;
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void halfOpen_repeatedProbeFailures_shouldCapDelay() {
+        open();
+        for (int i = 0; i < 10; i++) {
+            timeProvider.time += MAX_OPEN_DELAY;
+            assertTrue(circuitBreaker.allowRequest());
+            circuitBreaker.recordFailure();
+        }
+
+        timeProvider.time += MAX_OPEN_DELAY;
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void halfOpen_probeNeverReports_shouldAllowAnotherProbe() {
+        open();
+        timeProvider.time += INITIAL_OPEN_DELAY;
+        circuitBreaker.allowRequest();
+
+        timeProvider.time += INITIAL_OPEN_DELAY;
+
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    private void open() {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            circuitBreaker.recordFailure();
+        }
+    }
+
+    private static class TestTimeProvider implements TimeProvider {
+
+        private long time = 1000L;
+
+        @Override
+        public long getTimeInMs() {
+            return time;
+        }
+    }
+}
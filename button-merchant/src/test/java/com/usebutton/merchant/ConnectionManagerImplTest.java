@@ -26,12 +26,17 @@
 package com.usebutton.merchant;
 
 import com.usebutton.merchant.exception.ButtonNetworkException;
+import com.usebutton.merchant.exception.CircuitOpenException;
+import com.usebutton.merchant.exception.HttpStatusException;
+import com.usebutton.merchant.exception.NetworkNotFoundException;
+import com.usebutton.merchant.module.Features;
 
 import okhttp3.HttpUrl;
 import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.After;
@@ -41,10 +46,21 @@ import org.junit.Test;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -311,4 +327,618 @@ public class ConnectionManagerImplTest {
         JSONObject request = new JSONObject(recordedRequest.getBody().readUtf8());
         assertEquals(applicationId, request.getString("application_id"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void executeRequest_streamingBody_shouldWriteMembersAndAppendIds() throws Exception {
+        String applicationId = "app-abcdef1234567890";
+        connectionManager.setApplicationId(applicationId);
+        ((ConnectionManagerImpl) connectionManager).baseUrl = url;
+        when(persistenceManager.getSessionId()).thenReturn("valid_session_id");
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        connectionManager.executeRequest(new ApiRequest.Builder(ApiRequest.RequestMethod.POST,
+                "/test")
+                .setBody(new ApiRequest.StreamingBody() {
+                    @Override
+                    public void writeMembers(BodyWriter writer) throws IOException {
+                        writer.name("key").value("value");
+                        writer.name("list").beginArray().value(1).value(2).endArray();
+                    }
+                })
+                .build()
+        );
+
+        RecordedRequest recordedRequest = server.takeRequest();
+        JSONObject request = new JSONObject(recordedRequest.getBody().readUtf8());
+        assertEquals("value", request.getString("key"));
+        assertEquals(2, request.getJSONArray("list").length());
+        assertEquals(applicationId, request.getString("application_id"));
+        assertEquals("valid_session_id", request.getString("session_id"));
+    }
+
+    @Test
+    public void executeRequest_streamingBody_shouldSendContentLength() throws Exception {
+        connectionManager.setApplicationId("app-abcdef1234567890");
+        ((ConnectionManagerImpl) connectionManager).baseUrl = url;
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        connectionManager.executeRequest(new ApiRequest.Builder(ApiRequest.RequestMethod.POST,
+                "/test")
+                .setBody(new ApiRequest.StreamingBody() {
+                    @Override
+                    public void writeMembers(BodyWriter writer) throws IOException {
+                        writer.name("key").value("value");
+                    }
+                })
+                .build()
+        );
+
+        RecordedRequest recordedRequest = server.takeRequest();
+        assertNull(recordedRequest.getHeader("Transfer-Encoding"));
+        assertEquals(String.valueOf(recordedRequest.getBodySize()),
+                recordedRequest.getHeader("Content-Length"));
+    }
+
+    @Test
+    public void executeRequest_chunkedStreamingBody_shouldUseChunkedTransfer() throws Exception {
+        connectionManager.setApplicationId("app-abcdef1234567890");
+        ((ConnectionManagerImpl) connectionManager).baseUrl = url;
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        connectionManager.executeRequest(new ApiRequest.Builder(ApiRequest.RequestMethod.POST,
+                "/test")
+                .setChunked(true)
+                .setBody(new ApiRequest.StreamingBody() {
+                    @Override
+                    public void writeMembers(BodyWriter writer) throws IOException {
+                        writer.name("key").value("value");
+                    }
+                })
+                .build()
+        );
+
+        RecordedRequest recordedRequest = server.takeRequest();
+        assertEquals("chunked", recordedRequest.getHeader("Transfer-Encoding"));
+        assertNull(recordedRequest.getHeader("Content-Length"));
+    }
+
+    @Test
+    public void executeRequest_orderWith10000LineItems_shouldStreamInBoundedChunks()
+            throws Exception {
+        connectionManager.setApplicationId("app-abcdef1234567890");
+        ((ConnectionManagerImpl) connectionManager).baseUrl = url;
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        List<Order.LineItem> lineItems = new ArrayList<>(10000);
+        for (int i = 0; i < 10000; i++) {
+            lineItems.add(new Order.LineItem.Builder("sku-" + i, 1999)
+                    .setDescription("Wholesale item number " + i)
+                    .setCategory(Arrays.asList("wholesale", "category-" + i % 50))
+                    .setAttributes(Collections.singletonMap("size", "pallet"))
+                    .setQuantity(12)
+                    .build());
+        }
+        Order order = new Order.Builder("bulk-order", new Date(), lineItems).build();
+
+        new ButtonApiImpl(connectionManager).postOrder(order, "app-abcdef1234567890",
+                "valid_source_token", null);
+
+        // The body is well over a megabyte but never passes through memory in one piece
+        RecordedRequest recordedRequest = server.takeRequest();
+        assertTrue(recordedRequest.getBodySize() > 1024 * 1024);
+        List<Integer> chunkSizes = recordedRequest.getChunkSizes();
+        assertTrue(chunkSizes.size() > 100);
+        for (int chunkSize : chunkSizes) {
+            assertTrue(chunkSize <= 16 * 1024);
+        }
+
+        JSONObject request = new JSONObject(recordedRequest.getBody().readUtf8());
+        assertEquals(10000, request.getJSONArray("line_items").length());
+        assertEquals("sku-9999", request.getJSONArray("line_items").getJSONObject(9999)
+                .getString("identifier"));
+    }
+
+    @Test
+    public void executeRequest_cborEnabledAndAllowed_shouldSendCbor() throws Exception {
+        ConnectionManager cborConnectionManager = cborConnectionManager();
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        cborConnectionManager.executeRequest(cborRequest());
+
+        RecordedRequest recordedRequest = server.takeRequest();
+        assertEquals("application/cbor", recordedRequest.getHeader("Content-Type"));
+        assertEquals("application/json", recordedRequest.getHeader("Accept"));
+        JSONObject request = CborDecoder.decodeObject(recordedRequest.getBody().readByteArray());
+        assertEquals("value", request.getString("key"));
+        assertEquals("app-abcdef1234567890", request.getString("application_id"));
+    }
+
+    @Test
+    public void executeRequest_cborNotAllowed_shouldSendJson() throws Exception {
+        ConnectionManager cborConnectionManager = cborConnectionManager();
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        cborConnectionManager.executeRequest(new ApiRequest.Builder(ApiRequest.RequestMethod.POST,
+                "/test")
+                .setBody(keyValueBody())
+                .build());
+
+        RecordedRequest recordedRequest = server.takeRequest();
+        assertEquals("application/json", recordedRequest.getHeader("Content-Type"));
+        assertEquals("value", new JSONObject(recordedRequest.getBody().readUtf8())
+                .getString("key"));
+    }
+
+    @Test
+    public void executeRequest_cborDisabled_shouldSendJson() throws Exception {
+        connectionManager.setApplicationId("app-abcdef1234567890");
+        ((ConnectionManagerImpl) connectionManager).baseUrl = url;
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        connectionManager.executeRequest(cborRequest());
+
+        RecordedRequest recordedRequest = server.takeRequest();
+        assertEquals("application/json", recordedRequest.getHeader("Content-Type"));
+    }
+
+    @Test
+    public void executeRequest_cborUnsupported_shouldFallBackToJsonAndRemember()
+            throws Exception {
+        ConnectionManager cborConnectionManager = cborConnectionManager();
+        server.enqueue(new MockResponse().setResponseCode(415));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        cborConnectionManager.executeRequest(cborRequest());
+        cborConnectionManager.executeRequest(cborRequest());
+
+        assertEquals("application/cbor", server.takeRequest().getHeader("Content-Type"));
+        RecordedRequest retry = server.takeRequest();
+        assertEquals("application/json", retry.getHeader("Content-Type"));
+        assertEquals("value", new JSONObject(retry.getBody().readUtf8()).getString("key"));
+        assertEquals("application/json", server.takeRequest().getHeader("Content-Type"));
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void executeRequest_jsonUnsupported_shouldNotRetry() throws Exception {
+        connectionManager.setApplicationId("app-abcdef1234567890");
+        ((ConnectionManagerImpl) connectionManager).baseUrl = url;
+        server.enqueue(new MockResponse().setResponseCode(415));
+
+        boolean threw = false;
+        try {
+            connectionManager.executeRequest(cborRequest());
+        } catch (ButtonNetworkException e) {
+            threw = true;
+        }
+
+        assertEquals(1, server.getRequestCount());
+        assertTrue(threw);
+    }
+
+    private ConnectionManager cborConnectionManager() {
+        Features features = mock(Features.class);
+        when(features.getCborEncoding()).thenReturn(true);
+        ConnectionManagerImpl cborConnectionManager =
+                new ConnectionManagerImpl(url, VALID_UA, persistenceManager, features);
+        cborConnectionManager.setApplicationId("app-abcdef1234567890");
+        cborConnectionManager.baseUrl = url;
+        return cborConnectionManager;
+    }
+
+    private ConnectionManager newConnectionManager(ConnectivityMonitor connectivityMonitor) {
+        return new ConnectionManagerImpl(url, VALID_UA, persistenceManager, mock(Features.class),
+                new RetryBudget(1, 1), new CircuitBreaker(), new LatencyEstimator(),
+                new MetricsRegistry(), connectivityMonitor);
+    }
+
+    private static ApiRequest cborRequest() {
+        return new ApiRequest.Builder(ApiRequest.RequestMethod.POST, "/test")
+                .setCborAllowed(true)
+                .setBody(keyValueBody())
+                .build();
+    }
+
+    private static ApiRequest.StreamingBody keyValueBody() {
+        return new ApiRequest.StreamingBody() {
+            @Override
+            public void writeMembers(BodyWriter writer) throws IOException {
+                writer.name("key").value("value");
+            }
+        };
+    }
+
+    @Test
+    public void executeRequest_serviceUnavailable_shouldIncludeRetryAfter() throws Exception {
+        connectionManager.setApplicationId("app-abcdef1234567890");
+        ((ConnectionManagerImpl) connectionManager).baseUrl = url;
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "3"));
+
+        try {
+            connectionManager.executeRequest(cborRequest());
+        } catch (HttpStatusException e) {
+            assertEquals(3000, e.getRetryAfterMillis());
+            return;
+        }
+        throw new AssertionError("Expected HttpStatusException");
+    }
+
+    @Test
+    public void executeRequest_success_shouldRefillRetryBudget() throws Exception {
+        RetryBudget retryBudget = new RetryBudget(1, 1);
+        ConnectionManagerImpl budgetedConnectionManager = new ConnectionManagerImpl(url,
+                VALID_UA, persistenceManager, mock(Features.class), retryBudget);
+        budgetedConnectionManager.setApplicationId("app-abcdef1234567890");
+        budgetedConnectionManager.baseUrl = url;
+        retryBudget.tryAcquire();
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        budgetedConnectionManager.executeRequest(cborRequest());
+
+        assertTrue(retryBudget.tryAcquire());
+    }
+
+    @Test
+    public void parseRetryAfter_shouldParseSecondsAndHttpDate() {
+        assertEquals(120000, ConnectionManagerImpl.parseRetryAfter(" 120 ", 0));
+        assertEquals(5000, ConnectionManagerImpl.parseRetryAfter(
+                "Thu, 01 Jan 1970 00:00:10 GMT", 5000));
+        assertEquals(0, ConnectionManagerImpl.parseRetryAfter(
+                "Thu, 01 Jan 1970 00:00:10 GMT", 20000));
+        assertEquals(0, ConnectionManagerImpl.parseRetryAfter("-5", 0));
+        assertEquals(0, ConnectionManagerImpl.parseRetryAfter("soon", 0));
+        assertEquals(0, ConnectionManagerImpl.parseRetryAfter(null, 0));
+    }
+
+    @Test
+    public void executeRequest_outage_shouldFailFastOnceCircuitOpens() throws Exception {
+        server.close();
+        int requestCount = 20;
+        int networkFailures = 0;
+        int fastFailures = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requestCount; i++) {
+            try {
+                connectionManager.executeRequest(cborRequest());
+            } catch (CircuitOpenException e) {
+                fastFailures++;
+            } catch (NetworkNotFoundException e) {
+                networkFailures++;
+            }
+        }
+        long drainMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Only the requests that tripped the breaker waited on the network
+        assertEquals(CircuitBreaker.FAILURE_THRESHOLD, networkFailures);
+        assertEquals(requestCount - CircuitBreaker.FAILURE_THRESHOLD, fastFailures);
+        assertTrue("drained in " + drainMs + "ms", drainMs < 5000);
+    }
+
+    @Test
+    public void executeRequest_deviceOffline_shouldNotTripCircuit() throws Exception {
+        FakeConnectivityMonitor connectivityMonitor = new FakeConnectivityMonitor();
+        connectivityMonitor.setConnected(false);
+        connectionManager = newConnectionManager(connectivityMonitor);
+        server.close();
+
+        for (int i = 0; i <= CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            try {
+                connectionManager.executeRequest(cborRequest());
+            } catch (CircuitOpenException e) {
+                throw new AssertionError("Circuit opened while offline");
+            } catch (NetworkNotFoundException ignored) {
+            }
+        }
+
+        assertFalse(connectionManager.isCircuitOpen());
+    }
+
+    @Test
+    public void connectivityRegained_shouldCloseCircuit() throws Exception {
+        FakeConnectivityMonitor connectivityMonitor = new FakeConnectivityMonitor();
+        connectionManager = newConnectionManager(connectivityMonitor);
+        server.close();
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            try {
+                connectionManager.executeRequest(cborRequest());
+            } catch (NetworkNotFoundException ignored) {
+            }
+        }
+        assertTrue(connectionManager.isCircuitOpen());
+
+        connectivityMonitor.setConnected(false);
+        connectivityMonitor.setConnected(true);
+
+        assertFalse(connectionManager.isCircuitOpen());
+    }
+
+    @Test
+    public void executeRequest_httpError_shouldNotTripCircuit() throws Exception {
+        connectionManager.setApplicationId("app-abcdef1234567890");
+        ((ConnectionManagerImpl) connectionManager).baseUrl = url;
+        for (int i = 0; i <= CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+        }
+
+        for (int i = 0; i <= CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            try {
+                connectionManager.executeRequest(cborRequest());
+            } catch (HttpStatusException ignored) {
+            }
+        }
+
+        assertEquals(CircuitBreaker.FAILURE_THRESHOLD + 1, server.getRequestCount());
+    }
+
+    @Test
+    public void warmUp_shouldSendHeadRequest() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200));
+
+        connectionManager.warmUp();
+
+        RecordedRequest recordedRequest = server.takeRequest();
+        assertEquals("HEAD", recordedRequest.getMethod());
+        assertEquals("/", recordedRequest.getPath());
+    }
+
+    @Test
+    public void executeRequest_afterWarmUp_shouldReuseConnection() throws Exception {
+        connectionManager.setApplicationId("app-abcdef1234567890");
+        ((ConnectionManagerImpl) connectionManager).baseUrl = url;
+        server.enqueue(new MockResponse().setResponseCode(200));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        connectionManager.warmUp();
+        long start = System.nanoTime();
+        connectionManager.executeRequest(cborRequest());
+        long latencyUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+
+        assertEquals("HEAD", server.takeRequest().getMethod());
+        // The first real request is the second one on the warmed connection
+        assertEquals("first request took " + latencyUs + "us", 1,
+                server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void executeRequest_withoutWarmUp_shouldOpenConnection() throws Exception {
+        connectionManager.setApplicationId("app-abcdef1234567890");
+        ((ConnectionManagerImpl) connectionManager).baseUrl = url;
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        long start = System.nanoTime();
+        connectionManager.executeRequest(cborRequest());
+        long latencyUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+
+        assertEquals("first request took " + latencyUs + "us", 0,
+                server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void executeRequest_shouldRecordPayloadSizes() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        connectionManager = new ConnectionManagerImpl(url, VALID_UA, persistenceManager,
+                mock(Features.class), new RetryBudget(1, 1), new CircuitBreaker(),
+                new LatencyEstimator(), metrics);
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"meta\":{}}"));
+
+        connectionManager.executeRequest(cborRequest());
+
+        long bodySize = server.takeRequest().getBodySize();
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertTrue(bodySize > 0);
+        assertEquals(bodySize, snapshot.getCounter(MetricsSnapshot.COUNTER_BYTES_SENT));
+        assertEquals(bodySize, snapshot.getRequestSizes().getMax());
+        assertEquals(11, snapshot.getCounter(MetricsSnapshot.COUNTER_BYTES_RECEIVED));
+        assertEquals(1, snapshot.getCounter(MetricsSnapshot.COUNTER_REQUESTS));
+        assertEquals(1, snapshot.getRequestLatencies().get("/test").getCount());
+        // Local connects are too quick to be samples, so only check the gauge is registered
+        assertNotNull(snapshot.getGauge(MetricsSnapshot.GAUGE_CONNECT_TIME_ESTIMATE));
+    }
+
+    @Test
+    public void executeRequest_shouldRegisterFirstByteGaugePerPath() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        LatencyEstimator latencyEstimator = new LatencyEstimator();
+        connectionManager = new ConnectionManagerImpl(url, VALID_UA, persistenceManager,
+                mock(Features.class), new RetryBudget(1, 1), new CircuitBreaker(),
+                latencyEstimator, metrics);
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        connectionManager.executeRequest(cborRequest());
+        connectionManager.executeRequest(cborRequest());
+
+        Map<String, Long> gauges = metrics.snapshot().getGauges();
+        String prefix = MetricsSnapshot.GAUGE_FIRST_BYTE_TIME_ESTIMATE_PREFIX;
+        assertEquals(Long.valueOf(latencyEstimator.getFirstByteEstimate("/test")),
+                gauges.get(prefix + "/test"));
+        assertFalse(gauges.containsKey(prefix + "/v1/app/events"));
+    }
+
+    @Test
+    public void executeRequest_multiLineUtf8Response_shouldCountBytesReceived() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        connectionManager = new ConnectionManagerImpl(url, VALID_UA, persistenceManager,
+                mock(Features.class), new RetryBudget(1, 1), new CircuitBreaker(),
+                new LatencyEstimator(), metrics);
+        String body = "{\"meta\":{},\r\n\"name\":\"caf\u00e9 \u2615\"}\n";
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(body));
+
+        connectionManager.executeRequest(cborRequest());
+
+        assertEquals(body.getBytes("UTF-8").length,
+                metrics.snapshot().getCounter(MetricsSnapshot.COUNTER_BYTES_RECEIVED));
+    }
+
+    @Test
+    public void executeRequest_httpError_shouldCountRequestError() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        connectionManager = new ConnectionManagerImpl(url, VALID_UA, persistenceManager,
+                mock(Features.class), new RetryBudget(1, 1), new CircuitBreaker(),
+                new LatencyEstimator(), metrics);
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{}"));
+
+        try {
+            connectionManager.executeRequest(cborRequest());
+        } catch (HttpStatusException ignored) {
+        }
+
+        assertEquals(1, metrics.snapshot().getCounter(MetricsSnapshot.COUNTER_REQUEST_ERRORS));
+    }
+
+    @Test
+    public void executeRequest_slowResponses_shouldRaiseReadTimeout() throws Exception {
+        LatencyEstimator latencyEstimator = new LatencyEstimator();
+        connectionManager = new ConnectionManagerImpl(url, VALID_UA, persistenceManager,
+                mock(Features.class), new RetryBudget(1, 1), new CircuitBreaker(),
+                latencyEstimator);
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody("{}")
+                .setHeadersDelay(1500, TimeUnit.MILLISECONDS));
+
+        connectionManager.executeRequest(cborRequest());
+
+        assertTrue(latencyEstimator.getFirstByteEstimate("/test") >= 1500);
+        assertTrue(latencyEstimator.getReadTimeout("/test") > LatencyEstimator.MIN_READ_TIMEOUT);
+    }
+
+    @Test
+    public void executeRequest_fastResponses_shouldLowerReadTimeout() throws Exception {
+        LatencyEstimator latencyEstimator = new LatencyEstimator();
+        connectionManager = new ConnectionManagerImpl(url, VALID_UA, persistenceManager,
+                mock(Features.class), new RetryBudget(1, 1), new CircuitBreaker(),
+                latencyEstimator);
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            connectionManager.executeRequest(cborRequest());
+        }
+
+        assertEquals(LatencyEstimator.MIN_READ_TIMEOUT, latencyEstimator.getReadTimeout("/test"));
+    }
+
+    @Test
+    public void executeHedgedRequest_slowFirstConnection_shouldUseHedgeResponse()
+            throws Exception {
+        final AtomicInteger requestCount = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (requestCount.getAndIncrement() == 0) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+                }
+                return new MockResponse().setResponseCode(200).setBody("{}");
+            }
+        });
+
+        long start = System.nanoTime();
+        NetworkResponse response = connectionManager.executeHedgedRequest(hedgeableRequest(),
+                hedgeableRequest(), 200);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(200, response.getStatusCode());
+        assertTrue("took " + elapsedMs + "ms", elapsedMs < LatencyEstimator.MIN_READ_TIMEOUT);
+        // Each request is the first on its own connection
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void executeHedgedRequest_fastResponse_shouldNotHedge() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        NetworkResponse response = connectionManager.executeHedgedRequest(hedgeableRequest(),
+                hedgeableRequest(), 200);
+        Thread.sleep(400);
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void executeHedgedRequest_errorStatus_shouldNotWaitForHedge() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400));
+
+        try {
+            connectionManager.executeHedgedRequest(hedgeableRequest(), hedgeableRequest(), 200);
+        } catch (HttpStatusException e) {
+            assertTrue(e.wasBadRequest());
+        }
+        Thread.sleep(400);
+
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void executeHedgedRequest_hedgeWins_shouldNotTripCircuit() throws Exception {
+        final AtomicInteger requestCount = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (requestCount.getAndIncrement() % 2 == 0) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+                }
+                return new MockResponse().setResponseCode(200).setBody("{}");
+            }
+        });
+
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            connectionManager.executeHedgedRequest(hedgeableRequest(), hedgeableRequest(), 100);
+        }
+
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(200).setBody("{}");
+            }
+        });
+        connectionManager.executeRequest(hedgeableRequest());
+    }
+
+    private static ApiRequest hedgeableRequest() {
+        return new ApiRequest.Builder(ApiRequest.RequestMethod.POST, "/v1/app/deferred-deeplink")
+                .setBody(new JSONObject())
+                .build();
+    }
+
+    @Test
+    public void addInterceptor_shouldRunAroundRequests() throws Exception {
+        final List<String> calls = new ArrayList<>();
+        connectionManager.addInterceptor(new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) throws ButtonNetworkException {
+                calls.add(chain.request().getPath());
+                NetworkResponse response = chain.proceed(chain.request().newBuilder()
+                        .addHeader("X-Trace", "trace-id")
+                        .build());
+                calls.add(String.valueOf(response.getStatusCode()));
+                return response;
+            }
+        });
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        connectionManager.executeRequest(cborRequest());
+
+        assertEquals(Arrays.asList("/test", "200"), calls);
+        assertEquals("trace-id", server.takeRequest().getHeader("X-Trace"));
+    }
+
+    @Test
+    public void addInterceptor_answerWithoutProceeding_shouldSkipNetwork() throws Exception {
+        final NetworkResponse cached = new NetworkResponse(200, new JSONObject());
+        connectionManager.addInterceptor(new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) {
+                return cached;
+            }
+        });
+
+        assertEquals(cached, connectionManager.executeRequest(cborRequest()));
+        assertEquals(0, server.getRequestCount());
+    }
+}
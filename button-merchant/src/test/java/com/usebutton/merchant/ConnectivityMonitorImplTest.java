@@ -0,0 +1,153 @@
+/*
+ * ConnectivityMonitorImplTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConnectivityMonitorImplTest {
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private ConnectivityManager connectivityManager;
+
+    @Mock
+    private NetworkInfo networkInfo;
+
+    @Mock
+    private ConnectivityMonitor.Listener listener;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(context.getSystemService(Context.CONNECTIVITY_SERVICE))
+                .thenReturn(connectivityManager);
+        when(connectivityManager.getActiveNetworkInfo()).thenReturn(networkInfo);
+    }
+
+    @Test
+    public void isConnected_noConnectivityManager_assumeConnected() {
+        when(context.getSystemService(Context.CONNECTIVITY_SERVICE)).thenReturn(null);
+
+        assertTrue(new ConnectivityMonitorImpl(context).isConnected());
+    }
+
+    @Test
+    public void isConnected_activeNetworkConnected_returnTrue() {
+        when(networkInfo.isConnected()).thenReturn(true);
+
+        assertTrue(new ConnectivityMonitorImpl(context).isConnected());
+    }
+
+    @Test
+    public void isConnected_noActiveNetwork_returnFalse() {
+        when(connectivityManager.getActiveNetworkInfo()).thenReturn(null);
+
+        assertFalse(new ConnectivityMonitorImpl(context).isConnected());
+    }
+
+    @Test
+    public void isConnected_missingPermission_assumeConnected() {
+        when(connectivityManager.getActiveNetworkInfo()).thenThrow(new SecurityException());
+
+        assertTrue(new ConnectivityMonitorImpl(context).isConnected());
+    }
+
+    @Test
+    public void addListener_connectivityBroadcast_notifyOnChange() {
+        ConnectivityMonitorImpl connectivityMonitor = new ConnectivityMonitorImpl(context);
+        connectivityMonitor.addListener(listener);
+        ArgumentCaptor<BroadcastReceiver> receiverCaptor =
+                ArgumentCaptor.forClass(BroadcastReceiver.class);
+        verify(context).registerReceiver(receiverCaptor.capture(), any(IntentFilter.class));
+
+        when(networkInfo.isConnected()).thenReturn(true);
+        receiverCaptor.getValue().onReceive(context, mock(Intent.class));
+
+        verify(listener).onConnectivityChanged(true);
+        assertTrue(connectivityMonitor.isConnected());
+    }
+
+    @Test
+    public void addListener_unchangedConnectivity_doNotNotify() {
+        ConnectivityMonitorImpl connectivityMonitor = new ConnectivityMonitorImpl(context);
+        connectivityMonitor.addListener(listener);
+        ArgumentCaptor<BroadcastReceiver> receiverCaptor =
+                ArgumentCaptor.forClass(BroadcastReceiver.class);
+        verify(context).registerReceiver(receiverCaptor.capture(), any(IntentFilter.class));
+
+        receiverCaptor.getValue().onReceive(context, mock(Intent.class));
+
+        verify(listener, never()).onConnectivityChanged(anyBoolean());
+        assertFalse(connectivityMonitor.isConnected());
+    }
+
+    @Test
+    public void isNetworkActive_preLollipop_assumeActive() {
+        when(connectivityManager.isDefaultNetworkActive()).thenReturn(false);
+
+        assertTrue(new ConnectivityMonitorImpl(context).isNetworkActive());
+    }
+
+    @Test
+    public void onDefaultNetworkActive_notifyListeners() {
+        ConnectivityMonitorImpl connectivityMonitor = new ConnectivityMonitorImpl(context);
+        connectivityMonitor.addListener(listener);
+
+        connectivityMonitor.onDefaultNetworkActive();
+
+        verify(listener).onNetworkActive();
+    }
+
+    @Test
+    public void isNetworkActive_noConnectivityManager_assumeActive() {
+        when(context.getSystemService(Context.CONNECTIVITY_SERVICE)).thenReturn(null);
+
+        assertTrue(new ConnectivityMonitorImpl(context).isNetworkActive());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * DeviceConditionsImplTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeviceConditionsImplTest {
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private Intent batteryStatus;
+
+    private DeviceConditionsImpl deviceConditions;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(context.registerReceiver(isNull(), any(IntentFilter.class)))
+                .thenReturn(batteryStatus);
+        when(batteryStatus.getIntExtra(eq(BatteryManager.EXTRA_SCALE), anyInt())).thenReturn(100);
+        deviceConditions = new DeviceConditionsImpl(context);
+    }
+
+    @Test
+    public void isBatteryLow_lowAndDischarging_returnTrue() {
+        setBattery(DeviceConditionsImpl.LOW_BATTERY_PERCENT,
+                BatteryManager.BATTERY_STATUS_DISCHARGING);
+
+        assertTrue(deviceConditions.isBatteryLow());
+    }
+
+    @Test
+    public void isBatteryLow_lowAndCharging_returnFalse() {
+        setBattery(DeviceConditionsImpl.LOW_BATTERY_PERCENT,
+                BatteryManager.BATTERY_STATUS_CHARGING);
+
+        assertFalse(deviceConditions.isBatteryLow());
+    }
+
+    @Test
+    public void isBatteryLow_aboveThreshold_returnFalse() {
+        setBattery(DeviceConditionsImpl.LOW_BATTERY_PERCENT + 1,
+                BatteryManager.BATTERY_STATUS_DISCHARGING);
+
+        assertFalse(deviceConditions.isBatteryLow());
+    }
+
+    @Test
+    public void isBatteryLow_noBatteryStatus_returnFalse() {
+        when(context.registerReceiver(isNull(), any(IntentFilter.class))).thenReturn(null);
+
+        assertFalse(deviceConditions.isBatteryLow());
+    }
+
+    @Test
+    public void isBatteryLow_registerReceiverThrows_returnFalse() {
+        when(context.registerReceiver(isNull(), any(IntentFilter.class)))
+                .thenThrow(new SecurityException());
+
+        assertFalse(deviceConditions.isBatteryLow());
+    }
+
+    @Test
+    public void isBatteryLow_calledTwice_readBatteryStatusOnce() {
+        setBattery(5, BatteryManager.BATTERY_STATUS_DISCHARGING);
+
+        deviceConditions.isBatteryLow();
+        deviceConditions.isBatteryLow();
+
+        verify(context, times(1)).registerReceiver(isNull(), any(IntentFilter.class));
+    }
+
+    @Test
+    public void isNetworkMetered_noConnectivityManager_returnFalse() {
+        assertFalse(deviceConditions.isNetworkMetered());
+    }
+
+    @Test
+    public void isPowerSaveMode_noPowerManager_returnFalse() {
+        assertFalse(deviceConditions.isPowerSaveMode());
+        assertFalse(deviceConditions.isDeviceIdle());
+    }
+
+    @Test
+    public void create_shouldObserveConditionChanges() {
+        verify(context).registerReceiver(any(BroadcastReceiver.class),
+                any(IntentFilter.class));
+    }
+
+    @Test
+    public void isNetworkMetered_registerReceiverThrows_returnFalse() {
+        when(context.registerReceiver(any(BroadcastReceiver.class), any(IntentFilter.class)))
+                .thenThrow(new SecurityException());
+
+        assertFalse(new DeviceConditionsImpl(context).isNetworkMetered());
+    }
+
+    private void setBattery(int level, int status) {
+        when(batteryStatus.getIntExtra(eq(BatteryManager.EXTRA_LEVEL), anyInt()))
+                .thenReturn(level);
+        when(batteryStatus.getIntExtra(eq(BatteryManager.EXTRA_STATUS), anyInt()))
+                .thenReturn(status);
+    }
+}
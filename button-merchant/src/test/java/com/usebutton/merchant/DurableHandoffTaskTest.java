@@ -0,0 +1,147 @@
+/*
+ * DurableHandoffTaskTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import com.usebutton.merchant.module.DurableDelivery;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DurableHandoffTaskTest {
+
+    @Mock DurableDelivery durableDelivery;
+    @Mock Task.Listener listener;
+    @Mock Task<?> fallback;
+
+    private final DurableHandoffTask.RequestWriter requestWriter =
+            new DurableHandoffTask.RequestWriter() {
+                @Override
+                public String write() {
+                    return "request";
+                }
+            };
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void run_accepted_notifyListener() {
+        when(durableDelivery.enqueue(DurableDelivery.Type.ORDER, "order-id", "request"))
+                .thenReturn(true);
+
+        new DurableHandoffTask(durableDelivery, DurableDelivery.Type.ORDER, "order-id",
+                requestWriter, listener, fallback).run();
+
+        verify(listener).onTaskComplete(isNull());
+        verify(fallback, never()).run();
+    }
+
+    @Test
+    public void run_rejected_runFallback() {
+        when(durableDelivery.enqueue(any(DurableDelivery.Type.class), anyString(), anyString()))
+                .thenReturn(false);
+
+        new DurableHandoffTask(durableDelivery, DurableDelivery.Type.EVENTS, "event-id",
+                requestWriter, listener, fallback).run();
+
+        verify(fallback).run();
+        verify(listener, never()).onTaskComplete(any());
+        verify(listener, never()).onTaskError(any(Throwable.class));
+    }
+
+    @Test
+    public void run_rejected_shouldRecordHandoffBeforeFallback() {
+        when(durableDelivery.enqueue(any(DurableDelivery.Type.class), anyString(), anyString()))
+                .thenReturn(false);
+        final MetricsRegistry metrics = MetricsRegistry.getInstance();
+        final long before = handoffCount(metrics);
+        final long[] countDuringFallback = {-1};
+        Task<Void> fallback = new Task<Void>(null) {
+            @Override
+            Void execute() {
+                countDuringFallback[0] = handoffCount(metrics);
+                return null;
+            }
+        };
+
+        new DurableHandoffTask(durableDelivery, DurableDelivery.Type.EVENTS, "event-id",
+                requestWriter, listener, fallback).run();
+
+        // The hand-off was recorded once, and without the time spent in the fallback
+        assertEquals(before + 1, countDuringFallback[0]);
+        assertEquals(before + 1, handoffCount(metrics));
+    }
+
+    @Test
+    public void run_writeFails_runFallback() {
+        DurableHandoffTask.RequestWriter failingWriter = new DurableHandoffTask.RequestWriter() {
+            @Override
+            public String write() throws Exception {
+                throw new IOException();
+            }
+        };
+
+        new DurableHandoffTask(durableDelivery, DurableDelivery.Type.ORDER, "order-id",
+                failingWriter, listener, fallback).run();
+
+        verify(durableDelivery, never()).enqueue(any(DurableDelivery.Type.class), anyString(),
+                anyString());
+        verify(fallback).run();
+    }
+
+    @Test
+    public void run_enqueueThrows_runFallback() {
+        when(durableDelivery.enqueue(eq(DurableDelivery.Type.ORDER), anyString(), anyString()))
+                .thenThrow(new IllegalStateException());
+
+        new DurableHandoffTask(durableDelivery, DurableDelivery.Type.ORDER, "order-id",
+                requestWriter, null, fallback).run();
+
+        verify(fallback).run();
+    }
+
+    private static long handoffCount(MetricsRegistry metrics) {
+        MetricsSnapshot.Histogram histogram =
+                metrics.snapshot().getTaskDurations().get("DurableHandoffTask");
+        return histogram == null ? 0 : histogram.getCount();
+    }
+}
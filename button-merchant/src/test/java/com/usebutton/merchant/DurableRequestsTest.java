@@ -0,0 +1,88 @@
+/*
+ * DurableRequestsTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DurableRequestsTest {
+
+    @Test
+    public void write_streamingBody_roundTrip() throws Exception {
+        ApiRequest request = new ApiRequest.Builder(ApiRequest.RequestMethod.POST, "/v1/app/order")
+                .addHeader("Authorization", "Basic abc")
+                .setBody(new ApiRequest.StreamingBody() {
+                    @Override
+                    public void writeMembers(BodyWriter writer) throws IOException {
+                        writer.name("btn_ref").value("srctok-abc");
+                        writer.name("amount").value(1000);
+                    }
+                })
+                .build();
+
+        JSONObject json = new JSONObject(DurableRequests.write(request, "app-abc"));
+        ApiRequest restored = DurableRequests.read(json);
+
+        assertEquals("app-abc", DurableRequests.readApplicationId(json));
+        assertEquals(ApiRequest.RequestMethod.POST, restored.getRequestMethod());
+        assertEquals("/v1/app/order", restored.getPath());
+        assertEquals("Basic abc", restored.getHeaders().get("Authorization"));
+        assertNull(restored.getStreamingBody());
+        assertEquals("srctok-abc", restored.getBody().getString("btn_ref"));
+        assertEquals(1000, restored.getBody().getLong("amount"));
+    }
+
+    @Test
+    public void write_jsonBody_roundTrip() throws Exception {
+        JSONObject body = new JSONObject();
+        body.put("ifa", "valid_ifa");
+        ApiRequest request = new ApiRequest.Builder(ApiRequest.RequestMethod.POST, "/v1/test")
+                .setBody(body)
+                .build();
+
+        ApiRequest restored = DurableRequests.read(
+                new JSONObject(DurableRequests.write(request, "app-abc")));
+
+        assertEquals("valid_ifa", restored.getBody().getString("ifa"));
+        assertEquals(0, restored.getHeaders().size());
+    }
+
+    @Test
+    public void readApplicationId_noApplicationId_returnNull() throws Exception {
+        ApiRequest request = new ApiRequest.Builder(ApiRequest.RequestMethod.POST, "/v1/test")
+                .build();
+
+        JSONObject json = new JSONObject(DurableRequests.write(request, null));
+
+        assertNull(DurableRequests.readApplicationId(json));
+    }
+}
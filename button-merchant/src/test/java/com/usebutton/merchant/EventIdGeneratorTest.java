@@ -0,0 +1,203 @@
+/*
+ * EventIdGeneratorTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventIdGeneratorTest {
+
+    @Test
+    public void nextId_shouldSetVersionAndVariant() {
+        EventIdGenerator generator = new EventIdGenerator(new TestTimeProvider(1000L), 42L);
+
+        UUID id = generator.nextId();
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+    }
+
+    @Test
+    public void nextId_shouldEncodeTimestamp() {
+        long now = 1600000000000L;
+        EventIdGenerator generator = new EventIdGenerator(new TestTimeProvider(now), 42L);
+
+        UUID id = generator.nextId();
+
+        assertEquals(now, id.getMostSignificantBits() >>> 16);
+    }
+
+    @Test
+    public void nextId_sameMillisecond_shouldBeStrictlyIncreasing() {
+        EventIdGenerator generator = new EventIdGenerator(new TestTimeProvider(1000L), 42L);
+
+        UUID previous = generator.nextId();
+        for (int i = 0; i < 10000; i++) {
+            UUID id = generator.nextId();
+            assertTrue(compare(previous, id) < 0);
+            previous = id;
+        }
+    }
+
+    @Test
+    public void nextId_counterExhausted_shouldBorrowNextMillisecond() {
+        EventIdGenerator generator = new EventIdGenerator(new TestTimeProvider(1000L), 42L);
+
+        for (int i = 0; i < 4096; i++) {
+            generator.nextId();
+        }
+        UUID id = generator.nextId();
+
+        assertTrue((id.getMostSignificantBits() >>> 16) > 1000L);
+    }
+
+    @Test
+    public void nextId_clockMovesBackwards_shouldStayIncreasing() {
+        TestTimeProvider timeProvider = new TestTimeProvider(5000L);
+        EventIdGenerator generator = new EventIdGenerator(timeProvider, 42L);
+
+        UUID first = generator.nextId();
+        timeProvider.setTime(4000L);
+        UUID second = generator.nextId();
+
+        assertTrue(compare(first, second) < 0);
+        assertEquals(5000L, second.getMostSignificantBits() >>> 16);
+    }
+
+    @Test
+    public void nextId_newMillisecond_shouldSortAfterPreviousMillisecond() {
+        TestTimeProvider timeProvider = new TestTimeProvider(1000L);
+        EventIdGenerator generator = new EventIdGenerator(timeProvider, 42L);
+
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            timeProvider.setTime(1000L + i / 10);
+            ids.add(generator.nextId());
+        }
+
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(compare(ids.get(i - 1), ids.get(i)) < 0);
+        }
+    }
+
+    @Test
+    public void nextId_concurrentCallers_shouldBeUnique() throws Exception {
+        final int threads = 8;
+        final int idsPerThread = 20000;
+        final EventIdGenerator generator = EventIdGenerator.getInstance();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+
+        List<Future<List<UUID>>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executorService.submit(new Callable<List<UUID>>() {
+                @Override
+                public List<UUID> call() throws Exception {
+                    start.await();
+                    List<UUID> ids = new ArrayList<>(idsPerThread);
+                    for (int i = 0; i < idsPerThread; i++) {
+                        ids.add(generator.nextId());
+                    }
+                    return ids;
+                }
+            }));
+        }
+        start.countDown();
+
+        Set<UUID> unique = new HashSet<>();
+        for (Future<List<UUID>> future : futures) {
+            List<UUID> ids = future.get();
+            for (int i = 1; i < ids.size(); i++) {
+                // Each caller observes strictly increasing identifiers
+                assertTrue(compare(ids.get(i - 1), ids.get(i)) < 0);
+            }
+            unique.addAll(ids);
+        }
+        executorService.shutdown();
+
+        assertEquals(threads * idsPerThread, unique.size());
+    }
+
+    @Test
+    public void nextId_differentSeeds_shouldNotCollide() {
+        EventIdGenerator first = new EventIdGenerator(new TestTimeProvider(1000L), 1L);
+        EventIdGenerator second = new EventIdGenerator(new TestTimeProvider(1000L), 2L);
+
+        Set<UUID> unique = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            unique.add(first.nextId());
+            unique.add(second.nextId());
+        }
+
+        assertEquals(2000, unique.size());
+    }
+
+    /**
+     * Unsigned comparison, matching the byte order the identifiers are serialized in.
+     */
+    private static int compare(UUID a, UUID b) {
+        int result = compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        if (result != 0) {
+            return result;
+        }
+        return compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+
+    private static int compareUnsigned(long a, long b) {
+        return Long.compare(a + Long.MIN_VALUE, b + Long.MIN_VALUE);
+    }
+
+    private static class TestTimeProvider implements TimeProvider {
+
+        private long time;
+
+        TestTimeProvider(long time) {
+            this.time = time;
+        }
+
+        @Override
+        public long getTimeInMs() {
+            return time;
+        }
+
+        void setTime(long time) {
+            this.time = time;
+        }
+    }
+}
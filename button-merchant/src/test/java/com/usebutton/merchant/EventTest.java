@@ -29,11 +29,15 @@ import org.json.JSONObject;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.StringWriter;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 public class EventTest {
 
@@ -44,30 +48,72 @@ public class EventTest {
         assertEquals(Event.Name.DEEPLINK_OPENED.toString(), event.getName());
         assertEquals(Event.Source.BUTTON, event.getSource());
         assertEquals("valid_token", event.getSourceToken());
-        assertEquals((new JSONObject()).toString(), event.getEventBody().toString());
+        assertTrue(event.getProperties().isEmpty());
         assertNotNull(event.getId());
         assertTrue(event.getTimestamp() > 0);
     }
 
     @Test
-    public void addProperty_shouldAddEventProperty() throws Exception {
-        Event event = new Event(Event.Name.DEEPLINK_OPENED, "valid_token");
-        event.addProperty(Event.Property.URL, "valid_url");
+    public void constructor_knownProperties_shouldSetEventProperty() {
+        Event event = new Event(Event.Name.DEEPLINK_OPENED, "valid_token",
+                Collections.singletonMap(Event.Property.URL, "valid_url"));
 
-        assertEquals("valid_url", event.getEventBody().getString(Event.Property.URL.toString()));
+        assertEquals("valid_url", event.getProperties().get(Event.Property.URL.toString()));
+    }
+
+    @Test
+    public void constructor_shouldSnapshotProperties() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("key", "value");
+        Event event = new Event("custom-event", "valid_token", properties);
+
+        properties.put("key", "changed");
+        properties.put("other", "value");
+
+        assertEquals(1, event.getProperties().size());
+        assertEquals("value", event.getProperties().get("key"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getProperties_shouldBeImmutable() {
+        Event event = new Event("custom-event", "valid_token",
+                Collections.singletonMap("key", "value"));
+
+        event.getProperties().put("other", "value");
     }
 
     @Test
     public void toJson_shouldConvertEventToJsonObject() throws Exception {
-        Event event = new Event(Event.Name.DEEPLINK_OPENED, "valid_token");
-        event.addProperty(Event.Property.URL, "valid_url");
+        Event event = new Event(Event.Name.DEEPLINK_OPENED, "valid_token",
+                Collections.singletonMap(Event.Property.URL, "valid_url"));
 
         JSONObject eventJson = event.toJson();
 
         assertEquals(Event.Name.DEEPLINK_OPENED.toString(), eventJson.getString("name"));
         assertEquals(Event.Source.BUTTON, event.getSource());
         assertEquals("valid_token", eventJson.getString("source_token"));
-        assertTrue(eventJson.has("value"));
+        assertEquals("valid_url", eventJson.getJSONObject("value").getString("url"));
+    }
+
+    @Test
+    public void toJson_nullSourceToken_shouldOmitSourceToken() throws Exception {
+        Event event = new Event(Event.Name.DEEPLINK_OPENED, null);
+
+        JSONObject eventJson = event.toJson();
+
+        assertFalse(eventJson.has("source_token"));
+        assertEquals(event.getId().toString(), eventJson.getString("uuid"));
+    }
+
+    @Test
+    public void writeEvent_shouldMatchToJson() throws Exception {
+        Event event = new Event("custom-event", "valid_token",
+                Collections.singletonMap("key", "value \"quoted\""));
+        StringWriter out = new StringWriter();
+
+        ModelSerializer.writeEvent(new JsonStreamWriter(out), event);
+
+        assertEquals(event.toJson().toString(), new JSONObject(out.toString()).toString());
     }
 
     @Test
@@ -78,11 +124,9 @@ public class EventTest {
         assertEquals("custom-event", event.getName());
         assertEquals(Event.Source.CUSTOM, event.getSource());
         assertEquals("valid_token", event.getSourceToken());
-        assertEquals("{\"key\":\"value\"}", event.getEventBody().toString());
+        assertEquals(Collections.singletonMap("key", "value"), event.getProperties());
         assertNotNull(event.getId());
         assertTrue(event.getTimestamp() > 0);
-
-
     }
 
     @Test
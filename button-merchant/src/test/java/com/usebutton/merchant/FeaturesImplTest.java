@@ -28,6 +28,7 @@ package com.usebutton.merchant;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -51,4 +52,101 @@ public class FeaturesImplTest {
     public void getIncludesIfa_verifyDefaultValue() {
         assertTrue(features.getIncludesIfa());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getActivitySuppressionWindow_verifyDefaultValue() {
+        assertEquals(1000, features.getActivitySuppressionWindow());
+    }
+
+    @Test
+    public void setActivitySuppressionWindow_negative_verifyDisabled() {
+        features.setActivitySuppressionWindow(-1);
+
+        assertEquals(0, features.getActivitySuppressionWindow());
+    }
+
+    @Test
+    public void getOrderDeduplication_verifyDefaultValue() {
+        assertFalse(features.getOrderDeduplication());
+        assertEquals(24 * 60 * 60 * 1000L, features.getOrderDeduplicationWindow());
+        assertEquals(0.0001, features.getOrderDeduplicationFalsePositiveRate(), 0);
+    }
+
+    @Test
+    public void setOrderDeduplication_verifyEnabled() {
+        features.setOrderDeduplication(true);
+
+        assertTrue(features.getOrderDeduplication());
+    }
+
+    @Test
+    public void setOrderDeduplicationFalsePositiveRate_outOfRange_verifyClamped() {
+        features.setOrderDeduplicationFalsePositiveRate(0.5);
+        assertEquals(0.1, features.getOrderDeduplicationFalsePositiveRate(), 0);
+
+        features.setOrderDeduplicationFalsePositiveRate(0);
+        assertEquals(0.000001, features.getOrderDeduplicationFalsePositiveRate(), 0);
+    }
+
+    @Test
+    public void getCborEncoding_verifyDefaultValue() {
+        assertFalse(features.getCborEncoding());
+    }
+
+    @Test
+    public void setCborEncoding_verifyEnabled() {
+        features.setCborEncoding(true);
+
+        assertTrue(features.getCborEncoding());
+    }
+
+    @Test
+    public void getCompactEventBatches_verifyDefaultValue() {
+        assertFalse(features.getCompactEventBatches());
+    }
+
+    @Test
+    public void setCompactEventBatches_verifyEnabled() {
+        features.setCompactEventBatches(true);
+
+        assertTrue(features.getCompactEventBatches());
+    }
+
+    @Test
+    public void getBatchedActivities_verifyDefaultValue() {
+        assertFalse(features.getBatchedActivities());
+    }
+
+    @Test
+    public void setBatchedActivities_verifyEnabled() {
+        features.setBatchedActivities(true);
+
+        assertTrue(features.getBatchedActivities());
+    }
+
+    @Test
+    public void getConnectionPreWarming_verifyDefaultValue() {
+        assertFalse(features.getConnectionPreWarming());
+    }
+
+    @Test
+    public void setConnectionPreWarming_verifyEnabled() {
+        features.setConnectionPreWarming(true);
+
+        assertTrue(features.getConnectionPreWarming());
+    }
+
+    @Test
+    public void getPendingLinkHedgeDelay_verifyDefaultValue() {
+        assertEquals(0, features.getPendingLinkHedgeDelay());
+    }
+
+    @Test
+    public void setPendingLinkHedgeDelay_negative_verifyDisabled() {
+        features.setPendingLinkHedgeDelay(1500);
+        assertEquals(1500, features.getPendingLinkHedgeDelay());
+
+        features.setPendingLinkHedgeDelay(-1);
+        assertEquals(0, features.getPendingLinkHedgeDelay());
+    }
+}
@@ -111,4 +111,17 @@ public class GetPendingLinkTaskTest {
         verify(buttonApi).getPendingLink(anyString(),(String) isNull(),
                 eq(signalsMap));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void execute_pendingLinkHedgeDelay_verifyHedgedApiCall() throws Exception {
+        Map<String, String> signalsMap = Collections.emptyMap();
+
+        when(features.getPendingLinkHedgeDelay()).thenReturn(1000L);
+        when(deviceManager.getSignals()).thenReturn(signalsMap);
+
+        task.execute();
+
+        verify(buttonApi).getPendingLink(eq(applicationId), (String) isNull(), eq(signalsMap),
+                eq(1000L));
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * InterceptorChainTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import com.usebutton.merchant.exception.ButtonNetworkException;
+import com.usebutton.merchant.exception.HttpStatusException;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class InterceptorChainTest {
+
+    private final List<String> calls = new ArrayList<>();
+    private final NetworkResponse networkResponse = new NetworkResponse(200, new JSONObject());
+
+    @Test
+    public void proceed_shouldRunInterceptorsInOrder() throws Exception {
+        execute(recording("first"), recording("second"), recording("third"));
+
+        assertEquals(Arrays.asList("first request", "second request", "third request",
+                "network", "third response", "second response", "first response"), calls);
+    }
+
+    @Test
+    public void proceed_noInterceptors_shouldReachNetwork() throws Exception {
+        assertSame(networkResponse, execute());
+        assertEquals(Collections.singletonList("network"), calls);
+    }
+
+    @Test
+    public void proceed_changedRequest_shouldReachLaterInterceptors() throws Exception {
+        final List<ApiRequest> seen = new ArrayList<>();
+        Interceptor addHeader = new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) throws ButtonNetworkException {
+                return chain.proceed(chain.request().newBuilder()
+                        .addHeader("X-Trace", "trace-id")
+                        .build());
+            }
+        };
+        Interceptor capture = new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) throws ButtonNetworkException {
+                seen.add(chain.request());
+                return chain.proceed(chain.request());
+            }
+        };
+
+        execute(addHeader, capture);
+
+        assertEquals("trace-id", seen.get(0).getHeaders().get("X-Trace"));
+    }
+
+    @Test
+    public void proceed_changedResponse_shouldReachEarlierInterceptors() throws Exception {
+        final NetworkResponse replaced = new NetworkResponse(202, new JSONObject());
+        Interceptor replace = new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) throws ButtonNetworkException {
+                chain.proceed(chain.request());
+                return replaced;
+            }
+        };
+
+        assertSame(replaced, execute(recording("outer"), replace));
+        assertEquals("outer response", calls.get(calls.size() - 1));
+    }
+
+    @Test
+    public void intercept_withoutProceeding_shouldSkipRestOfChain() throws Exception {
+        final NetworkResponse cached = new NetworkResponse(200, new JSONObject());
+        Interceptor answer = new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) {
+                return cached;
+            }
+        };
+
+        assertSame(cached, execute(recording("outer"), answer, recording("inner")));
+        assertEquals(Arrays.asList("outer request", "outer response"), calls);
+    }
+
+    @Test
+    public void proceed_calledTwice_shouldRunRestOfChainTwice() throws Exception {
+        Interceptor retry = new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) throws ButtonNetworkException {
+                try {
+                    return chain.proceed(chain.request());
+                } catch (ButtonNetworkException e) {
+                    return chain.proceed(chain.request());
+                }
+            }
+        };
+        Interceptor failOnce = new Interceptor() {
+            private boolean failed;
+
+            @Override
+            public NetworkResponse intercept(Chain chain) throws ButtonNetworkException {
+                if (!failed) {
+                    failed = true;
+                    throw new ButtonNetworkException("failed");
+                }
+                return chain.proceed(chain.request());
+            }
+        };
+
+        assertSame(networkResponse, execute(retry, failOnce));
+        assertEquals(Collections.singletonList("network"), calls);
+    }
+
+    @Test
+    public void proceed_networkError_shouldPropagateThroughInterceptors() {
+        final HttpStatusException error = new HttpStatusException("error", 500);
+        Interceptor failing = new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) throws ButtonNetworkException {
+                throw error;
+            }
+        };
+
+        try {
+            new InterceptorChain(Arrays.asList(recording("outer"), failing), 0, request())
+                    .proceed(request());
+            fail();
+        } catch (ButtonNetworkException e) {
+            assertSame(error, e);
+        }
+        assertEquals(Collections.singletonList("outer request"), calls);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void proceed_pastLastInterceptor_shouldThrow() throws Exception {
+        new InterceptorChain(Collections.singletonList(recording("only")), 0, request())
+                .proceed(request());
+    }
+
+    private NetworkResponse execute(Interceptor... interceptors) throws ButtonNetworkException {
+        List<Interceptor> chain = new ArrayList<>(Arrays.asList(interceptors));
+        chain.add(new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) {
+                calls.add("network");
+                return networkResponse;
+            }
+        });
+        return new InterceptorChain(chain, 0, request()).proceed(request());
+    }
+
+    private Interceptor recording(final String name) {
+        return new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) throws ButtonNetworkException {
+                calls.add(name + " request");
+                NetworkResponse response = chain.proceed(chain.request());
+                calls.add(name + " response");
+                return response;
+            }
+        };
+    }
+
+    private static ApiRequest request() {
+        return new ApiRequest.Builder(ApiRequest.RequestMethod.POST, "/v1/app/events").build();
+    }
+}
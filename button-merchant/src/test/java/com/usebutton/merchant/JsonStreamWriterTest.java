@@ -0,0 +1,132 @@
+/*
+ * JsonStreamWriterTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonStreamWriterTest {
+
+    private StringWriter out;
+    private JsonStreamWriter writer;
+
+    @Before
+    public void setUp() {
+        out = new StringWriter();
+        writer = new JsonStreamWriter(out);
+    }
+
+    @Test
+    public void writeObject_shouldSeparateMembers() throws Exception {
+        writer.beginObject()
+                .name("string").value("value")
+                .name("long").value(42)
+                .name("double").value(1.5)
+                .name("boolean").value(true)
+                .endObject();
+
+        assertEquals("{\"string\":\"value\",\"long\":42,\"double\":1.5,\"boolean\":true}",
+                out.toString());
+    }
+
+    @Test
+    public void writeNestedArrays_shouldSeparateElements() throws Exception {
+        writer.beginArray()
+                .beginObject().endObject()
+                .beginArray().value(1).value(2).endArray()
+                .nullValue()
+                .endArray();
+
+        assertEquals("[{},[1,2],null]", out.toString());
+    }
+
+    @Test
+    public void nullMember_shouldBeOmitted() throws Exception {
+        writer.beginObject()
+                .name("first").value((String) null)
+                .name("second").value("value")
+                .name("third").nullValue()
+                .endObject();
+
+        assertEquals("{\"second\":\"value\"}", out.toString());
+    }
+
+    @Test
+    public void rawValue_shouldBeWrittenVerbatim() throws Exception {
+        writer.beginArray().rawValue("{\"a\":1}").rawValue("2").endArray();
+
+        assertEquals("[{\"a\":1},2]", out.toString());
+    }
+
+    @Test
+    public void value_integers_shouldMatchToString() throws Exception {
+        long[] values = {0, 7, -7, 1999, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        writer.beginArray();
+        for (long value : values) {
+            writer.value(value);
+        }
+        writer.value(Integer.valueOf(-42)).value(Long.valueOf(42)).value(1.5);
+        writer.endArray();
+
+        assertEquals("[0,7,-7,1999,2147483647,9223372036854775807,-9223372036854775808,"
+                + "-42,42,1.5]", out.toString());
+    }
+
+    @Test
+    public void value_shouldEscapeStrings() throws Exception {
+        String value = "quote\" backslash\\ newline\n tab\t control\u0001 separator\u2028";
+        writer.beginObject().name("key").value(value).endObject();
+
+        assertEquals("{\"key\":\"quote\\\" backslash\\\\ newline\\n tab\\t control\\u0001"
+                + " separator\\u2028\"}", out.toString());
+        assertEquals(value, new JSONObject(out.toString()).getString("key"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void valueInObject_withoutName_shouldThrow() throws Exception {
+        writer.beginObject().value("value");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void name_outsideObject_shouldThrow() throws Exception {
+        writer.beginArray().name("key");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void endArray_insideObject_shouldThrow() throws Exception {
+        writer.beginObject().endArray();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void value_nonFiniteDouble_shouldThrow() throws Exception {
+        writer.beginArray().value(Double.NaN);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * LatencyEstimatorTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.usebutton.merchant.LatencyEstimator.DEFAULT_CONNECT_TIMEOUT;
+import static com.usebutton.merchant.LatencyEstimator.DEFAULT_READ_TIMEOUT;
+import static com.usebutton.merchant.LatencyEstimator.MAX_CONNECT_TIMEOUT;
+import static com.usebutton.merchant.LatencyEstimator.MAX_READ_TIMEOUT;
+import static com.usebutton.merchant.LatencyEstimator.MIN_CONNECT_TIMEOUT;
+import static com.usebutton.merchant.LatencyEstimator.MIN_READ_TIMEOUT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyEstimatorTest {
+
+    private static final String PATH = "/v1/app/events";
+
+    private LatencyEstimator latencyEstimator;
+
+    @Before
+    public void setUp() {
+        latencyEstimator = new LatencyEstimator();
+    }
+
+    @Test
+    public void noSamples_shouldUseDefaultTimeouts() {
+        assertEquals(DEFAULT_CONNECT_TIMEOUT, latencyEstimator.getConnectTimeout());
+        assertEquals(DEFAULT_READ_TIMEOUT, latencyEstimator.getReadTimeout(PATH));
+        assertEquals(-1, latencyEstimator.getConnectEstimate());
+        assertEquals(-1, latencyEstimator.getFirstByteEstimate(PATH));
+    }
+
+    @Test
+    public void pooledConnections_shouldNotLowerConnectTimeout() {
+        latencyEstimator.recordConnect(3000);
+        int timeout = latencyEstimator.getConnectTimeout();
+
+        for (int i = 0; i < 100; i++) {
+            latencyEstimator.recordConnect(LatencyEstimator.MIN_CONNECT_SAMPLE - 1);
+        }
+
+        assertEquals(3000, latencyEstimator.getConnectEstimate());
+        assertEquals(timeout, latencyEstimator.getConnectTimeout());
+    }
+
+    @Test
+    public void pooledConnectionsOnly_shouldUseDefaultConnectTimeout() {
+        for (int i = 0; i < 100; i++) {
+            latencyEstimator.recordConnect(0);
+        }
+
+        assertEquals(DEFAULT_CONNECT_TIMEOUT, latencyEstimator.getConnectTimeout());
+    }
+
+    @Test
+    public void fastNetwork_shouldUseMinimumTimeouts() {
+        for (int i = 0; i < 10; i++) {
+            latencyEstimator.recordConnect(50);
+            latencyEstimator.recordFirstByte(PATH, 100);
+        }
+
+        assertEquals(MIN_CONNECT_TIMEOUT, latencyEstimator.getConnectTimeout());
+        assertEquals(MIN_READ_TIMEOUT, latencyEstimator.getReadTimeout(PATH));
+        assertEquals(50, latencyEstimator.getConnectEstimate());
+        assertEquals(100, latencyEstimator.getFirstByteEstimate(PATH));
+    }
+
+    @Test
+    public void slowNetwork_shouldRaiseTimeouts() {
+        latencyEstimator.recordConnect(3000);
+        latencyEstimator.recordFirstByte(PATH, 5000);
+
+        // A single sample is the mean, with half of it as the deviation
+        assertEquals(3000 + 4 * 1500, latencyEstimator.getConnectTimeout());
+        assertEquals(5000 + 4 * 2500, latencyEstimator.getReadTimeout(PATH));
+    }
+
+    @Test
+    public void verySlowNetwork_shouldUseMaximumTimeouts() {
+        latencyEstimator.recordConnect(10000);
+        latencyEstimator.recordFirstByte(PATH, 30000);
+
+        assertEquals(MAX_CONNECT_TIMEOUT, latencyEstimator.getConnectTimeout());
+        assertEquals(MAX_READ_TIMEOUT, latencyEstimator.getReadTimeout(PATH));
+    }
+
+    @Test
+    public void steadySamples_shouldConvergeOnMean() {
+        latencyEstimator.recordFirstByte(PATH, 4000);
+        for (int i = 0; i < 100; i++) {
+            latencyEstimator.recordFirstByte(PATH, 2000);
+        }
+
+        long estimate = latencyEstimator.getFirstByteEstimate(PATH);
+        assertTrue("estimate " + estimate, estimate >= 2000 && estimate < 2100);
+        assertTrue(latencyEstimator.getReadTimeout(PATH) < 2 * 2100);
+    }
+
+    @Test
+    public void firstByte_shouldBeTrackedPerPath() {
+        latencyEstimator.recordFirstByte(PATH, 3000);
+
+        assertEquals(-1, latencyEstimator.getFirstByteEstimate("/v1/web-link"));
+        assertEquals(DEFAULT_READ_TIMEOUT, latencyEstimator.getReadTimeout("/v1/web-link"));
+    }
+
+    @Test
+    public void recordTimeout_connecting_shouldDoubleConnectTimeout() {
+        latencyEstimator.recordConnect(1000);
+        int timeout = latencyEstimator.getConnectTimeout();
+
+        latencyEstimator.recordTimeout(PATH, false);
+
+        assertEquals(2 * timeout, latencyEstimator.getConnectTimeout());
+        assertEquals(DEFAULT_READ_TIMEOUT, latencyEstimator.getReadTimeout(PATH));
+    }
+
+    @Test
+    public void recordTimeout_connected_shouldDoubleReadTimeout() {
+        latencyEstimator.recordFirstByte(PATH, 2000);
+        int timeout = latencyEstimator.getReadTimeout(PATH);
+
+        latencyEstimator.recordTimeout(PATH, true);
+
+        assertEquals(2 * timeout, latencyEstimator.getReadTimeout(PATH));
+        assertEquals(DEFAULT_CONNECT_TIMEOUT, latencyEstimator.getConnectTimeout());
+    }
+
+    @Test
+    public void recordTimeout_repeated_shouldStayWithinBounds() {
+        for (int i = 0; i < 10; i++) {
+            latencyEstimator.recordTimeout(PATH, false);
+            latencyEstimator.recordTimeout(PATH, true);
+        }
+
+        assertEquals(MAX_CONNECT_TIMEOUT, latencyEstimator.getConnectTimeout());
+        assertEquals(MAX_READ_TIMEOUT, latencyEstimator.getReadTimeout(PATH));
+    }
+
+    @Test
+    public void recordFirstByte_afterTimeout_shouldResetBackoff() {
+        latencyEstimator.recordFirstByte(PATH, 1000);
+        int timeout = latencyEstimator.getReadTimeout(PATH);
+        latencyEstimator.recordTimeout(PATH, true);
+
+        latencyEstimator.recordFirstByte(PATH, 1000);
+
+        assertTrue(latencyEstimator.getReadTimeout(PATH) <= timeout);
+    }
+}
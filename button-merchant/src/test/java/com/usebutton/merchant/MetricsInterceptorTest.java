@@ -0,0 +1,108 @@
+/*
+ * MetricsInterceptorTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import com.usebutton.merchant.exception.ButtonNetworkException;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MetricsInterceptorTest {
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final NetworkResponse networkResponse = new NetworkResponse(200, new JSONObject());
+    private final ApiRequest request =
+            new ApiRequest.Builder(ApiRequest.RequestMethod.POST, "/v1/app/events").build();
+
+    @Test
+    public void intercept_shouldCountRequestAndRecordLatency() throws Exception {
+        NetworkResponse response = execute(new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) {
+                return networkResponse;
+            }
+        });
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertSame(networkResponse, response);
+        assertEquals(1, snapshot.getCounter(MetricsSnapshot.COUNTER_REQUESTS));
+        assertEquals(0, snapshot.getCounter(MetricsSnapshot.COUNTER_REQUEST_ERRORS));
+        assertEquals(1, snapshot.getRequestLatencies().get("/v1/app/events").getCount());
+    }
+
+    @Test
+    public void intercept_error_shouldCountErrorAndRecordLatency() {
+        final ButtonNetworkException error = new ButtonNetworkException("failed");
+        try {
+            execute(new Interceptor() {
+                @Override
+                public NetworkResponse intercept(Chain chain) throws ButtonNetworkException {
+                    throw error;
+                }
+            });
+            fail();
+        } catch (ButtonNetworkException e) {
+            assertSame(error, e);
+        }
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getCounter(MetricsSnapshot.COUNTER_REQUESTS));
+        assertEquals(1, snapshot.getCounter(MetricsSnapshot.COUNTER_REQUEST_ERRORS));
+        assertEquals(1, snapshot.getRequestLatencies().get("/v1/app/events").getCount());
+    }
+
+    @Test
+    public void intercept_slowRequest_shouldRecordLatencyInMillis() throws Exception {
+        execute(new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException ignored) {
+                }
+                return networkResponse;
+            }
+        });
+
+        long max = metrics.snapshot().getRequestLatencies().get("/v1/app/events").getMax();
+        assertTrue(String.valueOf(max), max >= 20 && max < 1000);
+    }
+
+    private NetworkResponse execute(Interceptor network) throws ButtonNetworkException {
+        List<Interceptor> interceptors = new ArrayList<>();
+        interceptors.add(new MetricsInterceptor(metrics));
+        interceptors.add(network);
+        return new InterceptorChain(interceptors, 0, request).proceed(request);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * MetricsRegistryTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MetricsRegistryTest {
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    @Test
+    public void getInstance_shouldReturnSameRegistry() {
+        assertSame(MetricsRegistry.getInstance(), MetricsRegistry.getInstance());
+    }
+
+    @Test
+    public void counter_sameName_shouldReturnSameCounter() {
+        assertSame(metrics.counter("test"), metrics.counter("test"));
+    }
+
+    @Test
+    public void snapshot_shouldIncludeCounters() {
+        metrics.counter(MetricsSnapshot.COUNTER_REQUESTS).add(3);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+
+        assertEquals(3, snapshot.getCounter(MetricsSnapshot.COUNTER_REQUESTS));
+        assertEquals(0, snapshot.getCounter(MetricsSnapshot.COUNTER_RETRIES));
+    }
+
+    @Test
+    public void snapshot_shouldReadGauges() {
+        final long[] value = {5};
+        metrics.registerGauge(MetricsSnapshot.GAUGE_DEFERRED_QUEUE_DEPTH,
+                new MetricsRegistry.Gauge() {
+                    @Override
+                    public long getValue() {
+                        return value[0];
+                    }
+                });
+
+        assertEquals(Long.valueOf(5),
+                metrics.snapshot().getGauge(MetricsSnapshot.GAUGE_DEFERRED_QUEUE_DEPTH));
+        value[0] = 7;
+        assertEquals(Long.valueOf(7),
+                metrics.snapshot().getGauge(MetricsSnapshot.GAUGE_DEFERRED_QUEUE_DEPTH));
+        assertNull(metrics.snapshot().getGauge(MetricsSnapshot.GAUGE_EXECUTOR_QUEUE_DEPTH));
+    }
+
+    @Test
+    public void taskDuration_taskClass_shouldUseSimpleName() {
+        metrics.taskDuration(PostOrderTask.class).record(40);
+
+        assertSame(metrics.taskDuration("PostOrderTask"),
+                metrics.taskDuration(PostOrderTask.class));
+        assertEquals(1, metrics.snapshot().getTaskDurations().get("PostOrderTask").getCount());
+    }
+
+    @Test
+    public void taskDuration_anonymousClass_shouldUseTaskName() {
+        Runnable anonymous = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        assertSame(metrics.taskDuration("Task"), metrics.taskDuration(anonymous.getClass()));
+    }
+
+    @Test
+    public void snapshot_shouldIncludeHistograms() {
+        metrics.requestLatency("/v1/app/events").record(120);
+        metrics.taskDuration("PostOrderTask").record(40);
+        metrics.requestSizes().record(512);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+
+        assertEquals(120, snapshot.getRequestLatencies().get("/v1/app/events").getMax());
+        assertEquals(40, snapshot.getTaskDurations().get("PostOrderTask").getMax());
+        assertEquals(1, snapshot.getRequestSizes().getCount());
+    }
+
+    @Test
+    public void snapshot_shouldNotChangeAfterMoreUpdates() {
+        metrics.counter(MetricsSnapshot.COUNTER_REQUESTS).increment();
+        metrics.requestSizes().record(1);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        metrics.counter(MetricsSnapshot.COUNTER_REQUESTS).increment();
+        metrics.requestSizes().record(1);
+
+        assertEquals(1, snapshot.getCounter(MetricsSnapshot.COUNTER_REQUESTS));
+        assertEquals(1, snapshot.getRequestSizes().getCount());
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * ModelSerializerTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ModelSerializerTest {
+
+    private final Date purchaseDate = new Date(1600000000000L);
+
+    @Test
+    public void writeOrderMembers_fullOrder_matchGolden() throws Exception {
+        Order order = fullOrder();
+
+        String json = writeOrder(order);
+
+        assertEquals("{\"currency\":\"EUR\",\"order_id\":\"order-1\",\"purchase_date\":\""
+                + ButtonUtil.formatDate(purchaseDate) + "\",\"customer_order_id\":\"customer-1\","
+                + "\"line_items\":[{\"category\":[\"shoes\",\"running\"],\"identifier\":\"item-1\","
+                + "\"quantity\":2,\"total\":12000,\"attributes\":{\"size\":\"10\"},"
+                + "\"upc\":\"upc-1\",\"description\":\"Running shoe\",\"sku\":\"sku-1\"}],"
+                + "\"customer\":{\"id\":\"customer-id\",\"email_sha256\":\""
+                + ButtonUtil.sha256Encode("customer@usebutton.com") + "\",\"is_new\":true}}",
+                json);
+        assertTrue(legacyOrder(order).similar(new JSONObject(json)));
+    }
+
+    @Test
+    public void writeOrderMembers_minimalOrder_matchGolden() throws Exception {
+        Order order = new Order.Builder("order-2", purchaseDate,
+                Collections.singletonList(new Order.LineItem.Builder("item-2", 500).build()))
+                .build();
+
+        String json = writeOrder(order);
+
+        assertEquals("{\"currency\":\"USD\",\"order_id\":\"order-2\",\"purchase_date\":\""
+                + ButtonUtil.formatDate(purchaseDate) + "\",\"line_items\":[{\"identifier\":"
+                + "\"item-2\",\"quantity\":1,\"total\":500}]}", json);
+        assertTrue(legacyOrder(order).similar(new JSONObject(json)));
+    }
+
+    @Test
+    public void writeProduct_fullProduct_matchGolden() throws Exception {
+        ButtonProduct product = new ButtonProduct();
+        product.setId("product-1");
+        product.setUpc("upc-1");
+        product.setCategories(Arrays.asList("shoes", "running"));
+        product.setName("Running shoe");
+        product.setCurrency("USD");
+        product.setValue(12000);
+        product.setQuantity(2);
+        product.setUrl("https://example.com/p/1");
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("size", "10");
+        attributes.put("color", null);
+        product.setAttributes(attributes);
+
+        String json = ModelSerializer.toJson(product);
+
+        assertEquals("{\"categories\":[\"shoes\",\"running\"],\"attributes\":{\"size\":\"10\"},"
+                + "\"id\":\"product-1\",\"upc\":\"upc-1\",\"name\":\"Running shoe\","
+                + "\"currency\":\"USD\",\"value\":12000,\"quantity\":2,"
+                + "\"url\":\"https://example.com/p/1\"}", json);
+        assertTrue(legacyProduct(product).similar(new JSONObject(json)));
+    }
+
+    @Test
+    public void writeProduct_emptyProduct_matchGolden() throws Exception {
+        ButtonProduct product = new ButtonProduct();
+
+        String json = ModelSerializer.toJson(product);
+
+        assertEquals("{}", json);
+        assertTrue(legacyProduct(product).similar(new JSONObject(json)));
+    }
+
+    @Test
+    public void writeEvent_customEvent_matchGolden() throws Exception {
+        Event event = new Event("custom-event", "valid_token",
+                Collections.singletonMap("key", "value"));
+
+        String json = writeEvent(event);
+
+        assertEquals("{\"name\":\"custom-event\",\"source\":\"custom\",\"source_token\":"
+                + "\"valid_token\",\"time\":\"" + ButtonUtil.formatTimestamp(event.getTimestamp())
+                + "\",\"uuid\":\"" + event.getId()
+                + "\",\"value\":{\"extra\":{\"key\":\"value\"}}}", json);
+    }
+
+    @Test
+    public void writeEvent_buttonEvent_matchGolden() throws Exception {
+        Event event = new Event(Event.Name.DEEPLINK_OPENED, null,
+                Collections.singletonMap(Event.Property.URL, "https://example.com"));
+
+        String json = writeEvent(event);
+
+        assertEquals("{\"name\":\"btn:deeplink-opened\",\"source\":\"button\",\"time\":\""
+                + ButtonUtil.formatTimestamp(event.getTimestamp()) + "\",\"uuid\":\""
+                + event.getId() + "\",\"value\":{\"url\":\"https://example.com\"}}", json);
+    }
+
+    @Test
+    public void writeEventBatchMembers_sharedSource_matchGolden() throws Exception {
+        Event first = new Event(Event.Name.DEEPLINK_OPENED, "srctok-1",
+                Collections.singletonMap(Event.Property.URL, "https://example.com/1"));
+        Event second = new Event(Event.Name.DEEPLINK_OPENED, "srctok-1",
+                Collections.singletonMap(Event.Property.URL, "https://example.com/2"));
+
+        String json = writeEventBatch(Arrays.asList(first, second));
+
+        assertEquals("{\"time_base\":" + first.getTimestamp() + ",\"source\":\"button\","
+                + "\"source_token\":\"srctok-1\",\"events\":["
+                + "{\"name\":\"btn:deeplink-opened\",\"time_offset\":0,\"uuid\":\""
+                + first.getId() + "\",\"value\":{\"url\":\"https://example.com/1\"}},"
+                + "{\"name\":\"btn:deeplink-opened\",\"time_offset\":"
+                + (second.getTimestamp() - first.getTimestamp()) + ",\"uuid\":\""
+                + second.getId() + "\",\"value\":{\"url\":\"https://example.com/2\"}}]}",
+                json);
+    }
+
+    @Test
+    public void writeEventBatchMembers_mixedSources_matchGolden() throws Exception {
+        Event first = new Event(Event.Name.DEEPLINK_OPENED, "srctok-1");
+        Event second = new Event("custom-event", null,
+                Collections.singletonMap("key", "value"));
+
+        String json = writeEventBatch(Arrays.asList(first, second));
+
+        assertEquals("{\"time_base\":" + first.getTimestamp() + ",\"events\":["
+                + "{\"name\":\"btn:deeplink-opened\",\"source\":\"button\","
+                + "\"source_token\":\"srctok-1\",\"time_offset\":0,\"uuid\":\""
+                + first.getId() + "\",\"value\":{}},"
+                + "{\"name\":\"custom-event\",\"source\":\"custom\",\"time_offset\":"
+                + (second.getTimestamp() - first.getTimestamp()) + ",\"uuid\":\""
+                + second.getId() + "\",\"value\":{\"extra\":{\"key\":\"value\"}}}]}", json);
+    }
+
+    @Test
+    public void writeEventBatchMembers_unorderedEvents_shouldOffsetFromTimeBase()
+            throws Exception {
+        List<Event> events = Arrays.asList(event(5000L), event(3000L), event(9000L));
+
+        JSONObject json = new JSONObject(writeEventBatch(events));
+        JSONArray eventsJson = json.getJSONArray("events");
+
+        assertEquals(5000L, json.getLong("time_base"));
+        assertEquals(0L, eventsJson.getJSONObject(0).getLong("time_offset"));
+        assertEquals(-2000L, eventsJson.getJSONObject(1).getLong("time_offset"));
+        assertEquals(4000L, eventsJson.getJSONObject(2).getLong("time_offset"));
+    }
+
+    @Test
+    public void writeEventBatchMembers_noEvents_shouldWriteEmptyArray() throws Exception {
+        assertEquals("{\"events\":[]}", writeEventBatch(Collections.<Event>emptyList()));
+    }
+
+    @Test
+    public void writeEventBatchMembers_100Events_shouldBeSmallerThanPerEventEncoding()
+            throws Exception {
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            events.add(new Event(Event.Name.DEEPLINK_OPENED, "srctok-abcdef1234567890",
+                    Collections.singletonMap(Event.Property.URL,
+                            "https://example.com/p/" + i)));
+        }
+
+        int batchSize = writeEventBatch(events).length();
+        StringWriter out = new StringWriter();
+        JsonStreamWriter writer = new JsonStreamWriter(out);
+        writer.beginObject().name("events").beginArray();
+        for (Event event : events) {
+            ModelSerializer.writeEvent(writer, event);
+        }
+        writer.endArray().endObject();
+        int perEventSize = out.toString().length();
+
+        // source, source_token and the ISO time are sent once instead of 100 times
+        assertTrue("batch " + batchSize + " per event " + perEventSize,
+                batchSize < perEventSize * 0.7);
+    }
+
+    private static String writeOrder(Order order) throws Exception {
+        StringWriter out = new StringWriter();
+        JsonStreamWriter writer = new JsonStreamWriter(out);
+        writer.beginObject();
+        ModelSerializer.writeOrderMembers(writer, order);
+        writer.endObject();
+        return out.toString();
+    }
+
+    private static String writeEvent(Event event) throws Exception {
+        StringWriter out = new StringWriter();
+        ModelSerializer.writeEvent(new JsonStreamWriter(out), event);
+        return out.toString();
+    }
+
+    private static Event event(long timestamp) {
+        Event event = mock(Event.class);
+        when(event.getId()).thenReturn(UUID.randomUUID());
+        when(event.getTimestamp()).thenReturn(timestamp);
+        when(event.getName()).thenReturn("btn:deeplink-opened");
+        when(event.getSource()).thenReturn(Event.Source.BUTTON);
+        when(event.getSourceToken()).thenReturn("srctok-1");
+        when(event.getProperties()).thenReturn(Collections.<String, String>emptyMap());
+        return event;
+    }
+
+    private static String writeEventBatch(List<Event> events) throws Exception {
+        StringWriter out = new StringWriter();
+        JsonStreamWriter writer = new JsonStreamWriter(out);
+        writer.beginObject();
+        ModelSerializer.writeEventBatchMembers(writer, events);
+        writer.endObject();
+        return out.toString();
+    }
+
+    private Order fullOrder() {
+        Order.LineItem lineItem = new Order.LineItem.Builder("item-1", 12000)
+                .setCategory(Arrays.asList("shoes", "running"))
+                .setAttributes(Collections.singletonMap("size", "10"))
+                .setQuantity(2)
+                .setUpc("upc-1")
+                .setDescription("Running shoe")
+                .setSku("sku-1")
+                .build();
+        Order.Customer customer = new Order.Customer.Builder("customer-id")
+                .setEmail("customer@usebutton.com")
+                .setIsNew(true)
+                .build();
+        return new Order.Builder("order-1", purchaseDate, Collections.singletonList(lineItem))
+                .setCurrencyCode("EUR")
+                .setCustomerOrderId("customer-1")
+                .setCustomer(customer)
+                .build();
+    }
+
+    /**
+     * Order body as previously built with {@link JSONObject}, minus request-level members.
+     */
+    private static JSONObject legacyOrder(Order order) throws Exception {
+        JSONObject requestBody = new JSONObject();
+        requestBody.put("currency", order.getCurrencyCode());
+        requestBody.put("order_id", order.getId());
+        requestBody.put("purchase_date", ButtonUtil.formatDate(order.getPurchaseDate()));
+        requestBody.put("customer_order_id", order.getCustomerOrderId());
+
+        JSONArray lineItemsJson = new JSONArray();
+        for (int i = 0; i < order.getLineItems().size(); i++) {
+            Order.LineItem lineItem = order.getLineItems().get(i);
+            JSONObject lineItemJson = new JSONObject();
+            List<String> lineItemCategory = lineItem.getCategory();
+            if (lineItemCategory != null) {
+                JSONArray categoryJson = new JSONArray();
+                for (String category : lineItemCategory) {
+                    categoryJson.put(category);
+                }
+                lineItemJson.put("category", categoryJson);
+            }
+            lineItemJson.put("identifier", lineItem.getId());
+            lineItemJson.put("quantity", lineItem.getQuantity());
+            lineItemJson.put("total", lineItem.getTotal());
+            Map<String, String> lineItemAttributes = lineItem.getAttributes();
+            if (lineItemAttributes != null) {
+                JSONObject attributesJson = new JSONObject();
+                for (Map.Entry<String, String> entry : lineItemAttributes.entrySet()) {
+                    attributesJson.put(entry.getKey(), entry.getValue());
+                }
+                lineItemJson.put("attributes", attributesJson);
+            }
+            lineItemJson.put("upc", lineItem.getUpc());
+            lineItemJson.put("description", lineItem.getDescription());
+            lineItemJson.put("sku", lineItem.getSku());
+            lineItemsJson.put(i, lineItemJson);
+        }
+        if (lineItemsJson.length() > 0) {
+            requestBody.put("line_items", lineItemsJson);
+        }
+
+        Order.Customer customer = order.getCustomer();
+        if (customer != null) {
+            JSONObject customerJson = new JSONObject();
+            customerJson.put("id", customer.getId());
+            String email = customer.getEmail();
+            if (email != null) {
+                if (ButtonUtil.isValidEmail(email)) {
+                    email = ButtonUtil.sha256Encode(email.toLowerCase());
+                }
+                customerJson.put("email_sha256", email);
+            }
+            if (customer.isNew() != null) {
+                customerJson.put("is_new", customer.isNew());
+            }
+            requestBody.put("customer", customerJson);
+        }
+        return requestBody;
+    }
+
+    /**
+     * Product as previously built with {@link JSONObject}.
+     */
+    private static JSONObject legacyProduct(ButtonProductCompatible product) throws Exception {
+        JSONObject productJson = new JSONObject();
+        List<String> categories = product.getCategories();
+        if (categories != null) {
+            JSONArray categoriesJson = new JSONArray();
+            for (int j = 0; j < categories.size(); j++) {
+                categoriesJson.put(j, categories.get(j));
+            }
+            productJson.put("categories", categoriesJson);
+        }
+        Map<String, String> attributes = product.getAttributes();
+        if (attributes != null) {
+            JSONObject attributesJson = new JSONObject();
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                attributesJson.putOpt(entry.getKey(), entry.getValue());
+            }
+            productJson.put("attributes", attributesJson);
+        }
+        productJson.put("id", product.getId());
+        productJson.put("upc", product.getUpc());
+        productJson.put("name", product.getName());
+        productJson.put("currency", product.getCurrency());
+        productJson.put("value", product.getValue());
+        productJson.put("quantity", product.getQuantity());
+        productJson.put("url", product.getUrl());
+        return productJson;
+    }
+}
@@ -94,6 +94,21 @@ public class PersistenceManagerImplTest {
         assertEquals("valid_source_token", sourceToken);
     }
 
+    @Test
+    public void setReportedOrderFilter_persistToSharedPrefs() {
+        persistenceManager.setReportedOrderFilter("valid_filter");
+        verify(editor).putString(PersistenceManagerImpl.Key.REPORTED_ORDER_FILTER,
+                "valid_filter");
+        verify(editor).apply();
+    }
+
+    @Test
+    public void getReportedOrderFilter_returnValidFilter() {
+        when(sharedPreferences.getString(PersistenceManagerImpl.Key.REPORTED_ORDER_FILTER,
+                null)).thenReturn("valid_filter");
+        assertEquals("valid_filter", persistenceManager.getReportedOrderFilter());
+    }
+
     @Test
     public void clear_clearSharedPrefs() {
         when(editor.clear()).thenReturn(editor);
@@ -25,21 +25,34 @@
 
 package com.usebutton.merchant;
 
+import com.usebutton.merchant.exception.CircuitOpenException;
 import com.usebutton.merchant.exception.HttpStatusException;
 import com.usebutton.merchant.exception.NetworkNotFoundException;
 import com.usebutton.merchant.module.Features;
 
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.Collections;
+import java.util.Date;
+
 import static com.usebutton.merchant.PostOrderTask.MAX_RETRIES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -64,6 +77,8 @@ public class PostOrderTaskTest {
     @Mock
     private ThreadManager threadManager;
 
+    private RetryBudget retryBudget;
+
     private String applicationId = "valid_application_id";
     private String sourceToken = "valid_source_token";
 
@@ -72,8 +87,9 @@ public class PostOrderTaskTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        retryBudget = new RetryBudget(RetryBudget.MAX_TOKENS, RetryBudget.TOKENS_PER_SUCCESS);
         task = new PostOrderTask(listener, buttonApi, order, applicationId, sourceToken,
-                deviceManager, features, threadManager);
+                deviceManager, features, threadManager, retryBudget);
     }
 
     @Test
@@ -178,4 +194,107 @@ public class PostOrderTaskTest {
 
         task.execute();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void execute_rateLimited_shouldWaitForRetryAfter() throws Exception {
+        when(buttonApi.postOrder(any(Order.class), anyString(), anyString(), (String) isNull()))
+                .thenThrow(new HttpStatusException("rate limited", 429, 2000))
+                .thenReturn(null);
+
+        task.execute();
+
+        verify(buttonApi, times(2))
+                .postOrder(any(Order.class), anyString(), anyString(), (String) isNull());
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(threadManager).sleep(delay.capture());
+        assertTrue(delay.getValue() >= 2000 && delay.getValue() < 2000 + 100);
+    }
+
+    @Test(expected = HttpStatusException.class)
+    public void execute_retryAfterTooLong_shouldNotRetry() throws Exception {
+        when(buttonApi.postOrder(any(Order.class), anyString(), anyString(), (String) isNull()))
+                .thenThrow(new HttpStatusException("unavailable", 503,
+                        PostOrderTask.MAX_RETRY_AFTER + 1));
+
+        try {
+            task.execute();
+        } finally {
+            verify(buttonApi).postOrder(any(Order.class), anyString(), anyString(),
+                    (String) isNull());
+            verify(threadManager, never()).sleep(anyLong());
+        }
+    }
+
+    @Test(expected = NetworkNotFoundException.class)
+    public void execute_retryBudgetExhausted_shouldNotRetry() throws Exception {
+        while (retryBudget.tryAcquire()) {
+            // drain the shared budget
+        }
+        when(buttonApi.postOrder(any(Order.class), anyString(),
+                anyString(), (String) isNull())).thenThrow(NetworkNotFoundException.class);
+
+        try {
+            task.execute();
+        } finally {
+            verify(buttonApi).postOrder(any(Order.class), anyString(), anyString(),
+                    (String) isNull());
+        }
+    }
+
+    @Test
+    public void getRetryDelay_shouldBeWithinExponentialBound() {
+        for (int retryCount = 0; retryCount < MAX_RETRIES; retryCount++) {
+            for (int i = 0; i < 100; i++) {
+                long delay = PostOrderTask.getRetryDelay(retryCount);
+                assertTrue(delay >= 0 && delay < 100 * (1L << retryCount));
+            }
+        }
+    }
+
+    @Test
+    public void execute_outage_shouldBoundRequestAmplification() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(503);
+            }
+        });
+        server.start();
+        String url = server.url("").url().toString();
+        url = url.substring(0, url.length() - 1);
+        ConnectionManager connectionManager = new ConnectionManagerImpl(url, "test-agent",
+                mock(PersistenceManager.class), mock(Features.class), retryBudget);
+        ButtonApi api = new ButtonApiImpl(connectionManager);
+        Order.LineItem lineItem = new Order.LineItem.Builder("item", 1000).build();
+
+        int orderCount = 50;
+        for (int i = 0; i < orderCount; i++) {
+            Order outageOrder = new Order.Builder("order-" + i, new Date(),
+                    Collections.singletonList(lineItem)).build();
+            try {
+                new PostOrderTask(null, api, outageOrder, applicationId, sourceToken,
+                        deviceManager, features, threadManager, retryBudget).execute();
+            } catch (HttpStatusException ignored) {
+            }
+        }
+        server.close();
+
+        // Without the budget every order would be sent MAX_RETRIES + 1 times
+        assertEquals(orderCount + RetryBudget.MAX_TOKENS, server.getRequestCount());
+    }
+
+    @Test(expected = CircuitOpenException.class)
+    public void execute_circuitOpen_shouldNotRetry() throws Exception {
+        when(buttonApi.postOrder(any(Order.class), anyString(), anyString(), (String) isNull()))
+                .thenThrow(new CircuitOpenException("Button API unreachable"));
+
+        try {
+            task.execute();
+        } finally {
+            verify(buttonApi).postOrder(any(Order.class), anyString(), anyString(),
+                    (String) isNull());
+            verify(threadManager, never()).sleep(anyLong());
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * PostOrdersTaskTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import com.usebutton.merchant.exception.HttpStatusException;
+import com.usebutton.merchant.exception.NetworkNotFoundException;
+import com.usebutton.merchant.module.Features;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.usebutton.merchant.PostOrderTask.MAX_RETRIES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PostOrdersTaskTest {
+
+    @Mock
+    private ButtonApi buttonApi;
+
+    @Mock
+    private DeviceManager deviceManager;
+
+    @Mock
+    private Features features;
+
+    @Mock
+    private ThreadManager threadManager;
+
+    private RetryBudget retryBudget =
+            new RetryBudget(RetryBudget.MAX_TOKENS, RetryBudget.TOKENS_PER_SUCCESS);
+
+    private String applicationId = "valid_application_id";
+    private String sourceToken = "valid_source_token";
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void execute_includesIfa_verifyApiCall() throws Exception {
+        when(features.getIncludesIfa()).thenReturn(true);
+        when(deviceManager.getAdvertisingId()).thenReturn("valid_advertising_id");
+        List<Order> orders = orders(2);
+
+        task(orders).execute();
+
+        verify(buttonApi).postOrders(orders, applicationId, sourceToken, "valid_advertising_id");
+    }
+
+    @Test
+    public void execute_doesNotIncludeIfa_verifyNullAdvertisingId() throws Exception {
+        when(features.getIncludesIfa()).thenReturn(false);
+        when(deviceManager.getAdvertisingId()).thenReturn("valid_advertising_id");
+        List<Order> orders = orders(2);
+
+        task(orders).execute();
+
+        verify(buttonApi).postOrders(eq(orders), eq(applicationId), eq(sourceToken),
+                (String) isNull());
+    }
+
+    @Test
+    public void execute_moreThanChunkSize_shouldPostInChunks() throws Exception {
+        List<Order> orders = orders(PostOrdersTask.CHUNK_SIZE * 2 + 1);
+        final List<Integer> chunkSizes = new ArrayList<>();
+        when(buttonApi.postOrders(anyList(), anyString(), anyString(), (String) isNull()))
+                .thenAnswer(new Answer<Void>() {
+                    @Override
+                    public Void answer(InvocationOnMock invocation) {
+                        List<?> chunk = invocation.getArgument(0);
+                        chunkSizes.add(chunk.size());
+                        return null;
+                    }
+                });
+
+        List<OrderResult> results = task(orders).execute();
+
+        assertEquals(Arrays.asList(PostOrdersTask.CHUNK_SIZE, PostOrdersTask.CHUNK_SIZE, 1),
+                chunkSizes);
+        assertEquals(orders.size(), results.size());
+        for (int i = 0; i < orders.size(); i++) {
+            assertSame(orders.get(i), results.get(i).getOrder());
+            assertTrue(results.get(i).isSuccessful());
+        }
+    }
+
+    @Test
+    public void execute_invalidOrder_shouldFailOnlyThatOrder() throws Exception {
+        Order valid = order("valid");
+        Order noCurrency = new Order.Builder("no-currency", new Date(),
+                Collections.<Order.LineItem>emptyList())
+                .setCurrencyCode(null)
+                .build();
+        List<Order> orders = Arrays.asList(valid, noCurrency);
+
+        List<OrderResult> results = task(orders).execute();
+
+        verify(buttonApi).postOrders(eq(Collections.singletonList(valid)), eq(applicationId),
+                eq(sourceToken), (String) isNull());
+        assertTrue(results.get(0).isSuccessful());
+        assertFalse(results.get(1).isSuccessful());
+        assertTrue(results.get(1).getError() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void execute_allOrdersInvalid_shouldNotPost() throws Exception {
+        Order order = mock(Order.class);
+        when(order.getId()).thenReturn("");
+
+        List<OrderResult> results = task(Collections.singletonList(order)).execute();
+
+        verify(buttonApi, never()).postOrders(anyList(), anyString(), anyString(),
+                (String) isNull());
+        assertFalse(results.get(0).isSuccessful());
+    }
+
+    @Test
+    public void execute_serverError_shouldRetryAndFailChunk() throws Exception {
+        HttpStatusException httpStatusException = mock(HttpStatusException.class);
+        when(httpStatusException.wasServerError()).thenReturn(true);
+        when(buttonApi.postOrders(anyList(), anyString(), anyString(), (String) isNull()))
+                .thenThrow(httpStatusException);
+        List<Order> orders = orders(2);
+
+        List<OrderResult> results = task(orders).execute();
+
+        verify(buttonApi, times(MAX_RETRIES + 1))
+                .postOrders(anyList(), anyString(), anyString(), (String) isNull());
+        assertSame(httpStatusException, results.get(0).getError());
+        assertSame(httpStatusException, results.get(1).getError());
+    }
+
+    @Test
+    public void execute_networkNotFound_shouldRetryThenSucceed() throws Exception {
+        when(buttonApi.postOrders(anyList(), anyString(), anyString(), (String) isNull()))
+                .thenThrow(new NetworkNotFoundException(new Exception()))
+                .thenReturn(null);
+
+        List<OrderResult> results = task(orders(1)).execute();
+
+        verify(buttonApi, times(2))
+                .postOrders(anyList(), anyString(), anyString(), (String) isNull());
+        assertTrue(results.get(0).isSuccessful());
+    }
+
+    @Test
+    public void execute_clientError_shouldNotRetryAndKeepLaterChunks() throws Exception {
+        HttpStatusException httpStatusException = mock(HttpStatusException.class);
+        when(buttonApi.postOrders(anyList(), anyString(), anyString(), (String) isNull()))
+                .thenThrow(httpStatusException)
+                .thenReturn(null);
+        List<Order> orders = orders(PostOrdersTask.CHUNK_SIZE + 1);
+
+        List<OrderResult> results = task(orders).execute();
+
+        verify(buttonApi, times(2))
+                .postOrders(anyList(), anyString(), anyString(), (String) isNull());
+        assertSame(httpStatusException, results.get(0).getError());
+        assertNull(results.get(PostOrdersTask.CHUNK_SIZE).getError());
+    }
+
+    @Test
+    public void validate_validOrder_returnNull() {
+        assertNull(PostOrdersTask.validate(order("123")));
+    }
+
+    @Test
+    public void validate_missingFields_returnError() {
+        Order order = mock(Order.class);
+        when(order.getId()).thenReturn("123");
+        assertNotNull(PostOrdersTask.validate(order));
+
+        when(order.getPurchaseDate()).thenReturn(new Date());
+        assertNotNull(PostOrdersTask.validate(order));
+
+        when(order.getLineItems()).thenReturn(Collections.<Order.LineItem>emptyList());
+        assertNotNull(PostOrdersTask.validate(order));
+
+        when(order.getCurrencyCode()).thenReturn("USD");
+        assertNull(PostOrdersTask.validate(order));
+    }
+
+    @Test
+    public void execute_1000Orders_shouldUploadInChunks() throws Exception {
+        final AtomicInteger orderCount = new AtomicInteger();
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                try {
+                    JSONObject body = new JSONObject(request.getBody().readUtf8());
+                    orderCount.addAndGet(body.getJSONArray("orders").length());
+                } catch (Exception e) {
+                    return new MockResponse().setResponseCode(400);
+                }
+                return new MockResponse().setResponseCode(200).setBody("{}");
+            }
+        });
+        server.start();
+        HttpUrl baseUrl = server.url("");
+        String url = baseUrl.url().toString();
+        url = url.substring(0, url.length() - 1);
+
+        ConnectionManager connectionManager = new ConnectionManagerImpl(url, "test-agent",
+                mock(PersistenceManager.class));
+        ((ConnectionManagerImpl) connectionManager).baseUrl = url;
+        ButtonApi api = new ButtonApiImpl(connectionManager);
+        List<Order> orders = orders(1000);
+
+        List<OrderResult> results = new PostOrdersTask(null, api, orders, applicationId,
+                sourceToken, deviceManager, features, threadManager, retryBudget).execute();
+        server.close();
+
+        // One request per order when reported individually
+        assertEquals(1000, orderCount.get());
+        assertEquals(1000 / PostOrdersTask.CHUNK_SIZE, server.getRequestCount());
+        for (OrderResult result : results) {
+            assertTrue(result.isSuccessful());
+        }
+    }
+
+    private PostOrdersTask task(List<Order> orders) {
+        return new PostOrdersTask(null, buttonApi, orders, applicationId, sourceToken,
+                deviceManager, features, threadManager, retryBudget);
+    }
+
+    private static List<Order> orders(int count) {
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(order("order-" + i));
+        }
+        return orders;
+    }
+
+    private static Order order(String id) {
+        Order.LineItem lineItem = new Order.LineItem.Builder(id + "-item", 1000).build();
+        return new Order.Builder(id, new Date(), Collections.singletonList(lineItem)).build();
+    }
+}
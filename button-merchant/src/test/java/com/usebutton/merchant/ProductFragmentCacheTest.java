@@ -0,0 +1,234 @@
+/*
+ * ProductFragmentCacheTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.usebutton.merchant.module.Features;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+public class ProductFragmentCacheTest {
+
+    @Test
+    public void get_sameContent_shouldReturnCachedFragment() throws Exception {
+        ProductFragmentCache cache = new ProductFragmentCache();
+
+        String first = cache.get(product("one"));
+        String second = cache.get(product("one"));
+
+        assertSame(first, second);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void get_shouldMatchFullSerialization() throws Exception {
+        ProductFragmentCache cache = new ProductFragmentCache();
+        ButtonProduct product = product("one");
+
+        cache.get(product);
+
+        assertEquals(ModelSerializer.toJson(product), cache.get(product));
+        assertEquals("one", new JSONObject(cache.get(product)).getString("id"));
+    }
+
+    @Test
+    public void get_mutatedProduct_shouldSerializeAgain() throws Exception {
+        ProductFragmentCache cache = new ProductFragmentCache();
+        ButtonProduct product = product("one");
+        cache.get(product);
+
+        product.setQuantity(5);
+        String fragment = cache.get(product);
+
+        assertEquals(5, new JSONObject(fragment).getInt("quantity"));
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void get_overMaxSize_shouldEvictLeastRecentlyUsed() throws Exception {
+        ProductFragmentCache cache = new ProductFragmentCache(2);
+        cache.get(product("one"));
+        cache.get(product("two"));
+        cache.get(product("one"));
+        cache.get(product("three"));
+
+        assertEquals(2, cache.size());
+        cache.get(product("one"));
+        assertEquals(3, cache.getMissCount());
+        cache.get(product("two"));
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void fingerprint_shouldCoverEveryField() {
+        long base = ProductFragmentCache.fingerprint(product("one"));
+
+        ButtonProduct product = product("one");
+        product.setUpc("other");
+        assertNotEquals(base, ProductFragmentCache.fingerprint(product));
+
+        product = product("one");
+        product.setValue(1);
+        assertNotEquals(base, ProductFragmentCache.fingerprint(product));
+
+        product = product("one");
+        product.setCategories(Arrays.asList("Apparel", "Shirts", "Sale"));
+        assertNotEquals(base, ProductFragmentCache.fingerprint(product));
+
+        product = product("one");
+        product.setAttributes(Collections.singletonMap("color", "red"));
+        assertNotEquals(base, ProductFragmentCache.fingerprint(product));
+
+        product = product("one");
+        product.setUrl(null);
+        assertNotEquals(base, ProductFragmentCache.fingerprint(product));
+    }
+
+    @Test
+    public void fingerprint_shouldSeparateAdjacentFields() {
+        ButtonProduct first = new ButtonProduct();
+        first.setId("ab");
+        first.setUpc("c");
+        ButtonProduct second = new ButtonProduct();
+        second.setId("a");
+        second.setUpc("bc");
+
+        assertNotEquals(ProductFragmentCache.fingerprint(first),
+                ProductFragmentCache.fingerprint(second));
+    }
+
+    @Test
+    public void cartViewed_50Items_100Times_shouldSerializeEachItemOnce() throws Exception {
+        WritingConnectionManager connectionManager = new WritingConnectionManager();
+        ButtonApiImpl buttonApi = new ButtonApiImpl(connectionManager, batchedActivities());
+        ProductFragmentCache cache = buttonApi.getProductFragmentCache();
+        List<ButtonProductCompatible> cart = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            cart.add(product("sku-" + i));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            buttonApi.postActivities(Collections.singletonList(
+                    new ActivityEvent("cart-viewed", cart, 1000L)), null, null);
+        }
+
+        assertEquals(50, cache.getMissCount());
+        assertEquals(50 * 99, cache.getHitCount());
+        JSONObject lastBody = new JSONObject(connectionManager.lastBody);
+        assertEquals(50, lastBody.getJSONArray("products").length());
+        assertEquals("sku-49", lastBody.getJSONArray("products").getJSONObject(49)
+                .getString("id"));
+    }
+
+    private static ButtonProduct product(String id) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("color", "blue");
+        attributes.put("size", "M");
+        ButtonProduct product = new ButtonProduct();
+        product.setId(id);
+        product.setUpc("4006381333931");
+        product.setName("Product " + id);
+        product.setCurrency("USD");
+        product.setValue(2999);
+        product.setQuantity(1);
+        product.setUrl("https://example.com/products/" + id);
+        product.setCategories(Arrays.asList("Apparel", "Shirts"));
+        product.setAttributes(attributes);
+        return product;
+    }
+
+    private static Features batchedActivities() {
+        Features features = new FeaturesImpl();
+        features.setBatchedActivities(true);
+        return features;
+    }
+
+    private static class WritingConnectionManager implements ConnectionManager {
+
+        private String lastBody;
+
+        @Override
+        public void setApplicationId(String applicationId) {
+        }
+
+        @Nullable
+        @Override
+        public String getApplicationId() {
+            return null;
+        }
+
+        @Override
+        public NetworkResponse executeRequest(@NonNull ApiRequest request) {
+            try {
+                StringWriter out = new StringWriter();
+                JsonStreamWriter writer = new JsonStreamWriter(out);
+                writer.beginObject();
+                request.getStreamingBody().writeMembers(writer);
+                writer.endObject();
+                lastBody = out.toString();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            return null;
+        }
+
+        @Override
+        public NetworkResponse executeHedgedRequest(ApiRequest request, ApiRequest hedge,
+                long hedgeDelayMs) {
+            return executeRequest(request);
+        }
+
+        @Override
+        public void addInterceptor(Interceptor interceptor) {
+        }
+
+        @Override
+        public void warmUp() {
+        }
+
+        @Override
+        public boolean isCircuitOpen() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * ProductTableTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.usebutton.merchant;
+
+import com.usebutton.merchant.module.Features;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ProductTableTest {
+
+    @Test
+    public void add_sameContent_shouldReturnSameIndex() throws Exception {
+        ProductTable table = new ProductTable(new ProductFragmentCache(),
+                new JsonStreamWriter(new StringWriter()));
+
+        assertEquals(0, table.add(product("one", 1)));
+        assertEquals(1, table.add(product("two", 1)));
+        assertEquals(0, table.add(product("one", 1)));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void add_changedQuantity_shouldReturnNewIndex() throws Exception {
+        ProductTable table = new ProductTable(new ProductFragmentCache(),
+                new JsonStreamWriter(new StringWriter()));
+
+        assertEquals(0, table.add(product("one", 1)));
+        assertEquals(1, table.add(product("one", 2)));
+    }
+
+    @Test
+    public void writeTo_shouldWriteProductsInIndexOrder() throws Exception {
+        StringWriter out = new StringWriter();
+        JsonStreamWriter writer = new JsonStreamWriter(out);
+        ProductTable table = new ProductTable(new ProductFragmentCache(), writer);
+        table.add(product("one", 1));
+        table.add(product("two", 3));
+
+        table.writeTo(writer);
+
+        JSONArray products = new JSONArray(out.toString());
+        assertEquals(2, products.length());
+        assertEquals("one", products.getJSONObject(0).getString("id"));
+        assertEquals("two", products.getJSONObject(1).getString("id"));
+        assertEquals(3, products.getJSONObject(1).getInt("quantity"));
+    }
+
+    @Test
+    public void writeTo_cbor_shouldNotUseFragmentCache() throws Exception {
+        ProductFragmentCache cache = new ProductFragmentCache();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CborStreamWriter writer = new CborStreamWriter(out);
+        ProductTable table = new ProductTable(cache, writer);
+
+        assertEquals(0, table.add(product("one", 1)));
+        assertEquals(1, table.add(product("two", 3)));
+        assertEquals(0, table.add(product("one", 1)));
+        writer.beginObject().name("products");
+        table.writeTo(writer);
+        writer.endObject();
+
+        JSONArray products = CborDecoder.decodeObject(out.toByteArray())
+                .getJSONArray("products");
+        assertEquals(2, products.length());
+        assertEquals("two", products.getJSONObject(1).getString("id"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void postActivities_browseToCheckoutSession_shouldReducePayloadBytes()
+            throws Exception {
+        List<ButtonProductCompatible> catalog = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            catalog.add(product("sku-" + i, 1));
+        }
+
+        // Browse the catalog, add four items to the cart and revisit the cart after each add
+        List<ActivityEvent> session = new ArrayList<>();
+        List<ButtonProductCompatible> cart = new ArrayList<>();
+        for (ButtonProductCompatible product : catalog) {
+            session.add(activity("product-viewed", Collections.singletonList(product)));
+        }
+        for (int i = 0; i < 4; i++) {
+            ButtonProductCompatible product = catalog.get(i * 3);
+            session.add(activity("product-viewed", Collections.singletonList(product)));
+            session.add(activity("add-to-cart", Collections.singletonList(product)));
+            cart.add(product);
+            session.add(activity("cart-viewed", new ArrayList<>(cart)));
+        }
+
+        JSONObject body = postActivities(session);
+        int tableBytes = body.toString().length();
+        assertEquals(12, body.getJSONArray("products").length());
+
+        // 30 product references share 12 table entries: ~45% smaller than inlining them
+        int inlinedBytes = inlineProducts(body).toString().length();
+        assertTrue(tableBytes < inlinedBytes * 0.6);
+    }
+
+    private static JSONObject postActivities(List<ActivityEvent> activities)
+            throws Exception {
+        ConnectionManager connectionManager = mock(ConnectionManager.class);
+        ArgumentCaptor<ApiRequest> captor = ArgumentCaptor.forClass(ApiRequest.class);
+
+        new ButtonApiImpl(connectionManager, batchedActivities())
+                .postActivities(activities, "token", null);
+        verify(connectionManager).executeRequest(captor.capture());
+
+        StringWriter out = new StringWriter();
+        JsonStreamWriter writer = new JsonStreamWriter(out);
+        writer.beginObject();
+        captor.getValue().getStreamingBody().writeMembers(writer);
+        writer.endObject();
+        return new JSONObject(out.toString());
+    }
+
+    /**
+     * Expands product references back into inline product arrays.
+     */
+    private static JSONObject inlineProducts(JSONObject body) throws Exception {
+        JSONArray table = body.getJSONArray("products");
+        JSONArray activities = body.getJSONArray("activities");
+        for (int i = 0; i < activities.length(); i++) {
+            JSONObject activity = activities.getJSONObject(i);
+            JSONArray refs = activity.getJSONArray("product_refs");
+            JSONArray products = new JSONArray();
+            for (int j = 0; j < refs.length(); j++) {
+                products.put(table.getJSONObject(refs.getInt(j)));
+            }
+            activity.remove("product_refs");
+            activity.put("products", products);
+        }
+        body.remove("products");
+        return body;
+    }
+
+    private static ActivityEvent activity(String name, List<ButtonProductCompatible> products) {
+        return new ActivityEvent(name, products, 1000L);
+    }
+
+    private static ButtonProduct product(String id, int quantity) {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("color", "blue");
+        attributes.put("size", "M");
+        ButtonProduct product = new ButtonProduct();
+        product.setId(id);
+        product.setUpc("4006381333931");
+        product.setName("Product " + id);
+        product.setCurrency("USD");
+        product.setValue(2999);
+        product.setQuantity(quantity);
+        product.setUrl("https://example.com/products/" + id);
+        product.setCategories(Arrays.asList("Apparel", "Shirts"));
+        product.setAttributes(attributes);
+        return product;
+    }
+
+    private static Features batchedActivities() {
+        Features features = new FeaturesImpl();
+        features.setBatchedActivities(true);
+        return features;
+    }
+}
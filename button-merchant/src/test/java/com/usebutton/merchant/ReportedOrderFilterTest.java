@@ -0,0 +1,251 @@
+/*
+ * ReportedOrderFilterTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import com.usebutton.merchant.module.Features;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReportedOrderFilterTest {
+
+    private static final long WINDOW = 60000L;
+
+    private Features features;
+    private PersistenceManager persistenceManager;
+    private TestTimeProvider timeProvider;
+    private ReportedOrderFilter filter;
+
+    @Before
+    public void setUp() {
+        features = mock(Features.class);
+        when(features.getOrderDeduplicationWindow()).thenReturn(WINDOW);
+        when(features.getOrderDeduplicationFalsePositiveRate()).thenReturn(0.01);
+        persistenceManager = mock(PersistenceManager.class);
+        timeProvider = new TestTimeProvider();
+        filter = new ReportedOrderFilter(features, timeProvider, persistenceManager);
+    }
+
+    @Test
+    public void bitCount_verifyOptimalSize() {
+        // m = -n ln(p) / ln(2)^2
+        assertEquals(4908, ReportedOrderFilter.bitCount(512, 0.01));
+        assertEquals(9816, ReportedOrderFilter.bitCount(512, 0.0001));
+        assertEquals(64, ReportedOrderFilter.bitCount(1, 0.1));
+    }
+
+    @Test
+    public void hashCount_verifyOptimalCount() {
+        // k = m / n ln(2)
+        assertEquals(7, ReportedOrderFilter.hashCount(4908, 512));
+        assertEquals(13, ReportedOrderFilter.hashCount(9816, 512));
+        assertEquals(1, ReportedOrderFilter.hashCount(64, 512));
+    }
+
+    @Test
+    public void expectedFalsePositiveRate_atCapacity_verifyConfiguredRate() {
+        double[] rates = {0.1, 0.01, 0.0001, 0.000001};
+        for (double rate : rates) {
+            int bits = ReportedOrderFilter.bitCount(ReportedOrderFilter.CAPACITY, rate);
+            int hashes = ReportedOrderFilter.hashCount(bits, ReportedOrderFilter.CAPACITY);
+            double expected = ReportedOrderFilter.expectedFalsePositiveRate(bits, hashes,
+                    ReportedOrderFilter.CAPACITY);
+
+            assertTrue(expected <= rate * 1.05);
+            assertTrue(expected >= rate * 0.8);
+        }
+    }
+
+    @Test
+    public void mightContain_fullFilter_observedRateWithinConfiguredRate() {
+        for (int i = 0; i < ReportedOrderFilter.CAPACITY; i++) {
+            filter.add("order-" + i);
+        }
+
+        int falsePositives = 0;
+        int probes = 100000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("other-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue((double) falsePositives / probes < 0.015);
+    }
+
+    @Test
+    public void mightContain_reportedOrder_returnTrue() {
+        assertFalse(filter.mightContain("order-1"));
+
+        filter.add("order-1");
+
+        assertTrue(filter.mightContain("order-1"));
+        assertFalse(filter.mightContain("order-2"));
+    }
+
+    @Test
+    public void tryReserve_sameOrderTwice_returnFalse() {
+        assertTrue(filter.tryReserve("order-1"));
+
+        assertFalse(filter.tryReserve("order-1"));
+        assertTrue(filter.tryReserve("order-2"));
+    }
+
+    @Test
+    public void tryReserve_afterRelease_returnTrue() {
+        filter.tryReserve("order-1");
+
+        filter.release("order-1");
+
+        assertTrue(filter.tryReserve("order-1"));
+        assertFalse(filter.mightContain("order-1"));
+    }
+
+    @Test
+    public void tryReserve_afterAdd_returnFalse() {
+        filter.tryReserve("order-1");
+
+        filter.add("order-1");
+        filter.release("order-1");
+
+        assertFalse(filter.tryReserve("order-1"));
+    }
+
+    @Test
+    public void mightContain_afterOneWindow_returnTrue() {
+        filter.add("order-1");
+
+        timeProvider.time += WINDOW + 1;
+
+        assertTrue(filter.mightContain("order-1"));
+    }
+
+    @Test
+    public void mightContain_afterTwoWindows_returnFalse() {
+        filter.add("order-1");
+
+        timeProvider.time += WINDOW;
+        filter.add("order-2");
+        timeProvider.time += WINDOW;
+
+        assertFalse(filter.mightContain("order-1"));
+        assertTrue(filter.mightContain("order-2"));
+    }
+
+    @Test
+    public void mightContain_clockMovedBackwards_returnFalse() {
+        filter.add("order-1");
+
+        timeProvider.time -= 1;
+
+        assertFalse(filter.mightContain("order-1"));
+    }
+
+    @Test
+    public void add_overCapacity_keepsPreviousGeneration() {
+        filter.add("first");
+        for (int i = 0; i < ReportedOrderFilter.CAPACITY; i++) {
+            filter.add("order-" + i);
+        }
+        assertTrue(filter.mightContain("first"));
+
+        // Ids that look already present do not count towards capacity
+        for (int i = 0; i < ReportedOrderFilter.CAPACITY * 2; i++) {
+            filter.add("later-" + i);
+        }
+        assertFalse(filter.mightContain("first"));
+    }
+
+    @Test
+    public void add_verifyPersisted() {
+        filter.add("order-1");
+
+        ArgumentCaptor<String> argumentCaptor = ArgumentCaptor.forClass(String.class);
+        verify(persistenceManager).setReportedOrderFilter(argumentCaptor.capture());
+        when(persistenceManager.getReportedOrderFilter()).thenReturn(argumentCaptor.getValue());
+        ReportedOrderFilter restored = new ReportedOrderFilter(features, timeProvider,
+                persistenceManager);
+
+        assertTrue(restored.mightContain("order-1"));
+        assertFalse(restored.mightContain("order-2"));
+    }
+
+    @Test
+    public void mightContain_persistedWithOtherRate_discardState() {
+        filter.add("order-1");
+        ArgumentCaptor<String> argumentCaptor = ArgumentCaptor.forClass(String.class);
+        verify(persistenceManager, atLeastOnce()).setReportedOrderFilter(argumentCaptor.capture());
+        when(persistenceManager.getReportedOrderFilter()).thenReturn(argumentCaptor.getValue());
+
+        when(features.getOrderDeduplicationFalsePositiveRate()).thenReturn(0.001);
+        ReportedOrderFilter restored = new ReportedOrderFilter(features, timeProvider,
+                persistenceManager);
+
+        assertFalse(restored.mightContain("order-1"));
+    }
+
+    @Test
+    public void mightContain_corruptedState_returnFalse() {
+        when(persistenceManager.getReportedOrderFilter()).thenReturn("1;4908;7;x;1;ab;cd");
+
+        assertFalse(filter.mightContain("order-1"));
+    }
+
+    @Test
+    public void clear_forgetsOrders() {
+        filter.add("order-1");
+
+        filter.clear();
+
+        assertFalse(filter.mightContain("order-1"));
+    }
+
+    @Test
+    public void hash_verifyStable() {
+        assertEquals(ReportedOrderFilter.hash("order-1"), ReportedOrderFilter.hash("order-1"));
+        assertFalse(ReportedOrderFilter.hash("order-1") == ReportedOrderFilter.hash("order-2"));
+    }
+
+    private static class TestTimeProvider implements TimeProvider {
+
+        private long time = 10000L;
+
+        @Override
+        public long getTimeInMs() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * SessionInterceptorTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class SessionInterceptorTest {
+
+    @Mock PersistenceManager persistenceManager;
+
+    private SessionInterceptor sessionInterceptor;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        sessionInterceptor = new SessionInterceptor(persistenceManager);
+    }
+
+    @Test
+    public void intercept_sessionId_shouldRefreshSession() throws Exception {
+        NetworkResponse response =
+                respond("{\"meta\":{\"session_id\":\"sess-abc1234567890\"}}");
+
+        verify(persistenceManager).setSessionId("sess-abc1234567890");
+        assertEquals(200, response.getStatusCode());
+    }
+
+    @Test
+    public void intercept_nullSessionId_shouldClearData() throws Exception {
+        respond("{\"meta\":{\"session_id\":null}}");
+
+        verify(persistenceManager).clear();
+    }
+
+    @Test
+    public void intercept_noSession_shouldKeepSession() throws Exception {
+        respond("{\"meta\":{\"status\":\"ok\"}}");
+        respond("{}");
+
+        verify(persistenceManager, never()).setSessionId(anyString());
+        verify(persistenceManager, never()).clear();
+    }
+
+    private NetworkResponse respond(String body) throws Exception {
+        final NetworkResponse response = new NetworkResponse(200, new JSONObject(body));
+        ApiRequest request =
+                new ApiRequest.Builder(ApiRequest.RequestMethod.POST, "/v1/app/events").build();
+        return new InterceptorChain(Arrays.asList(sessionInterceptor, new Interceptor() {
+            @Override
+            public NetworkResponse intercept(Chain chain) {
+                return response;
+            }
+        }), 0, request).proceed(request);
+    }
+}
@@ -29,6 +29,7 @@ import androidx.annotation.Nullable;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -70,4 +71,47 @@ public class TaskTest {
         verify(listener).onTaskError(any(RuntimeException.class));
         verifyNoMoreInteractions(listener);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void run_shouldRecordDuration() {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        long before = taskCount(metrics, "CountedTask");
+
+        new CountedTask().run();
+
+        assertEquals(before + 1, taskCount(metrics, "CountedTask"));
+    }
+
+    @Test
+    public void run_throwException_shouldCountFailure() {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        long before = metrics.snapshot().getCounter(MetricsSnapshot.COUNTER_TASK_FAILURES);
+
+        new Task<String>(null) {
+            @Override
+            String execute() throws Exception {
+                throw new RuntimeException();
+            }
+        }.run();
+
+        assertEquals(before + 1,
+                metrics.snapshot().getCounter(MetricsSnapshot.COUNTER_TASK_FAILURES));
+    }
+
+    private static long taskCount(MetricsRegistry metrics, String name) {
+        MetricsSnapshot.Histogram histogram = metrics.snapshot().getTaskDurations().get(name);
+        return histogram == null ? 0 : histogram.getCount();
+    }
+
+    private static class CountedTask extends Task<String> {
+
+        CountedTask() {
+            super(null);
+        }
+
+        @Override
+        String execute() {
+            return "test";
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * UploadPolicyTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UploadPolicyTest {
+
+    private FakeDeviceConditions deviceConditions;
+    private UploadPolicy uploadPolicy;
+
+    @Before
+    public void setUp() {
+        deviceConditions = new FakeDeviceConditions();
+        uploadPolicy = new UploadPolicy(deviceConditions);
+    }
+
+    @Test
+    public void isConstrained_unconstrained_returnFalse() {
+        assertFalse(uploadPolicy.isConstrained());
+    }
+
+    @Test
+    public void isConstrained_batteryLow_returnTrue() {
+        deviceConditions.batteryLow = true;
+
+        assertTrue(uploadPolicy.isConstrained());
+    }
+
+    @Test
+    public void isConstrained_powerSaveMode_returnTrue() {
+        deviceConditions.powerSaveMode = true;
+
+        assertTrue(uploadPolicy.isConstrained());
+    }
+
+    @Test
+    public void isConstrained_deviceIdle_returnTrue() {
+        deviceConditions.deviceIdle = true;
+
+        assertTrue(uploadPolicy.isConstrained());
+    }
+
+    @Test
+    public void isConstrained_networkMetered_returnFalse() {
+        deviceConditions.networkMetered = true;
+
+        assertFalse(uploadPolicy.isConstrained());
+        assertFalse(uploadPolicy.shouldDeferLowPriority());
+    }
+
+    @Test
+    public void getBatchingWindow_unconstrained_returnDefaultWindow() {
+        assertEquals(500, uploadPolicy.getBatchingWindow(500));
+        assertEquals(0, uploadPolicy.getStretchedWindowCount());
+    }
+
+    @Test
+    public void getBatchingWindow_constrained_stretchWindow() {
+        deviceConditions.batteryLow = true;
+
+        assertEquals(500 * UploadPolicy.CONSTRAINED_WINDOW_MULTIPLIER,
+                uploadPolicy.getBatchingWindow(500));
+        assertEquals(1, uploadPolicy.getStretchedWindowCount());
+    }
+
+    @Test
+    public void getBatchingWindow_networkMetered_stretchWindow() {
+        deviceConditions.networkMetered = true;
+
+        assertEquals(500 * UploadPolicy.CONSTRAINED_WINDOW_MULTIPLIER,
+                uploadPolicy.getBatchingWindow(500));
+    }
+
+    @Test
+    public void shouldDeferLowPriority_unconstrained_returnFalse() {
+        assertFalse(uploadPolicy.shouldDeferLowPriority());
+        assertEquals(0, uploadPolicy.getDeferralCount());
+    }
+
+    @Test
+    public void shouldDeferLowPriority_constrained_countDeferrals() {
+        deviceConditions.batteryLow = true;
+
+        assertTrue(uploadPolicy.shouldDeferLowPriority());
+        assertTrue(uploadPolicy.shouldDeferLowPriority());
+        deviceConditions.batteryLow = false;
+        assertFalse(uploadPolicy.shouldDeferLowPriority());
+
+        assertEquals(2, uploadPolicy.getDeferralCount());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Utf8SinkTest.java
+ *
+ * Copyright (c) 2021 Button, Inc. (https://usebutton.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package com.usebutton.merchant;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Utf8SinkTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void write_mixedText_shouldMatchStringEncoding() throws Exception {
+        String text = "ascii \u00e9 \u00df \u4e2d\u6587 \uD83D\uDE00 emoji, end";
+
+        assertArrayEquals(text.getBytes(UTF_8), encode(text, Utf8Sink.DEFAULT_BUFFER_SIZE));
+    }
+
+    @Test
+    public void write_smallBuffer_shouldSplitSequencesSafely() throws Exception {
+        String text = "a\u00e9\u4e2d\uD83D\uDE00b\u00e9\u4e2d\uD83D\uDE00";
+
+        // Every buffer size forces flushes at a different point in the multi-byte sequences
+        for (int bufferSize = 1; bufferSize < 12; bufferSize++) {
+            assertArrayEquals(text.getBytes(UTF_8), encode(text, bufferSize));
+        }
+    }
+
+    @Test
+    public void write_surrogatePairAcrossCalls_shouldEncodeCodePoint() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8Sink sink = new Utf8Sink(out);
+
+        sink.write('\uD83D');
+        sink.write('\uDE00');
+        sink.close();
+
+        assertArrayEquals("\uD83D\uDE00".getBytes(UTF_8), out.toByteArray());
+    }
+
+    @Test
+    public void write_unpairedSurrogates_shouldWriteReplacement() throws Exception {
+        assertEquals("?a?b?", new String(encode("\uD83Da\uDE00b\uD83D", 16), UTF_8));
+    }
+
+    @Test
+    public void flush_shouldWriteBufferedBytes() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8Sink sink = new Utf8Sink(out);
+
+        sink.write("buffered");
+        assertEquals(0, out.size());
+
+        sink.flush();
+        assertEquals("buffered", out.toString("UTF-8"));
+    }
+
+    private static byte[] encode(String text, int bufferSize) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8Sink sink = new Utf8Sink(out, bufferSize);
+        sink.write(text);
+        sink.close();
+        return out.toByteArray();
+    }
+}